@@ -0,0 +1,100 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.CheckSumHandler;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.crypto.key.DerivedKeyCache;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSum;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encrypting, decrypting and checksumming small messages with
+ * and without the derived key cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class DerivedKeyCacheBenchmark {
+    @Param({"aes128-cts-hmac-sha1-96", "aes256-cts-hmac-sha1-96",
+        "camellia128-cts-cmac", "des3-cbc-sha1"})
+    private String encType;
+
+    @Param({"true", "false"})
+    private boolean cached;
+
+    @Param({"64"})
+    private int messageSize;
+
+    private EncryptionKey key;
+    private byte[] message;
+    private EncryptedData encrypted;
+    private CheckSumType checkSumType;
+
+    @Setup
+    public void setup() throws KrbException {
+        DerivedKeyCache.getInstance().setEnabled(cached);
+        key = EncryptionHandler.random2Key(EncryptionType.fromName(encType));
+        message = new byte[messageSize];
+        encrypted = EncryptionHandler.encrypt(message, key, KeyUsage.TGS_REP_ENCPART_SESSKEY);
+        checkSumType = EncryptionHandler.getEncHandler(key.getKeyType()).checksumType();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public EncryptedData encrypt() throws KrbException {
+        return EncryptionHandler.encrypt(message, key, KeyUsage.TGS_REP_ENCPART_SESSKEY);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] decrypt() throws KrbException {
+        return EncryptionHandler.decrypt(encrypted, key, KeyUsage.TGS_REP_ENCPART_SESSKEY);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public CheckSum checksum() throws KrbException {
+        return CheckSumHandler.checksumWithKey(checkSumType, message, key.getKeyData(),
+            KeyUsage.TGS_REQ_AUTH_CKSUM);
+    }
+
+    @TearDown
+    public void cleanup() {
+        DerivedKeyCache.getInstance().setEnabled(false);
+    }
+}
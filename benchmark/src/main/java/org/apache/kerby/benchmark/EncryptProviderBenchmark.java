@@ -0,0 +1,91 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.enc.EncryptProvider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Aes128Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Aes256Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Des3Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.DesProvider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Rc4Provider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JCE based encrypt providers on small Kerberos payloads,
+ * each call with its own key as the KDC does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class EncryptProviderBenchmark {
+    @Param({"aes128", "aes256", "des3", "des", "rc4"})
+    private String provider;
+
+    @Param({"64"})
+    private int messageSize;
+
+    private EncryptProvider encProvider;
+    private byte[] key;
+    private byte[] iv;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        if ("aes128".equals(provider)) {
+            encProvider = new Aes128Provider();
+        } else if ("aes256".equals(provider)) {
+            encProvider = new Aes256Provider();
+        } else if ("des3".equals(provider)) {
+            encProvider = new Des3Provider();
+        } else if ("des".equals(provider)) {
+            encProvider = new DesProvider();
+        } else {
+            encProvider = new Rc4Provider();
+        }
+        SecureRandom random = new SecureRandom();
+        key = new byte[encProvider.keySize()];
+        random.nextBytes(key);
+        iv = new byte[encProvider.blockSize()];
+        data = new byte[messageSize];
+        random.nextBytes(data);
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Threads(2)
+    public byte[] encryptDecrypt() throws KrbException {
+        encProvider.encrypt(key, iv.clone(), data);
+        encProvider.decrypt(key, iv.clone(), data);
+        return data;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.CheckSumHandler;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up the shared handlers, alone and followed by an
+ * unkeyed checksum as a KDC request does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class HandlerLookupBenchmark {
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = new byte[64];
+        new SecureRandom().nextBytes(data);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Object encHandler() throws KrbException {
+        return EncryptionHandler.getEncHandler(EncryptionType.AES256_CTS_HMAC_SHA1_96.getValue());
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Object checkSumHandler() throws KrbException {
+        return CheckSumHandler.getCheckSumHandler(CheckSumType.HMAC_SHA1_96_AES256);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] md5CheckSum() throws KrbException {
+        return CheckSumHandler.getCheckSumHandler(CheckSumType.RSA_MD5).checksum(data);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Md5Provider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Sha1Provider;
+import org.apache.kerby.kerberos.kerb.crypto.util.Hmac;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the HMAC over JDK Macs with the HMAC over hash providers, with
+ * a key used again as derived keys are.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class HmacBenchmark {
+    @Param({"sha1", "md5"})
+    private String digest;
+
+    @Param({"64", "1024"})
+    private int messageSize;
+
+    private byte[] key;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        SecureRandom random = new SecureRandom();
+        key = new byte[16];
+        random.nextBytes(key);
+        data = new byte[messageSize];
+        random.nextBytes(data);
+    }
+
+    private HashProvider hashProvider() {
+        if ("md5".equals(digest)) {
+            return new Md5Provider();
+        }
+        return new Sha1Provider();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] jdkMac() throws KrbException {
+        return Hmac.hmac(hashProvider(), key, data, 0, data.length);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] hashProviderMac() throws KrbException {
+        return Hmac.hashHmac(hashProvider(), key, data, 0, data.length);
+    }
+}
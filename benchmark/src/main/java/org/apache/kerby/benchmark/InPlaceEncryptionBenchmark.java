@@ -0,0 +1,85 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.EncTypeHandler;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encrypting to fresh arrays with encrypting in place in a
+ * buffer sized ahead with the encrypted length.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class InPlaceEncryptionBenchmark {
+    private static final int USAGE = 24;
+
+    @Param({"aes256-cts-hmac-sha1-96", "arcfour-hmac"})
+    private String encType;
+
+    @Param({"64", "16384"})
+    private int messageSize;
+
+    private EncTypeHandler handler;
+    private byte[] key;
+    private byte[] data;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() throws KrbException {
+        handler = EncryptionHandler.getEncHandler(EncryptionType.fromName(encType));
+        SecureRandom random = new SecureRandom();
+        byte[] randomBits = new byte[handler.keyInputSize()];
+        random.nextBytes(randomBits);
+        key = handler.random2Key(randomBits);
+        data = new byte[messageSize];
+        random.nextBytes(data);
+        buffer = new byte[handler.encryptedLength(messageSize)];
+    }
+
+    @Benchmark
+    @Fork(1)
+    public byte[] arrays() throws KrbException {
+        return handler.decrypt(handler.encrypt(data, key, USAGE), key, USAGE);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public int inPlace() throws KrbException {
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        int len = handler.encrypt(buffer, 0, data.length, key, USAGE);
+        return handler.decrypt(buffer, 0, len, key, USAGE);
+    }
+}
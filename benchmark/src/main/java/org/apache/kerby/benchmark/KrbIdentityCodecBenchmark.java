@@ -0,0 +1,178 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.kerby.kerberos.kdc.identitybackend.typeAdapter.EncryptionKeyAdapter;
+import org.apache.kerby.kerberos.kdc.identitybackend.typeAdapter.KerberosTimeAdapter;
+import org.apache.kerby.kerberos.kdc.identitybackend.typeAdapter.PrincipalNameAdapter;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentityCodec;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding an identity with {@link KrbIdentityCodec}, against
+ * Gson as the Json backend does, and Java serialization, e.g.
+ * java -jar target/benchmarks.jar KrbIdentityCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class KrbIdentityCodecBenchmark {
+
+    @Param({"codec", "gson", "java"})
+    private String format;
+
+    private KrbIdentity identity;
+    private Gson gson;
+    private ByteBuffer buffer;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        identity = BackendTestUtil.createOneIdentity();
+        GsonBuilder gsonBuilder = new GsonBuilder();
+        gsonBuilder.registerTypeAdapter(EncryptionKey.class, new EncryptionKeyAdapter());
+        gsonBuilder.registerTypeAdapter(PrincipalName.class, new PrincipalNameAdapter());
+        gsonBuilder.registerTypeAdapter(KerberosTime.class, new KerberosTimeAdapter());
+        gsonBuilder.enableComplexMapKeySerialization();
+        gson = gsonBuilder.create();
+        // Reused by the codec, as a pooled buffer would be
+        buffer = ByteBuffer.allocate(4096);
+
+        encoded = toBytes();
+        System.out.println(format + " encodes the identity in " + encoded.length + " bytes");
+    }
+
+    private byte[] toBytes() throws IOException {
+        if ("codec".equals(format)) {
+            return KrbIdentityCodec.encode(identity);
+        } else if ("gson".equals(format)) {
+            return gson.toJson(identity, KrbIdentity.class).getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new SerializableIdentity(identity));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public Object encode() throws Exception {
+        if ("codec".equals(format)) {
+            buffer.clear();
+            KrbIdentityCodec.encode(identity, buffer);
+            return buffer;
+        }
+        return toBytes();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public KrbIdentity decode() throws Exception {
+        if ("codec".equals(format)) {
+            return KrbIdentityCodec.decode(encoded);
+        } else if ("gson".equals(format)) {
+            return gson.fromJson(new String(encoded, StandardCharsets.UTF_8), KrbIdentity.class);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return ((SerializableIdentity) in.readObject()).toIdentity();
+        }
+    }
+
+    /**
+     * The fields of an identity, as KrbIdentity itself isn't serializable.
+     */
+    private static class SerializableIdentity implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String principalName;
+        private final int keyVersion;
+        private final int kdcFlags;
+        private final boolean disabled;
+        private final boolean locked;
+        private final long createdTime;
+        private final long expireTime;
+        private final int[] keyTypes;
+        private final int[] keyVersions;
+        private final byte[][] keyData;
+
+        SerializableIdentity(KrbIdentity identity) {
+            principalName = identity.getPrincipalName();
+            keyVersion = identity.getKeyVersion();
+            kdcFlags = identity.getKdcFlags();
+            disabled = identity.isDisabled();
+            locked = identity.isLocked();
+            createdTime = identity.getCreatedTime().getTime();
+            expireTime = identity.getExpireTime().getTime();
+            int keyCount = identity.getKeys().size();
+            keyTypes = new int[keyCount];
+            keyVersions = new int[keyCount];
+            keyData = new byte[keyCount][];
+            int i = 0;
+            for (EncryptionKey key : identity.getKeys().values()) {
+                keyTypes[i] = key.getKeyType().getValue();
+                keyVersions[i] = key.getKvno();
+                keyData[i] = key.getKeyData();
+                i++;
+            }
+        }
+
+        KrbIdentity toIdentity() {
+            KrbIdentity identity = new KrbIdentity(principalName);
+            identity.setKeyVersion(keyVersion);
+            identity.setKdcFlags(kdcFlags);
+            identity.setDisabled(disabled);
+            identity.setLocked(locked);
+            identity.setCreatedTime(new KerberosTime(createdTime));
+            identity.setExpireTime(new KerberosTime(expireTime));
+            for (int i = 0; i < keyTypes.length; i++) {
+                identity.addKey(new EncryptionKey(EncryptionType.fromValue(keyTypes[i]), keyData[i],
+                    keyVersions[i]));
+            }
+            return identity;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.factory.DSAnnotationProcessor;
+import org.apache.directory.server.factory.ServerAnnotationProcessor;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kdc.identitybackend.LdapIdentityBackend;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
+import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
+import org.junit.runner.Description;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup throughput of the LDAP backend against an embedded ApacheDS, with
+ * one connection shared by all threads or a pool. Run with a growing number
+ * of threads to see how it scales, e.g.
+ * java -jar target/benchmarks.jar LdapBackendBenchmark -t 8
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@CreateDS(name = "LdapBackendBenchmark",
+    partitions = {
+        @CreatePartition(name = "example", suffix = "dc=example,dc=com")
+    })
+@CreateLdapServer(
+    transports = {
+        @CreateTransport(protocol = "LDAP", address = "127.0.0.1")
+    })
+@ApplyLdifs({
+    "dn: dc=example,dc=com",
+    "objectClass: top",
+    "objectClass: domain",
+    "dc: example",
+    "dn: ou=users,dc=example,dc=com",
+    "objectClass: top",
+    "objectClass: organizationalUnit",
+    "ou: users"
+})
+public class LdapBackendBenchmark {
+
+    @Param({"1", "16"})
+    private int poolSize;
+
+    private DirectoryService directoryService;
+    private LdapServer ldapServer;
+    private IdentityBackend backend;
+
+    @Setup
+    public void setup() throws Exception {
+        Description description = Description.createSuiteDescription(LdapBackendBenchmark.class);
+        directoryService = DSAnnotationProcessor.getDirectoryService(description);
+        DSAnnotationProcessor.applyLdifs(description, directoryService);
+        ldapServer = ServerAnnotationProcessor.createLdapServer(description, directoryService);
+
+        Conf config = new Conf();
+        config.setString("host", "127.0.0.1");
+        config.setInt("port", ldapServer.getPort());
+        config.setString("admin_dn", "uid=admin,ou=system");
+        config.setString("admin_pw", "secret");
+        config.setString("base_dn", "ou=users,dc=example,dc=com");
+        config.setInt(LdapIdentityBackend.POOL_MIN_SIZE, poolSize);
+        config.setInt(LdapIdentityBackend.POOL_MAX_SIZE, poolSize);
+        backend = new LdapIdentityBackend(config);
+        backend.initialize();
+
+        BackendTestUtil.createManyIdentities(backend, 100);
+        BackendTestUtil.createTheTestIdentity(backend);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public void lookup() throws Exception {
+        BackendTestUtil.getTheTestIdentity(backend);
+    }
+
+    @TearDown
+    public void cleanup() throws Exception {
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+        }
+        if (ldapServer != null) {
+            ldapServer.stop();
+        }
+        if (directoryService != null) {
+            directoryService.shutdown();
+        }
+    }
+}
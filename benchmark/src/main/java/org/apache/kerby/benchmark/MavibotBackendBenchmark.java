@@ -0,0 +1,117 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.MavibotBackend;
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kdc.identitybackend.JsonIdentityBackend;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
+import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and updates of the Mavibot backend against the Json backend, on
+ * the same identities, e.g.
+ * java -jar target/benchmarks.jar MavibotBackendBenchmark -t 4
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class MavibotBackendBenchmark {
+
+    @Param({"json", "mavibot"})
+    private String backendType;
+
+    @Param({"1000"})
+    private int count;
+
+    private IdentityBackend backend;
+    private KrbIdentity testIdentity;
+    private File backendDir;
+
+    @Setup
+    public void setup() throws Exception {
+        File testDir = new File(System.getProperty("test.dir", "target"));
+        backendDir = new File(testDir, "mavibot-benchmark-" + backendType);
+        deleteDir(backendDir);
+
+        if ("mavibot".equals(backendType)) {
+            backend = new MavibotBackend(backendDir);
+        } else {
+            Config backendConfig = new Conf();
+            backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR,
+                    backendDir.getAbsolutePath());
+            backendConfig.setBoolean(JsonIdentityBackend.JSON_IDENTITY_BACKEND_JOURNAL, true);
+            backend = new JsonIdentityBackend(backendConfig);
+        }
+        backend.initialize();
+
+        BackendTestUtil.createManyIdentities(backend, count);
+        BackendTestUtil.createTheTestIdentity(backend);
+        testIdentity = backend.getIdentity(BackendTestUtil.TEST_PRINCIPAL);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public void lookup() throws Exception {
+        BackendTestUtil.getTheTestIdentity(backend);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public void update() throws Exception {
+        backend.updateIdentity(testIdentity);
+    }
+
+    @TearDown
+    public void cleanup() throws Exception {
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+        }
+        deleteDir(backendDir);
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            throw new RuntimeException("File delete error!");
+        }
+    }
+}
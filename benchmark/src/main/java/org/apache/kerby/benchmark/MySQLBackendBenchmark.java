@@ -0,0 +1,128 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kdc.identitybackend.MySQLConfKey;
+import org.apache.kerby.kerberos.kdc.identitybackend.MySQLIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
+import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to provision principals into the MySQL backend, running on an
+ * embedded H2 database in MySQL mode, one identity at a time or in one
+ * batch, e.g.
+ * java -jar target/benchmarks.jar MySQLBackendBenchmark -wi 1 -i 3
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class MySQLBackendBenchmark {
+    private static final String USER = "root";
+    private static final String PASSWORD = "123456";
+
+    @Param({"single", "batch"})
+    private String mode;
+
+    @Param({"100000"})
+    private int count;
+
+    private String url;
+    private File dbFile;
+    private IdentityBackend backend;
+    private List<KrbIdentity> identities;
+
+    @Setup
+    public void setup() throws KrbException, IOException {
+        File testDir = new File(System.getProperty("test.dir", "target"));
+        url = "jdbc:h2:" + testDir.getCanonicalPath() + "/mysqlbenchmark;MODE=MySQL";
+        dbFile = new File(testDir, "mysqlbenchmark.mv.db");
+
+        Conf config = new Conf();
+        config.setString(MySQLConfKey.MYSQL_DRIVER, "org.h2.Driver");
+        config.setString(MySQLConfKey.MYSQL_URL, url);
+        config.setString(MySQLConfKey.MYSQL_USER, USER);
+        config.setString(MySQLConfKey.MYSQL_PASSWORD, PASSWORD);
+        backend = new MySQLIdentityBackend(config);
+        backend.initialize();
+
+        identities = BackendTestUtil.createManyIdentities(count);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, USER, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM `kerby_key`");
+            statement.executeUpdate("DELETE FROM `kerby_identity`");
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    public void provision() throws KrbException {
+        if ("batch".equals(mode)) {
+            BatchTrans batch = backend.startBatchTrans();
+            for (KrbIdentity identity : identities) {
+                batch.addIdentity(identity);
+            }
+            batch.commit();
+        } else {
+            for (KrbIdentity identity : identities) {
+                backend.addIdentity(identity);
+            }
+        }
+    }
+
+    @TearDown
+    public void cleanup() throws KrbException {
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+        }
+
+        if (dbFile.exists() && !dbFile.delete()) {
+            throw new RuntimeException("File delete error!");
+        }
+    }
+}
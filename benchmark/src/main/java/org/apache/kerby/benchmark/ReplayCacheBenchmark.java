@@ -0,0 +1,93 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.server.replay.CacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.ExpiringCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.MappedCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.RequestRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the in memory and the memory mapped replay caches, checking
+ * distinct authenticators from several threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ReplayCacheBenchmark {
+    private static final long WINDOW = 300 * 1000;
+    private static final int MAX_ENTRIES = 1000000;
+
+    @Param({"memory", "mapped"})
+    private String cacheType;
+
+    private CacheService cache;
+    private File cacheFile;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException {
+        if ("mapped".equals(cacheType)) {
+            File testDir = new File(System.getProperty("test.dir", "target"));
+            cacheFile = new File(testDir, "replay-cache-benchmark");
+            cache = new MappedCacheService(cacheFile, WINDOW, MAX_ENTRIES);
+        } else {
+            cache = new ExpiringCacheService(WINDOW, MAX_ENTRIES);
+        }
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Threads(4)
+    public boolean checkAndCache() {
+        long seq = sequence.incrementAndGet();
+        // Wrap around below the cap so the cache never fills up
+        RequestRecord record = new RequestRecord("client" + (seq % 1000) + "@EXAMPLE.COM",
+            "krbtgt/EXAMPLE.COM@EXAMPLE.COM", System.currentTimeMillis(), (int) (seq % 100000));
+        return cache.checkAndCache(record);
+    }
+
+    @TearDown
+    public void cleanup() throws IOException {
+        if (cache instanceof Closeable) {
+            ((Closeable) cache).close();
+        }
+        if (cacheFile != null && cacheFile.exists() && !cacheFile.delete()) {
+            throw new RuntimeException("File delete error!");
+        }
+    }
+}
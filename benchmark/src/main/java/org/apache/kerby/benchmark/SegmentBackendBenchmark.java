@@ -0,0 +1,146 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kdc.identitybackend.SegmentIdentityBackend;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
+import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random lookups and updates of the segment backend holding millions of
+ * identities, loaded in batches during the setup, e.g.
+ * java -jar target/benchmarks.jar SegmentBackendBenchmark -p count=1000000 -t 4
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SegmentBackendBenchmark {
+    private static final int BATCH_SIZE = 10000;
+
+    @Param({"1000000", "10000000"})
+    private int count;
+
+    private IdentityBackend backend;
+    private File backendDir;
+    private String[] principals;
+    private KrbIdentity updated;
+
+    @Setup
+    public void setup() throws Exception {
+        File testDir = new File(System.getProperty("test.dir", "target"));
+        backendDir = new File(testDir, "segment-benchmark");
+        deleteDir(backendDir);
+
+        Config backendConfig = new Conf();
+        backendConfig.setString(SegmentIdentityBackend.SEGMENT_BACKEND_DIR, backendDir.getAbsolutePath());
+        backendConfig.setInt(SegmentIdentityBackend.SEGMENT_INDEX_CAPACITY, count * 2);
+        backend = new SegmentIdentityBackend(backendConfig);
+        backend.initialize();
+
+        // Generating keys for millions of identities would dominate the load
+        List<EncryptionKey> keys = BackendTestUtil.generateKeys();
+        long start = System.nanoTime();
+        BatchTrans batch = backend.startBatchTrans();
+        for (int i = 0; i < count; i++) {
+            batch.addIdentity(createIdentity(principal(i), keys));
+            if ((i + 1) % BATCH_SIZE == 0) {
+                batch.commit();
+            }
+        }
+        batch.commit();
+        System.out.println("Loaded " + count + " identities in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        Random random = new Random(0);
+        principals = new String[1 << 16];
+        for (int i = 0; i < principals.length; i++) {
+            principals[i] = principal(random.nextInt(count));
+        }
+        updated = createIdentity(principals[0], keys);
+    }
+
+    private static String principal(int i) {
+        return "user" + i + "@EXAMPLE.COM";
+    }
+
+    private static KrbIdentity createIdentity(String principal, List<EncryptionKey> keys) {
+        KrbIdentity identity = new KrbIdentity(principal);
+        identity.setCreatedTime(KerberosTime.now());
+        identity.setExpireTime(KerberosTime.now());
+        identity.setKeyVersion(1);
+        identity.addKeys(keys);
+        return identity;
+    }
+
+    @Benchmark
+    @Fork(1)
+    public KrbIdentity lookup() throws Exception {
+        return backend.getIdentity(principals[ThreadLocalRandom.current().nextInt(principals.length)]);
+    }
+
+    @Benchmark
+    @Fork(1)
+    public KrbIdentity update() throws Exception {
+        return backend.updateIdentity(updated);
+    }
+
+    @TearDown
+    public void cleanup() throws Exception {
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+        }
+        deleteDir(backendDir);
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            throw new RuntimeException("File delete error!");
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.kerby.kerberos.kerb.server.KdcConfigKey;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcRecoverableException;
 import org.apache.kerby.kerberos.kerb.server.KdcServer;
+import org.apache.kerby.kerberos.kerb.server.KdcUtil;
 import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
 import org.apache.kerby.kerberos.kerb.server.request.AsRequest;
 import org.apache.kerby.kerberos.kerb.server.request.KdcRequest;
@@ -94,6 +95,8 @@ public class HasKdcHandler {
     private void prepareHandler(KdcServer kdcServer) {
         this.kdcContext = new KdcContext(kdcServer.getKdcSetting());
         this.kdcContext.setIdentityService(kdcServer.getIdentityService());
+        // The KDC maps the replay cache file if there is one, keep a cache in memory
+        this.kdcContext.setReplayCache(KdcUtil.createMemoryReplayCache(kdcServer.getKdcConfig()));
         PreauthHandler preauthHandler = new PreauthHandler();
         preauthHandler.init();
         this.kdcContext.setPreauthHandler(preauthHandler);
@@ -0,0 +1,180 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * An append-only journal of identity mutations, one UTF-8 line per record.
+ *
+ * Appending only writes to the file; durability is obtained with
+ * {@link #sync(long)}, which uses group commit: the first writer to arrive
+ * forces the channel for every record appended so far, and the writers
+ * waiting behind it find their records already synced and return.
+ *
+ * A record is complete only when terminated by a newline, so a torn record
+ * left by a crash in the middle of an append is dropped on replay.
+ */
+class IdentityJournal implements Closeable {
+
+    /**
+     * Receives the records of the journal on replay.
+     */
+    interface RecordHandler {
+        void handle(String record) throws IOException;
+    }
+
+    private final File file;
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private long appended;
+    private volatile long synced;
+    private int records;
+
+    IdentityJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Pass every complete record of the journal to the handler, and truncate
+     * a torn trailing record if any.
+     * @param handler The handler of the replayed records
+     * @throws IOException e
+     */
+    synchronized void replay(RecordHandler handler) throws IOException {
+        records = 0;
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                handler.handle(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                validLength += line.size() + 1;
+                line.reset();
+                records++;
+            }
+        }
+        if (validLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    /**
+     * Open the journal for appending.
+     * @throws IOException e
+     */
+    synchronized void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Append the records, which must not contain newlines.
+     * @param newRecords The records to append
+     * @return The sequence number to pass to {@link #sync(long)}
+     * @throws IOException e
+     */
+    synchronized long append(List<String> newRecords) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String record : newRecords) {
+            sb.append(record).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        records += newRecords.size();
+        return ++appended;
+    }
+
+    /**
+     * Wait until the append with the given sequence number is on disk.
+     * @param seq The sequence number returned by {@link #append(List)}
+     * @throws IOException e
+     */
+    void sync(long seq) throws IOException {
+        if (synced >= seq) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= seq) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = appended;
+            }
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * @return The number of records in the journal
+     */
+    synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Discard every record, once they have been folded into the snapshot.
+     * @throws IOException e
+     */
+    void reset() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.truncate(0);
+                channel.force(true);
+                records = 0;
+                synced = appended;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -21,7 +21,10 @@ package org.apache.kerby.kerberos.kdc.identitybackend;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kdc.identitybackend.typeAdapter.EncryptionKeyAdapter;
 import org.apache.kerby.kerberos.kdc.identitybackend.typeAdapter.KerberosTimeAdapter;
@@ -33,40 +36,81 @@ import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
 import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
-import org.apache.kerby.util.IOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A Json file based backend implementation.
+ *
+ * Lookups are served from the identities in memory, without checking the
+ * Json file. A watcher thread reloads the identities when the Json file is
+ * changed by others, and publishes them at once, so that lookups never see a
+ * partially loaded state.
+ *
+ * By default every change rewrites the whole Json file. With
+ * {@link #JSON_IDENTITY_BACKEND_JOURNAL} enabled, a change only appends a
+ * record to a journal next to the Json file, and the journal is folded back
+ * into the Json file once it holds
+ * {@link #JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD} records and when the
+ * backend is stopped. In that mode the backend owns its files, and changes
+ * made to them by others are not picked up.
  */
 public class JsonIdentityBackend extends AbstractIdentityBackend {
     private static final Logger LOG =
             LoggerFactory.getLogger(JsonIdentityBackend.class);
 
     public static final String JSON_IDENTITY_BACKEND_DIR = "backend.json.dir";
+    public static final String JSON_IDENTITY_BACKEND_JOURNAL = "backend.json.journal";
+    public static final String JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD =
+        "backend.json.journal.compact_threshold";
+    private static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+
+    private static final String PUT_RECORD = "put";
+    private static final String DELETE_RECORD = "delete";
+
     private File jsonKdbFile;
     private Gson gson;
-
-    // Identities loaded from file
-    private final Map<String, KrbIdentity> identities =
-        new ConcurrentHashMap<>(new TreeMap<String, KrbIdentity>());
+    // Gson without pretty printing, to keep one journal record per line
+    private Gson journalGson;
+    private IdentityJournal journal;
+    private int compactThreshold;
+
+    // Identities loaded from file, never changed once published. A change
+    // is made to a copy, persisted or journaled, and then published in its
+    // place. Changes are serialized by the lock.
+    private volatile Map<String, KrbIdentity> identities = new HashMap<>();
     private long kdbFileUpdateTime = -1;
+    private WatchService watchService;
 
-    private Lock lock = new ReentrantLock();
+    private final Lock lock = new ReentrantLock();
 
     public JsonIdentityBackend() {
 
@@ -94,11 +138,8 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     public BatchTrans startBatchTrans() throws KrbException {
-        if (lock.tryLock()) {
-            checkAndReload();
-            return new JsonBatchTrans();
-        }
-        return null;
+        lock.lock();
+        return new JsonBatchTrans();
     }
 
     /**
@@ -129,32 +170,212 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
                 throw new KrbException("Failed to create " + jsonKdbFile.getAbsolutePath());
             }
         }
+
+        if (getConfig().getBoolean(JSON_IDENTITY_BACKEND_JOURNAL, false)) {
+            compactThreshold = getConfig().getInt(JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD,
+                DEFAULT_COMPACT_THRESHOLD);
+            journal = new IdentityJournal(new File(jsonFileDir, "json-backend.journal"));
+            load();
+            try {
+                journal.open();
+            } catch (IOException e) {
+                throw new KrbException("Failed to open the journal", e);
+            }
+        } else {
+            load();
+            startWatcher();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStop() throws KrbException {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the watch service. " + e);
+            }
+        }
+
+        if (journal != null) {
+            lock.lock();
+            try {
+                if (journal.size() > 0) {
+                    compact();
+                }
+                journal.close();
+            } catch (IOException e) {
+                throw new KrbException("Failed to close the journal", e);
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 
     private void load() throws KrbException {
         LOG.info("Loading the identities from json file.");
 
-        long nowTimeStamp = jsonKdbFile.lastModified();
-        String reloadedJsonContent;
-        if (lock.tryLock()) {
-            try {
+        lock.lock();
+        try {
+            long nowTimeStamp = jsonKdbFile.lastModified();
+            final Map<String, KrbIdentity> reloadedEntries = readFromFile();
+            if (journal != null) {
                 try {
-                    reloadedJsonContent = IOUtil.readFile(jsonKdbFile);
-                } catch (IOException e) {
-                    throw new KrbException("Failed to read file", e);
+                    journal.replay(record -> replayRecord(record, reloadedEntries));
+                } catch (IOException | JsonParseException e) {
+                    throw new KrbException("Failed to replay the journal", e);
                 }
+            }
 
-                Map<String, KrbIdentity> reloadedEntries =
-                        gson.fromJson(reloadedJsonContent,
-                                new TypeToken<HashMap<String, KrbIdentity>>() {
-                                }.getType());
+            identities = reloadedEntries;
+            kdbFileUpdateTime = nowTimeStamp;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startWatcher() throws KrbException {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            jsonKdbFile.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new KrbException("Failed to watch " + jsonKdbFile, e);
+        }
+
+        Thread watcher = new Thread(this::watch, "json-backend-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
 
-                if (reloadedEntries != null) {
-                    identities.clear();
-                    identities.putAll(reloadedEntries);
+    /**
+     * Wait for changes of the kdb file until the watch service is closed.
+     */
+    private void watch() {
+        Path kdbFileName = jsonKdbFile.toPath().getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || kdbFileName.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                try {
+                    checkAndReload();
+                } catch (KrbException e) {
+                    // The file may be half written, the next change retries
+                    LOG.warn("Failed to reload " + jsonKdbFile + ". " + e);
                 }
+            }
+            if (!key.reset()) {
+                return;
+            }
+        }
+    }
 
-                kdbFileUpdateTime = nowTimeStamp;
+    /**
+     * Stream the identities from the kdb file, without holding its whole
+     * content in memory.
+     */
+    private Map<String, KrbIdentity> readFromFile() throws KrbException {
+        Map<String, KrbIdentity> entries = new HashMap<>();
+        if (jsonKdbFile.length() == 0) {
+            return entries;
+        }
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+            new BufferedInputStream(new FileInputStream(jsonKdbFile)), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String principalName = reader.nextName();
+                KrbIdentity identity = gson.fromJson(reader, KrbIdentity.class);
+                entries.put(principalName, identity);
+            }
+            reader.endObject();
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new KrbException("Failed to read file", e);
+        }
+        return entries;
+    }
+
+    private String toPutRecord(KrbIdentity identity) {
+        JsonObject record = new JsonObject();
+        record.add(PUT_RECORD, journalGson.toJsonTree(identity, KrbIdentity.class));
+        return journalGson.toJson(record);
+    }
+
+    private String toDeleteRecord(String principalName) {
+        JsonObject record = new JsonObject();
+        record.addProperty(DELETE_RECORD, principalName);
+        return journalGson.toJson(record);
+    }
+
+    private void replayRecord(String record, Map<String, KrbIdentity> entries) {
+        JsonObject object = journalGson.fromJson(record, JsonObject.class);
+        if (object.has(PUT_RECORD)) {
+            KrbIdentity identity = journalGson.fromJson(object.get(PUT_RECORD), KrbIdentity.class);
+            entries.put(identity.getPrincipalName(), identity);
+        } else if (object.has(DELETE_RECORD)) {
+            entries.remove(object.get(DELETE_RECORD).getAsString());
+        } else {
+            throw new JsonParseException("Unknown journal record: " + record);
+        }
+    }
+
+    /**
+     * Apply the change to a copy of the identities, persist the copy or
+     * append the record of the change to the journal, and then publish the
+     * copy. Waits until the journal record is on disk.
+     */
+    private void writeChange(Consumer<Map<String, KrbIdentity>> change,
+                             Supplier<String> record) throws KrbException {
+        long seq;
+        lock.lock();
+        try {
+            Map<String, KrbIdentity> changed = new HashMap<>(identities);
+            change.accept(changed);
+            if (journal == null) {
+                persistToFile(changed);
+                identities = changed;
+                return;
+            }
+            seq = journal.append(Collections.singletonList(record.get()));
+            identities = changed;
+        } catch (IOException e) {
+            throw new KrbException("Failed to write the journal", e);
+        } finally {
+            lock.unlock();
+        }
+        syncJournal(seq);
+    }
+
+    private void syncJournal(long seq) throws KrbException {
+        try {
+            journal.sync(seq);
+        } catch (IOException e) {
+            throw new KrbException("Failed to sync the journal", e);
+        }
+
+        if (journal.size() >= compactThreshold && lock.tryLock()) {
+            try {
+                if (journal.size() >= compactThreshold) {
+                    compact();
+                }
             } finally {
                 lock.unlock();
             }
@@ -162,13 +383,31 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
     }
 
     /**
-     * Check kdb file timestamp to see if it's changed or not. If
+     * Fold the journal into the kdb file. Must be called with the lock held.
+     */
+    private void compact() throws KrbException {
+        LOG.info("Compacting {} journal records into the json file.", journal.size());
+        persistToFile(identities);
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            throw new KrbException("Failed to reset the journal", e);
+        }
+    }
+
+    /**
+     * Check kdb file timestamp to see if it's changed by others or not. If
      * necessary load the kdb again.
      */
     private void checkAndReload() throws KrbException {
-        long nowTimeStamp = jsonKdbFile.lastModified();
-        if (nowTimeStamp != kdbFileUpdateTime) {
-            load();
+        lock.lock();
+        try {
+            long nowTimeStamp = jsonKdbFile.lastModified();
+            if (nowTimeStamp != kdbFileUpdateTime) {
+                load();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -177,7 +416,6 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
-        checkAndReload();
         return identities.get(principalName);
     }
 
@@ -186,16 +424,8 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
-        checkAndReload();
-
-        if (lock.tryLock()) {
-            try {
-                identities.put(identity.getPrincipalName(), identity);
-                persistToFile();
-            } finally {
-                lock.unlock();
-            }
-        }
+        writeChange(changed -> changed.put(identity.getPrincipalName(), identity),
+            () -> toPutRecord(identity));
 
         return doGetIdentity(identity.getPrincipalName());
     }
@@ -205,16 +435,8 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
-        checkAndReload();
-
-        if (lock.tryLock()) {
-            try {
-                identities.put(identity.getPrincipalName(), identity);
-                persistToFile();
-            } finally {
-                lock.unlock();
-            }
-        }
+        writeChange(changed -> changed.put(identity.getPrincipalName(), identity),
+            () -> toPutRecord(identity));
 
         return doGetIdentity(identity.getPrincipalName());
     }
@@ -224,20 +446,12 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected void doDeleteIdentity(String principalName) throws KrbException {
-        checkAndReload();
-
         if (!identities.containsKey(principalName)) {
             return;
         }
 
-        if (lock.tryLock()) {
-            try {
-                identities.remove(principalName);
-                persistToFile();
-            } finally {
-                lock.unlock();
-            }
-        }
+        writeChange(changed -> changed.remove(principalName),
+            () -> toDeleteRecord(principalName));
     }
 
     /**
@@ -245,7 +459,6 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected Iterable<String> doGetIdentities() throws KrbException {
-        load();
         List<String> principals = new ArrayList<>(identities.keySet());
         Collections.sort(principals);
 
@@ -258,24 +471,34 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         gsonBuilder.registerTypeAdapter(PrincipalName.class, new PrincipalNameAdapter());
         gsonBuilder.registerTypeAdapter(KerberosTime.class, new KerberosTimeAdapter());
         gsonBuilder.enableComplexMapKeySerialization();
+        journalGson = gsonBuilder.create();
         gsonBuilder.setPrettyPrinting();
         gson = gsonBuilder.create();
     }
 
-    private void persistToFile() throws KrbException {
-        String newJsonContent = gson.toJson(identities);
+    /**
+     * Stream the identities to a new file, sync it and move it over the kdb
+     * file, so that the kdb file is always complete.
+     */
+    private void persistToFile(Map<String, KrbIdentity> entries) throws KrbException {
         try {
             File newJsonKdbFile = Files.createTempFile(jsonKdbFile.getParentFile().toPath(), "kerby-kdb",
                     ".json").toFile();
-            IOUtil.writeFile(newJsonContent, newJsonKdbFile);
-            boolean delete = jsonKdbFile.delete();
-            if (!delete) {
-                throw new RuntimeException("File delete error!");
-            }
-            boolean rename = newJsonKdbFile.renameTo(jsonKdbFile);
-            if (!rename) {
-                throw new RuntimeException("File rename error!");
+            try (FileOutputStream out = new FileOutputStream(newJsonKdbFile);
+                 JsonWriter writer = new JsonWriter(new BufferedWriter(
+                     new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+                writer.setIndent("  ");
+                writer.beginObject();
+                for (Map.Entry<String, KrbIdentity> entry : entries.entrySet()) {
+                    writer.name(entry.getKey());
+                    gson.toJson(entry.getValue(), KrbIdentity.class, writer);
+                }
+                writer.endObject();
+                writer.flush();
+                out.getFD().sync();
             }
+            Files.move(newJsonKdbFile.toPath(), jsonKdbFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             kdbFileUpdateTime = jsonKdbFile.lastModified();
         } catch (IOException e) {
             LOG.error("Error occurred while writing identities to file: " + jsonKdbFile);
@@ -283,33 +506,63 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         }
     }
 
+    /**
+     * Changes a copy of the identities, published on commit. Holds the lock
+     * from its start until it is committed or rolled back.
+     */
     class JsonBatchTrans implements BatchTrans {
+        private final Map<String, KrbIdentity> changed = new HashMap<>(identities);
+        // Journal records of the changes, appended together on commit
+        private final List<String> records = new ArrayList<>();
+        private final List<String> principalNames = new ArrayList<>();
 
         @Override
         public void commit() throws KrbException {
             try {
-                // Force to persist memory states to disk file.
-                persistToFile();
+                doCommit();
             } finally {
-                lock.unlock();
+                for (String principalName : principalNames) {
+                    fireIdentityChanged(principalName);
+                }
             }
         }
 
-        @Override
-        public void rollback() throws KrbException {
-            // Force to reload from disk file and disgard the memory states.
+        private void doCommit() throws KrbException {
+            if (journal == null) {
+                try {
+                    // Force to persist memory states to disk file.
+                    persistToFile(changed);
+                    identities = changed;
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            long seq;
             try {
-                load();
+                seq = journal.append(records);
+                identities = changed;
+            } catch (IOException e) {
+                throw new KrbException("Failed to write the journal", e);
             } finally {
                 lock.unlock();
             }
+            syncJournal(seq);
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            // The changes were never published, just discard them.
+            lock.unlock();
         }
 
         @Override
         public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
-            if (identity != null
-                    && identities.containsKey(identity.getPrincipalName())) {
-                identities.put(identity.getPrincipalName(), identity);
+            if (identity != null) {
+                changed.put(identity.getPrincipalName(), identity);
+                records.add(toPutRecord(identity));
+                principalNames.add(identity.getPrincipalName());
             }
             return this;
         }
@@ -317,16 +570,20 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         @Override
         public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
             if (identity != null
-                    && identities.containsKey(identity.getPrincipalName())) {
-                identities.put(identity.getPrincipalName(), identity);
+                    && changed.containsKey(identity.getPrincipalName())) {
+                changed.put(identity.getPrincipalName(), identity);
+                records.add(toPutRecord(identity));
+                principalNames.add(identity.getPrincipalName());
             }
             return this;
         }
 
         @Override
         public BatchTrans deleteIdentity(String principalName) throws KrbException {
-            if (principalName != null && identities.containsKey(principalName)) {
-                identities.remove(principalName);
+            if (principalName != null && changed.containsKey(principalName)) {
+                changed.remove(principalName);
+                records.add(toDeleteRecord(principalName));
+                principalNames.add(principalName);
             }
             return this;
         }
@@ -23,10 +23,17 @@ import org.apache.kerby.config.Conf;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kdc.identitybackend.JsonIdentityBackend;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * Json backend test
@@ -47,6 +54,84 @@ public class JsonBackendTest extends BackendTestBase {
         backend.initialize();
     }
 
+    @Test
+    public void testReloadOnChange() throws Exception {
+        Config backendConfig = new Conf();
+        backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR,
+                jsonBackendFile.getAbsolutePath());
+        IdentityBackend other = new JsonIdentityBackend(backendConfig);
+        other.initialize();
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("changed@EXAMPLE.COM");
+        other.addIdentity(identity);
+        other.stop();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (backend.getIdentity(identity.getPrincipalName()) == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(backend.getIdentity(identity.getPrincipalName())).isNotNull();
+        backend.deleteIdentity(identity.getPrincipalName());
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int writer = i;
+            writers.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < 25; j++) {
+                        backend.addIdentity(BackendTestUtil.createOneIdentity(
+                            "writer" + writer + "-" + j + "@EXAMPLE.COM"));
+                    }
+                } catch (KrbException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 25; j++) {
+                String principal = "writer" + i + "-" + j + "@EXAMPLE.COM";
+                assertThat(backend.getIdentity(principal)).isNotNull();
+                backend.deleteIdentity(principal);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWriteNotPublished() throws Exception {
+        File dir = new File(jsonBackendFile.getParentFile(), "json-failing-backend");
+        Config backendConfig = new Conf();
+        backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR, dir.getAbsolutePath());
+        IdentityBackend failing = new JsonIdentityBackend(backendConfig);
+        failing.initialize();
+
+        // A directory in place of the kdb file can't be replaced by the new file
+        File kdbFile = new File(dir, "json-backend.json");
+        File blocker = new File(kdbFile, "blocker");
+        assertThat(kdbFile.delete() && kdbFile.mkdir() && blocker.createNewFile()).isTrue();
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("failed@EXAMPLE.COM");
+        try {
+            failing.addIdentity(identity);
+            fail("Expected the write of the kdb file to fail");
+        } catch (KrbException e) {
+            assertThat(failing.getIdentity(identity.getPrincipalName())).isNull();
+        } finally {
+            failing.stop();
+            blocker.delete();
+            kdbFile.delete();
+            dir.delete();
+        }
+    }
+
     @AfterClass
     public static void cleanJsonBackendFile() {
         if (jsonBackendFile.exists()) {
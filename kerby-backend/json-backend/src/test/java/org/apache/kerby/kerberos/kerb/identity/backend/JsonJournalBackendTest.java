@@ -0,0 +1,108 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kdc.identitybackend.JsonIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Json backend test, with the journal enabled
+ */
+public class JsonJournalBackendTest extends BackendTestBase {
+    private static File testDir;
+
+    @BeforeClass
+    public static void setup() throws KrbException {
+        testDir = new File(System.getProperty("test.dir", "target"), "json-journal-backend");
+        BackendTestUtil.deleteDir(testDir);
+
+        backend = createBackend(new File(testDir, "shared"));
+        backend.initialize();
+    }
+
+    private static IdentityBackend createBackend(File dir) {
+        Config backendConfig = new Conf();
+        backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR,
+                dir.getAbsolutePath());
+        backendConfig.setBoolean(JsonIdentityBackend.JSON_IDENTITY_BACKEND_JOURNAL, true);
+        backendConfig.setInt(JsonIdentityBackend.JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD, 5);
+        return new JsonIdentityBackend(backendConfig);
+    }
+
+    @Test
+    public void testReplayAfterCrash() throws KrbException, IOException {
+        File dir = new File(testDir, "replay");
+        File journalFile = new File(dir, "json-backend.journal");
+        IdentityBackend restarted = BackendTestUtil.recoverAfterCrash(() -> createBackend(dir), journalFile,
+            "{\"put\":{\"princ".getBytes(StandardCharsets.UTF_8));
+
+        // Stopping folds the journal into the json file
+        restarted.stop();
+        assertThat(journalFile.length()).isZero();
+
+        IdentityBackend reloaded = createBackend(dir);
+        reloaded.initialize();
+        BackendTestUtil.assertRecovered(reloaded);
+        reloaded.stop();
+    }
+
+    @Test
+    public void testCompaction() throws KrbException {
+        File dir = new File(testDir, "compaction");
+        IdentityBackend compacted = createBackend(dir);
+        compacted.initialize();
+        BackendTestUtil.createManyIdentities(compacted, 12);
+
+        File journalFile = new File(dir, "json-backend.journal");
+        File jsonFile = new File(dir, "json-backend.json");
+        assertThat(jsonFile.length()).isGreaterThan(0);
+        assertThat(journalFile.length()).isGreaterThan(0);
+
+        // Json file and journal together hold every identity
+        IdentityBackend reloaded = createBackend(dir);
+        reloaded.initialize();
+        assertThat(reloaded.getIdentities()).hasSize(12);
+        reloaded.stop();
+        compacted.stop();
+    }
+
+    @AfterClass
+    public static void cleanJsonBackendDir() throws KrbException {
+        // Stop first, as stopping writes the journal into the json file
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+            backend = null;
+        }
+        BackendTestUtil.deleteDir(testDir);
+    }
+
+}
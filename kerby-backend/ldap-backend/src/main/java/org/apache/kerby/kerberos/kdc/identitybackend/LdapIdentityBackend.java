@@ -26,14 +26,19 @@ import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.filter.FilterEncoder;
 import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.util.GeneralizedTime;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.directory.ldap.client.api.DefaultLdapConnectionValidator;
+import org.apache.directory.ldap.client.api.DefaultPoolableLdapConnectionFactory;
 import org.apache.directory.ldap.client.api.LdapConnection;
-import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
 import org.apache.directory.shared.kerberos.KerberosAttribute;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.KrbException;
@@ -48,7 +53,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -56,8 +63,27 @@ import java.util.Map;
  * An LDAP based backend implementation.
  */
 public class LdapIdentityBackend extends AbstractIdentityBackend {
-    //The LdapConnection, may be LdapNetworkConnection or LdapCoreSessionConnection
+    /** Minimum number of pooled connections. */
+    public static final String POOL_MIN_SIZE = "pool_min_size";
+    /** Maximum number of pooled connections. */
+    public static final String POOL_MAX_SIZE = "pool_max_size";
+    /** Milliseconds to wait for a connection when all are in use. */
+    public static final String POOL_MAX_WAIT = "pool_max_wait";
+    /** Seconds after which an idle connection above the minimum is closed. */
+    public static final String POOL_IDLE_TIMEOUT = "pool_idle_timeout";
+    /** Seconds between checks of the idle connections. */
+    public static final String POOL_CHECK_INTERVAL = "pool_check_interval";
+
+    private static final int DEFAULT_POOL_MIN_SIZE = 1;
+    private static final int DEFAULT_POOL_MAX_SIZE = 16;
+    private static final long DEFAULT_POOL_MAX_WAIT = 5000;
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT = 300;
+    private static final long DEFAULT_POOL_CHECK_INTERVAL = 30;
+
+    //The given LdapConnection, may be LdapNetworkConnection or LdapCoreSessionConnection
     private LdapConnection connection;
+    //The pool of network connections, when no connection is given
+    private LdapConnectionPool pool;
     //This is used as a flag to represent the connection whether is
     // LdapNetworkConnection object or not
     private boolean isLdapNetworkConnection;
@@ -94,12 +120,120 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
      * Start the connection for the initialize()
      */
     private void startConnection() throws LdapException {
-        if (isLdapNetworkConnection == true) {
-            this.connection = new LdapNetworkConnection(getConfig().getString("host"),
-                    getConfig().getInt("port"));
+        if (isLdapNetworkConnection) {
+            startPool();
+        } else {
+            connection.bind(getConfig().getString("admin_dn"),
+                    getConfig().getString("admin_pw"));
         }
-        connection.bind(getConfig().getString("admin_dn"),
-                getConfig().getString("admin_pw"));
+    }
+
+    /**
+     * Create the pool of bound network connections. Connections are checked
+     * on borrow and while idle, broken ones being replaced by newly bound
+     * ones, and idle ones above the minimum are closed after a while.
+     */
+    private void startPool() throws LdapException {
+        LdapConnectionConfig connectionConfig = new LdapConnectionConfig();
+        connectionConfig.setLdapHost(getConfig().getString("host"));
+        connectionConfig.setLdapPort(getConfig().getInt("port"));
+        connectionConfig.setName(getConfig().getString("admin_dn"));
+        connectionConfig.setCredentials(getConfig().getString("admin_pw"));
+
+        int minSize = getConfig().getInt(POOL_MIN_SIZE, DEFAULT_POOL_MIN_SIZE);
+        int maxSize = getConfig().getInt(POOL_MAX_SIZE, DEFAULT_POOL_MAX_SIZE);
+        GenericObjectPoolConfig<LdapConnection> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMinIdle(minSize);
+        poolConfig.setMaxIdle(maxSize);
+        poolConfig.setMaxTotal(maxSize);
+        poolConfig.setMaxWaitMillis(getConfig().getLong(POOL_MAX_WAIT, DEFAULT_POOL_MAX_WAIT));
+        poolConfig.setTestOnBorrow(true);
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRunsMillis(
+            getConfig().getLong(POOL_CHECK_INTERVAL, DEFAULT_POOL_CHECK_INTERVAL) * 1000);
+        poolConfig.setMinEvictableIdleTimeMillis(-1);
+        poolConfig.setSoftMinEvictableIdleTimeMillis(
+            getConfig().getLong(POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT) * 1000);
+
+        DefaultPoolableLdapConnectionFactory factory =
+            new DefaultPoolableLdapConnectionFactory(connectionConfig);
+        // Checks the connection state only, without a round trip per borrow
+        factory.setValidator(new DefaultLdapConnectionValidator());
+        pool = new LdapConnectionPool(factory, poolConfig);
+
+        // Fail early on a wrong address or credentials
+        pool.releaseConnection(pool.getConnection());
+        try {
+            pool.preparePool();
+        } catch (Exception e) {
+            throw new LdapException("Failed to open LDAP connections", e);
+        }
+    }
+
+    /**
+     * An operation run on a connection.
+     */
+    private interface LdapOperation<T> {
+        T run(LdapConnection conn) throws LdapException;
+    }
+
+    /**
+     * Run the operation on a pooled connection, or the given one. If the
+     * pooled connection turns out to be broken, it's dropped and the
+     * operation run again on a newly bound connection.
+     */
+    private <T> T execute(LdapOperation<T> operation) throws LdapException {
+        if (pool == null) {
+            return operation.run(connection);
+        }
+
+        LdapConnection conn = pool.getConnection();
+        try {
+            return operation.run(conn);
+        } catch (LdapException e) {
+            if (conn.isConnected()) {
+                throw e;
+            }
+            LOG.warn("Lost connection with LDAP, retrying on a new connection", e);
+            invalidate(conn);
+            conn = null;
+            conn = pool.getConnection();
+            return operation.run(conn);
+        } finally {
+            if (conn != null) {
+                if (conn.isConnected()) {
+                    pool.releaseConnection(conn);
+                } else {
+                    invalidate(conn);
+                }
+            }
+        }
+    }
+
+    private void invalidate(LdapConnection conn) {
+        try {
+            pool.invalidateObject(conn);
+        } catch (Exception e) {
+            LOG.warn("Failed to drop LDAP connection", e);
+        }
+    }
+
+    /**
+     * Search the entries under the base dn.
+     */
+    private List<Entry> search(String filter, String... attributes) throws LdapException {
+        return execute(conn -> {
+            List<Entry> entries = new ArrayList<>();
+            try (EntryCursor cursor = conn.search(getConfig().getString("base_dn"),
+                    filter, SearchScope.ONELEVEL, attributes)) {
+                while (cursor.next()) {
+                    entries.add(cursor.get());
+                }
+            } catch (CursorException | IOException e) {
+                throw new LdapException("Failed to read search results", e);
+            }
+            return entries;
+        });
     }
 
     /**
@@ -134,7 +268,9 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
      * Close the connection for stop()
      */
     private void closeConnection() throws IOException {
-        if (connection.isConnected()) {
+        if (pool != null) {
+            pool.close();
+        } else if (connection.isConnected()) {
             connection.close();
         }
     }
@@ -217,7 +353,10 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
                     + identity.isLocked());
             entry.add(KerberosAttribute.KRB5_ACCOUNT_EXPIRATION_TIME_AT,
                     toGeneralizedTime(identity.getExpireTime()));
-            connection.add(entry);
+            execute(conn -> {
+                conn.add(entry);
+                return null;
+            });
         } catch (LdapInvalidDnException e) {
             LOG.error("Error occurred while adding identity", e);
             throw new KrbException("Failed to add identity", e);
@@ -233,22 +372,13 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
-        KrbIdentity krbIdentity = new KrbIdentity(principalName);
         try {
             Dn dn = toDn(principalName);
-            Entry entry = connection.lookup(dn, "*", "+");
+            Entry entry = execute(conn -> conn.lookup(dn, LdapIdentityGetHelper.getAttributes()));
             if (entry == null) {
                 return null;
             }
-            LdapIdentityGetHelper getHelper = new LdapIdentityGetHelper(entry);
-            krbIdentity.setPrincipal(getHelper.getPrincipalName());
-            krbIdentity.setKeyVersion(getHelper.getKeyVersion());
-            krbIdentity.addKeys(getHelper.getKeys());
-            krbIdentity.setCreatedTime(getHelper.getCreatedTime());
-            krbIdentity.setExpireTime(getHelper.getExpireTime());
-            krbIdentity.setDisabled(getHelper.getDisabled());
-            krbIdentity.setKdcFlags(getHelper.getKdcFlags());
-            krbIdentity.setLocked(getHelper.getLocked());
+            return toIdentity(principalName, entry);
         } catch (LdapException e) {
             throw new KrbException("Failed to retrieve identity", e);
         } catch (ParseException e) {
@@ -256,7 +386,68 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
         } catch (IOException e) {
             throw new KrbException("Failed to retrieve identity", e);
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        if (principalNames.isEmpty()) {
+            return identities;
+        }
+
+        // Entries are named by uid, which several principal names may share
+        Map<String, List<String>> principalsByUid = new HashMap<>();
+        StringBuilder filter = new StringBuilder("(|");
+        for (String principalName : principalNames) {
+            String uid = principalName.split("@")[0];
+            List<String> principals = principalsByUid.get(uid);
+            if (principals == null) {
+                principals = new ArrayList<>();
+                principalsByUid.put(uid, principals);
+                filter.append("(uid=").append(FilterEncoder.encodeFilterValue(uid)).append(')');
+            }
+            principals.add(principalName);
+        }
+        filter.append(')');
+
+        try {
+            for (Entry entry : search(filter.toString(), LdapIdentityGetHelper.getAttributes())) {
+                String uid = entry.getDn().getRdn().getValue();
+                List<String> principals = principalsByUid.get(uid);
+                if (principals == null) {
+                    continue;
+                }
+                for (String principalName : principals) {
+                    identities.put(principalName, toIdentity(principalName, entry));
+                }
+            }
+        } catch (LdapException e) {
+            throw new KrbException("Failed to retrieve identities", e);
+        } catch (ParseException e) {
+            throw new KrbException("Failed to retrieve identities", e);
+        } catch (IOException e) {
+            throw new KrbException("Failed to retrieve identities", e);
+        }
+
+        return identities;
+    }
+
+    private KrbIdentity toIdentity(String principalName, Entry entry)
+            throws LdapException, ParseException, IOException {
+        KrbIdentity krbIdentity = new KrbIdentity(principalName);
+        LdapIdentityGetHelper getHelper = new LdapIdentityGetHelper(entry);
+        krbIdentity.setPrincipal(getHelper.getPrincipalName());
+        krbIdentity.setKeyVersion(getHelper.getKeyVersion());
+        krbIdentity.addKeys(getHelper.getKeys());
+        krbIdentity.setCreatedTime(getHelper.getCreatedTime());
+        krbIdentity.setExpireTime(getHelper.getExpireTime());
+        krbIdentity.setDisabled(getHelper.getDisabled());
+        krbIdentity.setKdcFlags(getHelper.getKdcFlags());
+        krbIdentity.setLocked(getHelper.getLocked());
         return krbIdentity;
     }
 
@@ -284,7 +475,10 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
             modifyRequest.replace("krb5KDCFlags", "" + identity.getKdcFlags());
             modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_LOCKEDOUT_AT, ""
                     + identity.isLocked());
-            connection.modify(modifyRequest);
+            execute(conn -> {
+                conn.modify(modifyRequest);
+                return null;
+            });
         } catch (LdapException e) {
             LOG.error("Error occurred while updating identity: " + principalName, e);
             throw new KrbException("Failed to update identity", e);
@@ -300,7 +494,10 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
     protected void doDeleteIdentity(String principalName) throws KrbException {
         try {
             Dn dn = toDn(principalName);
-            connection.delete(dn);
+            execute(conn -> {
+                conn.delete(dn);
+                return null;
+            });
         } catch (LdapException e) {
             LOG.error("Error occurred while deleting identity: " + principalName);
             throw new KrbException("Failed to remove identity", e);
@@ -327,26 +524,13 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
     @Override
     protected Iterable<String> doGetIdentities() {
         List<String> identityNames = new ArrayList<>();
-        EntryCursor cursor;
-        Entry entry;
         try {
-            cursor = connection.search(getConfig().getString("base_dn"),
-                    "(objectclass=*)", SearchScope.ONELEVEL, KerberosAttribute.KRB5_PRINCIPAL_NAME_AT);
-            if (cursor == null) {
-                return null;
-            }
-            while (cursor.next()) {
-                entry = cursor.get();
+            for (Entry entry : search("(objectclass=*)", KerberosAttribute.KRB5_PRINCIPAL_NAME_AT)) {
                 identityNames.add(entry.get(KerberosAttribute.KRB5_PRINCIPAL_NAME_AT).getString());
             }
-            cursor.close();
             Collections.sort(identityNames);
         } catch (LdapException e) {
             LOG.error("With LdapException when LdapConnection searching. " + e);
-        } catch (CursorException e) {
-            LOG.error("With CursorException when EntryCursor getting. " + e);
-        } catch (IOException e) {
-            LOG.error("With IOException when closing EntryCursor. " + e);
         }
         return identityNames;
     }
@@ -35,6 +35,25 @@ import java.util.Iterator;
 import java.util.List;
 
 public class LdapIdentityGetHelper {
+    private static final String[] ATTRIBUTES = {
+        KerberosAttribute.KRB5_PRINCIPAL_NAME_AT,
+        KerberosAttribute.KRB5_KEY_VERSION_NUMBER_AT,
+        KerberosAttribute.KRB5_KEY_AT,
+        "createTimestamp",
+        KerberosAttribute.KRB5_ACCOUNT_EXPIRATION_TIME_AT,
+        KerberosAttribute.KRB5_ACCOUNT_DISABLED_AT,
+        "krb5KDCFlags",
+        KerberosAttribute.KRB5_ACCOUNT_LOCKEDOUT_AT
+    };
+
+    /**
+     * Get the attributes read, to be requested when fetching entries.
+     * @return a copy of the attribute names
+     */
+    public static String[] getAttributes() {
+        return ATTRIBUTES.clone();
+    }
+
     private Entry entry;
     public LdapIdentityGetHelper(Entry entry) {
         this.entry = entry;
@@ -81,4 +81,9 @@ public abstract class AbstractLdapIdentityBackendTest extends  BackendTest {
     public void testGetIdentities() throws KrbException {
         testGetIdentities(backend);
     }
+
+    @Test
+    public void testGetIdentitiesByName() throws KrbException {
+        testGetIdentitiesByName(backend);
+    }
 }
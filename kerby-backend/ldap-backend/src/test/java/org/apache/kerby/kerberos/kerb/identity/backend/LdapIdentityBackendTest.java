@@ -27,9 +27,21 @@ import org.apache.directory.server.core.annotations.CreatePartition;
 import org.apache.directory.server.core.integ.FrameworkRunner;
 import org.apache.kerby.config.Conf;
 import org.apache.kerby.kerberos.kdc.identitybackend.LdapIdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.junit.Before;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil.TEST_PRINCIPAL;
+import static org.assertj.core.api.Assertions.assertThat;
+
 @RunWith(FrameworkRunner.class)
 @CreateDS(name = "KerberosKRBProtocolTest-class",
         partitions =
@@ -68,8 +80,37 @@ public class LdapIdentityBackendTest extends AbstractLdapIdentityBackendTest {
         config.setString("admin_dn", ADMIN_DN);
         config.setString("admin_pw", ADMIN_PW);
         config.setString("base_dn", BASE_DN);
+        config.setInt(LdapIdentityBackend.POOL_MAX_SIZE, 4);
         backend = new LdapIdentityBackend(config);
         backend.initialize();
         backend.start();
     }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity(TEST_PRINCIPAL);
+        backend.addIdentity(identity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    int found = 0;
+                    for (int j = 0; j < 100; j++) {
+                        if (identity.equals(backend.getIdentity(TEST_PRINCIPAL))) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get(60, TimeUnit.SECONDS)).isEqualTo(100);
+            }
+        } finally {
+            executor.shutdownNow();
+            backend.deleteIdentity(TEST_PRINCIPAL);
+        }
+    }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import org.apache.directory.mavibot.btree.Tuple;
 import org.apache.directory.mavibot.btree.exception.KeyNotFoundException;
 import org.apache.directory.mavibot.btree.serializer.StringSerializer;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.slf4j.Logger;
@@ -37,11 +38,23 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A backend based on Apache Mavibot(an MVCC BTree library).
  *
+ * Lookups and enumerations read the last committed revision of the BTree
+ * through Mavibot read transactions, so they never wait for the writers.
+ * Writers are serialized by a lock, and every change is committed as one new
+ * revision. A batch collects its changes and applies them on commit while
+ * holding the lock, so that no other change interleaves with them. Readers
+ * may see a batch partly applied, and a commit failing midway puts back the
+ * identities it already changed.
+ *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class MavibotBackend extends AbstractIdentityBackend {
@@ -54,6 +67,8 @@ public class MavibotBackend extends AbstractIdentityBackend {
     private RecordManager rm;
     //The BTree holding all data
     private BTree<String, KrbIdentity> database;
+    //Serializes the writers
+    private final Lock writeLock = new ReentrantLock();
     
     /**
      * Creates a new instance of MavibotBackend.
@@ -96,6 +111,22 @@ public class MavibotBackend extends AbstractIdentityBackend {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new MavibotBatchTrans();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -139,18 +170,22 @@ public class MavibotBackend extends AbstractIdentityBackend {
      * {@inheritDoc}
      */
     @Override
-    protected synchronized KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
         String p = identity.getPrincipalName();
+        writeLock.lock();
         try {
             if (database.hasKey(p)) {
                 throw new KrbException("Identity already exists " + p);
             }
-            
-            return database.insert(p, identity);
+
+            database.insert(p, identity);
+            return identity;
         } catch (KeyNotFoundException e) {
             throw new KrbException("No such identity exists " + p);
         } catch (IOException e) {
             throw new KrbException("Failed to add the identity " + p);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -158,18 +193,22 @@ public class MavibotBackend extends AbstractIdentityBackend {
      * {@inheritDoc}
      */
     @Override
-    protected synchronized KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
+    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
         String p = identity.getPrincipalName();
+        writeLock.lock();
         try {
             if (!database.hasKey(p)) {
                 throw new KrbException("No identity found with the principal " + p);
             }
-            
-            database.delete(p);
-            
-            return database.insert(p, identity);
+
+            // No duplicates allowed, the insertion replaces the old value in
+            // one revision, so readers never miss the identity
+            database.insert(p, identity);
+            return identity;
         } catch (Exception e) {
             throw new KrbException("Failed to update the identity " + p);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -178,6 +217,7 @@ public class MavibotBackend extends AbstractIdentityBackend {
      */
     @Override
     protected void doDeleteIdentity(String principalName) throws KrbException {
+        writeLock.lock();
         try {
             Tuple<String, KrbIdentity> t = database.delete(principalName);
             if (t == null) {
@@ -185,6 +225,8 @@ public class MavibotBackend extends AbstractIdentityBackend {
             }
         } catch (IOException e) {
             throw new KrbException("Failed to delete the identity " + principalName);
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -199,4 +241,95 @@ public class MavibotBackend extends AbstractIdentityBackend {
             throw new KrbException("Failed to close the database", e);
         }
     }
+
+    /**
+     * Collects the changes, in order, and applies them on commit.
+     */
+    class MavibotBatchTrans implements BatchTrans {
+        // The identities to insert, or null for the ones to delete
+        private final Map<String, KrbIdentity> changes = new LinkedHashMap<>();
+
+        @Override
+        public void commit() throws KrbException {
+            // The identities replaced by the changes applied, to undo them
+            Map<String, KrbIdentity> previous = new LinkedHashMap<>();
+            writeLock.lock();
+            try {
+                for (Map.Entry<String, KrbIdentity> change : changes.entrySet()) {
+                    previous.put(change.getKey(), current(change.getKey()));
+                    apply(change.getKey(), change.getValue());
+                }
+            } catch (IOException e) {
+                undo(previous);
+                throw new KrbException("Failed to commit the batch", e);
+            } finally {
+                writeLock.unlock();
+                for (String principalName : changes.keySet()) {
+                    fireIdentityChanged(principalName);
+                }
+                changes.clear();
+            }
+        }
+
+        /**
+         * Each change is a revision of its own, so put back the identities
+         * the changes applied so far replaced, the last change first.
+         */
+        private void undo(Map<String, KrbIdentity> previous) {
+            List<Map.Entry<String, KrbIdentity>> applied = new ArrayList<>(previous.entrySet());
+            for (int i = applied.size() - 1; i >= 0; i--) {
+                Map.Entry<String, KrbIdentity> entry = applied.get(i);
+                try {
+                    apply(entry.getKey(), entry.getValue());
+                } catch (IOException e) {
+                    LOG.error("Failed to undo the batch change of " + entry.getKey(), e);
+                }
+            }
+        }
+
+        private KrbIdentity current(String principalName) throws IOException {
+            try {
+                return database.get(principalName);
+            } catch (KeyNotFoundException e) {
+                return null;
+            }
+        }
+
+        private void apply(String principalName, KrbIdentity identity) throws IOException {
+            if (identity != null) {
+                database.insert(principalName, identity);
+            } else {
+                database.delete(principalName);
+            }
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            changes.clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                changes.put(principalName, null);
+            }
+            return this;
+        }
+    }
 }
@@ -21,18 +21,25 @@ package org.apache.kerby;
 
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestBase;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -54,6 +61,72 @@ public class MavibotBackendTest extends BackendTestBase {
         backend.initialize();
     }
     
+    @Test
+    public void testBatchTrans() throws Exception {
+        final List<KrbIdentity> identities = BackendTestUtil.createManyIdentities(20);
+        BatchTrans batch = backend.startBatchTrans();
+        for (KrbIdentity identity : identities) {
+            batch.addIdentity(identity);
+        }
+
+        batch.commit();
+
+        // Readers see the last committed revision, without waiting for the commit
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        KrbIdentity stalling = new KrbIdentity(BackendTestUtil.createOneIdentity("stalling@EXAMPLE.COM")) {
+            @Override
+            public int getKdcFlags() {
+                // Called while the identity is serialized by the commit
+                stalled.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getKdcFlags();
+            }
+        };
+        batch.deleteIdentity(identities.get(1).getPrincipalName());
+        batch.addIdentity(stalling);
+
+        final BatchTrans stalledBatch = batch;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> committed = executor.submit(() -> {
+                stalledBatch.commit();
+                return null;
+            });
+            assertTrue(stalled.await(5, TimeUnit.SECONDS));
+            Future<KrbIdentity> read = executor.submit(
+                () -> backend.getIdentity(identities.get(0).getPrincipalName()));
+            assertThat(read.get(5, TimeUnit.SECONDS)).isNotNull();
+
+            resume.countDown();
+            committed.get(5, TimeUnit.SECONDS);
+        } finally {
+            resume.countDown();
+            executor.shutdown();
+        }
+        assertThat(backend.getIdentity(stalling.getPrincipalName())).isNotNull();
+        backend.deleteIdentity(stalling.getPrincipalName());
+        assertThat(backend.getIdentity(identities.get(1).getPrincipalName())).isNull();
+
+        batch = backend.startBatchTrans();
+        for (KrbIdentity identity : identities) {
+            batch.deleteIdentity(identity.getPrincipalName());
+        }
+        batch.rollback();
+        assertThat(backend.getIdentity(identities.get(0).getPrincipalName())).isNotNull();
+
+        batch = backend.startBatchTrans();
+        for (KrbIdentity identity : identities) {
+            batch.deleteIdentity(identity.getPrincipalName());
+        }
+        batch.commit();
+        assertThat(backend.getIdentity(identities.get(0).getPrincipalName())).isNull();
+    }
+
     @AfterClass
     public static void tearDown() throws KrbException {
         tmpFolder.delete();
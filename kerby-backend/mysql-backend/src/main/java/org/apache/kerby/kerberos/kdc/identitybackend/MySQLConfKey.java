@@ -28,7 +28,8 @@ public enum MySQLConfKey implements ConfigKey {
     MYSQL_DRIVER("org.drizzle.jdbc.DrizzleDriver"),
     MYSQL_URL("jdbc:mysql:thin://127.0.0.1:3306/mysqlbackend"),
     MYSQL_USER("root"),
-    MYSQL_PASSWORD("passwd");
+    MYSQL_PASSWORD("passwd"),
+    MYSQL_FETCH_SIZE(1000);
 
     private Object defaultValue;
 
@@ -23,6 +23,7 @@ import com.alibaba.druid.pool.DruidDataSource;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
@@ -36,18 +37,44 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.PreparedStatement;
 import javax.sql.rowset.serial.SerialBlob;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * A MySQL based backend implementation.
+ *
+ * Batch transactions send their rows with JDBC batches, which MySQL
+ * Connector/J only turns into multi-row statements with
+ * rewriteBatchedStatements=true in mysql_url. Without it each row is still
+ * a round trip to the database.
  */
 public class MySQLIdentityBackend extends AbstractIdentityBackend {
     private String keyInfoTable;
     private String identityTable;
-    private static DruidDataSource dataSource = null;
+    private DruidDataSource dataSource;
     private static final Logger LOG = LoggerFactory.getLogger(MySQLIdentityBackend.class);
+    // Rows sent to the database per executeBatch
+    private static final int BATCH_SIZE = 1000;
+    // Names looked up per query by getIdentitiesByName
+    private static final int MAX_NAMES_PER_QUERY = 500;
+    private int fetchSize;
+
+    /**
+     * The work of a JDBC transaction.
+     */
+    private interface Transaction {
+        void execute(Connection connection) throws SQLException;
+    }
 
     /**
      * Constructing an instance using specified config that contains anything
@@ -94,6 +121,22 @@ public class MySQLIdentityBackend extends AbstractIdentityBackend {
         dataSource.setFilters("stat");
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new MySQLBatchTrans();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -101,8 +144,14 @@ public class MySQLIdentityBackend extends AbstractIdentityBackend {
     protected void doInitialize() throws KrbException {
         LOG.info("Initializing the MySQL identity backend.");
 
+        fetchSize = getConfig().getInt(MySQLConfKey.MYSQL_FETCH_SIZE, true);
+        if (fetchSize < 1) {
+            throw new KrbException("Invalid " + MySQLConfKey.MYSQL_FETCH_SIZE.getPropertyKey()
+                + " " + fetchSize + ", it should be at least 1");
+        }
+
         // Initialize data base connection pool
-        if (MySQLIdentityBackend.dataSource == null) {
+        if (dataSource == null) {
             String driver = getConfig().getString(MySQLConfKey.MYSQL_DRIVER, true);
             String user = getConfig().getString(MySQLConfKey.MYSQL_USER, true);
             String password = getConfig().getString(MySQLConfKey.MYSQL_PASSWORD, true);
@@ -199,6 +248,7 @@ public class MySQLIdentityBackend extends AbstractIdentityBackend {
         }
         dataSource.close();
         if (dataSource.isClosed()) {
+            dataSource = null;
             LOG.info("Succeeded in closing connection with MySQL.");
         } else {
             throw new KrbException("Failed to close connection with MySQL.");
@@ -206,78 +256,124 @@ public class MySQLIdentityBackend extends AbstractIdentityBackend {
     }
 
     /**
-     * {@inheritDoc}
+     * Run the work in one transaction, rolled back if it fails.
      */
-    @Override
-    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
-        String principalName = identity.getPrincipalName();
-        int keyVersion = identity.getKeyVersion();
-        int kdcFlags = identity.getKdcFlags();
-        boolean disabled = identity.isDisabled();
-        boolean locked = identity.isLocked();
-        long createdTime = identity.getCreatedTime().getTime();
-        long expireTime = identity.getExpireTime().getTime();
-        Map<EncryptionType, EncryptionKey> keys = identity.getKeys();
-
+    private void executeTransaction(Transaction transaction, String action) throws KrbException {
         Connection connection = null;
-
-        KrbIdentity duplicateIdentity = doGetIdentity(principalName);
-        if (duplicateIdentity != null) {
-            LOG.warn("The identity maybe duplicate.");
-
-            return duplicateIdentity;
-        } else {
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            transaction.execute(connection);
+            connection.commit();
+        } catch (SQLException e) {
             try {
-                connection = dataSource.getConnection();
-                connection.setAutoCommit(false);
-
-                // Insert identity to identity table
-                String stmIdentity = "INSERT INTO " + identityTable
-                    + " (principal, key_version, kdc_flags, disabled, locked,"
-                    + " created_time, expire_time) VALUES(?, ?, ?, ?, ?, ?, ?)";
-                try (PreparedStatement preIdentity = connection.prepareStatement(stmIdentity)) {
-                    preIdentity.setString(1, principalName);
-                    preIdentity.setInt(2, keyVersion);
-                    preIdentity.setInt(3, kdcFlags);
-                    preIdentity.setBoolean(4, disabled);
-                    preIdentity.setBoolean(5, locked);
-                    preIdentity.setLong(6, createdTime);
-                    preIdentity.setLong(7, expireTime);
-                    preIdentity.executeUpdate();
+                LOG.info("Transaction is being rolled back.");
+                if (connection != null) {
+                    connection.rollback();
                 }
+            } catch (SQLException ex) {
+                throw new KrbException("Transaction roll back failed. ", ex);
+            }
+            LOG.error("Error occurred while " + action + ".");
+            throw new KrbException("Failed to " + action + ". ", e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+        }
+    }
 
-                // Insert keys to key table
-                for (Map.Entry<EncryptionType, EncryptionKey> entry : keys.entrySet()) {
-                    String stmKey = "INSERT INTO " + keyInfoTable
-                        + " (key_type, kvno, key_value, principal) VALUES(?, ?, ?, ?)";
-                    try (PreparedStatement preKey = connection.prepareStatement(stmKey)) {
-                        preKey.setString(1, entry.getKey().getName());
-                        preKey.setInt(2, entry.getValue().getKvno());
-                        preKey.setBlob(3, new SerialBlob(entry.getValue().getKeyData()));
-                        preKey.setString(4, principalName);
-                        preKey.executeUpdate();
-                    }
+    /**
+     * Insert the identities and their keys, sending the rows in batches.
+     */
+    private void insertIdentities(Connection connection,
+                                  Collection<KrbIdentity> identities) throws SQLException {
+        String stmIdentity = "INSERT INTO " + identityTable
+            + " (principal, key_version, kdc_flags, disabled, locked,"
+            + " created_time, expire_time) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        String stmKey = "INSERT INTO " + keyInfoTable
+            + " (key_type, kvno, key_value, principal) VALUES(?, ?, ?, ?)";
+        try (PreparedStatement preIdentity = connection.prepareStatement(stmIdentity);
+             PreparedStatement preKey = connection.prepareStatement(stmKey)) {
+            int rows = 0;
+            for (KrbIdentity identity : identities) {
+                String principalName = identity.getPrincipalName();
+                preIdentity.setString(1, principalName);
+                preIdentity.setInt(2, identity.getKeyVersion());
+                preIdentity.setInt(3, identity.getKdcFlags());
+                preIdentity.setBoolean(4, identity.isDisabled());
+                preIdentity.setBoolean(5, identity.isLocked());
+                preIdentity.setLong(6, identity.getCreatedTime().getTime());
+                preIdentity.setLong(7, identity.getExpireTime().getTime());
+                preIdentity.addBatch();
+
+                for (Map.Entry<EncryptionType, EncryptionKey> entry : identity.getKeys().entrySet()) {
+                    preKey.setString(1, entry.getKey().getName());
+                    preKey.setInt(2, entry.getValue().getKvno());
+                    preKey.setBlob(3, new SerialBlob(entry.getValue().getKeyData()));
+                    preKey.setString(4, principalName);
+                    preKey.addBatch();
                 }
 
-                connection.commit();
-                return identity;
-            } catch (SQLException e) {
-                try {
-                    LOG.info("Transaction is being rolled back.");
-                    if (connection != null) {
-                        connection.rollback();
-                    }
-                } catch (SQLException ex) {
-                    throw new KrbException("Transaction roll back failed. ", ex);
+                if (++rows == BATCH_SIZE) {
+                    // Identities first, the keys reference them
+                    preIdentity.executeBatch();
+                    preKey.executeBatch();
+                    rows = 0;
                 }
-                LOG.error("Error occurred while adding identity.");
-                throw new KrbException("Failed to add identity. ", e);
-            } finally {
-                DbUtils.closeQuietly(connection);
+            }
+            if (rows > 0) {
+                preIdentity.executeBatch();
+                preKey.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Delete the identities and their keys, sending the rows in batches.
+     */
+    private void deleteIdentities(Connection connection,
+                                  Collection<String> principalNames) throws SQLException {
+        String stmKey = "DELETE FROM " + keyInfoTable + " WHERE principal = ?";
+        String stmIdentity = "DELETE FROM " + identityTable + " WHERE principal = ?";
+        try (PreparedStatement preKey = connection.prepareStatement(stmKey);
+             PreparedStatement preIdentity = connection.prepareStatement(stmIdentity)) {
+            int rows = 0;
+            for (String principalName : principalNames) {
+                preKey.setString(1, principalName);
+                preKey.addBatch();
+                preIdentity.setString(1, principalName);
+                preIdentity.addBatch();
+
+                if (++rows == BATCH_SIZE) {
+                    // Keys first, they reference the identities
+                    preKey.executeBatch();
+                    preIdentity.executeBatch();
+                    rows = 0;
+                }
+            }
+            if (rows > 0) {
+                preKey.executeBatch();
+                preIdentity.executeBatch();
             }
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+        KrbIdentity duplicateIdentity = doGetIdentity(identity.getPrincipalName());
+        if (duplicateIdentity != null) {
+            LOG.warn("The identity maybe duplicate.");
+
+            return duplicateIdentity;
+        }
+
+        executeTransaction(connection -> insertIdentities(connection,
+            Collections.singletonList(identity)), "add identity");
+        return identity;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -340,92 +436,338 @@ public class MySQLIdentityBackend extends AbstractIdentityBackend {
      * {@inheritDoc}
      */
     @Override
-    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
-        String principalName = identity.getPrincipalName();
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        if (principalNames.isEmpty()) {
+            return identities;
+        }
+
+        List<String> requested = new ArrayList<>(new LinkedHashSet<>(principalNames));
+        boolean collated = false;
+        Connection connection = null;
         try {
-            // Delete old identity
-            doDeleteIdentity(principalName);
-            // Insert new identity
-            doAddIdentity(identity);
-        } catch (KrbException e) {
-            LOG.error("Error occurred while updating identity: " + principalName);
-            throw new KrbException("Failed to update identity. ", e);
+            connection = dataSource.getConnection();
+            for (int from = 0; from < requested.size(); from += MAX_NAMES_PER_QUERY) {
+                List<String> names = requested.subList(from,
+                    Math.min(from + MAX_NAMES_PER_QUERY, requested.size()));
+                collated |= getIdentities(connection, names, identities);
+            }
+        } catch (SQLException e) {
+            LOG.error("Error occurred while getting identities. " + e.toString());
+            throw new KrbException("Failed to get identities. ", e);
+        } finally {
+            DbUtils.closeQuietly(connection);
         }
 
-        return getIdentity(principalName);
+        // The database collation matched some names to principals stored
+        // differently, look the remaining names up as getIdentity does
+        if (collated) {
+            for (String principalName : requested) {
+                if (!identities.containsKey(principalName)) {
+                    KrbIdentity krbIdentity = doGetIdentity(principalName);
+                    if (krbIdentity != null) {
+                        identities.put(principalName, krbIdentity);
+                    }
+                }
+            }
+        }
+        return identities;
     }
 
     /**
-     * {@inheritDoc}
+     * Get the identities and their keys in one query, keyed by the principal
+     * of their rows.
+     *
+     * @return whether some rows were of principals not among the names
      */
-    @Override
-    protected void doDeleteIdentity(String principalName) throws KrbException {
-        Connection connection = null;
-        PreparedStatement preKey = null;
-        PreparedStatement preIdentity = null;
-        try {
-            connection = dataSource.getConnection();
-            connection.setAutoCommit(false);
-
-            // Delete keys from key table
-            String stmKey = "DELETE FROM  " + keyInfoTable + " WHERE principal = ?";
-            preKey = connection.prepareStatement(stmKey);
-            preKey.setString(1, principalName);
-            preKey.executeUpdate();
+    private boolean getIdentities(Connection connection, List<String> principalNames,
+                                  Map<String, KrbIdentity> identities) throws SQLException {
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < principalNames.size(); i++) {
+            if (i > 0) {
+                params.append(", ");
+            }
+            params.append('?');
+        }
+        String stmIdentity = String.format("SELECT a.*, b.kvno, b.key_type, b.key_value FROM %s a "
+            + "left join %s b on a.principal = b.principal where a.principal in (%s)",
+            identityTable, keyInfoTable, params);
+
+        Set<String> names = new HashSet<>(principalNames);
+        boolean collated = false;
+        Map<String, List<EncryptionKey>> keys = new HashMap<>();
+        try (PreparedStatement preIdentity = connection.prepareStatement(stmIdentity)) {
+            for (int i = 0; i < principalNames.size(); i++) {
+                preIdentity.setString(i + 1, principalNames.get(i));
+            }
+            try (ResultSet resIdentity = preIdentity.executeQuery()) {
+                while (resIdentity.next()) {
+                    String principalName = resIdentity.getString("principal");
+                    if (!names.contains(principalName)) {
+                        collated = true;
+                        continue;
+                    }
+                    KrbIdentity krbIdentity = identities.get(principalName);
+                    if (krbIdentity == null) {
+                        krbIdentity = new KrbIdentity(principalName);
+                        krbIdentity.setKeyVersion(resIdentity.getInt("key_version"));
+                        krbIdentity.setKdcFlags(resIdentity.getInt("kdc_flags"));
+                        krbIdentity.setDisabled(resIdentity.getBoolean("disabled"));
+                        krbIdentity.setLocked(resIdentity.getBoolean("locked"));
+                        krbIdentity.setCreatedTime(new KerberosTime(resIdentity.getLong("created_time")));
+                        krbIdentity.setExpireTime(new KerberosTime(resIdentity.getLong("expire_time")));
+                        identities.put(principalName, krbIdentity);
+                        keys.put(principalName, new ArrayList<>());
+                    }
 
-            // Delete identity from identity table
-            String stmIdentity = "DELETE FROM " + identityTable + " WHERE principal = ? ";
-            preIdentity = connection.prepareStatement(stmIdentity);
-            preIdentity.setString(1, principalName);
-            preIdentity.executeUpdate();
+                    // Get key info
+                    int kvno = resIdentity.getInt("kvno");
+                    String keyType = resIdentity.getString("key_type");
+                    EncryptionType eType = EncryptionType.fromName(keyType);
+                    byte[] keyValue = resIdentity.getBytes("key_value");
+                    keys.get(principalName).add(new EncryptionKey(eType, keyValue, kvno));
+                }
+            }
+        }
+        for (Map.Entry<String, List<EncryptionKey>> entry : keys.entrySet()) {
+            if (entry.getValue().size() > 0) {
+                identities.get(entry.getKey()).addKeys(entry.getValue());
+            }
+        }
+        return collated;
+    }
 
-            connection.commit();
-        } catch (SQLException e) {
-            try {
-                LOG.warn("Transaction is being rolled back.");
-                if (connection != null) {
-                    connection.rollback();
+    /**
+     * Get the names among the given ones whose principals are stored,
+     * compared by the database as getIdentity compares them.
+     */
+    private Set<String> getStoredNames(Connection connection,
+                                       List<String> principalNames) throws SQLException {
+        Set<String> stored = new HashSet<>();
+        for (int from = 0; from < principalNames.size(); from += MAX_NAMES_PER_QUERY) {
+            List<String> chunk = principalNames.subList(from,
+                Math.min(from + MAX_NAMES_PER_QUERY, principalNames.size()));
+            // One column per name, telling whether its principal is stored
+            StringBuilder stmPrincipal = new StringBuilder("SELECT ");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    stmPrincipal.append(", ");
+                }
+                stmPrincipal.append("EXISTS (SELECT 1 FROM ").append(identityTable)
+                    .append(" WHERE principal = ?)");
+            }
+            try (PreparedStatement prePrincipal = connection.prepareStatement(stmPrincipal.toString())) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    prePrincipal.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet resPrincipal = prePrincipal.executeQuery()) {
+                    resPrincipal.next();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (resPrincipal.getBoolean(i + 1)) {
+                            stored.add(chunk.get(i));
+                        }
+                    }
                 }
-            } catch (SQLException ex) {
-                throw new KrbException("Transaction roll back failed. ", ex);
             }
-            LOG.error("Error occurred while deleting identity.");
-            throw new KrbException("Failed to delete identity. ", e);
-        } finally {
-            DbUtils.closeQuietly(preIdentity);
-            DbUtils.closeQuietly(preKey);
-            DbUtils.closeQuietly(connection);
         }
+        return stored;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
+        String principalName = identity.getPrincipalName();
+        // Replace the old identity and keys in one transaction
+        executeTransaction(connection -> {
+            deleteIdentities(connection, Collections.singletonList(principalName));
+            insertIdentities(connection, Collections.singletonList(identity));
+        }, "update identity");
+
+        return getIdentity(principalName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDeleteIdentity(String principalName) throws KrbException {
+        executeTransaction(connection -> deleteIdentities(connection,
+            Collections.singletonList(principalName)), "delete identity");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The principals are read in pages of the fetch size, in the order of
+     * the primary key, so that they are never all held in memory.
+     */
+    @Override
     protected Iterable<String> doGetIdentities() throws KrbException {
+        final List<String> firstPage = getPrincipals(null);
+        return () -> new PrincipalIterator(firstPage);
+    }
+
+    /**
+     * Read the page of principals following the given one, through a
+     * forward-only cursor.
+     */
+    private List<String> getPrincipals(String after) throws KrbException {
         List<String> identityNames = new ArrayList<>();
+        String statement = "SELECT principal FROM " + identityTable;
+        if (after != null) {
+            statement += " WHERE principal > ?";
+        }
+        statement += " ORDER BY principal LIMIT ?";
+
         Connection connection = null;
         PreparedStatement preSmt = null;
         ResultSet result = null;
         try {
             connection = dataSource.getConnection();
-            String statement = "SELECT * FROM " + identityTable;
-            preSmt = connection.prepareStatement(statement);
+            preSmt = connection.prepareStatement(statement,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preSmt.setFetchSize(fetchSize);
+            int index = 1;
+            if (after != null) {
+                preSmt.setString(index++, after);
+            }
+            preSmt.setInt(index, fetchSize);
             result = preSmt.executeQuery();
             while (result.next()) {
-                identityNames.add(result.getString("principal"));
+                identityNames.add(result.getString(1));
             }
-            result.close();
-            preSmt.close();
         } catch (SQLException e) {
             LOG.error("Error occurred while getting identities.", e);
             throw new KrbException("Failed to get identities. ", e);
         } finally {
-            DbUtils.closeQuietly(preSmt);
             DbUtils.closeQuietly(result);
+            DbUtils.closeQuietly(preSmt);
             DbUtils.closeQuietly(connection);
         }
 
         return identityNames;
     }
+
+    /**
+     * Iterates the principals, reading the next page when the current one
+     * is consumed.
+     */
+    private class PrincipalIterator implements Iterator<String> {
+        private List<String> page;
+        private int index;
+
+        PrincipalIterator(List<String> firstPage) {
+            this.page = firstPage;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < page.size()) {
+                return true;
+            }
+            if (page.size() < fetchSize) {
+                return false;
+            }
+            try {
+                page = getPrincipals(page.get(page.size() - 1));
+            } catch (KrbException e) {
+                throw new RuntimeException("Failed to get identities.", e);
+            }
+            index = 0;
+            return !page.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+    }
+
+    /**
+     * Collects the changes and applies them in one transaction on commit:
+     * the deletions and replacements first, then the insertions. As in
+     * doAddIdentity, an added identity already stored is left as it is.
+     */
+    class MySQLBatchTrans implements BatchTrans {
+        private final Set<String> deletes = new LinkedHashSet<>();
+        private final Map<String, KrbIdentity> inserts = new LinkedHashMap<>();
+
+        @Override
+        public void commit() throws KrbException {
+            try {
+                executeTransaction(connection -> {
+                    deleteIdentities(connection, deletes);
+                    insertIdentities(connection, getNewIdentities(connection));
+                }, "commit batch");
+            } finally {
+                for (String principalName : deletes) {
+                    fireIdentityChanged(principalName);
+                }
+                for (String principalName : inserts.keySet()) {
+                    fireIdentityChanged(principalName);
+                }
+            }
+            rollback();
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            deletes.clear();
+            inserts.clear();
+        }
+
+        /**
+         * The insertions, without the added identities already stored.
+         */
+        private List<KrbIdentity> getNewIdentities(Connection connection) throws SQLException {
+            List<String> added = new ArrayList<>();
+            for (String principalName : inserts.keySet()) {
+                if (!deletes.contains(principalName)) {
+                    added.add(principalName);
+                }
+            }
+            Set<String> stored = getStoredNames(connection, added);
+            List<KrbIdentity> identities = new ArrayList<>(inserts.size());
+            for (KrbIdentity identity : inserts.values()) {
+                if (stored.contains(identity.getPrincipalName())) {
+                    LOG.warn("The identity maybe duplicate.");
+                } else {
+                    identities.add(identity);
+                }
+            }
+            return identities;
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                inserts.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                deletes.add(identity.getPrincipalName());
+                inserts.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                deletes.add(principalName);
+                inserts.remove(principalName);
+            }
+            return this;
+        }
+    }
 }
@@ -0,0 +1,190 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kdc.identitybackend.MySQLConfKey;
+import org.apache.kerby.kerberos.kdc.identitybackend.MySQLIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the batch transactions, the lookups of several identities and the
+ * enumeration in pages of the MySQL backend.
+ */
+public class MySQLBackendBatchTest {
+    private static MySQLIdentityBackend backend;
+    private static File testDir = new File(System.getProperty("test.dir", "target"));
+    private static File dbFile = new File(testDir, "mysqlbatch.mv.db");
+
+    @BeforeClass
+    public static void setup() throws KrbException, IOException {
+        Conf config = new Conf();
+        config.setString(MySQLConfKey.MYSQL_DRIVER, "org.h2.Driver");
+        // Names compared ignoring their case, like the MySQL default collations
+        config.setString(MySQLConfKey.MYSQL_URL,
+                "jdbc:h2:" + testDir.getCanonicalPath() + "/mysqlbatch;MODE=MySQL;IGNORECASE=TRUE");
+        config.setString(MySQLConfKey.MYSQL_USER, "root");
+        config.setString(MySQLConfKey.MYSQL_PASSWORD, "123456");
+        // Small enough for the identities to be enumerated in several pages
+        config.setInt(MySQLConfKey.MYSQL_FETCH_SIZE, 7);
+        backend = new MySQLIdentityBackend(config);
+        backend.initialize();
+    }
+
+    @Test(expected = KrbException.class)
+    public void testInvalidFetchSizeRejected() throws KrbException {
+        Conf config = new Conf();
+        config.setInt(MySQLConfKey.MYSQL_FETCH_SIZE, 0);
+        new MySQLIdentityBackend(config).initialize();
+    }
+
+    @Test
+    public void testGetIdentitiesByRequestedName() throws KrbException {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("mixed@EXAMPLE.COM");
+        backend.addIdentity(identity);
+        try {
+            List<String> names = Arrays.asList("MIXED@EXAMPLE.COM", "Mixed@EXAMPLE.COM", "other@EXAMPLE.COM");
+            Map<String, KrbIdentity> identities = backend.getIdentitiesByName(names);
+            assertThat(identities).hasSize(2);
+            for (String name : names.subList(0, 2)) {
+                KrbIdentity found = backend.getIdentity(name);
+                assertThat(found.getPrincipalName()).isEqualTo(name);
+                assertThat(identities.get(name)).isEqualTo(found);
+                assertThat(identities.get(name).getKeys()).isEqualTo(identity.getKeys());
+            }
+        } finally {
+            backend.deleteIdentity(identity.getPrincipalName());
+        }
+    }
+
+    @Test
+    public void testGetIdentitiesInSeveralQueries() throws KrbException {
+        List<KrbIdentity> identities = BackendTestUtil.createManyIdentities(2);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            names.add("missing" + i + "@EXAMPLE.COM");
+        }
+        names.set(0, identities.get(0).getPrincipalName());
+        names.set(1100, identities.get(1).getPrincipalName());
+        for (KrbIdentity identity : identities) {
+            backend.addIdentity(identity);
+        }
+        try {
+            Map<String, KrbIdentity> found = backend.getIdentitiesByName(names);
+            assertThat(found).hasSize(2);
+            for (KrbIdentity identity : identities) {
+                assertThat(found.get(identity.getPrincipalName())).isEqualTo(identity);
+            }
+        } finally {
+            for (KrbIdentity identity : identities) {
+                backend.deleteIdentity(identity.getPrincipalName());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchTrans() throws KrbException {
+        List<KrbIdentity> identities = BackendTestUtil.createManyIdentities(30);
+        int existing = count(backend.getIdentities());
+        BatchTrans batch = backend.startBatchTrans();
+        for (KrbIdentity identity : identities) {
+            batch.addIdentity(identity);
+        }
+        batch.commit();
+        assertThat(count(backend.getIdentities())).isEqualTo(existing + 30);
+
+        KrbIdentity updated = identities.get(0);
+        updated.setKeyVersion(5);
+        batch.updateIdentity(updated);
+        batch.deleteIdentity(identities.get(1).getPrincipalName());
+        batch.commit();
+        assertThat(backend.getIdentity(updated.getPrincipalName()).getKeyVersion()).isEqualTo(5);
+        assertThat(backend.getIdentity(identities.get(1).getPrincipalName())).isNull();
+
+        batch.deleteIdentity(identities.get(2).getPrincipalName());
+        batch.rollback();
+        batch.commit();
+        assertThat(backend.getIdentity(identities.get(2).getPrincipalName())).isNotNull();
+
+        for (KrbIdentity identity : identities) {
+            batch.deleteIdentity(identity.getPrincipalName());
+        }
+        batch.commit();
+        assertThat(count(backend.getIdentities())).isEqualTo(existing);
+    }
+
+    @Test
+    public void testBatchAddExisting() throws KrbException {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("existing@EXAMPLE.COM");
+        backend.addIdentity(identity);
+        KrbIdentity added = BackendTestUtil.createOneIdentity("added@EXAMPLE.COM");
+        try {
+            KrbIdentity duplicate = BackendTestUtil.createOneIdentity(identity.getPrincipalName());
+            duplicate.setKeyVersion(3);
+            // Stored under another case, as the collation compares them
+            KrbIdentity sameIgnoringCase = BackendTestUtil.createOneIdentity("EXISTING@EXAMPLE.COM");
+            backend.startBatchTrans().addIdentity(duplicate).addIdentity(sameIgnoringCase)
+                .addIdentity(added).commit();
+
+            // Left as they are, without failing the batch
+            assertThat(backend.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+            assertThat(backend.getIdentity(identity.getPrincipalName()).getKeyVersion()).isEqualTo(1);
+            assertThat(backend.getIdentity(added.getPrincipalName())).isEqualTo(added);
+        } finally {
+            backend.deleteIdentity(identity.getPrincipalName());
+            backend.deleteIdentity(added.getPrincipalName());
+        }
+    }
+
+    private static int count(Iterable<String> principals) {
+        int count = 0;
+        Iterator<String> iterator = principals.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    @AfterClass
+    public static void tearDown() throws KrbException {
+        if (backend != null) {
+            backend.stop();
+        }
+        if (dbFile.exists() && !dbFile.delete()) {
+            System.err.println("Failed to delete the test database file.");
+        }
+    }
+}
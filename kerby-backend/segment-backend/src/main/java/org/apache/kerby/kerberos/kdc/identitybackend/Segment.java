@@ -0,0 +1,276 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A segment file of the log. Records are only appended to the segment, until
+ * it reaches the maximum size and a new segment is started.
+ *
+ * The file channel is shared by the readers and the writer, and an
+ * interrupted thread using it closes it for all of them. The channel is
+ * then reopened: the interrupted thread fails, the others retry.
+ */
+final class Segment implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(Segment.class);
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    // Larger records can only come from a corrupted segment
+    static final int MAX_RECORD_SIZE = 1 << 20;
+
+    /**
+     * Receives the records of a segment, in order.
+     */
+    interface RecordVisitor {
+        void visit(long offset, ByteBuffer record) throws IOException;
+    }
+
+    /**
+     * An operation on the file channel.
+     */
+    private interface ChannelOperation<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    private final int id;
+    private final File file;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private volatile long size;
+    // Bytes of the records that were replaced or deleted since
+    private long deadBytes;
+
+    Segment(File dir, int id) throws IOException {
+        this.id = id;
+        this.file = new File(dir, String.format("%s%010d%s", PREFIX, id, SUFFIX));
+        this.channel = open(file);
+        this.size = channel.size();
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Run the operation, on a reopened channel if another thread was
+     * interrupted using the channel.
+     */
+    private <T> T onChannel(ChannelOperation<T> operation) throws IOException {
+        while (true) {
+            FileChannel current = channel;
+            try {
+                return operation.run(current);
+            } catch (ClosedByInterruptException e) {
+                reopen(current);
+                throw e;
+            } catch (ClosedChannelException e) {
+                reopen(current);
+            }
+        }
+    }
+
+    private synchronized void reopen(FileChannel closedChannel) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (channel == closedChannel) {
+            LOG.warn("Reopening {}, closed by an interrupted thread.", file);
+            channel = open(file);
+        }
+    }
+
+    /**
+     * @param file A file of the segment directory
+     * @return The id of the segment stored in the file, or -1 if the file is
+     * not a segment
+     */
+    static int idOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getDeadBytes() {
+        return deadBytes;
+    }
+
+    void addDeadBytes(long bytes) {
+        deadBytes += bytes;
+    }
+
+    /**
+     * Append a record, without syncing it.
+     * @param record The record, from its position to its limit
+     * @return The offset of the record in the segment
+     * @throws IOException e
+     */
+    long append(ByteBuffer record) throws IOException {
+        long offset = size;
+        long position = offset;
+        while (record.hasRemaining()) {
+            final long writePosition = position;
+            position += onChannel(c -> c.write(record, writePosition));
+        }
+        size = position;
+        return offset;
+    }
+
+    void force() throws IOException {
+        onChannel(c -> {
+            c.force(false);
+            return null;
+        });
+    }
+
+    /**
+     * Read a record.
+     * @param offset The offset of the record in the segment
+     * @param buffer The buffer to fill up to its limit with the record
+     * @throws IOException e
+     */
+    void read(long offset, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (onChannel(c -> c.read(buffer, offset + buffer.position())) < 0) {
+                throw new EOFException("Reading beyond the end of " + file);
+            }
+        }
+    }
+
+    /**
+     * Pass the intact records to the visitor, in order. The segment is
+     * truncated at the first torn or corrupted record, which is where the
+     * last writes before a crash end.
+     * @param visitor The visitor of the records
+     * @throws IOException e
+     */
+    void scan(RecordVisitor visitor) throws IOException {
+        long offset = scan(size, visitor);
+        if (offset < size) {
+            LOG.warn("Truncating {} from {} to {} bytes, dropping a torn or corrupted record.",
+                file, size, offset);
+            final long intactSize = offset;
+            onChannel(c -> {
+                c.truncate(intactSize);
+                c.force(true);
+                return null;
+            });
+            size = offset;
+        }
+    }
+
+    /**
+     * Pass the intact records before the limit to the visitor, in order,
+     * leaving the segment unchanged. Records may be appended meanwhile.
+     * @param limit The size of the segment to scan
+     * @param visitor The visitor of the records
+     * @return The offset the intact records end at
+     * @throws IOException e
+     */
+    long scan(long limit, RecordVisitor visitor) throws IOException {
+        long offset = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            byte[] header = new byte[SegmentRecord.HEADER_SIZE];
+            while (offset < limit && readFully(in, header, 0, header.length)) {
+                int length = SegmentRecord.length(ByteBuffer.wrap(header));
+                if (length <= SegmentRecord.HEADER_SIZE || length > MAX_RECORD_SIZE
+                    || offset + length > limit) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                System.arraycopy(header, 0, bytes, 0, header.length);
+                if (!readFully(in, bytes, header.length, length - header.length)) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(bytes);
+                if (!SegmentRecord.isValid(record)) {
+                    break;
+                }
+                visitor.visit(offset, record);
+                offset += length;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * @return Whether the bytes were read, or the end of the stream was
+     * reached first
+     */
+    private static boolean readFully(InputStream in, byte[] bytes, int offset, int length)
+        throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, offset + read, length - read);
+            if (count < 0) {
+                return false;
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Close the segment and delete its file.
+     * @throws IOException e
+     */
+    void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+}
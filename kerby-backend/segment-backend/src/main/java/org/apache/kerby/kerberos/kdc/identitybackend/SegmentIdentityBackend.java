@@ -0,0 +1,783 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An identity backend storing the identities in an append-only log of
+ * segment files, with a memory-mapped hash index of the latest record of
+ * each principal.
+ *
+ * A lookup probes the index and reads the record with a single positional
+ * read, without locking unless a writer changes the index at the same time.
+ * A change appends a record to the active segment, synced to disk by
+ * default, then points the index to it. Deleting an identity appends a
+ * tombstone record.
+ *
+ * Once the replaced and deleted records make up
+ * {@link #SEGMENT_COMPACTION_RATIO} percent of a sealed segment, a
+ * background compaction copies its live records to the active segment and
+ * deletes it.
+ *
+ * The index is flushed when the backend is stopped. After a crash the index
+ * is rebuilt by scanning the segments, dropping a torn record at their end.
+ */
+public class SegmentIdentityBackend extends AbstractIdentityBackend {
+    private static final Logger LOG =
+        LoggerFactory.getLogger(SegmentIdentityBackend.class);
+
+    public static final String SEGMENT_BACKEND_DIR = "backend.segment.dir";
+    public static final String SEGMENT_MAX_SIZE = "backend.segment.max_size";
+    public static final String SEGMENT_SYNC = "backend.segment.sync";
+    public static final String SEGMENT_COMPACTION_INTERVAL = "backend.segment.compaction_interval";
+    public static final String SEGMENT_COMPACTION_RATIO = "backend.segment.compaction_ratio";
+    public static final String SEGMENT_INDEX_CAPACITY = "backend.segment.index_capacity";
+
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+    private static final long DEFAULT_COMPACTION_INTERVAL = 60;
+    private static final int DEFAULT_COMPACTION_RATIO = 50;
+    private static final int DEFAULT_INDEX_CAPACITY = 1 << 16;
+
+    private static final String INDEX_FILE = "index.idx";
+    private static final String STATS_FILE = "segments.stats";
+
+    private File dir;
+    private long maxSegmentSize;
+    private boolean sync;
+    private int compactionRatio;
+    private ScheduledExecutorService compactor;
+
+    // Serializes the writers and the compaction
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Held exclusively only while the index or the segments are changed,
+    // lookups validate their optimistic reads against it
+    private final StampedLock indexLock = new StampedLock();
+    // Held shared while identities are listed outside the write lock, and
+    // exclusively to compact a segment away
+    private final ReadWriteLock scanLock = new ReentrantReadWriteLock();
+    private volatile SegmentIndex index;
+    private volatile SegmentTable segments;
+    private Segment activeSegment;
+
+    private final ThreadLocal<ByteBuffer> readBuffers =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4096));
+
+    public SegmentIdentityBackend() {
+
+    }
+
+    /**
+     * Constructing an instance using specified config that contains anything
+     * to be used to initialize the segment backend.
+     * @param config The configuration for segment identity backend
+     */
+    public SegmentIdentityBackend(Config config) {
+        setConfig(config);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new SegmentBatchTrans();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doInitialize() throws KrbException {
+        LOG.info("Initializing the segment identity backend.");
+
+        String dirPath = getConfig().getString(SEGMENT_BACKEND_DIR);
+        if (dirPath == null || dirPath.isEmpty()) {
+            dir = new File(getBackendConfig().getConfDir(), "segments");
+        } else {
+            dir = new File(dirPath);
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new KrbException("Failed to create segment dir " + dir);
+        }
+
+        maxSegmentSize = Math.min(getConfig().getLong(SEGMENT_MAX_SIZE, DEFAULT_MAX_SIZE),
+            Integer.MAX_VALUE - Segment.MAX_RECORD_SIZE);
+        sync = getConfig().getBoolean(SEGMENT_SYNC, true);
+        compactionRatio = getConfig().getInt(SEGMENT_COMPACTION_RATIO, DEFAULT_COMPACTION_RATIO);
+
+        try {
+            openSegments();
+            openIndex();
+            index.markClean(false);
+        } catch (IOException e) {
+            throw new KrbException("Failed to open the segments in " + dir, e);
+        }
+
+        long interval = getConfig().getLong(SEGMENT_COMPACTION_INTERVAL, DEFAULT_COMPACTION_INTERVAL);
+        if (interval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "segment-backend-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactInBackground, interval, interval,
+                TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStop() throws KrbException {
+        if (compactor != null) {
+            // Not interrupted, an interrupt would close the segment being read
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        writeLock.lock();
+        try {
+            activeSegment.force();
+            writeStats();
+            index.markClean(true);
+            index.close();
+            for (Segment segment : segments.all()) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            throw new KrbException("Failed to close the segments in " + dir, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Compact the sealed segments holding enough replaced and deleted
+     * records now, as the background compaction does.
+     * @throws KrbException e
+     */
+    public void compact() throws KrbException {
+        for (Segment segment : segments.all()) {
+            writeLock.lock();
+            try {
+                if (segment != activeSegment && segments.get(segment.getId()) == segment
+                    && segment.getDeadBytes() * 100 >= segment.getSize() * compactionRatio) {
+                    compactUnscanned(segment);
+                }
+            } catch (IOException e) {
+                throw new KrbException("Failed to compact " + segment, e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Compact the segment unless identities are being listed, in which case
+     * it is left to a later compaction.
+     */
+    private void compactUnscanned(Segment segment) throws IOException {
+        if (!scanLock.writeLock().tryLock()) {
+            LOG.debug("Postponing the compaction of {}, identities are being listed.", segment);
+            return;
+        }
+        try {
+            compact(segment);
+        } finally {
+            scanLock.writeLock().unlock();
+        }
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (KrbException e) {
+            LOG.warn("Failed to compact the segments. " + e);
+        }
+    }
+
+    /**
+     * Copy the live records of a sealed segment to the active one, then
+     * delete it. A tombstone is copied as long as older segments may hold
+     * a record it deletes.
+     */
+    private void compact(final Segment segment) throws IOException {
+        final boolean hasOlder = segments.all().get(0) != segment;
+        final SegmentIndex current = index;
+        segment.scan((offset, record) -> {
+            String principalName = SegmentRecord.name(record);
+            int hash = hash(principalName);
+            int slot = findSlot(current, principalName, hash);
+            if (SegmentRecord.type(record) == SegmentRecord.PUT) {
+                if (slot >= 0 && current.location(slot) == location(segment.getId(), offset)) {
+                    Segment target = segmentFor(record.limit());
+                    long moved = location(target.getId(), target.append(record));
+                    long stamp = indexLock.writeLock();
+                    try {
+                        current.set(slot, moved, hash, record.limit());
+                    } finally {
+                        indexLock.unlockWrite(stamp);
+                    }
+                }
+            } else if (slot < 0 && hasOlder) {
+                Segment target = segmentFor(record.limit());
+                target.append(record);
+                target.addDeadBytes(record.limit());
+            }
+        });
+        // The copies have to be durable before the segment is gone
+        activeSegment.force();
+
+        long stamp = indexLock.writeLock();
+        try {
+            segments = segments.without(segment);
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        segment.delete();
+        LOG.info("Compacted segment {} of {}.", segment.getId(), dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
+        long stamp = indexLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                KrbIdentity identity = lookup(principalName);
+                if (indexLock.validate(stamp)) {
+                    return identity;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (indexLock.validate(stamp)) {
+                    throw new KrbException("Failed to get the identity " + principalName, e);
+                }
+            }
+        }
+
+        // Raced with a writer, retry while holding it off
+        stamp = indexLock.readLock();
+        try {
+            return lookup(principalName);
+        } catch (IOException e) {
+            throw new KrbException("Failed to get the identity " + principalName, e);
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    private KrbIdentity lookup(String principalName) throws IOException {
+        SegmentIndex current = index;
+        if (findSlot(current, principalName, hash(principalName)) < 0) {
+            return null;
+        }
+        return SegmentRecord.decode(readBuffers.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+        write(Collections.singletonList(SegmentRecord.encodePut(identity)));
+        return identity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
+        write(Collections.singletonList(SegmentRecord.encodePut(identity)));
+        return identity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDeleteIdentity(String principalName) throws KrbException {
+        write(Collections.singletonList(SegmentRecord.encodeDelete(principalName)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Iterable<String> doGetIdentities() throws KrbException {
+        final long[] live;
+        final List<Segment> scanned;
+        final long[] sizes;
+        writeLock.lock();
+        try {
+            live = liveLocations();
+            scanned = segments.all();
+            sizes = new long[scanned.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = scanned.get(i).getSize();
+            }
+            // Keeps the segments from being compacted away until scanned
+            scanLock.readLock().lock();
+        } finally {
+            writeLock.unlock();
+        }
+
+        final List<String> principals = new ArrayList<>();
+        try {
+            for (int i = 0; i < sizes.length; i++) {
+                final Segment segment = scanned.get(i);
+                segment.scan(sizes[i], (offset, record) -> {
+                    if (Arrays.binarySearch(live, location(segment.getId(), offset)) >= 0) {
+                        principals.add(SegmentRecord.name(record));
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new KrbException("Failed to list the identities in " + dir, e);
+        } finally {
+            scanLock.readLock().unlock();
+        }
+
+        Collections.sort(principals);
+        return principals;
+    }
+
+    /**
+     * Append the records, then point the index to them.
+     */
+    private void write(List<ByteBuffer> records) throws KrbException {
+        writeLock.lock();
+        try {
+            long[] locations = new long[records.size()];
+            for (int i = 0; i < locations.length; i++) {
+                ByteBuffer record = records.get(i);
+                Segment segment = segmentFor(record.limit());
+                locations[i] = location(segment.getId(), segment.append(record.duplicate()));
+            }
+            // Sealed segments were synced when the next one was started
+            if (sync) {
+                activeSegment.force();
+            }
+            for (int i = 0; i < locations.length; i++) {
+                updateIndex(locations[i], records.get(i));
+            }
+        } catch (IOException e) {
+            throw new KrbException("Failed to write to the segments in " + dir, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Point the index to a record, and account for the records it replaces.
+     */
+    private void updateIndex(long location, ByteBuffer record) throws IOException {
+        String principalName = SegmentRecord.name(record);
+        int hash = hash(principalName);
+        int length = record.limit();
+        int slot = findSlot(index, principalName, hash);
+        if (slot < 0 && SegmentRecord.type(record) == SegmentRecord.PUT) {
+            ensureCapacity();
+        }
+
+        SegmentIndex current = index;
+        long stamp = indexLock.writeLock();
+        try {
+            if (slot >= 0) {
+                markDead(current.location(slot), current.length(slot));
+            }
+            if (SegmentRecord.type(record) == SegmentRecord.PUT) {
+                if (slot < 0) {
+                    slot = current.freeSlot(hash);
+                }
+                current.set(slot, location, hash, length);
+            } else {
+                if (slot >= 0) {
+                    current.remove(slot);
+                }
+                markDead(location, length);
+            }
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Probe the index for the principal. The record of the slot found is
+     * left in the read buffer of the thread.
+     * @return The slot of the principal, or -1
+     */
+    private int findSlot(SegmentIndex current, String principalName, int hash) throws IOException {
+        int slot = current.firstSlot(hash);
+        for (int probes = 0; probes < current.capacity(); probes++) {
+            long location = current.location(slot);
+            if (location == SegmentIndex.EMPTY) {
+                return -1;
+            }
+            if (location != SegmentIndex.REMOVED && current.hash(slot) == hash
+                && SegmentRecord.hasName(readRecord(location, current.length(slot)), principalName)) {
+                return slot;
+            }
+            slot = current.nextSlot(slot);
+        }
+        return -1;
+    }
+
+    private ByteBuffer readRecord(long location, int length) throws IOException {
+        Segment segment = segments.get((int) (location >>> 32));
+        if (segment == null || length <= SegmentRecord.HEADER_SIZE || length > Segment.MAX_RECORD_SIZE) {
+            throw new IOException("Invalid record location " + location + " in " + dir);
+        }
+        ByteBuffer buffer = readBuffers.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1);
+            readBuffers.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        segment.read(location & 0xffffffffL, buffer);
+        return buffer;
+    }
+
+    private void markDead(long location, int length) {
+        Segment segment = segments.get((int) (location >>> 32));
+        if (segment != null) {
+            segment.addDeadBytes(length);
+        }
+    }
+
+    /**
+     * @return The active segment, after starting a new one if the record
+     * doesn't fit
+     */
+    private Segment segmentFor(int length) throws IOException {
+        if (activeSegment.getSize() > 0 && activeSegment.getSize() + length > maxSegmentSize) {
+            activeSegment.force();
+            Segment segment = new Segment(dir, activeSegment.getId() + 1);
+            // Published before any index entry points to it
+            segments = segments.with(segment);
+            activeSegment = segment;
+        }
+        return activeSegment;
+    }
+
+    /**
+     * Rehash the index into a larger one, or into one without the removed
+     * entries, when one more entry would make it too full.
+     */
+    private void ensureCapacity() throws IOException {
+        SegmentIndex current = index;
+        if (!current.isFull()) {
+            return;
+        }
+        int capacity = current.capacity();
+        while ((long) (current.size() + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+
+        File indexFile = new File(dir, INDEX_FILE);
+        File resizedFile = new File(dir, INDEX_FILE + ".tmp");
+        SegmentIndex resized = SegmentIndex.create(resizedFile, capacity);
+        for (int slot = 0; slot < current.capacity(); slot++) {
+            long location = current.location(slot);
+            if (location != SegmentIndex.EMPTY && location != SegmentIndex.REMOVED) {
+                int hash = current.hash(slot);
+                resized.set(resized.freeSlot(hash), location, hash, current.length(slot));
+            }
+        }
+        Files.move(resizedFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        long stamp = indexLock.writeLock();
+        try {
+            index = resized;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+        // The mapping stays valid for the lookups still probing it
+        current.close();
+    }
+
+    /**
+     * @return The sorted locations of the records the index points to
+     */
+    private long[] liveLocations() {
+        SegmentIndex current = index;
+        long[] locations = new long[current.size()];
+        int count = 0;
+        for (int slot = 0; slot < current.capacity(); slot++) {
+            long location = current.location(slot);
+            if (location != SegmentIndex.EMPTY && location != SegmentIndex.REMOVED) {
+                locations[count++] = location;
+            }
+        }
+        Arrays.sort(locations, 0, count);
+        return Arrays.copyOf(locations, count);
+    }
+
+    private void openSegments() throws IOException {
+        List<Segment> opened = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int id = Segment.idOf(file);
+                if (id > 0) {
+                    opened.add(new Segment(dir, id));
+                }
+            }
+        }
+        if (opened.isEmpty()) {
+            opened.add(new Segment(dir, 1));
+        }
+        segments = new SegmentTable(opened);
+        opened = segments.all();
+        activeSegment = opened.get(opened.size() - 1);
+    }
+
+    /**
+     * Reuse the index if it was cleanly closed along with the segments,
+     * otherwise rebuild it from the records of the segments.
+     */
+    private void openIndex() throws IOException {
+        File indexFile = new File(dir, INDEX_FILE);
+        SegmentIndex existing = SegmentIndex.open(indexFile);
+        if (existing != null) {
+            if (readStats()) {
+                index = existing;
+                return;
+            }
+            existing.close();
+        }
+
+        LOG.info("Rebuilding the index of {} from the segments.", dir);
+        index = SegmentIndex.create(indexFile,
+            getConfig().getInt(SEGMENT_INDEX_CAPACITY, DEFAULT_INDEX_CAPACITY));
+        for (final Segment segment : segments.all()) {
+            segment.scan((offset, record) -> updateIndex(location(segment.getId(), offset), record));
+        }
+        LOG.info("Rebuilt the index of {} with {} identities.", dir, index.size());
+    }
+
+    /**
+     * Save the size and the dead bytes of the segments, as they were when
+     * the index was flushed.
+     */
+    private void writeStats() throws IOException {
+        File statsFile = new File(dir, STATS_FILE);
+        File tmpFile = new File(dir, STATS_FILE + ".tmp");
+        List<Segment> all = segments.all();
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(all.size());
+            for (Segment segment : all) {
+                data.writeInt(segment.getId());
+                data.writeLong(segment.getSize());
+                data.writeLong(segment.getDeadBytes());
+            }
+            data.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), statsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return Whether the saved stats match the segments
+     */
+    private boolean readStats() throws IOException {
+        File statsFile = new File(dir, STATS_FILE);
+        if (!statsFile.exists()) {
+            return false;
+        }
+        List<Segment> all = segments.all();
+        try (DataInputStream data = new DataInputStream(new FileInputStream(statsFile))) {
+            if (data.readInt() != all.size()) {
+                return false;
+            }
+            long[] deadBytes = new long[all.size()];
+            for (int i = 0; i < deadBytes.length; i++) {
+                Segment segment = all.get(i);
+                if (data.readInt() != segment.getId() || data.readLong() != segment.getSize()) {
+                    return false;
+                }
+                deadBytes[i] = data.readLong();
+            }
+            for (int i = 0; i < deadBytes.length; i++) {
+                all.get(i).addDeadBytes(deadBytes[i]);
+            }
+            return true;
+        }
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int hash(String principalName) {
+        int h = principalName.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * The open segments by id, replaced as a whole when a segment is added
+     * or removed.
+     */
+    private static final class SegmentTable {
+        private final int firstId;
+        private final Segment[] table;
+
+        SegmentTable(List<Segment> segments) {
+            Collections.sort(segments, (s1, s2) -> Integer.compare(s1.getId(), s2.getId()));
+            firstId = segments.get(0).getId();
+            table = new Segment[segments.get(segments.size() - 1).getId() - firstId + 1];
+            for (Segment segment : segments) {
+                table[segment.getId() - firstId] = segment;
+            }
+        }
+
+        Segment get(int id) {
+            int i = id - firstId;
+            if (i < 0 || i >= table.length) {
+                return null;
+            }
+            return table[i];
+        }
+
+        List<Segment> all() {
+            List<Segment> segments = new ArrayList<>(table.length);
+            for (Segment segment : table) {
+                if (segment != null) {
+                    segments.add(segment);
+                }
+            }
+            return segments;
+        }
+
+        SegmentTable with(Segment segment) {
+            List<Segment> segments = all();
+            segments.add(segment);
+            return new SegmentTable(segments);
+        }
+
+        SegmentTable without(Segment segment) {
+            List<Segment> segments = all();
+            segments.remove(segment);
+            return new SegmentTable(segments);
+        }
+    }
+
+    private class SegmentBatchTrans implements BatchTrans {
+        private final List<ByteBuffer> records = new ArrayList<>();
+        private final List<String> principalNames = new ArrayList<>();
+
+        @Override
+        public void commit() throws KrbException {
+            try {
+                write(records);
+            } finally {
+                for (String principalName : principalNames) {
+                    fireIdentityChanged(principalName);
+                }
+                rollback();
+            }
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            records.clear();
+            principalNames.clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                records.add(SegmentRecord.encodePut(identity));
+                principalNames.add(identity.getPrincipalName());
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                records.add(SegmentRecord.encodePut(identity));
+                principalNames.add(identity.getPrincipalName());
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                records.add(SegmentRecord.encodeDelete(principalName));
+                principalNames.add(principalName);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped open-addressing hash table, from the hash of a principal
+ * name to the location of its latest record. Collisions are resolved with
+ * linear probing; the principal name itself is only kept in the record.
+ * <p>
+ * The file starts with a header of {@value #HEADER_SIZE} bytes, followed by
+ * slots of {@value #SLOT_SIZE} bytes:
+ * <pre>
+ *   long    location of the record, segment id in the high int and offset
+ *           in the low int, or EMPTY or REMOVED
+ *   int     hash of the principal name
+ *   int     length of the record
+ * </pre>
+ * The index is only modified by a single writer at a time, readers rely on
+ * the locking of the backend to see a consistent table.
+ */
+final class SegmentIndex implements Closeable {
+    static final long EMPTY = 0;
+    static final long REMOVED = -1;
+
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 16;
+    // Bounded by the size of a single mapping
+    static final int MAX_CAPACITY = 1 << 26;
+
+    private static final long MAGIC = 0x4b65726279496478L;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int REMOVED_OFFSET = 20;
+    private static final int CLEAN_OFFSET = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private int size;
+    private int removed;
+
+    private SegmentIndex(FileChannel channel, int capacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+
+    /**
+     * Create an empty index, replacing any existing file.
+     * @param file The index file
+     * @param capacity The minimum number of slots
+     * @return The index
+     * @throws IOException e
+     */
+    static SegmentIndex create(File file, int capacity) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        if (slots > MAX_CAPACITY) {
+            throw new IOException("The index can't hold " + capacity + " slots");
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SegmentIndex index = new SegmentIndex(channel, slots);
+        index.buffer.putLong(MAGIC_OFFSET, MAGIC);
+        index.buffer.putInt(VERSION_OFFSET, VERSION);
+        index.buffer.putInt(CAPACITY_OFFSET, slots);
+        index.writeCounts();
+        return index;
+    }
+
+    /**
+     * Open an index that was cleanly closed.
+     * @param file The index file
+     * @return The index, or null if it doesn't exist or wasn't cleanly closed
+     * @throws IOException e
+     */
+    static SegmentIndex open(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+            || header.get(CLEAN_OFFSET) == 0 || Integer.bitCount(capacity) != 1
+            || capacity > MAX_CAPACITY || channel.size() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            channel.close();
+            return null;
+        }
+        SegmentIndex index = new SegmentIndex(channel, capacity);
+        index.size = header.getInt(SIZE_OFFSET);
+        index.removed = header.getInt(REMOVED_OFFSET);
+        return index;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether one more entry would exceed the load factor of 0.75
+     */
+    boolean isFull() {
+        return (long) (size + removed + 1) * 4 > (long) capacity * 3;
+    }
+
+    int firstSlot(int hash) {
+        return hash & mask;
+    }
+
+    int nextSlot(int slot) {
+        return (slot + 1) & mask;
+    }
+
+    long location(int slot) {
+        return buffer.getLong(offset(slot));
+    }
+
+    int hash(int slot) {
+        return buffer.getInt(offset(slot) + 8);
+    }
+
+    int length(int slot) {
+        return buffer.getInt(offset(slot) + 12);
+    }
+
+    /**
+     * @return The first slot available for a new entry with the hash
+     */
+    int freeSlot(int hash) {
+        int slot = firstSlot(hash);
+        while (location(slot) != EMPTY && location(slot) != REMOVED) {
+            slot = nextSlot(slot);
+        }
+        return slot;
+    }
+
+    void set(int slot, long location, int hash, int length) {
+        long previous = location(slot);
+        if (previous == EMPTY) {
+            size++;
+        } else if (previous == REMOVED) {
+            removed--;
+            size++;
+        }
+        int offset = offset(slot);
+        buffer.putInt(offset + 8, hash);
+        buffer.putInt(offset + 12, length);
+        buffer.putLong(offset, location);
+    }
+
+    void remove(int slot) {
+        buffer.putLong(offset(slot), REMOVED);
+        size--;
+        removed++;
+    }
+
+    /**
+     * Mark whether the index is consistent with the segments, flushing it to
+     * disk first when it is.
+     * @param clean Whether the index is clean
+     * @throws IOException e
+     */
+    void markClean(boolean clean) throws IOException {
+        if (clean) {
+            writeCounts();
+            buffer.force();
+            buffer.put(CLEAN_OFFSET, (byte) 1);
+        } else {
+            buffer.put(CLEAN_OFFSET, (byte) 0);
+        }
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeCounts() {
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(REMOVED_OFFSET, removed);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
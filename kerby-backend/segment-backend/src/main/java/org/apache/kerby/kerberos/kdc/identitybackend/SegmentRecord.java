@@ -0,0 +1,136 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentityCodec;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The records of the segments. A record is laid out as
+ * <pre>
+ *   int     length of the payload
+ *   int     CRC32 of the payload
+ *   byte    type, PUT or DELETE
+ * </pre>
+ * followed for a PUT by the identity encoded with {@link KrbIdentityCodec},
+ * and for a DELETE by the start of such an encoding:
+ * <pre>
+ *   byte    format version
+ *   short   length of the principal name, then the name in modified UTF-8
+ * </pre>
+ */
+final class SegmentRecord {
+    static final int HEADER_SIZE = 8;
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    private static final int IDENTITY_OFFSET = HEADER_SIZE + 1;
+
+    private SegmentRecord() { }
+
+    /**
+     * Encode the record storing the identity.
+     * @param identity The identity
+     * @return The record, from position 0 to its length
+     */
+    static ByteBuffer encodePut(KrbIdentity identity) {
+        ByteBuffer record = ByteBuffer.allocate(IDENTITY_OFFSET + KrbIdentityCodec.encodedLength(identity));
+        record.position(HEADER_SIZE);
+        record.put(PUT);
+        KrbIdentityCodec.encode(identity, record);
+        return seal(record);
+    }
+
+    /**
+     * Encode the tombstone record of a deleted identity.
+     * @param principalName The principal name of the identity
+     * @return The record, from position 0 to its length
+     */
+    static ByteBuffer encodeDelete(String principalName) {
+        ByteBuffer record = ByteBuffer.allocate(IDENTITY_OFFSET
+            + KrbIdentityCodec.encodedPrincipalNameLength(principalName));
+        record.position(HEADER_SIZE);
+        record.put(DELETE);
+        KrbIdentityCodec.encodePrincipalName(principalName, record);
+        return seal(record);
+    }
+
+    private static ByteBuffer seal(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, record.capacity() - HEADER_SIZE);
+        record.putInt(0, record.capacity() - HEADER_SIZE);
+        record.putInt(4, (int) crc.getValue());
+        record.clear();
+        return record;
+    }
+
+    /**
+     * @param header The buffer holding the header of a record at position 0
+     * @return The length of the record, header included
+     */
+    static int length(ByteBuffer header) {
+        return HEADER_SIZE + header.getInt(0);
+    }
+
+    /**
+     * Check the CRC of a record read from a segment.
+     * @param record The record, from position 0 to its length
+     * @return Whether the record is intact
+     */
+    static boolean isValid(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = record.duplicate();
+        payload.position(HEADER_SIZE);
+        crc.update(payload);
+        return (int) crc.getValue() == record.getInt(4);
+    }
+
+    static byte type(ByteBuffer record) {
+        return record.get(HEADER_SIZE);
+    }
+
+    /**
+     * Compare the principal name of the record to the given one, without
+     * allocating for ASCII names.
+     */
+    static boolean hasName(ByteBuffer record, String principalName) {
+        return KrbIdentityCodec.hasPrincipalName(record, IDENTITY_OFFSET, principalName);
+    }
+
+    static String name(ByteBuffer record) {
+        return KrbIdentityCodec.decodePrincipalName(record, IDENTITY_OFFSET);
+    }
+
+    /**
+     * Decode the identity of a PUT record.
+     * @param record The record, from position 0 to its length
+     * @return The identity
+     * @throws IOException If the record doesn't hold an identity
+     */
+    static KrbIdentity decode(ByteBuffer record) throws IOException {
+        ByteBuffer identity = record.duplicate();
+        identity.position(IDENTITY_OFFSET);
+        return KrbIdentityCodec.decode(identity);
+    }
+}
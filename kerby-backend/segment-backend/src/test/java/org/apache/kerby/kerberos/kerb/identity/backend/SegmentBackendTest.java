@@ -0,0 +1,218 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kdc.identitybackend.SegmentIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Segment backend test
+ */
+public class SegmentBackendTest extends BackendTestBase {
+    private static File testDir;
+
+    @BeforeClass
+    public static void setup() throws KrbException {
+        testDir = new File(System.getProperty("test.dir", "target"), "segment-backend");
+        BackendTestUtil.deleteDir(testDir);
+
+        backend = createBackend(new File(testDir, "shared"), 4096);
+        backend.initialize();
+    }
+
+    private static SegmentIdentityBackend createBackend(File dir, long maxSegmentSize) {
+        Config backendConfig = new Conf();
+        backendConfig.setString(SegmentIdentityBackend.SEGMENT_BACKEND_DIR, dir.getAbsolutePath());
+        backendConfig.setLong(SegmentIdentityBackend.SEGMENT_MAX_SIZE, maxSegmentSize);
+        backendConfig.setLong(SegmentIdentityBackend.SEGMENT_COMPACTION_INTERVAL, 0L);
+        backendConfig.setInt(SegmentIdentityBackend.SEGMENT_INDEX_CAPACITY, 16);
+        return new SegmentIdentityBackend(backendConfig);
+    }
+
+    @Test
+    public void testRecoveryAfterCrash() throws KrbException, IOException {
+        File dir = new File(testDir, "recovery");
+        File segmentFile = new File(dir, "segment-0000000001.log");
+        IdentityBackend restarted = BackendTestUtil.recoverAfterCrash(() -> createBackend(dir, 1 << 20),
+            segmentFile, new byte[] {0, 0, 1, 0, 7, 7, 7});
+        restarted.stop();
+
+        // Stopped cleanly, the index is reused
+        IdentityBackend reopened = createBackend(dir, 1 << 20);
+        reopened.initialize();
+        BackendTestUtil.assertRecovered(reopened);
+        assertThat(reopened.getIdentities()).containsExactly(BackendTestUtil.KEPT_PRINCIPAL);
+        reopened.stop();
+    }
+
+    @Test
+    public void testCompaction() throws KrbException {
+        File dir = new File(testDir, "compaction");
+        SegmentIdentityBackend compacted = createBackend(dir, 1024);
+        compacted.initialize();
+        List<KrbIdentity> identities = BackendTestUtil.createManyIdentities(50);
+        for (KrbIdentity identity : identities) {
+            compacted.addIdentity(identity);
+        }
+        // Replaced and deleted records fill the sealed segments
+        for (int version = 2; version <= 3; version++) {
+            for (KrbIdentity identity : identities) {
+                identity.setKeyVersion(version);
+                compacted.updateIdentity(identity);
+            }
+        }
+        for (KrbIdentity identity : identities.subList(0, 25)) {
+            compacted.deleteIdentity(identity.getPrincipalName());
+        }
+
+        int segmentCount = countSegments(dir);
+        compacted.compact();
+        assertThat(countSegments(dir)).isLessThan(segmentCount);
+        assertCompacted(compacted, identities);
+        compacted.stop();
+
+        // Rebuilding the index from the compacted segments, the copied
+        // tombstones still hide the deleted identities
+        assertThat(new File(dir, "index.idx").delete()).isTrue();
+        SegmentIdentityBackend rebuilt = createBackend(dir, 1024);
+        rebuilt.initialize();
+        assertCompacted(rebuilt, identities);
+        rebuilt.stop();
+    }
+
+    @Test
+    public void testInterruptedLookup() throws KrbException {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("interrupted@EXAMPLE.COM");
+        backend.addIdentity(identity);
+
+        // The interrupt closes the segment channel under the lookup
+        boolean failed = false;
+        Thread.currentThread().interrupt();
+        try {
+            backend.getIdentity(identity.getPrincipalName());
+        } catch (KrbException e) {
+            failed = true;
+        } finally {
+            Thread.interrupted();
+        }
+        assertThat(failed).isTrue();
+
+        // And it is reopened for the lookups that follow
+        assertThat(backend.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+        backend.deleteIdentity(identity.getPrincipalName());
+    }
+
+    @Test
+    public void testReadsDuringWrites() throws Exception {
+        File dir = new File(testDir, "concurrent");
+        final SegmentIdentityBackend concurrent = createBackend(dir, 2048);
+        concurrent.initialize();
+        final KrbIdentity hot = BackendTestUtil.createOneIdentity("hot@EXAMPLE.COM");
+        concurrent.addIdentity(hot);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    KrbIdentity identity = concurrent.getIdentity(hot.getPrincipalName());
+                    assertThat(identity).isNotNull();
+                    assertThat(identity.getKeys()).hasSize(hot.getKeys().size());
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        // Listings scan the segments while they are appended to and compacted
+        Thread lister = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    assertThat(concurrent.getIdentities()).contains(hot.getPrincipalName());
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        lister.start();
+
+        // Updates roll the segments over and resize the index, while the
+        // compaction moves the record around
+        for (int i = 0; i < 300; i++) {
+            hot.setKeyVersion(i);
+            concurrent.updateIdentity(hot);
+            concurrent.addIdentity(BackendTestUtil.createOneIdentity("cold" + i + "@EXAMPLE.COM"));
+            if (i % 50 == 0) {
+                concurrent.compact();
+            }
+        }
+        writing.set(false);
+        reader.join();
+        lister.join();
+
+        assertThat(failure.get()).isNull();
+        assertThat(concurrent.getIdentity(hot.getPrincipalName()).getKeyVersion()).isEqualTo(299);
+        concurrent.stop();
+    }
+
+    private static void assertCompacted(IdentityBackend compacted,
+                                        List<KrbIdentity> identities) throws KrbException {
+        assertThat(compacted.getIdentities()).hasSize(25);
+        for (int i = 0; i < identities.size(); i++) {
+            KrbIdentity identity = compacted.getIdentity(identities.get(i).getPrincipalName());
+            if (i < 25) {
+                assertThat(identity).isNull();
+            } else {
+                assertThat(identity.getKeyVersion()).isEqualTo(3);
+                assertThat(identity.getKeys()).hasSize(BackendTestUtil.getEncryptionTypes().size());
+            }
+        }
+    }
+
+    private static int countSegments(File dir) {
+        File[] files = dir.listFiles((parent, name) -> name.startsWith("segment-"));
+        return files.length;
+    }
+
+    @AfterClass
+    public static void cleanSegmentBackendDir() throws KrbException {
+        if (backend != null) {
+            backend.stop();
+            backend.release();
+            backend = null;
+        }
+        BackendTestUtil.deleteDir(testDir);
+    }
+
+}
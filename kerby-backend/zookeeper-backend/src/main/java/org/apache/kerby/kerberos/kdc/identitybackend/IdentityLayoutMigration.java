@@ -0,0 +1,177 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentityCodec;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Migrates identities from the legacy layout, one znode per attribute under
+ * /kerby/identities, to one record znode per identity under /kerby/records.
+ * Each identity is moved in a single multi op creating its record and
+ * deleting its legacy znodes, so it's never lost or seen twice, and several
+ * servers can migrate concurrently. A record already present is kept as is.
+ *
+ * The backend migrates on startup; this can also be run beforehand:
+ * <pre>
+ *     IdentityLayoutMigration [host:port[,host:port]*]
+ * </pre>
+ */
+public final class IdentityLayoutMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(IdentityLayoutMigration.class);
+    private static final int SESSION_TIMEOUT = 10000;
+
+    private IdentityLayoutMigration() { }
+
+    /**
+     * Migrate all the identities of the legacy layout.
+     * @param zk The zookeeper
+     * @return The number of identities migrated
+     * @throws KrbException e
+     */
+    public static int migrate(ZooKeeper zk) throws KrbException {
+        List<String> names;
+        try {
+            names = IdentityZNodeHelper.getIdentityNames(zk);
+        } catch (KeeperException e) {
+            throw new KrbException("Failed to list legacy identities", e);
+        }
+        if (names == null) {
+            return 0;
+        }
+
+        int migrated = 0;
+        try {
+            ZKUtil.createWithParents(zk, IdentityZNodeHelper.getRecordsZNode());
+            for (String name : names) {
+                if (migrate(zk, name)) {
+                    migrated++;
+                }
+            }
+            if (names.isEmpty() || migrated == names.size()) {
+                zk.delete(IdentityZNodeHelper.getIdentitiesZNode(), -1);
+            }
+        } catch (KeeperException.NoNodeException | KeeperException.NotEmptyException e) {
+            LOG.debug("Legacy identities removed or added meanwhile", e);
+        } catch (KeeperException | IOException e) {
+            throw new KrbException("Failed to migrate legacy identities", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while migrating legacy identities", e);
+        }
+
+        if (migrated > 0) {
+            LOG.info("Migrated {} identities to identity records.", migrated);
+        }
+        return migrated;
+    }
+
+    private static boolean migrate(ZooKeeper zk, String name)
+            throws KeeperException, IOException, InterruptedException {
+        KrbIdentity identity = readLegacy(zk, name);
+        if (identity == null) {
+            return false;
+        }
+
+        List<Op> ops = new ArrayList<>();
+        String record = IdentityZNodeHelper.getRecordZNode(name);
+        if (zk.exists(record, false) == null) {
+            ops.add(Op.create(record, KrbIdentityCodec.encode(identity),
+                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        }
+        addDeletes(zk, IdentityZNodeHelper.getIndentityZNode(name), ops);
+
+        try {
+            zk.multi(ops);
+            return true;
+        } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException e) {
+            LOG.debug("Identity {} migrated by another server", name);
+            return false;
+        }
+    }
+
+    private static KrbIdentity readLegacy(ZooKeeper zk, String name) throws KeeperException {
+        IdentityZNode identityZNode = new IdentityZNode(zk, name);
+        if (!identityZNode.exist()) {
+            return null;
+        }
+        KrbIdentity krb = new KrbIdentity(name);
+        krb.setPrincipal(identityZNode.getPrincipalName());
+        krb.setCreatedTime(identityZNode.getCreatedTime());
+        krb.setDisabled(identityZNode.getDisabled());
+        krb.setExpireTime(identityZNode.getExpireTime());
+        krb.setKdcFlags(identityZNode.getKdcFlags());
+        krb.addKeys(identityZNode.getKeys());
+        krb.setKeyVersion(identityZNode.getKeyVersion());
+        krb.setLocked(identityZNode.getLocked());
+        return krb;
+    }
+
+    /**
+     * Add deletes of the znode and its descendants, children first.
+     */
+    private static void addDeletes(ZooKeeper zk, String node, List<Op> ops) throws KeeperException {
+        List<String> children = ZKUtil.listChildrenNoWatch(zk, node);
+        if (children == null) {
+            return;
+        }
+        for (String child : children) {
+            addDeletes(zk, ZKUtil.joinZNode(node, child), ops);
+        }
+        ops.add(Op.delete(node, -1));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String hosts = "127.0.0.1:" + ZKConfKey.ZK_PORT.getDefaultValue();
+        if (args.length > 0) {
+            hosts = args[0];
+        }
+
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zk = new ZooKeeper(hosts, SESSION_TIMEOUT, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        try {
+            if (!connected.await(SESSION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new KrbException("Failed to connect to " + hosts);
+            }
+            LOG.info("Migrated {} identities.", migrate(zk));
+        } finally {
+            zk.close();
+        }
+    }
+}
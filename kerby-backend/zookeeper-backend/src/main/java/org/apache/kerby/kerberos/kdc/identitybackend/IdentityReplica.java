@@ -0,0 +1,247 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentityCodec;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process copy of the identity records, kept coherent with watches so
+ * that lookups don't go to Zookeeper.
+ *
+ * The records znode is watched for children being added or removed, and
+ * each record for data changes and deletion. Watch callbacks re-read the
+ * changed znode asynchronously, re-arming the watch, and entries only ever
+ * move forward in znode version so a late read can't undo a newer one.
+ * Once the session expires the copy can't be trusted anymore, and the
+ * backend falls back to reading Zookeeper.
+ */
+class IdentityReplica {
+    private static final Logger LOG = LoggerFactory.getLogger(IdentityReplica.class);
+    private static final long LOAD_TIMEOUT = 60;
+
+    private final ZooKeeper zk;
+    private final ConcurrentHashMap<String, Entry> identities = new ConcurrentHashMap<>();
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private final Watcher childrenWatcher = new ChildrenWatcher();
+    private final Watcher recordWatcher = new RecordWatcher();
+    private volatile boolean valid;
+
+    private static final class Entry {
+        private final KrbIdentity identity;
+        private final int version;
+
+        private Entry(KrbIdentity identity, int version) {
+            this.identity = identity;
+            this.version = version;
+        }
+    }
+
+    IdentityReplica(ZooKeeper zk) {
+        this.zk = zk;
+    }
+
+    /**
+     * Load all the records and start watching them.
+     * @throws KrbException e
+     */
+    void start() throws KrbException {
+        List<String> names;
+        try {
+            ZKUtil.createWithParents(zk, IdentityZNodeHelper.getRecordsZNode());
+            names = zk.getChildren(IdentityZNodeHelper.getRecordsZNode(), childrenWatcher);
+        } catch (KeeperException e) {
+            throw new KrbException("Failed to list identity records", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while listing identity records", e);
+        }
+
+        CountDownLatch loaded = new CountDownLatch(names.size());
+        for (String name : names) {
+            read(name, loaded);
+        }
+        try {
+            if (!loaded.await(LOAD_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new KrbException("Timed out loading identity records");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while loading identity records", e);
+        }
+        valid = true;
+        LOG.info("Loaded {} identity records.", identities.size());
+    }
+
+    /**
+     * Whether the replica follows Zookeeper and can serve lookups.
+     * @return true if valid
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Stop serving lookups, the session being lost.
+     */
+    void invalidate() {
+        if (valid) {
+            LOG.warn("Zookeeper session expired, identity lookups go to Zookeeper now.");
+        }
+        valid = false;
+    }
+
+    /**
+     * Stop serving lookups, the backend being stopped.
+     */
+    void close() {
+        valid = false;
+    }
+
+    /**
+     * Get a copy of an identity, which the caller may modify without
+     * altering the replica.
+     */
+    KrbIdentity get(String name) {
+        Entry entry = identities.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return new KrbIdentity(entry.identity);
+    }
+
+    /**
+     * Apply a write made through this backend, so it's seen at once.
+     */
+    void written(String name, KrbIdentity identity, int version) {
+        update(name, new Entry(identity, version));
+    }
+
+    void deleted(String name) {
+        identities.remove(name);
+    }
+
+    private void update(String name, Entry entry) {
+        identities.merge(name, entry, (current, update) -> {
+            if (update.version >= current.version) {
+                return update;
+            }
+            return current;
+        });
+    }
+
+    private void read(String name, CountDownLatch loaded) {
+        watched.add(name);
+        zk.getData(IdentityZNodeHelper.getRecordZNode(name), recordWatcher, new RecordCallback(name, loaded), null);
+    }
+
+    private void listChildren() {
+        zk.getChildren(IdentityZNodeHelper.getRecordsZNode(), childrenWatcher, new ChildrenCallback(), null);
+    }
+
+    private final class RecordCallback implements AsyncCallback.DataCallback {
+        private final String name;
+        private final CountDownLatch loaded;
+
+        private RecordCallback(String name, CountDownLatch loaded) {
+            this.name = name;
+            this.loaded = loaded;
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+            try {
+                KeeperException.Code code = KeeperException.Code.get(rc);
+                if (code == KeeperException.Code.OK) {
+                    update(name, new Entry(KrbIdentityCodec.decode(data), stat.getVersion()));
+                } else if (code == KeeperException.Code.NONODE) {
+                    watched.remove(name);
+                    identities.remove(name);
+                } else {
+                    watched.remove(name);
+                    LOG.warn("Failed to read identity record {}: {}", path, code);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to decode identity record " + path, e);
+            } finally {
+                if (loaded != null) {
+                    loaded.countDown();
+                }
+            }
+        }
+    }
+
+    private final class ChildrenCallback implements AsyncCallback.ChildrenCallback {
+        @Override
+        public void processResult(int rc, String path, Object ctx, List<String> children) {
+            if (KeeperException.Code.get(rc) != KeeperException.Code.OK) {
+                LOG.warn("Failed to list identity records: {}", KeeperException.Code.get(rc));
+                return;
+            }
+            // Removed records are taken care of by their own watch
+            for (String name : children) {
+                if (!watched.contains(name)) {
+                    read(name, null);
+                }
+            }
+        }
+    }
+
+    private final class ChildrenWatcher implements Watcher {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getType() == Event.EventType.NodeChildrenChanged) {
+                listChildren();
+            }
+        }
+    }
+
+    private final class RecordWatcher implements Watcher {
+        @Override
+        public void process(WatchedEvent event) {
+            if (event.getPath() == null) {
+                return;
+            }
+            String name = event.getPath().substring(IdentityZNodeHelper.getRecordsZNode().length() + 1);
+            if (event.getType() == Event.EventType.NodeDataChanged) {
+                read(name, null);
+            } else if (event.getType() == Event.EventType.NodeDeleted) {
+                watched.remove(name);
+                identities.remove(name);
+            }
+        }
+    }
+}
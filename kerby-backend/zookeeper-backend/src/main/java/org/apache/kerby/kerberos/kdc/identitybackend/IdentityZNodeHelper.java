@@ -27,6 +27,7 @@ import java.util.List;
 public class IdentityZNodeHelper {
 
     private static final String IDENTITIES_ZNODE_NAME = "identities";
+    private static final String RECORDS_ZNODE_NAME = "records";
     private static final String PRINCIPAL_NAME_ZNODE_NAME = "principalName";
     private static final String KEY_VERSION_ZNODE_NAME = "keyVersion";
     private static final String KDC_FLAGS_ZNODE_NAME = "kdcFlags";
@@ -56,6 +57,23 @@ public class IdentityZNodeHelper {
       return ZKUtil.joinZNode(getBaseZNode(), IDENTITIES_ZNODE_NAME);
     }
 
+    /**
+     * Get the parent znode of the identity records.
+     * @return Records.
+     */
+    public static String getRecordsZNode() {
+        return ZKUtil.joinZNode(getBaseZNode(), RECORDS_ZNODE_NAME);
+    }
+
+    /**
+     * Get the znode holding an identity record.
+     * @param principalName Principal name, with '/' replaced by '\\'
+     * @return Record
+     */
+    public static String getRecordZNode(String principalName) {
+        return ZKUtil.joinZNode(getRecordsZNode(), principalName);
+    }
+
     /**
      * Get identity znode.
      * @param principalName Principal name
@@ -178,7 +196,18 @@ public class IdentityZNodeHelper {
     }
 
     /**
-     * Get identity names.
+     * Get the names of the identity records, null if there is none yet.
+     *
+     * @throws org.apache.zookeeper.KeeperException e
+     * @param zk The zookeeper
+     * @return The list of principal names, with '/' replaced by '\\'
+     */
+    public static List<String> getRecordNames(ZooKeeper zk) throws KeeperException {
+        return ZKUtil.listChildrenNoWatch(zk, getRecordsZNode());
+    }
+
+    /**
+     * Get identity names, in the legacy layout.
      *
      * @throws org.apache.zookeeper.KeeperException e
      * @param zk The zookeeper
@@ -28,7 +28,8 @@ public enum ZKConfKey implements ConfigKey {
     EMBEDDED_ZK(true),
     ZK_HOST("127.0.0.1"),
     ZK_PORT(2180),
-    DATA_DIR("/tmp/kerby/zookeeper/data");
+    DATA_DIR("/tmp/kerby/zookeeper/data"),
+    LOCAL_REPLICA(true);
 
     private Object defaultValue;
 
@@ -21,11 +21,14 @@ package org.apache.kerby.kerberos.kdc.identitybackend;
 
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentityCodec;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.server.ServerConfig;
 import org.apache.zookeeper.server.ZooKeeperServerMain;
@@ -36,15 +39,23 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * A Zookeeper based backend implementation. Currently it uses an embedded
  * Zookeeper. In follow up it will be enhanced to support standalone Zookeeper
  * cluster for replication and reliability.
- * 
+ *
+ * Each identity is stored as one binary record znode. Unless disabled with
+ * local_replica, lookups are served from an in-process copy of the records
+ * kept up to date with watches. Identities missing from the copy and the
+ * listing of names are read from Zookeeper, so an identity just added
+ * through another server is found at once.
  */
 public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     private static Thread zookeeperThread;
@@ -54,6 +65,7 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     private String serverStr;
     private File dataDir;
     private ZooKeeper zooKeeper;
+    private IdentityReplica replica;
     private static final Logger LOG = LoggerFactory.getLogger(ZookeeperIdentityBackend.class);
 
     public ZookeeperIdentityBackend() {
@@ -83,6 +95,9 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected void doStop() throws KrbException {
+        if (replica != null) {
+            replica.close();
+        }
         try {
             zooKeeper.close();
         } catch (InterruptedException e) {
@@ -122,6 +137,18 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
             startEmbeddedZookeeper();
         }
         connectZK();
+
+        IdentityLayoutMigration.migrate(zooKeeper);
+        if (getConfig().getBoolean(ZKConfKey.LOCAL_REPLICA, true)) {
+            replica = new IdentityReplica(zooKeeper);
+            replica.start();
+        } else {
+            try {
+                ZKUtil.createWithParents(zooKeeper, IdentityZNodeHelper.getRecordsZNode());
+            } catch (KeeperException e) {
+                throw new KrbException("Failed to create the identity records znode", e);
+            }
+        }
     }
 
     /**
@@ -186,26 +213,51 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
-        principalName = replaceSlash(principalName);
-        IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
-        KrbIdentity krb = new KrbIdentity(principalName);
-        try {
-            if (!identityZNode.exist()) {
-                return null;
+        String name = replaceSlash(principalName);
+        if (replica != null && replica.isValid()) {
+            KrbIdentity identity = replica.get(name);
+            if (identity != null) {
+                return identity;
             }
-            krb.setPrincipal(identityZNode.getPrincipalName());
-            krb.setCreatedTime(identityZNode.getCreatedTime());
-            krb.setDisabled(identityZNode.getDisabled());
-            krb.setExpireTime(identityZNode.getExpireTime());
-            krb.setKdcFlags(identityZNode.getKdcFlags());
-            krb.addKeys(identityZNode.getKeys());
-            krb.setKeyVersion(identityZNode.getKeyVersion());
-            krb.setLocked(identityZNode.getLocked());
-        } catch (KeeperException e) {
+        }
+
+        try {
+            byte[] data = zooKeeper.getData(IdentityZNodeHelper.getRecordZNode(name), false, null);
+            return KrbIdentityCodec.decode(data);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (KeeperException | IOException e) {
             throw new KrbException("Fail to get identity from zookeeper", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while getting identity from zookeeper", e);
         }
+    }
 
-        return krb;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        if (replica == null || !replica.isValid()) {
+            return super.doGetIdentitiesByName(principalNames);
+        }
+
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String principalName : principalNames) {
+            KrbIdentity identity = replica.get(replaceSlash(principalName));
+            if (identity != null) {
+                identities.put(principalName, identity);
+            } else {
+                missing.add(principalName);
+            }
+        }
+        if (!missing.isEmpty()) {
+            identities.putAll(super.doGetIdentitiesByName(missing));
+        }
+        return identities;
     }
 
     /**
@@ -213,11 +265,7 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
-        try {
-            setIdentity(identity);
-        } catch (Exception e) {
-            throw new KrbException("Fail to add identity to zookeeper", e);
-        }
+        setIdentity(identity);
         return doGetIdentity(identity.getPrincipalName());
     }
 
@@ -226,11 +274,7 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
-        try {
-            setIdentity(identity);
-        } catch (Exception e) {
-            throw new KrbException("Fail to update identity in zookeeper", e);
-        }
+        setIdentity(identity);
         return doGetIdentity(identity.getPrincipalName());
     }
 
@@ -239,12 +283,19 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected void doDeleteIdentity(String principalName) throws KrbException {
-        principalName = replaceSlash(principalName);
-        IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
+        String name = replaceSlash(principalName);
         try {
-            identityZNode.deleteIdentity();
+            zooKeeper.delete(IdentityZNodeHelper.getRecordZNode(name), -1);
+        } catch (KeeperException.NoNodeException e) {
+            LOG.debug("Identity {} already deleted", principalName);
         } catch (KeeperException e) {
             throw new KrbException("Fail to delete identity in zookeeper", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while deleting identity in zookeeper", e);
+        }
+        if (replica != null) {
+            replica.deleted(name);
         }
     }
 
@@ -254,10 +305,9 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     @Override
     protected Iterable<String> doGetIdentities() throws KrbException {
         List<String> identityNames;
-
         try {
             // The identities getting from zookeeper is unordered
-            identityNames = IdentityZNodeHelper.getIdentityNames(zooKeeper);
+            identityNames = IdentityZNodeHelper.getRecordNames(zooKeeper);
         } catch (KeeperException e) {
             throw new KrbException("Fail to get identities from zookeeper", e);
         }
@@ -278,22 +328,40 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     }
 
     /**
-     * Set the identity to add or update an indentity in the backend.
+     * Set the identity to add or update an indentity in the backend, as a
+     * single record znode.
      * @param identity . The identity to update
-     * @throws org.apache.zookeeper.KeeperException
+     * @throws KrbException e
      */
-    private void setIdentity(KrbIdentity identity) throws KeeperException, IOException {
-        String principalName = identity.getPrincipalName();
-        principalName = replaceSlash(principalName);
-        IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
-        identityZNode.setPrincipalName(identity.getPrincipalName());
-        identityZNode.setCreatedTime(identity.getCreatedTime());
-        identityZNode.setDisabled(identity.isDisabled());
-        identityZNode.setExpireTime(identity.getExpireTime());
-        identityZNode.setKdcFlags(identity.getKdcFlags());
-        identityZNode.setKeys(identity.getKeys());
-        identityZNode.setKeyVersion(identity.getKeyVersion());
-        identityZNode.setLocked(identity.isLocked());
+    private void setIdentity(KrbIdentity identity) throws KrbException {
+        String name = replaceSlash(identity.getPrincipalName());
+        String znode = IdentityZNodeHelper.getRecordZNode(name);
+        try {
+            byte[] data = KrbIdentityCodec.encode(identity);
+            int version;
+            while (true) {
+                try {
+                    if (zooKeeper.exists(znode, false) == null) {
+                        zooKeeper.create(znode, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+                        version = 0;
+                    } else {
+                        version = zooKeeper.setData(znode, data, -1).getVersion();
+                    }
+                    break;
+                } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException e) {
+                    // Created or deleted by another server meanwhile, try again
+                    LOG.debug("Identity {} changed concurrently", identity.getPrincipalName());
+                }
+            }
+            if (replica != null) {
+                replica.written(name, KrbIdentityCodec.decode(data), version);
+            }
+        } catch (KeeperException | IOException e) {
+            throw new KrbException("Fail to set identity in zookeeper", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while setting identity in zookeeper", e);
+        }
     }
 
     /**
@@ -308,14 +376,17 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
         return name;
     }
 
-    private static class MyWatcher implements Watcher {
+    private class MyWatcher implements Watcher {
 
         /**
-         * This will watch all the kdb update event so that it's timely synced.
-         * @param event The kdb update event ot watch.
+         * Record watches are set by the replica, the session state is
+         * followed here.
+         * @param event The session event to watch.
          */
         public void process(WatchedEvent event) {
-//            System.out.println("I got an event: " + event.getPath());
+            if (event.getState() == Event.KeeperState.Expired && replica != null) {
+                replica.invalidate();
+            }
         }
 
     }
@@ -0,0 +1,156 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kdc.identitybackend.IdentityLayoutMigration;
+import org.apache.kerby.kerberos.kdc.identitybackend.IdentityZNode;
+import org.apache.kerby.kerberos.kdc.identitybackend.IdentityZNodeHelper;
+import org.apache.kerby.kerberos.kdc.identitybackend.ZKConfKey;
+import org.apache.kerby.kerberos.kdc.identitybackend.ZookeeperIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Zookeeper backends sharing the same Zookeeper see each other's writes.
+ */
+public class ZookeeperReplicaTest {
+    private static final long TIMEOUT = 10000;
+
+    private static IdentityBackend writer;
+    private static IdentityBackend reader;
+
+    @BeforeClass
+    public static void setup() throws KrbException {
+        File dataDir = new File(System.getProperty("test.dir", "target"), "zookeeper-replica/data");
+        dataDir.mkdirs();
+
+        Conf writerConfig = new Conf();
+        writerConfig.setString(ZKConfKey.DATA_DIR.getPropertyKey(), dataDir.getAbsolutePath());
+        writer = new ZookeeperIdentityBackend(writerConfig);
+        writer.initialize();
+
+        Conf readerConfig = new Conf();
+        readerConfig.setBoolean(ZKConfKey.EMBEDDED_ZK.getPropertyKey(), false);
+        reader = new ZookeeperIdentityBackend(readerConfig);
+        reader.initialize();
+    }
+
+    @AfterClass
+    public static void tearDown() throws KrbException {
+        reader.stop();
+        writer.stop();
+    }
+
+    @Test
+    public void testWritesSeenByOtherServer() throws Exception {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("replica@EXAMPLE.COM");
+        writer.addIdentity(identity);
+        assertThat(await(identity.getPrincipalName(), true)).isEqualTo(identity);
+
+        identity.setDisabled(true);
+        writer.updateIdentity(identity);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!reader.getIdentity(identity.getPrincipalName()).isDisabled()
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(reader.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+
+        writer.deleteIdentity(identity.getPrincipalName());
+        assertThat(await(identity.getPrincipalName(), false)).isNull();
+    }
+
+    @Test
+    public void testAddSeenByOtherServerAtOnce() throws Exception {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("added@EXAMPLE.COM");
+        writer.addIdentity(identity);
+        try {
+            assertThat(reader.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+            assertThat(reader.getIdentities()).contains(identity.getPrincipalName());
+        } finally {
+            writer.deleteIdentity(identity.getPrincipalName());
+        }
+    }
+
+    @Test
+    public void testCopiesHandedOut() throws Exception {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("copied@EXAMPLE.COM");
+        writer.addIdentity(identity);
+        try {
+            KrbIdentity found = await(identity.getPrincipalName(), true);
+            found.setKeyVersion(9);
+            found.getKeys().clear();
+            assertThat(reader.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+            assertThat(reader.getIdentity(identity.getPrincipalName()).getKeys()).isEqualTo(identity.getKeys());
+
+            reader.getIdentitiesByName(Collections.singletonList(identity.getPrincipalName()))
+                .get(identity.getPrincipalName()).setKeyVersion(9);
+            assertThat(reader.getIdentity(identity.getPrincipalName()).getKeyVersion()).isEqualTo(1);
+        } finally {
+            writer.deleteIdentity(identity.getPrincipalName());
+        }
+    }
+
+    @Test
+    public void testLegacyLayoutMigration() throws Exception {
+        KrbIdentity identity = BackendTestUtil.createOneIdentity("legacy@EXAMPLE.COM");
+        ZooKeeper zk = new ZooKeeper("127.0.0.1:" + ZKConfKey.ZK_PORT.getDefaultValue(), 10000, event -> { });
+        try {
+            IdentityZNode legacy = new IdentityZNode(zk, identity.getPrincipalName());
+            legacy.setPrincipalName(identity.getPrincipalName());
+            legacy.setCreatedTime(identity.getCreatedTime());
+            legacy.setDisabled(identity.isDisabled());
+            legacy.setExpireTime(identity.getExpireTime());
+            legacy.setKdcFlags(identity.getKdcFlags());
+            legacy.setKeys(identity.getKeys());
+            legacy.setKeyVersion(identity.getKeyVersion());
+            legacy.setLocked(identity.isLocked());
+
+            assertThat(IdentityLayoutMigration.migrate(zk)).isEqualTo(1);
+            assertThat(zk.exists(IdentityZNodeHelper.getIdentitiesZNode(), false)).isNull();
+            assertThat(IdentityLayoutMigration.migrate(zk)).isEqualTo(0);
+        } finally {
+            zk.close();
+        }
+
+        assertThat(await(identity.getPrincipalName(), true)).isEqualTo(identity);
+        writer.deleteIdentity(identity.getPrincipalName());
+    }
+
+    private static KrbIdentity await(String principalName, boolean present) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        KrbIdentity identity = reader.getIdentity(principalName);
+        while ((identity != null) != present && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            identity = reader.getIdentity(principalName);
+        }
+        return identity;
+    }
+}
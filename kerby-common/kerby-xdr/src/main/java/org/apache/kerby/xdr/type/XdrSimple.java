@@ -103,7 +103,9 @@ public abstract class XdrSimple<T> extends AbstractXdrType<T> {
     }
 
     protected void decodeBody(ByteBuffer body) throws IOException {
-        byte[] result = body.array();
+        // Only the bytes between the position and the limit are decoded
+        byte[] result = new byte[body.remaining()];
+        body.duplicate().get(result);
         if (result.length > 0) {
             setBytes(result);
             /**Terminal step for decoding all the bytes into simple types.*/
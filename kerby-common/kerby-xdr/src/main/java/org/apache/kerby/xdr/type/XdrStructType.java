@@ -84,14 +84,13 @@ public abstract class XdrStructType extends AbstractXdrType<XdrStructType> {
     public void decode(ByteBuffer content) throws IOException {
         AbstractXdrType[] fields = getAllFields();
         Object[] value;
+        // Fields left out at the end of the content are decoded as absent
+        ByteBuffer remaining = content.duplicate();
         for (int i = 0; i < fields.length; i++) {
             if (fields[i] != null) {
-                fields[i].decode(content);
-                int length = fields[i].encodingLength();
-                byte[] array = content.array();
-                byte[] newArray = new byte[array.length - length];
-                System.arraycopy(array, length, newArray, 0, array.length - length);
-                content = ByteBuffer.wrap(newArray);
+                fields[i].decode(remaining);
+                int length = Math.min(fields[i].encodingLength(), remaining.remaining());
+                remaining.position(remaining.position() + length);
             }
         }
         this.fields = fields;
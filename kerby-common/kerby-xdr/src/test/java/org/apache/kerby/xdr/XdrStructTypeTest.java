@@ -25,6 +25,7 @@ import org.apache.kerby.xdr.util.HexUtil;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -59,6 +60,42 @@ public class XdrStructTypeTest {
                 + "00 00 00 04 6c 69 73 70 00 00 00 04 6a 6f 68 6e");
     }
 
+    @Test
+    public void testDecodingWithinLimit() throws IOException {
+        byte[] message = HexUtil.hex2bytesFriendly("0x00 00 00 09 73 69 6c 6c 79 70 72 6f 67 00 00 00 "
+                + "00 00 00 02 00 00 00 04 6c 69 73 70 00 00 00 04 6a 6f 68 6e");
+        // The message sits between unrelated bytes
+        ByteBuffer content = ByteBuffer.allocate(message.length + 8);
+        content.putInt(0x7f7f7f7f).put(message).putInt(0x7f7f7f7f);
+        content.position(4);
+        content.limit(4 + message.length);
+
+        XdrStructType decoded = new XdrStructTypeInstance();
+        decoded.decode(content);
+
+        XdrFieldInfo[] fieldInfos = decoded.getValue().getXdrFieldInfos();
+        assertThat((String) fieldInfos[0].getValue()).isEqualTo("sillyprog");
+        assertThat((String) fieldInfos[2].getValue()).isEqualTo("john");
+        assertThat(content.position()).isEqualTo(4);
+    }
+
+    @Test
+    public void testDecodingTrailingFieldLeftOut() throws IOException {
+        byte[] message = HexUtil.hex2bytesFriendly("0x00 00 00 09 73 69 6c 6c 79 70 72 6f 67 00 00 00 "
+                + "00 00 00 02 00 00 00 04 6c 69 73 70");
+        ByteBuffer content = ByteBuffer.allocate(message.length + 8);
+        content.put(message).putInt(0x7f7f7f7f).putInt(0x7f7f7f7f);
+        content.flip();
+        content.limit(message.length);
+
+        XdrStructType decoded = new XdrStructTypeInstance();
+        decoded.decode(content);
+
+        XdrFieldInfo[] fieldInfos = decoded.getValue().getXdrFieldInfos();
+        assertThat((String) fieldInfos[0].getValue()).isEqualTo("sillyprog");
+        assertThat(fieldInfos[2].getValue()).isNull();
+    }
+
     private void testDecodingWith(MyFile expectedValue, String content) throws IOException {
         XdrStructType decoded = new XdrStructTypeInstance();
 
@@ -29,14 +29,19 @@ import org.junit.Assert;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public abstract class KerbyKdcTest extends KdcTestBase {
+    private NettyKdcServerImpl nettyKdcServer;
 
     @Override
     protected void prepareKdc() throws KrbException {
-        getKdcServer().setInnerKdcImpl(
-                new NettyKdcServerImpl(getKdcServer().getKdcSetting()));
+        nettyKdcServer = new NettyKdcServerImpl(getKdcServer().getKdcSetting());
+        getKdcServer().setInnerKdcImpl(nettyKdcServer);
         super.prepareKdc();
     }
 
+    protected NettyKdcServerImpl getNettyKdcServer() {
+        return nettyKdcServer;
+    }
+
     protected void performKdcTest() throws Exception {
         TgtTicket tgt;
         SgtTicket tkt;
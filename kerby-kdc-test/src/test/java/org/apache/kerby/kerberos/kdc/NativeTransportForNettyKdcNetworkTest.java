@@ -0,0 +1,104 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kdc;
+
+import io.netty.channel.Channel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import org.apache.kerby.kerberos.kdc.identitybackend.JsonIdentityBackend;
+import org.apache.kerby.kerberos.kdc.impl.NettyKdcNetwork;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
+import org.apache.kerby.kerberos.kerb.server.KdcConfig;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigKey;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NativeTransportForNettyKdcNetworkTest extends KerbyKdcTest {
+    private static final int UDP_SOCKETS = 4;
+    private static File jsonBackendFile;
+
+    @AfterClass
+    public static void rmJsonBackendFile() {
+        if (jsonBackendFile.exists()) {
+            jsonBackendFile.delete();
+        }
+    }
+
+    @Override
+    protected boolean allowTcp() {
+        return false;
+    }
+
+    @Override
+    protected boolean allowUdp() {
+        return true;
+    }
+
+    @Override
+    protected void prepareKdc() throws KrbException {
+        super.prepareKdc();
+
+        File testDir = new File(System.getProperty("test.dir", "target"));
+        jsonBackendFile = new File(testDir, "json-backend-file");
+        String jsonBackendFileString = jsonBackendFile.getAbsolutePath();
+
+        BackendConfig backendConfig = getKdcServer().getBackendConfig();
+        backendConfig.setString(
+                JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR,
+                jsonBackendFileString);
+
+        KdcConfig kdcConfig = getKdcServer().getKdcConfig();
+        kdcConfig.setBoolean(KdcConfigKey.KDC_NATIVE_TRANSPORT, true);
+        kdcConfig.setInt(KdcConfigKey.KDC_UDP_SOCKETS, UDP_SOCKETS);
+    }
+
+    @Test
+    public void testKdc() throws Exception {
+        performKdcTest();
+    }
+
+    @Test
+    public void testTransport() {
+        NettyKdcNetwork network = getNettyKdcServer().getNetwork();
+        if (!Epoll.isAvailable()) {
+            assertThat(network.isNativeTransport()).isFalse();
+            assertThat(network.getUdpChannels()).hasSize(1);
+            return;
+        }
+
+        assertThat(network.isNativeTransport()).isTrue();
+        assertThat(network.getUdpChannels()).hasSize(UDP_SOCKETS);
+        for (Channel channel : network.getUdpChannels()) {
+            assertThat(channel).isInstanceOf(EpollDatagramChannel.class);
+            assertThat(channel.isActive()).isTrue();
+            assertThat(channel.config().getOption(EpollChannelOption.SO_REUSEPORT)).isTrue();
+            assertThat(((InetSocketAddress) channel.localAddress()).getPort())
+                    .isEqualTo(getKdcServer().getKdcSetting().getKdcUdpPort());
+        }
+    }
+
+}
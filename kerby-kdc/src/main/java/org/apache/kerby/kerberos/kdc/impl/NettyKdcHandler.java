@@ -20,14 +20,16 @@
 package org.apache.kerby.kerberos.kdc.impl;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcHandler;
+import org.apache.kerby.kerberos.kerb.type.base.KrbMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 
@@ -43,22 +45,46 @@ public class NettyKdcHandler extends ChannelInboundHandlerAdapter {
     public void channelRead(ChannelHandlerContext ctx,
                             Object msg) throws Exception {
         ByteBuf byteBuf = (ByteBuf) msg;
-        byte[] msgBytes = new byte[byteBuf.readableBytes()];
-        byteBuf.readBytes(msgBytes);
-        ByteBuffer requestMessage = ByteBuffer.wrap(msgBytes);
-        byteBuf.release();
-
         InetSocketAddress clientAddress =
                 (InetSocketAddress) ctx.channel().remoteAddress();
         boolean isTcp = true; //TODO:
         try {
-            ByteBuffer responseMessage = myKdcHandler.handleMessage(requestMessage,
+            // Decode straight from the frame, it's released once processed
+            KrbMessage krbResponse = myKdcHandler.handleRequest(byteBuf.nioBuffer(),
                     isTcp, clientAddress.getAddress());
-            ctx.writeAndFlush(Unpooled.wrappedBuffer(responseMessage));
+            ctx.writeAndFlush(encodeResponse(ctx.alloc(), krbResponse, isTcp));
         } catch (Exception e) {
             LOG.error("Error occurred while processing request:"
                     + e);
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    /**
+     * Encode the response message into a pooled direct buffer of the exact
+     * size, prefixed with the message length for TCP.
+     */
+    static ByteBuf encodeResponse(ByteBufAllocator allocator, KrbMessage krbResponse,
+                                  boolean isTcp) throws IOException {
+        int bodyLen = krbResponse.encodingLength();
+        int headerLen = 0;
+        if (isTcp) {
+            headerLen = 4;
+        }
+        ByteBuf responseBuf = allocator.directBuffer(headerLen + bodyLen);
+        try {
+            if (isTcp) {
+                responseBuf.writeInt(bodyLen);
+            }
+            ByteBuffer body = responseBuf.nioBuffer(responseBuf.writerIndex(), bodyLen);
+            krbResponse.encode(body);
+            responseBuf.writerIndex(responseBuf.writerIndex() + bodyLen);
+        } catch (IOException e) {
+            responseBuf.release();
+            throw e;
         }
+        return responseBuf;
     }
 
     /**
@@ -21,11 +21,17 @@ package org.apache.kerby.kerberos.kdc.impl;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioDatagramChannel;
@@ -34,13 +40,19 @@ import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.server.KdcConfig;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A combined and mixed network server handling UDP and TCP.
@@ -53,14 +65,45 @@ public class NettyKdcNetwork {
     private EventLoopGroup workerGroup;
     private EventLoopGroup group;
     private DefaultEventExecutorGroup executorGroup;
+    private boolean useEpoll;
+    private int udpSockets;
+    private final List<Channel> udpChannels = new ArrayList<>();
     private static final Logger LOG = LoggerFactory.getLogger(NettyKdcNetwork.class);
 
     public void init(KdcContext kdcContext) {
         this.kdcContext = kdcContext;
+        KdcConfig kdcConfig = kdcContext.getConfig();
+
+        if (kdcConfig.isKdcNativeTransportEnabled()) {
+            useEpoll = Epoll.isAvailable();
+            if (!useEpoll) {
+                LOG.warn("Native epoll transport unavailable, falling back to NIO. "
+                        + Epoll.unavailabilityCause());
+            }
+        }
+        udpSockets = 1;
+        if (useEpoll) {
+            udpSockets = Math.max(1, kdcConfig.getKdcUdpSockets());
+        }
+
         // Configure the server.
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
-        executorGroup = new DefaultEventExecutorGroup(10); //TODO: to configure.
+        bossGroup = newEventLoopGroup(1);
+        workerGroup = newEventLoopGroup(0);
+        // Requests are processed off the I/O threads, shared by TCP and UDP.
+        executorGroup = new DefaultEventExecutorGroup(kdcConfig.getKdcWorkerThreads(),
+                new DefaultThreadFactory("kdc-worker"), kdcConfig.getKdcWorkerQueueSize(),
+                RejectedExecutionHandlers.reject());
+    }
+
+    /**
+     * Create an event loop group of the configured transport.
+     * @param nThreads The number of threads, 0 for the Netty default
+     */
+    private EventLoopGroup newEventLoopGroup(int nThreads) {
+        if (useEpoll) {
+            return new EpollEventLoopGroup(nThreads);
+        }
+        return new NioEventLoopGroup(nThreads);
     }
 
     public void listen(InetSocketAddress tcpAddress,
@@ -80,8 +123,12 @@ public class NettyKdcNetwork {
 
     private void doStart() throws Exception {
         ServerBootstrap b = new ServerBootstrap();
+        if (useEpoll) {
+            b.channel(EpollServerSocketChannel.class);
+        } else {
+            b.channel(NioServerSocketChannel.class);
+        }
         b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
                 .option(ChannelOption.SO_BACKLOG, 100)
                 .handler(new LoggingHandler(LogLevel.INFO))
                 .childHandler(createChannelInitializer());
@@ -94,12 +141,44 @@ public class NettyKdcNetwork {
     }
 
     private void startUDPServer() throws InterruptedException {
-        this.group = new NioEventLoopGroup();
+        this.group = newEventLoopGroup(udpSockets);
         Bootstrap b = new Bootstrap();
-        b.group(group).channel(NioDatagramChannel.class)
+        if (useEpoll) {
+            // Bind a socket per event loop and let the kernel spread datagrams
+            b.channel(EpollDatagramChannel.class)
+                    .option(EpollChannelOption.SO_REUSEPORT, true);
+        } else {
+            b.channel(NioDatagramChannel.class);
+        }
+        b.group(group)
                 .option(ChannelOption.SO_BROADCAST, true)
-                .handler((ChannelHandler) new NettyKdcUdpServerHandler(kdcContext));
-        b.bind(udpAddress.getPort()).sync();
+                .handler((ChannelHandler) new NettyKdcUdpServerHandler(kdcContext, executorGroup));
+        for (int i = 0; i < udpSockets; i++) {
+            udpChannels.add(b.bind(udpAddress.getPort()).sync().channel());
+        }
+        LOG.info("Netty kdc network bound " + udpSockets + " UDP socket(s) using "
+                + transportName() + " transport.");
+    }
+
+    /**
+     * @return true if the native epoll transport is used, false for NIO
+     */
+    public boolean isNativeTransport() {
+        return useEpoll;
+    }
+
+    /**
+     * @return The bound UDP channels, sharing the UDP port
+     */
+    public List<Channel> getUdpChannels() {
+        return Collections.unmodifiableList(udpChannels);
+    }
+
+    private String transportName() {
+        if (useEpoll) {
+            return "epoll";
+        }
+        return "nio";
     }
 
     static class KrbMessageDecoder extends LengthFieldBasedFrameDecoder {
@@ -128,10 +207,12 @@ public class NettyKdcNetwork {
         if (udpAddress != null) {
             group.shutdownGracefully();
         }
+        executorGroup.shutdownGracefully();
 
         try {
             bossGroup.terminationFuture().sync();
             workerGroup.terminationFuture().sync();
+            executorGroup.terminationFuture().sync();
             if (udpAddress != null) {
                 group.terminationFuture().sync();
             }
@@ -19,13 +19,16 @@
  */
 package org.apache.kerby.kerberos.kdc.impl;
 
+import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
+import org.apache.kerby.kerberos.kerb.server.KdcUtil;
 import org.apache.kerby.kerberos.kerb.server.impl.AbstractInternalKdcServer;
 import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -68,9 +71,17 @@ public class NettyKdcServerImpl extends AbstractInternalKdcServer {
         LOG.info("Netty kdc server started.");
     }
 
-    private void prepareHandler() {
+    /**
+     * @return The network of the started server, null before it starts
+     */
+    public NettyKdcNetwork getNetwork() {
+        return network;
+    }
+
+    private void prepareHandler() throws KrbException {
         kdcContext = new KdcContext(getSetting());
         kdcContext.setIdentityService(getIdentityService());
+        kdcContext.setReplayCache(KdcUtil.createReplayCache(getSetting().getKdcConfig()));
         PreauthHandler preauthHandler = new PreauthHandler();
         preauthHandler.init();
         kdcContext.setPreauthHandler(preauthHandler);
@@ -98,6 +109,9 @@ public class NettyKdcServerImpl extends AbstractInternalKdcServer {
                 LOG.warn("waitForTermination interrupted");
             }
         }
+        if (kdcContext != null && kdcContext.getReplayCache() instanceof Closeable) {
+            ((Closeable) kdcContext.getReplayCache()).close();
+        }
         LOG.info("Netty kdc server stopped.");
     }
 }
@@ -20,46 +20,85 @@
 package org.apache.kerby.kerberos.kdc.impl;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcHandler;
+import org.apache.kerby.kerberos.kerb.type.base.KrbMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
 
 
+@ChannelHandler.Sharable
 public class NettyKdcUdpServerHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
     private final KdcHandler myKdcHandler;
-     private static final Logger LOG = LoggerFactory.getLogger(NettyKdcUdpServerHandler.class);
+    private final EventExecutorGroup executorGroup;
+    private static final Logger LOG = LoggerFactory.getLogger(NettyKdcUdpServerHandler.class);
 
     public NettyKdcUdpServerHandler(KdcContext kdcContext) {
+        this(kdcContext, null);
+    }
+
+    /**
+     * Constructor with kdc context and the executor group to process requests.
+     *
+     * @param kdcContext kdc context
+     * @param executorGroup The executors processing requests, so the I/O thread
+     *                      can keep receiving datagrams. Requests are processed
+     *                      directly on the I/O thread if null.
+     */
+    public NettyKdcUdpServerHandler(KdcContext kdcContext, EventExecutorGroup executorGroup) {
         this.myKdcHandler = new KdcHandler(kdcContext);
+        this.executorGroup = executorGroup;
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext channelHandlerContext,
+    protected void channelRead0(final ChannelHandlerContext channelHandlerContext,
                                 DatagramPacket datagramPacket) throws Exception {
-        ByteBuf byteBuf = datagramPacket.content();
-        byte[] msgBytes = new byte[byteBuf.readableBytes()];
-        byteBuf.readBytes(msgBytes);
-        ByteBuffer requestMessage = ByteBuffer.wrap(msgBytes);
-        InetSocketAddress clientAddress = datagramPacket.sender();
+        // Decoded straight from the received buffer, retained until processed
+        final ByteBuf byteBuf = datagramPacket.content().retain();
+        final InetSocketAddress clientAddress = datagramPacket.sender();
+
+        if (executorGroup == null) {
+            handleMessage(channelHandlerContext, byteBuf, clientAddress);
+            return;
+        }
+
+        try {
+            executorGroup.next().execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleMessage(channelHandlerContext, byteBuf, clientAddress);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            byteBuf.release();
+            // The client will retry, drop it rather than block receiving
+            LOG.warn("Too many pending requests, dropped request from " + clientAddress);
+        }
+    }
 
+    private void handleMessage(ChannelHandlerContext channelHandlerContext,
+                               ByteBuf byteBuf, InetSocketAddress clientAddress) {
         boolean isTcp = false;
         try {
-            ByteBuffer responseMessage = myKdcHandler.handleMessage(requestMessage,
+            KrbMessage krbResponse = myKdcHandler.handleRequest(byteBuf.nioBuffer(),
                     isTcp, clientAddress.getAddress());
-            channelHandlerContext.writeAndFlush(
-                    new DatagramPacket(Unpooled.wrappedBuffer(responseMessage), clientAddress));
+            channelHandlerContext.writeAndFlush(new DatagramPacket(
+                    NettyKdcHandler.encodeResponse(channelHandlerContext.alloc(), krbResponse, isTcp),
+                    clientAddress));
         } catch (Exception e) {
             LOG.error("Error occurred while processing request: "
                     + e.toString());
+        } finally {
+            byteBuf.release();
         }
     }
 
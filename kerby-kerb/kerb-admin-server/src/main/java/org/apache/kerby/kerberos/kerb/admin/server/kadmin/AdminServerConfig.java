@@ -102,4 +102,22 @@ public class AdminServerConfig extends Krb5Conf {
     public String getServerName() {
         return getString(AdminServerConfigKey.SERVER_NAME, true, KDCDEFAULT);
     }
+
+    /**
+     * Get the execution mode of admin transport handlers, "platform" for
+     * pooled threads or "virtual" for a virtual thread per transport.
+     * @return The execution mode
+     */
+    public String getAdminExecutionMode() {
+        return getString(AdminServerConfigKey.ADMIN_EXECUTION_MODE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the maximum number of admin requests processed concurrently,
+     * 0 or less for no limit.
+     * @return The maximum number of concurrent requests
+     */
+    public int getAdminMaxConcurrentRequests() {
+        return getInt(AdminServerConfigKey.ADMIN_MAX_CONCURRENT_REQUESTS, true, KDCDEFAULT);
+    }
 }
@@ -35,7 +35,9 @@ public enum AdminServerConfigKey implements ConfigKey {
     ADMIN_REALM("EXAMPLE.COM"),
     KEYTAB_FILE,
     PROTOCOL,
-    SERVER_NAME("localhost");
+    SERVER_NAME("localhost"),
+    ADMIN_EXECUTION_MODE("platform"),
+    ADMIN_MAX_CONCURRENT_REQUESTS(256);
 
     private Object defaultValue;
 
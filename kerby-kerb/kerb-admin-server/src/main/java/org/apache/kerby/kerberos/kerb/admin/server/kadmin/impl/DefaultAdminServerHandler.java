@@ -36,43 +36,57 @@ import javax.security.sasl.SaslServer;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
-import java.security.PrivilegedAction;
+import java.security.PrivilegedExceptionAction;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 public class DefaultAdminServerHandler extends AdminServerHandler implements Runnable {
     private static Logger logger = LoggerFactory.getLogger(DefaultAdminServerHandler.class);
     private final KrbTransport transport;
-    private static boolean sasl = false;
+    // A connection is served only after its own sasl negotiation completed
+    private boolean authenticated;
     private AdminServerContext adminServerContext;
 
+    private final Semaphore requestLimiter;
+
     public DefaultAdminServerHandler(AdminServerContext adminServerContext, KrbTransport transport) {
+        this(adminServerContext, transport, null);
+    }
+
+    /**
+     * Constructor with the limiter shared by handlers.
+     *
+     * @param adminServerContext admin server context
+     * @param transport The transport to serve
+     * @param requestLimiter Bounds the requests processed concurrently, null
+     *                       for no limit
+     */
+    public DefaultAdminServerHandler(AdminServerContext adminServerContext, KrbTransport transport,
+                                     Semaphore requestLimiter) {
         super(adminServerContext);
         this.transport  = transport;
         this.adminServerContext = adminServerContext;
+        this.requestLimiter = requestLimiter;
     }
 
     @Override
     public void run() {
         while (true) {
             try {
-                if (!sasl) {
-                    logger.info("Doing the sasl negotiation !!!");
-                    try {
-                        saslNegotiation();
-                    } catch (Exception e) {
-                        logger.error("With exception when sasl negotiation." + e);
-                    }
-                } else {
-                    ByteBuffer message = transport.receiveMessage();
-                    if (message == null) {
-                        logger.debug("No valid request recved. Disconnect actively");
-                        transport.release();
-                        break;
-                    }
+                ByteBuffer message = transport.receiveMessage();
+                if (message == null) {
+                    logger.debug("No valid request recved. Disconnect actively");
+                    transport.release();
+                    break;
+                }
+                if (authenticated) {
                     handleMessage(message);
+                } else if (!saslNegotiation(message)) {
+                    logger.debug("Sasl negotiation failed. Disconnect actively");
+                    transport.release();
+                    break;
                 }
             } catch (IOException e) {
                 transport.release();
@@ -86,68 +100,88 @@ public class DefaultAdminServerHandler extends AdminServerHandler implements Run
     protected void handleMessage(ByteBuffer message) {
         InetAddress clientAddress = transport.getRemoteAddress();
 
+        if (requestLimiter != null) {
+            try {
+                requestLimiter.acquire();
+            } catch (InterruptedException e) {
+                transport.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
         try {
             ByteBuffer adminResponse = handleMessage(message, clientAddress);
             transport.sendMessage(adminResponse);
         } catch (Exception e) {
             transport.release();
             logger.error("Error occured while processing request:", e);
+        } finally {
+            if (requestLimiter != null) {
+                requestLimiter.release();
+            }
         }
     }
 
-    private void saslNegotiation() throws Exception {
-
+    /**
+     * The first messages of a connection are the sasl tokens of its client,
+     * the requests follow once the negotiation completed.
+     */
+    private boolean saslNegotiation(final ByteBuffer message) {
+        logger.info("Doing the sasl negotiation !!!");
         File keytabFile = new File(adminServerContext.getConfig().getKeyTabFile());
         String principal = adminServerContext.getConfig().getProtocol() + "/"
             + adminServerContext.getConfig().getAdminHost();
 
-        Subject subject = AuthUtil.loginUsingKeytab(principal, keytabFile);
-        Subject.doAs(subject, new PrivilegedAction<Object>() {
-            @Override
-            public Object run() {
-                try {
-                    ByteBuffer message = null;
-                    try {
-                        message = transport.receiveMessage();
-                    } catch (SocketTimeoutException e) {
-                        // ignore time out
-                        return null;
-                    }
-
-                    Map<String, Object> props = new HashMap<>();
-                    props.put(Sasl.QOP, "auth-conf");
-                    props.put(Sasl.SERVER_AUTH, "true");
-
-                    String protocol = adminServerContext.getConfig().getProtocol();
-                    String serverName = adminServerContext.getConfig().getServerName();
-                    CallbackHandler callbackHandler = new SaslGssCallbackHandler();
-                    SaslServer ss = Sasl.createSaslServer("GSSAPI",
-                        protocol, serverName, props, callbackHandler);
-
-                    if (ss == null) {
-                        throw new Exception("Unable to find server implementation for: GSSAPI");
-                    }
-
-                    while (!ss.isComplete()) {
-                        int scComplete = message.getInt();
-                        if (scComplete == 0) {
-                            logger.info("sasl negotiation success!!!");
-                            sasl = true;
-                            break;
-                        }
-                        sendMessage(message, ss);
-                        if (!ss.isComplete()) {
-                            logger.info("Waiting receive message");
-                            message = transport.receiveMessage();
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("With exception when sasl negotiation. " + e);
+        try {
+            Subject subject = AuthUtil.loginUsingKeytab(principal, keytabFile);
+            authenticated = Subject.doAs(subject, new PrivilegedExceptionAction<Boolean>() {
+                @Override
+                public Boolean run() throws Exception {
+                    return negotiate(message);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("With exception when sasl negotiation. " + e);
+        }
+        return authenticated;
+    }
+
+    private boolean negotiate(ByteBuffer message) throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        props.put(Sasl.QOP, "auth-conf");
+        props.put(Sasl.SERVER_AUTH, "true");
+
+        String protocol = adminServerContext.getConfig().getProtocol();
+        String serverName = adminServerContext.getConfig().getServerName();
+        CallbackHandler callbackHandler = new SaslGssCallbackHandler();
+        SaslServer ss = Sasl.createSaslServer("GSSAPI",
+            protocol, serverName, props, callbackHandler);
+
+        if (ss == null) {
+            throw new Exception("Unable to find server implementation for: GSSAPI");
+        }
+
+        try {
+            // The last token of the client, sent once it completed, expects no reply
+            while (message.getInt() != 0) {
+                sendMessage(message, ss);
+                logger.info("Waiting receive message");
+                message = transport.receiveMessage();
+                if (message == null) {
+                    throw new IOException("Connection closed during the sasl negotiation");
                 }
-                return null;
             }
-        });
-
+            byte[] arr = new byte[message.remaining()];
+            message.get(arr);
+            ss.evaluateResponse(arr);
+            if (ss.isComplete()) {
+                logger.info("sasl negotiation success!!!");
+            }
+            return ss.isComplete();
+        } finally {
+            ss.dispose();
+        }
     }
 
     private void sendMessage(ByteBuffer message, SaslServer ss) throws IOException {
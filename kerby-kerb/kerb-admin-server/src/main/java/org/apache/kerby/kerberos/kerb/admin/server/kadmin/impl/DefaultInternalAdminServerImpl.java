@@ -19,21 +19,24 @@
  */
 package org.apache.kerby.kerberos.kerb.admin.server.kadmin.impl;
 
+import org.apache.kerby.kerberos.kerb.admin.server.kadmin.AdminServerConfig;
 import org.apache.kerby.kerberos.kerb.admin.server.kadmin.AdminServerContext;
 import org.apache.kerby.kerberos.kerb.admin.server.kadmin.AdminServerSetting;
 import org.apache.kerby.kerberos.kerb.admin.server.kadmin.AdminServerUtil;
 import org.apache.kerby.kerberos.kerb.transport.KdcNetwork;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.TransportExecutors;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * A default admin admin implementation.
  */
 public class DefaultInternalAdminServerImpl extends AbstractInternalAdminServer {
     private ExecutorService executor;
+    private Semaphore requestLimiter;
     private AdminServerContext adminContext;
     private KdcNetwork network;
 
@@ -47,13 +50,18 @@ public class DefaultInternalAdminServerImpl extends AbstractInternalAdminServer
 
         prepareHandler();
 
-        executor = Executors.newCachedThreadPool();
+        AdminServerConfig adminConfig = getSetting().getAdminServerConfig();
+        executor = TransportExecutors.newExecutor(adminConfig.getAdminExecutionMode());
+        int maxConcurrentRequests = adminConfig.getAdminMaxConcurrentRequests();
+        if (maxConcurrentRequests > 0) {
+            requestLimiter = new Semaphore(maxConcurrentRequests);
+        }
 
         network = new KdcNetwork() {
             @Override
             protected void onNewTransport(KrbTransport transport) {
                 DefaultAdminServerHandler kdcHandler = 
-                    new DefaultAdminServerHandler(adminContext, transport);
+                    new DefaultAdminServerHandler(adminContext, transport, requestLimiter);
                 executor.execute(kdcHandler);
             }
         };
@@ -25,6 +25,7 @@ import org.apache.kerby.kerberos.kerb.admin.kadmin.Kadmin;
 import org.apache.kerby.kerberos.kerb.admin.kadmin.remote.impl.DefaultInternalAdminClient;
 import org.apache.kerby.kerberos.kerb.admin.kadmin.remote.impl.InternalAdminClient;
 
+import javax.security.auth.Subject;
 import java.io.File;
 import java.util.List;
 
@@ -38,6 +39,7 @@ public class AdminClient {
     private final AdminSetting adminSetting;
 
     private InternalAdminClient innerClient;
+    private Subject subject;
 
     /**
      * Default constructor.
@@ -79,6 +81,7 @@ public class AdminClient {
         this.adminConfig = krbClient.adminConfig;
         this.adminSetting = krbClient.adminSetting;
         this.innerClient = krbClient.innerClient;
+        this.subject = krbClient.subject;
     }
 
     /**
@@ -158,6 +161,15 @@ public class AdminClient {
         innerClient.init();
     }
 
+    /**
+     * Set the login of the admin principal. Each request connection is
+     * authenticated with it by the sasl negotiation the admin server requires.
+     * @param subject The subject
+     */
+    public void setSubject(Subject subject) {
+        this.subject = subject;
+    }
+
     /**
      * Get krb client settings from options and configs.
      * @return setting
@@ -171,49 +183,49 @@ public class AdminClient {
     }
 
     public void requestAddPrincipal(String principal) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.addPrincipal(principal);
     }
 
     public void requestAddPrincipal(String principal, String password) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.addPrincipal(principal, password);
     }
 
     public void requestDeletePrincipal(String principal) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.deletePrincipal(principal);
     }
 
     public void requestRenamePrincipal(String oldPrincipal, String newPrincipal) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.renamePrincipal(oldPrincipal, newPrincipal);
     }
 
     public List<String> requestGetprincs() throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         List<String> principalLists = remote.getPrincipals();
         return principalLists;
     }
 
     public List<String> requestGetprincsWithExp(String exp) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         List<String> principalLists = remote.getPrincipals(exp);
         return principalLists;
     }
     
     public void requestExportKeytab(File keytabFile, String principal) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.exportKeytab(keytabFile, principal);
     }
 
     public void requestExportKeytab(File keytabFile, List<String> principals) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.exportKeytab(keytabFile, principals);
     }
 
     public void requestChangePassword(String principal, String newPassword) throws KrbException {
-        Kadmin remote = new RemoteKadminImpl(innerClient);
+        Kadmin remote = new RemoteKadminImpl(innerClient, subject);
         remote.changePassword(principal, newPassword);
     }
 }
@@ -31,6 +31,7 @@ import org.apache.kerby.xdr.type.XdrStructType;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -144,8 +145,13 @@ public abstract class AdminHandler {
             case GET_PRINCS_REP:
                 if (adminRequest.getAdminReq().getAdminMessageType()
                         == AdminMessageType.GET_PRINCS_REQ) {
-                    String[] temp = ((String) fieldInfos[2].getValue()).trim().split(" ");
-                    princalsList = Arrays.asList(temp);
+                    String principals = (String) fieldInfos[2].getValue();
+                    if (principals == null) {
+                        // No principal matched, the string is left out
+                        princalsList = new ArrayList<>();
+                    } else {
+                        princalsList = Arrays.asList(principals.trim().split(" "));
+                    }
                 } else {
                     throw new KrbException("Response message type error: need "
                             + AdminMessageType.GET_PRINCS_REP);
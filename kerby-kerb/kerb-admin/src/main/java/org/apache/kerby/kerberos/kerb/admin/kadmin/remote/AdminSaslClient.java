@@ -0,0 +1,112 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.admin.kadmin.remote;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+
+import javax.security.auth.Subject;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Authenticates an admin connection with SASL GSSAPI. The admin server only
+ * serves the requests of a connection after its negotiation completed, so it
+ * is done on the transport the requests are sent on.
+ */
+final class AdminSaslClient {
+    private static final byte[] EMPTY = new byte[0];
+
+    private AdminSaslClient() { }
+
+    /**
+     * Negotiate on the transport as the given subject.
+     *
+     * @param transport The connection to authenticate
+     * @param subject The login of the admin principal
+     * @param config The admin config holding the server protocol and name
+     * @throws KrbException e
+     */
+    static void negotiate(final KrbTransport transport, Subject subject,
+                          final AdminConfig config) throws KrbException {
+        try {
+            Subject.doAs(subject, new PrivilegedExceptionAction<Object>() {
+                @Override
+                public Object run() throws Exception {
+                    negotiate(transport, config);
+                    return null;
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw new KrbException("Failed to do the sasl negotiation", e.getException());
+        }
+    }
+
+    private static void negotiate(KrbTransport transport, AdminConfig config)
+        throws IOException, KrbException {
+        Map<String, String> props = new HashMap<>();
+        props.put(Sasl.QOP, "auth-conf");
+        props.put(Sasl.SERVER_AUTH, "true");
+        SaslClient saslClient = Sasl.createSaslClient(new String[]{"GSSAPI"}, null,
+            config.getProtocol(), config.getServerName(), props, null);
+        if (saslClient == null) {
+            throw new KrbException("Unable to find client implementation for: GSSAPI");
+        }
+
+        byte[] response = EMPTY;
+        if (saslClient.hasInitialResponse()) {
+            response = saslClient.evaluateChallenge(EMPTY);
+        }
+        sendMessage(response, saslClient, transport);
+
+        while (!saslClient.isComplete()) {
+            ByteBuffer message = transport.receiveMessage();
+            if (message == null) {
+                throw new IOException("Connection closed during the sasl negotiation");
+            }
+            // The server completion flag, the client decides by its own state
+            message.getInt();
+            byte[] challenge = new byte[message.remaining()];
+            message.get(challenge);
+            sendMessage(saslClient.evaluateChallenge(challenge), saslClient, transport);
+        }
+    }
+
+    private static void sendMessage(byte[] response, SaslClient saslClient,
+                                    KrbTransport transport) throws IOException {
+        // 4 is the head to go through network
+        ByteBuffer buffer = ByteBuffer.allocate(response.length + 8);
+        buffer.putInt(response.length + 4);
+        int scComplete = 1;
+        if (saslClient.isComplete()) {
+            scComplete = 0;
+        }
+        buffer.putInt(scComplete);
+        buffer.put(response);
+        buffer.flip();
+        transport.sendMessage(buffer);
+    }
+}
@@ -41,6 +41,7 @@ import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.security.auth.Subject;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -62,6 +63,18 @@ public class RemoteKadminImpl implements Kadmin {
     private KrbTransport transport;
 
     public RemoteKadminImpl(InternalAdminClient innerClient) throws KrbException {
+        this(innerClient, null);
+    }
+
+    /**
+     * Constructor authenticating the connection.
+     *
+     * @param innerClient The internal admin client
+     * @param subject The login of the admin principal to do the sasl
+     *                negotiation with, null to skip it
+     * @throws KrbException e
+     */
+    public RemoteKadminImpl(InternalAdminClient innerClient, Subject subject) throws KrbException {
         this.innerClient = innerClient;
         TransportPair tpair = null;
         try {
@@ -76,6 +89,15 @@ public class RemoteKadminImpl implements Kadmin {
         } catch (IOException e) {
             throw new KrbException("Failed to create transport", e);
         }
+        if (subject != null) {
+            try {
+                AdminSaslClient.negotiate(transport, subject,
+                    innerClient.getSetting().getAdminConfig());
+            } catch (KrbException e) {
+                transport.release();
+                throw e;
+            }
+        }
     }
 
     public InternalAdminClient getInnerClient() {
@@ -68,7 +68,8 @@ public class AdminMessageCode extends XdrStructType {
         xdrFieldInfos[2] = new XdrFieldInfo(2, XdrDataType.STRING, fields[2].getValue());
         if (paramNum == 2 && fields[3].getValue() instanceof KOptions) {
             xdrFieldInfos[3] = new XdrFieldInfo(3, XdrDataType.STRUCT, fields[3].getValue()); /////koption
-        } else if (paramNum == 2 && fields[3].getValue() instanceof String) {
+        } else if (paramNum == 2) {
+            // A null string is left out of the message, decoded as absent
             xdrFieldInfos[3] = new XdrFieldInfo(3, XdrDataType.STRING, fields[3].getValue());
         } else if (paramNum == 3) {
             xdrFieldInfos[3] = new XdrFieldInfo(3, XdrDataType.STRUCT, fields[3].getValue()); ////koption
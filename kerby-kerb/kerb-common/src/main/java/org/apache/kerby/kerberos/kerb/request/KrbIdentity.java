@@ -68,6 +68,24 @@ public class KrbIdentity {
         this.principal = principalName;
     }
 
+    /**
+     * Create a copy of the identity, which can be modified without affecting
+     * the original. The keys themselves are shared.
+     * @param identity The identity to copy
+     */
+    public KrbIdentity(KrbIdentity identity) {
+        this.principal = new PrincipalName(identity.principal.getNameStrings(),
+            identity.principal.getNameType());
+        this.principal.setRealm(identity.principal.getRealm());
+        this.keyVersion = identity.keyVersion;
+        this.kdcFlags = identity.kdcFlags;
+        this.disabled = identity.disabled;
+        this.locked = identity.locked;
+        this.expireTime = identity.expireTime;
+        this.createdTime = identity.createdTime;
+        this.keys.putAll(identity.keys);
+    }
+
     public String getPrincipalName() {
         return principal.getName();
     }
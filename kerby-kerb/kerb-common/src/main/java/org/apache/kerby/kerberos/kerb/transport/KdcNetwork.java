@@ -24,96 +24,115 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A combined and mixed network server handling UDP and TCP.
+ *
+ * Driven by NIO selectors: acceptor threads wait on the TCP server channel
+ * and the UDP channel, and accepted TCP connections are spread over reader
+ * threads that frame incoming messages. No thread polls or spins while the
+ * KDC is idle.
  */
-@SuppressWarnings("PMD")
 public abstract class KdcNetwork {
     private static final Logger LOG = LoggerFactory.getLogger(KdcNetwork.class);
     protected static final int MAX_MESSAGE_SIZE = 65507;
     private static final int KDC_TCP_TRANSPORT_TIMEOUT = 3 * 1000;
-    private static final int KDC_TCP_SERVER_TIMEOUT = 100;
-    private TransportPair tpair;
-    private boolean isStopped;
-    private ServerSocket tcpServer;
+    private static final int KDC_TCP_BACKLOG = 1024;
+    private static final int DEFAULT_ACCEPTOR_THREADS = 1;
+    private static final int DEFAULT_READER_THREADS = 2;
+
+    private int acceptorThreads = DEFAULT_ACCEPTOR_THREADS;
+    private int readerThreads = DEFAULT_READER_THREADS;
+    private volatile boolean isStopped;
+    private ServerSocketChannel tcpServer;
     private DatagramChannel udpServer;
-    private Map<InetSocketAddress, KdcUdpTransport> transports =
-            new HashMap<>();
-    private ByteBuffer recvBuffer;
+    private final List<Acceptor> acceptors = new ArrayList<>();
+    private volatile Reader[] readers = new Reader[0];
+    private final AtomicInteger nextReader = new AtomicInteger();
 
     public synchronized void init() {
+        init(DEFAULT_ACCEPTOR_THREADS, DEFAULT_READER_THREADS);
+    }
+
+    /**
+     * Init the network with the given thread numbers.
+     * @param acceptorThreads The number of threads accepting TCP connections
+     *                        and receiving UDP messages
+     * @param readerThreads The number of threads reading TCP connections
+     */
+    public synchronized void init(int acceptorThreads, int readerThreads) {
+        if (acceptorThreads < 1 || readerThreads < 1) {
+            throw new IllegalArgumentException("Thread numbers should be positive");
+        }
+        this.acceptorThreads = acceptorThreads;
+        this.readerThreads = readerThreads;
         isStopped = false;
     }
 
     public synchronized void listen(TransportPair tpair) throws IOException {
-        this.tpair = tpair;
-
         if (tpair.tcpAddress != null) {
-            tcpServer = new ServerSocket();
-            tcpServer.setSoTimeout(KDC_TCP_SERVER_TIMEOUT);
-            tcpServer.bind(tpair.tcpAddress);
+            tcpServer = ServerSocketChannel.open();
+            tcpServer.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            tcpServer.bind(tpair.tcpAddress, KDC_TCP_BACKLOG);
+            tcpServer.configureBlocking(false);
         }
 
         if (tpair.udpAddress != null) {
             udpServer = DatagramChannel.open();
-            udpServer.configureBlocking(false);
             udpServer.bind(tpair.udpAddress);
-            recvBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+            udpServer.configureBlocking(false);
         }
     }
 
-    public synchronized void start() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                KdcNetwork.this.run();
+    public synchronized void start() throws IOException {
+        if (tcpServer != null) {
+            Reader[] newReaders = new Reader[readerThreads];
+            for (int i = 0; i < readerThreads; i++) {
+                newReaders[i] = new Reader();
+                startThread(newReaders[i], "kdc-network-reader-" + i);
             }
-        }).start();
+            readers = newReaders;
+        }
+
+        for (int i = 0; i < acceptorThreads; i++) {
+            Acceptor acceptor = new Acceptor();
+            acceptors.add(acceptor);
+            startThread(acceptor, "kdc-network-acceptor-" + i);
+        }
     }
 
-    //CHECKSTYLE:OFF
-    private void run() {
-        while (true) {
-            synchronized (this) {
-                if (isStopped) {
-                    break;
-                }
-            }
+    private void startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-            if (tpair.tcpAddress != null) {
-                try {
-                    checkAndAccept();
-                } catch (SocketTimeoutException | ClosedChannelException | SocketException e) { //NOPMD
-                    //NOOP as normal
-                } catch (IOException e) {
-                    throw new RuntimeException("Error occured while checking tcp connections", e);
-                }
-            }
+    public synchronized void stop() {
+        isStopped = true;
 
-            if (tpair.udpAddress != null) {
-                try {
-                    checkUdpMessage();
-                } catch (SocketTimeoutException | ClosedChannelException | SocketException e) { //NOPMD
-                    //NOOP as normal
-                } catch (IOException e) {
-                    throw new RuntimeException("Error occured while checking udp connections", e);
-                }
-            }
+        for (Acceptor acceptor : acceptors) {
+            acceptor.close();
         }
-    }
-    //CHECKSTYLE:ON
+        acceptors.clear();
+        for (Reader reader : readers) {
+            reader.close();
+        }
+        readers = new Reader[0];
 
-    public synchronized void stop() {
         try {
             if (tcpServer != null) {
                 tcpServer.close();
@@ -125,42 +144,169 @@ public abstract class KdcNetwork {
         } catch (IOException e) {
             LOG.warn("KDC network stopping error " + e);
         }
-
-        isStopped = true;
     }
 
-    private void checkAndAccept() throws IOException {
-        if (tcpServer.isClosed()) {
+    private void accept() throws IOException {
+        SocketChannel channel = tcpServer.accept();
+        if (channel == null) {
+            return; // Taken by another acceptor
+        }
+
+        Reader[] currentReaders = readers;
+        if (currentReaders.length == 0) {
+            channel.close(); // Stopping
             return;
         }
 
-        Socket socket;
-        if ((socket = tcpServer.accept()) != null) {
-            socket.setSoTimeout(KDC_TCP_TRANSPORT_TIMEOUT);
-            KrbTransport transport = new KrbTcpTransport(socket);
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        KdcTcpTransport transport = new KdcTcpTransport(channel, KDC_TCP_TRANSPORT_TIMEOUT);
+        int index = (nextReader.getAndIncrement() & Integer.MAX_VALUE) % currentReaders.length;
+        currentReaders[index].register(transport);
+        onNewTransport(transport);
+    }
+
+    private void receive(ByteBuffer recvBuffer) throws IOException {
+        InetSocketAddress fromAddress;
+        while ((fromAddress = (InetSocketAddress) udpServer.receive(recvBuffer)) != null) {
+            recvBuffer.flip();
+            ByteBuffer message = ByteBuffer.allocate(recvBuffer.remaining());
+            message.put(recvBuffer);
+            message.flip();
+            recvBuffer.clear();
+
+            KdcUdpTransport transport = new KdcUdpTransport(udpServer, fromAddress);
+            transport.onRecvMessage(message);
             onNewTransport(transport);
         }
     }
 
-    private void checkUdpMessage() throws IOException {
-        if (!udpServer.isOpen()) {
-            return;
+    protected abstract void onNewTransport(KrbTransport transport);
+
+    /**
+     * Selector loop accepting TCP connections and receiving UDP messages.
+     */
+    private class Acceptor implements Runnable {
+        private final Selector selector;
+        private final ByteBuffer recvBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+
+        Acceptor() throws IOException {
+            selector = Selector.open();
+            if (tcpServer != null) {
+                tcpServer.register(selector, SelectionKey.OP_ACCEPT);
+            }
+            if (udpServer != null) {
+                udpServer.register(selector, SelectionKey.OP_READ);
+            }
         }
 
-        InetSocketAddress fromAddress = (InetSocketAddress) udpServer.receive(recvBuffer);
-        if (fromAddress != null) {
-            recvBuffer.flip();
-            KdcUdpTransport transport = transports.get(fromAddress);
-            if (transport == null) {
-                transport = new KdcUdpTransport(udpServer, fromAddress);
-                transport.onRecvMessage(recvBuffer);
-                onNewTransport(transport);
-            } else {
-                transport.onRecvMessage(recvBuffer);
+        @Override
+        public void run() {
+            while (!isStopped) {
+                try {
+                    selector.select();
+                    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            receive(recvBuffer);
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    if (!isStopped) {
+                        LOG.warn("Error occurred while accepting or receiving", e);
+                    }
+                }
             }
-            recvBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+        }
+
+        void close() {
+            closeSelector(selector);
         }
     }
 
-    protected abstract void onNewTransport(KrbTransport transport);
+    /**
+     * Selector loop reading accepted TCP connections.
+     */
+    private static class Reader implements Runnable {
+        private final Selector selector;
+        private final Queue<KdcTcpTransport> pending = new ConcurrentLinkedQueue<>();
+
+        Reader() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(KdcTcpTransport transport) {
+            pending.add(transport);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    LOG.warn("Error occurred while reading tcp connections", e);
+                }
+            }
+        }
+
+        private void registerPending() {
+            KdcTcpTransport transport;
+            while ((transport = pending.poll()) != null) {
+                try {
+                    transport.onRegistered(
+                        transport.getChannel().register(selector, SelectionKey.OP_READ, transport));
+                } catch (IOException e) {
+                    transport.onClosed();
+                }
+            }
+        }
+
+        private void read(SelectionKey key) {
+            KdcTcpTransport transport = (KdcTcpTransport) key.attachment();
+            boolean alive;
+            try {
+                alive = transport.onReadable();
+            } catch (IOException e) {
+                alive = false;
+            }
+            if (!alive) {
+                key.cancel();
+                transport.onClosed();
+            }
+        }
+
+        void close() {
+            closeSelector(selector);
+        }
+    }
+
+    private static void closeSelector(Selector selector) {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close selector " + e);
+        }
+    }
 }
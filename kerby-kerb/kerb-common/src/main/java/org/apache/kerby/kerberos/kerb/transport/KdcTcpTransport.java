@@ -0,0 +1,220 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KDC side implementation of {@link KrbTransport} using TCP in non-blocking
+ * mode. Bytes are read by a {@link KdcNetwork} reader thread and framed into
+ * messages here, so that handlers can still consume them by blocking
+ * {@link #receiveMessage()} calls. Reading pauses while the handler lags
+ * {@link #MAX_QUEUED_MESSAGES} messages behind, leaving the peer to TCP flow
+ * control.
+ */
+public class KdcTcpTransport extends AbstractKrbTransport {
+    private static final int MAX_MESSAGE_SIZE = 4 * 1024 * 1024;
+    static final int MAX_QUEUED_MESSAGES = 4;
+    private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final long timeout;
+    // One more slot for the EOF marker
+    private final BlockingQueue<ByteBuffer> messageQueue =
+        new LinkedBlockingQueue<>(MAX_QUEUED_MESSAGES + 1);
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer messageBuffer;
+    private SelectionKey selectionKey;
+    private boolean paused;
+    private volatile boolean closed;
+
+    public KdcTcpTransport(SocketChannel channel, long timeout) {
+        this.channel = channel;
+        this.timeout = timeout;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Set the key of the channel registered with its reader thread.
+     * @param selectionKey The selection key
+     */
+    synchronized void onRegistered(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    int queuedMessages() {
+        return messageQueue.size();
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer message) throws IOException {
+        while (message.hasRemaining()) {
+            if (channel.write(message) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * The channel is non-blocking, so wait on a private selector when the
+     * socket send buffer is full instead of spinning on write.
+     */
+    private void awaitWritable() throws IOException {
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_WRITE);
+            if (selector.select(timeout) == 0) {
+                throw new IOException("Timeout while writing to " + getRemoteAddress());
+            }
+        }
+    }
+
+    @Override
+    public ByteBuffer receiveMessage() throws IOException {
+        if (closed && messageQueue.isEmpty()) {
+            return null;
+        }
+
+        ByteBuffer message;
+        try {
+            message = messageQueue.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        if (message == EOF) {
+            return null;
+        }
+        if (message != null) {
+            resumeReading();
+        }
+        return message;
+    }
+
+    /**
+     * Stop reading the channel while the queue is full.
+     * @return true if reading was paused
+     */
+    private synchronized boolean pauseReadingIfFull() {
+        if (messageQueue.size() < MAX_QUEUED_MESSAGES) {
+            return false;
+        }
+        paused = true;
+        setInterestOps(0);
+        return true;
+    }
+
+    private synchronized void resumeReading() {
+        if (paused && messageQueue.size() < MAX_QUEUED_MESSAGES) {
+            paused = false;
+            setInterestOps(SelectionKey.OP_READ);
+            selectionKey.selector().wakeup();
+        }
+    }
+
+    private void setInterestOps(int ops) {
+        try {
+            selectionKey.interestOps(ops);
+        } catch (CancelledKeyException e) { //NOPMD
+            // Closed, the EOF marker is queued
+        }
+    }
+
+    /**
+     * Read whatever is available from the channel, queueing every complete
+     * message until the queue is full. Called by the reader thread the
+     * channel is registered with.
+     * @return false if the peer closed the connection or sent a bad message
+     * @throws IOException e
+     */
+    boolean onReadable() throws IOException {
+        while (true) {
+            if (messageBuffer == null) {
+                if (channel.read(lengthBuffer) < 0) {
+                    return false;
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return true;
+                }
+                lengthBuffer.flip();
+                int msgLen = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                if (msgLen <= 0 || msgLen > MAX_MESSAGE_SIZE) {
+                    return false;
+                }
+                messageBuffer = ByteBuffer.allocate(msgLen);
+            }
+
+            if (channel.read(messageBuffer) < 0) {
+                return false;
+            }
+            if (messageBuffer.hasRemaining()) {
+                return true;
+            }
+            messageBuffer.flip();
+            messageQueue.add(messageBuffer);
+            messageBuffer = null;
+            if (pauseReadingIfFull()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Mark the transport as closed by the peer, waking up any pending receiver.
+     */
+    void onClosed() {
+        if (!closed) {
+            closed = true;
+            messageQueue.add(EOF);
+        }
+    }
+
+    @Override
+    public boolean isTcp() {
+        return true;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    @Override
+    public void release() {
+        onClosed();
+        try {
+            channel.close();
+        } catch (IOException e) { //NOPMD
+            // NOOP
+        }
+    }
+}
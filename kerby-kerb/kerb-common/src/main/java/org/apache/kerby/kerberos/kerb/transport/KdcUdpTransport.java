@@ -33,13 +33,18 @@ import java.util.concurrent.TimeUnit;
 public class KdcUdpTransport extends KrbUdpTransport {
     private BlockingQueue<ByteBuffer> bufferQueue = new ArrayBlockingQueue<>(2);
 
+    /**
+     * @param channel The server channel, shared by all the transports and
+     *                left open when they are released
+     * @param remoteAddress The client address
+     * @throws IOException e
+     */
     public KdcUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress) throws IOException {
-        super(remoteAddress);
-        setChannel(channel);
+        super(channel, remoteAddress);
     }
 
     @Override
-    public synchronized ByteBuffer receiveMessage() throws IOException {
+    public ByteBuffer receiveMessage() throws IOException {
         long timeout = 1000; // TODO: configurable or option
         ByteBuffer message;
         try {
@@ -50,9 +55,14 @@ public class KdcUdpTransport extends KrbUdpTransport {
         return message;
     }
 
-    protected synchronized void onRecvMessage(ByteBuffer message) {
+    protected void onRecvMessage(ByteBuffer message) {
         if (message != null) {
             bufferQueue.add(message);
         }
     }
+
+    @Override
+    public void release() {
+        // The channel belongs to the server
+    }
 }
@@ -45,6 +45,17 @@ public class KrbUdpTransport
         recvBuffer = ByteBuffer.allocate(65507);
     }
 
+    /**
+     * Construct a transport over an existing channel, opening no socket and
+     * allocating no receive buffer, for subclasses receiving otherwise.
+     * @param channel The channel to send with
+     * @param remoteAddress The peer address
+     */
+    protected KrbUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress) {
+        this.channel = channel;
+        this.remoteAddress = remoteAddress;
+    }
+
     protected void setChannel(DatagramChannel channel) {
         this.channel = channel;
     }
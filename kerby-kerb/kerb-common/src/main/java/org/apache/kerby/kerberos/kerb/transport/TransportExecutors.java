@@ -0,0 +1,93 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors running transport handlers, one task per transport.
+ *
+ * In the virtual execution mode every handler runs on its own virtual
+ * thread, so idle connections parked in a blocking receive don't hold an OS
+ * thread each. Virtual threads are looked up reflectively since the code
+ * base targets older JDKs, falling back to platform threads when the
+ * running JDK lacks them.
+ */
+public final class TransportExecutors {
+    private static final Logger LOG = LoggerFactory.getLogger(TransportExecutors.class);
+
+    /**
+     * Run each handler on a pooled platform thread, the default.
+     */
+    public static final String PLATFORM_MODE = "platform";
+
+    /**
+     * Run each handler on a new virtual thread.
+     */
+    public static final String VIRTUAL_MODE = "virtual";
+
+    private TransportExecutors() { }
+
+    /**
+     * Create an executor for the given execution mode.
+     * @param executionMode The execution mode, platform or virtual
+     * @return The executor
+     */
+    public static ExecutorService newExecutor(String executionMode) {
+        if (VIRTUAL_MODE.equalsIgnoreCase(executionMode)) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+            LOG.warn("Virtual threads are not available in this JDK, using platform threads");
+        } else if (executionMode != null && !PLATFORM_MODE.equalsIgnoreCase(executionMode)) {
+            LOG.warn("Unknown execution mode " + executionMode + ", using platform threads");
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @return true if the running JDK supports virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor != null) {
+            executor.shutdown();
+            return true;
+        }
+        return false;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Missing, or still a preview feature not enabled
+            return null;
+        }
+    }
+}
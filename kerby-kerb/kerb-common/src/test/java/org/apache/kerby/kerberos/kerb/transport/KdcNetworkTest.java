@@ -0,0 +1,215 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.apache.kerby.util.NetworkUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KdcNetworkTest {
+    private KdcNetwork network;
+    private TransportPair tpair;
+    private volatile CountDownLatch consuming = new CountDownLatch(0);
+    private final BlockingQueue<KdcTcpTransport> tcpTransports = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        tpair = new TransportPair();
+        tpair.tcpAddress = new InetSocketAddress("localhost", NetworkUtil.getServerPort());
+        tpair.udpAddress = new InetSocketAddress("localhost", NetworkUtil.getServerPort());
+
+        network = new KdcNetwork() {
+            @Override
+            protected void onNewTransport(final KrbTransport transport) {
+                if (transport instanceof KdcTcpTransport) {
+                    tcpTransports.add((KdcTcpTransport) transport);
+                }
+                final CountDownLatch started = consuming;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            started.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        echo(transport);
+                    }
+                }).start();
+            }
+        };
+        network.init(2, 2);
+        network.listen(tpair);
+        network.start();
+    }
+
+    @After
+    public void tearDown() {
+        network.stop();
+    }
+
+    private static void echo(KrbTransport transport) {
+        try {
+            ByteBuffer message;
+            while ((message = transport.receiveMessage()) != null) {
+                ByteBuffer response = message;
+                if (transport.isTcp()) {
+                    response = ByteBuffer.allocate(message.remaining() + 4);
+                    response.putInt(message.remaining());
+                    response.put(message);
+                    response.flip();
+                }
+                transport.sendMessage(response);
+            }
+        } catch (Exception e) { //NOPMD
+            // Disconnected
+        } finally {
+            transport.release();
+        }
+    }
+
+    private static ByteBuffer tcpMessage(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer message = ByteBuffer.allocate(bytes.length + 4);
+        message.putInt(bytes.length);
+        message.put(bytes);
+        message.flip();
+        return message;
+    }
+
+    private static String toString(ByteBuffer message) {
+        byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        TransportPair clientPair = new TransportPair();
+        clientPair.tcpAddress = tpair.tcpAddress;
+        KrbTransport transport = new KrbNetwork().connect(clientPair);
+        try {
+            for (int i = 0; i < 3; i++) {
+                transport.sendMessage(tcpMessage("tcp request " + i));
+                assertThat(toString(transport.receiveMessage())).isEqualTo("tcp request " + i);
+            }
+        } finally {
+            transport.release();
+        }
+    }
+
+    @Test
+    public void testPipelinedTcpRequests() throws Exception {
+        consuming = new CountDownLatch(1);
+        int count = 50;
+        try (SocketChannel channel = SocketChannel.open(tpair.tcpAddress)) {
+            for (int i = 0; i < count; i++) {
+                channel.write(tcpMessage("tcp request " + i));
+            }
+
+            // Reading pauses while the handler is not consuming
+            KdcTcpTransport transport = tcpTransports.poll(5, TimeUnit.SECONDS);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (transport.queuedMessages() < KdcTcpTransport.MAX_QUEUED_MESSAGES
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertThat(transport.queuedMessages()).isEqualTo(KdcTcpTransport.MAX_QUEUED_MESSAGES);
+
+            consuming.countDown();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer length = ByteBuffer.allocate(4);
+                readFully(channel, length);
+                ByteBuffer response = ByteBuffer.allocate(length.getInt(0));
+                readFully(channel, response);
+                assertThat(toString(response)).isEqualTo("tcp request " + i);
+            }
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Closed by the server");
+            }
+        }
+        buffer.flip();
+    }
+
+    @Test
+    public void testUdp() throws Exception {
+        TransportPair clientPair = new TransportPair();
+        clientPair.udpAddress = tpair.udpAddress;
+        KrbTransport transport = new KrbNetwork().connect(clientPair);
+        try {
+            transport.sendMessage(ByteBuffer.wrap("udp request".getBytes(StandardCharsets.UTF_8)));
+            assertThat(toString(transport.receiveMessage())).isEqualTo("udp request");
+        } finally {
+            transport.release();
+        }
+    }
+
+    @Test
+    public void testManyUdpRequests() throws Exception {
+        long openFiles = openFileCount();
+        TransportPair clientPair = new TransportPair();
+        clientPair.udpAddress = tpair.udpAddress;
+        KrbTransport transport = new KrbNetwork().connect(clientPair);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                transport.sendMessage(ByteBuffer.wrap(("udp request " + i).getBytes(StandardCharsets.UTF_8)));
+                assertThat(toString(transport.receiveMessage())).isEqualTo("udp request " + i);
+            }
+        } finally {
+            transport.release();
+        }
+
+        // The server transports share the server channel, no socket per request
+        if (openFiles >= 0) {
+            assertThat(openFileCount() - openFiles).isLessThan(100);
+        }
+    }
+
+    private static long openFileCount() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof UnixOperatingSystemMXBean) {
+            return ((UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return -1;
+    }
+}
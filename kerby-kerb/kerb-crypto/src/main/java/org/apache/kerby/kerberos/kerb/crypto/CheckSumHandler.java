@@ -39,12 +39,44 @@ import org.apache.kerby.kerberos.kerb.type.base.CheckSum;
 import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
 import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Checksum handler as the highest level API for checksum stuffs defined in
  * Kerberos RFC3961. It supports all the checksum types. New checksum type
  * should be added updating this.
  */
 public class CheckSumHandler {
+    // The handlers are stateless and shared, by ordinal and by value of
+    // their checksum types, aliases sharing a handler
+    private static final CheckSumTypeHandler[] HANDLERS;
+    private static final CheckSumTypeHandler[] HANDLERS_BY_VALUE;
+
+    static {
+        CheckSumType[] types = CheckSumType.values();
+        int maxValue = 0;
+        for (CheckSumType type : types) {
+            maxValue = Math.max(maxValue, type.getValue());
+        }
+        HANDLERS = new CheckSumTypeHandler[types.length];
+        HANDLERS_BY_VALUE = new CheckSumTypeHandler[maxValue + 1];
+        Map<Class<?>, CheckSumTypeHandler> created = new HashMap<>();
+        for (CheckSumType type : types) {
+            CheckSumTypeHandler handler = createCheckSumHandler(type);
+            if (handler != null) {
+                CheckSumTypeHandler existing = created.putIfAbsent(handler.getClass(), handler);
+                if (existing != null) {
+                    handler = existing;
+                }
+            }
+            HANDLERS[type.ordinal()] = handler;
+            // A value resolves to its first type, as CheckSumType.fromValue does
+            if (type.getValue() >= 0 && CheckSumType.fromValue(type.getValue()) == type) {
+                HANDLERS_BY_VALUE[type.getValue()] = handler;
+            }
+        }
+    }
 
     public static CheckSumTypeHandler getCheckSumHandler(String cksumType) throws KrbException {
         CheckSumType eTypeEnum = CheckSumType.fromName(cksumType);
@@ -52,6 +84,9 @@ public class CheckSumHandler {
     }
 
     public static CheckSumTypeHandler getCheckSumHandler(int cksumType) throws KrbException {
+        if (cksumType >= 0 && cksumType < HANDLERS_BY_VALUE.length && HANDLERS_BY_VALUE[cksumType] != null) {
+            return HANDLERS_BY_VALUE[cksumType];
+        }
         CheckSumType eTypeEnum = CheckSumType.fromValue(cksumType);
         return getCheckSumHandler(eTypeEnum);
     }
@@ -65,11 +100,23 @@ public class CheckSumHandler {
         return getCheckSumHandler(cksumType, false);
     }
 
+    private static CheckSumTypeHandler getCheckSumHandler(CheckSumType cksumType,
+                                                          boolean check) throws KrbException {
+        CheckSumTypeHandler cksumHandler = HANDLERS[cksumType.ordinal()];
+
+        if (cksumHandler == null && !check) {
+            String message = "Unsupported checksum type: " + cksumType.name();
+            throw new KrbException(KrbErrorCode.KDC_ERR_SUMTYPE_NOSUPP, message);
+        }
+
+        return cksumHandler;
+    }
+
     /**
+     * Create the handler of a checksum type, or null if it isn't supported.
      * Ref. cksumtypes.c in MIT krb5 project.
      */
-    private static CheckSumTypeHandler getCheckSumHandler(CheckSumType cksumType,
-                                                          boolean check) throws KrbException {
+    private static CheckSumTypeHandler createCheckSumHandler(CheckSumType cksumType) {
         CheckSumTypeHandler cksumHandler = null;
         switch (cksumType) {
             case CRC32:
@@ -133,11 +180,6 @@ public class CheckSumHandler {
                 break;
         }
 
-        if (cksumHandler == null && !check) {
-            String message = "Unsupported checksum type: " + cksumType.name();
-            throw new KrbException(KrbErrorCode.KDC_ERR_SUMTYPE_NOSUPP, message);
-        }
-
         return cksumHandler;
     }
 
@@ -23,6 +23,8 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
+import java.util.Arrays;
+
 public interface EncTypeHandler extends CryptoTypeHandler {
 
     EncryptionType eType();
@@ -71,4 +73,97 @@ public interface EncTypeHandler extends CryptoTypeHandler {
 
     byte[] decryptRaw(byte[] cipher, byte[] key, byte[] ivec,
                    int usage) throws KrbException;
+
+    /**
+     * The default is for the E(Confounder | Checksum | Plaintext | Padding)
+     * layout padded to paddingSize().
+     *
+     * @param dataLen The plaintext length
+     * @return The length of the plaintext once encrypted
+     */
+    default int encryptedLength(int dataLen) {
+        int payloadLen = confounderSize() + checksumSize() + dataLen;
+        int padding = paddingSize();
+        if (padding == 0 || (payloadLen % padding) == 0) {
+            return payloadLen;
+        }
+        return payloadLen + padding - (payloadLen % padding);
+    }
+
+    /**
+     * @param cipherLen The ciphertext length
+     * @return The length of the plaintext the ciphertext decrypts to
+     */
+    default int decryptedLength(int cipherLen) {
+        return cipherLen - (confounderSize() + checksumSize());
+    }
+
+    /**
+     * Encrypt in place the plaintext in buffer[offset, offset + len). The
+     * buffer must have encryptedLength(len) bytes from the offset, which
+     * the ciphertext takes on return. The default copies the range through
+     * encrypt(byte[], byte[], int).
+     *
+     * @return The ciphertext length
+     */
+    default int encrypt(byte[] buffer, int offset, int len, byte[] key,
+                        int usage) throws KrbException {
+        byte[] cipher = encrypt(Arrays.copyOfRange(buffer, offset, offset + len), key, usage);
+        System.arraycopy(cipher, 0, buffer, offset, cipher.length);
+        return cipher.length;
+    }
+
+    default int encrypt(byte[] buffer, int offset, int len, byte[] key, byte[] ivec,
+                        int usage) throws KrbException {
+        byte[] cipher = encrypt(Arrays.copyOfRange(buffer, offset, offset + len), key, ivec, usage);
+        System.arraycopy(cipher, 0, buffer, offset, cipher.length);
+        return cipher.length;
+    }
+
+    /**
+     * Encrypt in place buffer[offset, offset + len) with no confounder
+     * nor checksum. The default copies the range through encryptRaw().
+     *
+     * @return The ciphertext length
+     */
+    default int encryptRaw(byte[] buffer, int offset, int len, byte[] key, byte[] ivec,
+                           int usage) throws KrbException {
+        byte[] cipher = encryptRaw(Arrays.copyOfRange(buffer, offset, offset + len), key, ivec, usage);
+        System.arraycopy(cipher, 0, buffer, offset, cipher.length);
+        return cipher.length;
+    }
+
+    /**
+     * Decrypt in place the ciphertext in buffer[offset, offset + len),
+     * leaving the plaintext at the offset. The default copies the range
+     * through decrypt(byte[], byte[], int).
+     *
+     * @return The plaintext length
+     */
+    default int decrypt(byte[] buffer, int offset, int len, byte[] key,
+                        int usage) throws KrbException {
+        byte[] data = decrypt(Arrays.copyOfRange(buffer, offset, offset + len), key, usage);
+        System.arraycopy(data, 0, buffer, offset, data.length);
+        return data.length;
+    }
+
+    default int decrypt(byte[] buffer, int offset, int len, byte[] key, byte[] ivec,
+                        int usage) throws KrbException {
+        byte[] data = decrypt(Arrays.copyOfRange(buffer, offset, offset + len), key, ivec, usage);
+        System.arraycopy(data, 0, buffer, offset, data.length);
+        return data.length;
+    }
+
+    /**
+     * Decrypt in place buffer[offset, offset + len), with no confounder
+     * nor checksum. The default copies the range through decryptRaw().
+     *
+     * @return The plaintext length
+     */
+    default int decryptRaw(byte[] buffer, int offset, int len, byte[] key, byte[] ivec,
+                           int usage) throws KrbException {
+        byte[] data = decryptRaw(Arrays.copyOfRange(buffer, offset, offset + len), key, ivec, usage);
+        System.arraycopy(data, 0, buffer, offset, data.length);
+        return data.length;
+    }
 }
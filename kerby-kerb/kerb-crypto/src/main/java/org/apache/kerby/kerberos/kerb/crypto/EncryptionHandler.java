@@ -38,12 +38,45 @@ import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
 import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Encryption handler as the highest level API for encryption stuffs defined in
  * Kerberos RFC3961. It supports all the encryption types. New encryption type
  * should be added updating this.
  */
 public class EncryptionHandler {
+    // The handlers are stateless and shared, by ordinal and by value of
+    // their encryption types, aliases sharing a handler
+    private static final EncTypeHandler[] HANDLERS;
+    private static final EncTypeHandler[] HANDLERS_BY_VALUE;
+
+    static {
+        EncryptionType[] types = EncryptionType.values();
+        int maxValue = 0;
+        for (EncryptionType type : types) {
+            maxValue = Math.max(maxValue, type.getValue());
+        }
+        HANDLERS = new EncTypeHandler[types.length];
+        HANDLERS_BY_VALUE = new EncTypeHandler[maxValue + 1];
+        Map<Class<?>, EncTypeHandler> created = new HashMap<>();
+        for (EncryptionType type : types) {
+            EncTypeHandler handler = createEncHandler(type);
+            if (handler != null) {
+                EncTypeHandler existing = created.putIfAbsent(handler.getClass(), handler);
+                if (existing != null) {
+                    handler = existing;
+                }
+            }
+            HANDLERS[type.ordinal()] = handler;
+            // A value resolves to its first type, as EncryptionType.fromValue does
+            if (EncryptionType.fromValue(type.getValue()) == type) {
+                HANDLERS_BY_VALUE[type.getValue()] = handler;
+            }
+        }
+    }
 
     /**
      * Get the encryption type.
@@ -75,6 +108,9 @@ public class EncryptionHandler {
      * @throws KrbException e
      */
     public static EncTypeHandler getEncHandler(int eType) throws KrbException {
+        if (eType >= 0 && eType < HANDLERS_BY_VALUE.length && HANDLERS_BY_VALUE[eType] != null) {
+            return HANDLERS_BY_VALUE[eType];
+        }
         EncryptionType eTypeEnum = EncryptionType.fromValue(eType);
         return getEncHandler(eTypeEnum);
     }
@@ -100,6 +136,23 @@ public class EncryptionHandler {
      */
     private static EncTypeHandler getEncHandler(EncryptionType eType,
                                                 boolean check) throws KrbException {
+        EncTypeHandler encHandler = HANDLERS[eType.ordinal()];
+
+        if (encHandler == null && !check) {
+            String message = "Unsupported encryption type: " + eType.name();
+            throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP, message);
+        }
+
+        return encHandler;
+    }
+
+    /**
+     * Create the handler of an encryption type.
+     *
+     * @param eType The encryption type
+     * @return The EncTypeHandler, or null if the type isn't supported
+     */
+    private static EncTypeHandler createEncHandler(EncryptionType eType) {
         EncTypeHandler encHandler = null;
 
         /**
@@ -162,11 +215,6 @@ public class EncryptionHandler {
                 break;
         }
 
-        if (encHandler == null && !check) {
-            String message = "Unsupported encryption type: " + eType.name();
-            throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP, message);
-        }
-
         return encHandler;
     }
 
@@ -182,7 +230,9 @@ public class EncryptionHandler {
     public static EncryptedData encrypt(byte[] plainText, EncryptionKey key,
                                         KeyUsage usage) throws KrbException {
         EncTypeHandler handler = getEncHandler(key.getKeyType());
-        byte[] cipher = handler.encrypt(plainText, key.getKeyData(), usage.getValue());
+        byte[] cipher = new byte[handler.encryptedLength(plainText.length)];
+        System.arraycopy(plainText, 0, cipher, 0, plainText.length);
+        handler.encrypt(cipher, 0, plainText.length, key.getKeyData(), usage.getValue());
 
         EncryptedData ed = new EncryptedData();
         ed.setCipher(cipher);
@@ -205,9 +255,59 @@ public class EncryptionHandler {
      */
     public static byte[] decrypt(byte[] data, EncryptionKey key,
                                  KeyUsage usage) throws KrbException {
+        byte[] workBuffer = data.clone();
+        int len = decrypt(workBuffer, 0, workBuffer.length, key, usage);
+        return Arrays.copyOf(workBuffer, len);
+    }
+
+    /**
+     * Encrypt in place with the encryption key and key usage.
+     *
+     * @param buffer The buffer with the plain text, having room for the
+     *               encrypted length from the offset
+     * @param offset The offset of the plain text
+     * @param len The plain text length
+     * @param key The encryption key
+     * @param usage The key usage
+     * @return The encrypted length
+     * @throws KrbException e
+     */
+    public static int encrypt(byte[] buffer, int offset, int len, EncryptionKey key,
+                              KeyUsage usage) throws KrbException {
         EncTypeHandler handler = getEncHandler(key.getKeyType());
 
-        return handler.decrypt(data, key.getKeyData(), usage.getValue());
+        return handler.encrypt(buffer, offset, len, key.getKeyData(), usage.getValue());
+    }
+
+    /**
+     * Decrypt in place with the encryption key and key usage, leaving the
+     * plain text at the offset.
+     *
+     * @param buffer The buffer with the encrypted data
+     * @param offset The offset of the encrypted data
+     * @param len The encrypted data length
+     * @param key The encryption key
+     * @param usage The key usage
+     * @return The plain text length
+     * @throws KrbException e
+     */
+    public static int decrypt(byte[] buffer, int offset, int len, EncryptionKey key,
+                              KeyUsage usage) throws KrbException {
+        EncTypeHandler handler = getEncHandler(key.getKeyType());
+
+        return handler.decrypt(buffer, offset, len, key.getKeyData(), usage.getValue());
+    }
+
+    /**
+     * Get the length of a plain text once encrypted.
+     *
+     * @param eType The encryption type
+     * @param len The plain text length
+     * @return The encrypted length
+     * @throws KrbException e
+     */
+    public static int encryptedLength(EncryptionType eType, int len) throws KrbException {
+        return getEncHandler(eType).encryptedLength(len);
     }
 
     /**
@@ -221,10 +321,7 @@ public class EncryptionHandler {
      */
     public static byte[] decrypt(EncryptedData data, EncryptionKey key,
                                  KeyUsage usage) throws KrbException {
-        EncTypeHandler handler = getEncHandler(key.getKeyType());
-
-        return handler.decrypt(data.getCipher(),
-                key.getKeyData(), usage.getValue());
+        return decrypt(data.getCipher(), key, usage);
     }
 
     /**
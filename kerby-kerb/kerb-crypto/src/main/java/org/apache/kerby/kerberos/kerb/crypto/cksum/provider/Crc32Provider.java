@@ -22,7 +22,8 @@ package org.apache.kerby.kerberos.kerb.crypto.cksum.provider;
 import org.apache.kerby.kerberos.kerb.crypto.util.Crc32;
 
 public class Crc32Provider extends AbstractHashProvider {
-    private byte[] output;
+    // Providers are shared by the handlers, each thread keeps its output
+    private final ThreadLocal<byte[]> output = new ThreadLocal<>();
 
     public Crc32Provider() {
         super(4, 1);
@@ -30,11 +31,11 @@ public class Crc32Provider extends AbstractHashProvider {
 
     @Override
     public void hash(byte[] data, int start, int size) {
-        output = Crc32.crc(data, start, size);
+        output.set(Crc32.crc(data, start, size));
     }
 
     @Override
     public byte[] output() {
-        return output.clone();
+        return output.get().clone();
     }
 }
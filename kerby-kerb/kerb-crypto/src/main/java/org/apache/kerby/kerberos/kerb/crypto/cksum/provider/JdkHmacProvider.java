@@ -0,0 +1,157 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto.cksum.provider;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.MacProvider;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HMAC over a JDK Mac, whose digests use the intrinsics of the JVM.
+ *
+ * Macs are pooled and each keeps the key it was last initialized with,
+ * so that a Mac used again with the same key, as the derived Ki and Kc
+ * mostly are, skips computing its key pads. The keys kept are zeroized
+ * when a Mac is initialized with another key or dropped.
+ */
+public final class JdkHmacProvider implements MacProvider {
+    private static final int MAX_IDLE = 4 * Runtime.getRuntime().availableProcessors();
+    private static final Map<String, JdkHmacProvider> PROVIDERS = new ConcurrentHashMap<>();
+    // The digest algorithms without a JDK Mac, to not look them up again
+    private static final Map<String, Boolean> UNSUPPORTED = new ConcurrentHashMap<>();
+
+    private final String algorithm;
+    private final int macSize;
+    private final Queue<KeyedMac> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private JdkHmacProvider(String algorithm, int macSize) {
+        this.algorithm = algorithm;
+        this.macSize = macSize;
+    }
+
+    /**
+     * @param digestAlgorithm The digest algorithm, as named for MessageDigest
+     * @return The HMAC provider of the digest, or null if the JDK has none
+     */
+    public static JdkHmacProvider forDigest(String digestAlgorithm) {
+        JdkHmacProvider provider = PROVIDERS.get(digestAlgorithm);
+        if (provider != null || UNSUPPORTED.containsKey(digestAlgorithm)) {
+            return provider;
+        }
+
+        String algorithm = "Hmac" + digestAlgorithm.replace("-", "").toUpperCase(Locale.ENGLISH);
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            provider = new JdkHmacProvider(algorithm, mac.getMacLength());
+        } catch (NoSuchAlgorithmException e) {
+            UNSUPPORTED.put(digestAlgorithm, Boolean.TRUE);
+            return null;
+        }
+        JdkHmacProvider existing = PROVIDERS.putIfAbsent(digestAlgorithm, provider);
+        if (existing != null) {
+            return existing;
+        }
+        return provider;
+    }
+
+    @Override
+    public int macSize() {
+        return macSize;
+    }
+
+    @Override
+    public byte[] mac(byte[] key, byte[] data, int start, int len) throws KrbException {
+        KeyedMac keyedMac = borrow();
+        try {
+            keyedMac.init(key);
+            keyedMac.mac.update(data, start, len);
+            return keyedMac.mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            keyedMac.clear();
+            throw new KrbException("Failed to compute " + algorithm, e);
+        } finally {
+            release(keyedMac);
+        }
+    }
+
+    private KeyedMac borrow() throws KrbException {
+        KeyedMac keyedMac = idle.poll();
+        if (keyedMac != null) {
+            idleCount.decrementAndGet();
+            return keyedMac;
+        }
+
+        try {
+            return new KeyedMac(Mac.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw new KrbException("JCE provider may not be installed. " + e.getMessage(), e);
+        }
+    }
+
+    private void release(KeyedMac keyedMac) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            idle.offer(keyedMac);
+        } else {
+            idleCount.decrementAndGet();
+            keyedMac.clear();
+        }
+    }
+
+    /**
+     * A Mac along with a copy of the key it is initialized with.
+     */
+    private final class KeyedMac {
+        private final Mac mac;
+        private byte[] key;
+
+        KeyedMac(Mac mac) {
+            this.mac = mac;
+        }
+
+        void init(byte[] newKey) throws GeneralSecurityException {
+            if (key != null && MessageDigest.isEqual(key, newKey)) {
+                return;
+            }
+            clear();
+            mac.init(new SecretKeySpec(newKey, algorithm));
+            key = newKey.clone();
+        }
+
+        void clear() {
+            if (key != null) {
+                Arrays.fill(key, (byte) 0);
+                key = null;
+            }
+        }
+    }
+}
@@ -20,25 +20,32 @@
 package org.apache.kerby.kerberos.kerb.crypto.cksum.provider;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.MacProvider;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/**
+ * Hash provider over a MessageDigest. Providers are shared by the
+ * handlers, so each thread hashes with its own digest, created on first
+ * use.
+ */
 public class MessageDigestHashProvider extends AbstractHashProvider {
-    private String algorithm;
-    protected MessageDigest messageDigest;
+    private final String algorithm;
+    private final ThreadLocal<MessageDigest> messageDigest =
+        ThreadLocal.withInitial(this::newMessageDigest);
 
     public MessageDigestHashProvider(int hashSize, int blockSize, String algorithm) {
         super(hashSize, blockSize);
         this.algorithm = algorithm;
-
-        init();
     }
 
-    @Override
-    protected void init() {
+    /**
+     * @return A new digest of the algorithm
+     */
+    protected MessageDigest newMessageDigest() {
         try {
-            messageDigest = MessageDigest.getInstance(algorithm);
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("Failed to init JCE provider", e);
         }
@@ -46,11 +53,18 @@ public class MessageDigestHashProvider extends AbstractHashProvider {
 
     @Override
     public void hash(byte[] data, int start, int len) throws KrbException {
-        messageDigest.update(data, start, len);
+        messageDigest.get().update(data, start, len);
     }
 
     @Override
     public byte[] output() {
-        return messageDigest.digest();
+        return messageDigest.get().digest();
+    }
+
+    /**
+     * @return The JDK HMAC over the digest, or null if there is none
+     */
+    public MacProvider hmacProvider() {
+        return JdkHmacProvider.forDigest(algorithm);
     }
 }
@@ -19,12 +19,15 @@
  */
 package org.apache.kerby.kerberos.kerb.crypto.enc;
 
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
 import org.apache.kerby.kerberos.kerb.crypto.AbstractCryptoTypeHandler;
 import org.apache.kerby.kerberos.kerb.crypto.EncTypeHandler;
 import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
 import org.apache.kerby.kerberos.kerb.crypto.key.KeyMaker;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
+import java.util.Arrays;
+
 public abstract class AbstractEncTypeHandler
         extends AbstractCryptoTypeHandler implements EncTypeHandler {
 
@@ -96,35 +99,69 @@ public abstract class AbstractEncTypeHandler
         return keyMaker.random2Key(randomBits);
     }
 
+    /**
+     * @param key The encryption key
+     * @return The initial cipher state when none is given
+     */
+    protected byte[] makeIv(byte[] key) {
+        return new byte[encProvider().blockSize()];
+    }
+
+    /**
+     * @return The offset of the plaintext in the encrypted layout
+     */
+    protected int dataOffset() {
+        return confounderSize() + checksumSize();
+    }
+
+    @Override
+    public int encryptedLength(int dataLen) {
+        return confounderSize() + checksumSize() + dataLen + paddingLength(dataLen);
+    }
+
+    @Override
+    public int decryptedLength(int cipherLen) {
+        return cipherLen - (confounderSize() + checksumSize());
+    }
+
     @Override
     public byte[] encrypt(byte[] data, byte[] key, int usage) throws KrbException {
-        byte[] iv = new byte[encProvider().blockSize()];
-        return encrypt(data, key, iv, usage);
+        return encrypt(data, key, makeIv(key), usage);
     }
 
     @Override
     public byte[] encrypt(byte[] data, byte[] key, byte[] iv, int usage) throws KrbException {
-        int confounderLen = confounderSize();
-        int checksumLen = checksumSize();
-        int headerLen = confounderLen + checksumLen;
-        int inputLen = data.length;
-        int paddingLen = paddingLength(inputLen);
+        byte[] workBuffer = new byte[encryptedLength(data.length)];
+        System.arraycopy(data, 0, workBuffer, dataOffset(), data.length);
+
+        encryptWith(workBuffer, 0, makeWorkLens(data.length), key, iv, usage, false);
+        return workBuffer;
+    }
 
+    @Override
+    public int encrypt(byte[] buffer, int offset, int len,
+                       byte[] key, int usage) throws KrbException {
+        return encrypt(buffer, offset, len, key, makeIv(key), usage);
+    }
+
+    @Override
+    public int encrypt(byte[] buffer, int offset, int len,
+                       byte[] key, byte[] iv, int usage) throws KrbException {
+        int workLength = encryptedLength(len);
+        checkRange(buffer, offset, len, workLength);
+        System.arraycopy(buffer, offset, buffer, offset + dataOffset(), len);
+
+        encryptWith(buffer, offset, makeWorkLens(len), key, iv, usage, false);
+        return workLength;
+    }
+
+    private int[] makeWorkLens(int inputLen) {
         /**
          *  E(Confounder | Checksum | Plaintext | Padding), or
          *  header | data | padding | trailer, where trailer may be absent
          */
-
-        int workLength = headerLen + inputLen + paddingLen;
-
-        byte[] workBuffer = new byte[workLength];
-        System.arraycopy(data, 0, workBuffer, headerLen, data.length);
-
-        int[] workLens = new int[] {confounderLen, checksumLen,
-                inputLen, paddingLen};
-
-        encryptWith(workBuffer, workLens, key, iv, usage, false);
-        return workBuffer;
+        return new int[] {confounderSize(), checksumSize(),
+                inputLen, paddingLength(inputLen)};
     }
 
     @Override
@@ -135,36 +172,71 @@ public abstract class AbstractEncTypeHandler
 
     @Override
     public byte[] encryptRaw(byte[] data, byte[] key, byte[] iv, int usage) throws KrbException {
-        int checksumLen = checksumSize();
-        int[] workLens = new int[] {0, checksumLen, data.length, 0};
-        byte[] workBuffer = new byte[data.length];
-        System.arraycopy(data, 0, workBuffer, 0, data.length);
-
-        encryptWith(workBuffer, workLens, key, iv, usage, true);
+        byte[] workBuffer = data.clone();
+        encryptRaw(workBuffer, 0, workBuffer.length, key, iv, usage);
         return workBuffer;
     }
 
-    protected void encryptWith(byte[] workBuffer, int[] workLens,
-                          byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+    @Override
+    public int encryptRaw(byte[] buffer, int offset, int len,
+                          byte[] key, byte[] iv, int usage) throws KrbException {
+        checkRange(buffer, offset, len, len);
+        int[] workLens = new int[] {0, checksumSize(), len, 0};
 
+        encryptWith(buffer, offset, workLens, key, iv, usage, true);
+        return len;
     }
 
+    /**
+     * Encrypt in place the work area of the buffer from the offset, laid
+     * out as given by the work lengths, the data being at dataOffset().
+     */
+    protected abstract void encryptWith(byte[] workBuffer, int offset, int[] workLens,
+                                        byte[] key, byte[] iv, int usage, boolean raw) throws KrbException;
+
+    /**
+     * Encrypt in place the work area from the start of the buffer.
+     */
+    protected void encryptWith(byte[] workBuffer, int[] workLens,
+                               byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+        encryptWith(workBuffer, 0, workLens, key, iv, usage, raw);
+    }
+
+    @Override
     public byte[] decrypt(byte[] cipher, byte[] key, int usage)
             throws KrbException {
-        byte[] iv = new byte[encProvider().blockSize()];
-        return decrypt(cipher, key, iv, usage);
+        return decrypt(cipher, key, makeIv(key), usage);
     }
 
+    @Override
     public byte[] decrypt(byte[] cipher, byte[] key, byte[] iv, int usage)
             throws KrbException {
+        byte[] workBuffer = cipher.clone();
+        int dataLen = decrypt(workBuffer, 0, workBuffer.length, key, iv, usage);
+        return Arrays.copyOf(workBuffer, dataLen);
+    }
 
-        int totalLen = cipher.length;
-        int confounderLen = confounderSize();
-        int checksumLen = checksumSize();
-        int dataLen = totalLen - (confounderLen + checksumLen);
+    @Override
+    public int decrypt(byte[] buffer, int offset, int len,
+                       byte[] key, int usage) throws KrbException {
+        return decrypt(buffer, offset, len, key, makeIv(key), usage);
+    }
 
-        int[] workLens = new int[] {confounderLen, checksumLen, dataLen};
-        return decryptWith(cipher, workLens, key, iv, usage, false);
+    @Override
+    public int decrypt(byte[] buffer, int offset, int len,
+                       byte[] key, byte[] iv, int usage) throws KrbException {
+        checkRange(buffer, offset, len, len);
+        int dataLen = decryptedLength(len);
+        if (dataLen < 0) {
+            Arrays.fill(buffer, offset, offset + len, (byte) 0);
+            throw new KrbException(KrbErrorCode.KRB_AP_ERR_BAD_INTEGRITY,
+                    "Cipher shorter than its header");
+        }
+
+        int[] workLens = new int[] {confounderSize(), checksumSize(), dataLen};
+        decryptWith(buffer, offset, workLens, key, iv, usage, false);
+        System.arraycopy(buffer, offset + dataOffset(), buffer, offset, dataLen);
+        return dataLen;
     }
 
     @Override
@@ -177,13 +249,59 @@ public abstract class AbstractEncTypeHandler
     @Override
     public byte[] decryptRaw(byte[] cipher, byte[] key, byte[] iv, int usage)
             throws KrbException {
-        int checksumLen = checksumSize();
-        int[] workLens = new int[] {0, checksumLen, cipher.length};
-        return decryptWith(cipher, workLens, key, iv, usage, true);
+        byte[] workBuffer = cipher.clone();
+        decryptRaw(workBuffer, 0, workBuffer.length, key, iv, usage);
+        return workBuffer;
+    }
+
+    @Override
+    public int decryptRaw(byte[] buffer, int offset, int len,
+                          byte[] key, byte[] iv, int usage) throws KrbException {
+        checkRange(buffer, offset, len, len);
+        int[] workLens = new int[] {0, checksumSize(), len};
+
+        decryptWith(buffer, offset, workLens, key, iv, usage, true);
+        return len;
     }
 
+    /**
+     * Decrypt and verify in place the work area of the buffer from the
+     * offset, leaving the data at dataOffset().
+     */
+    protected abstract void decryptWith(byte[] workBuffer, int offset, int[] workLens,
+                                        byte[] key, byte[] iv, int usage, boolean raw) throws KrbException;
+
+    /**
+     * Decrypt and verify a copy of the work buffer.
+     *
+     * @return The data, or all of the buffer when raw
+     */
     protected byte[] decryptWith(byte[] workBuffer, int[] workLens,
-                               byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
-        return null;
+                                 byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+        byte[] buffer = workBuffer.clone();
+        decryptWith(buffer, 0, workLens, key, iv, usage, raw);
+        if (raw) {
+            return buffer;
+        }
+        return Arrays.copyOfRange(buffer, dataOffset(), dataOffset() + workLens[2]);
+    }
+
+    /**
+     * Zero the work area of a buffer failing its integrity check, leaving no
+     * unverified plain text in the caller's buffer.
+     */
+    protected static void wipe(byte[] workBuffer, int offset, int[] workLens) {
+        int workLen = 0;
+        for (int len : workLens) {
+            workLen += len;
+        }
+        Arrays.fill(workBuffer, offset, offset + workLen, (byte) 0);
+    }
+
+    private static void checkRange(byte[] buffer, int offset, int len, int workLength) {
+        if (offset < 0 || len < 0 || workLength > buffer.length - offset) {
+            throw new IndexOutOfBoundsException("Buffer of " + buffer.length
+                    + " bytes can't hold " + workLength + " bytes at " + offset);
+        }
     }
 }
@@ -20,7 +20,6 @@
 package org.apache.kerby.kerberos.kerb.crypto.enc;
 
 import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Crc32Provider;
-import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
@@ -39,17 +38,9 @@ public class DesCbcCrcEnc extends DesCbcEnc {
     }
 
     @Override
-    public byte[] encrypt(byte[] data, byte[] key, int usage) throws KrbException {
+    protected byte[] makeIv(byte[] key) {
         byte[] iv = new byte[encProvider().blockSize()];
         System.arraycopy(key, 0, iv, 0, key.length);
-        return encrypt(data, key, iv, usage);
-    }
-
-    @Override
-    public byte[] decrypt(byte[] cipher, byte[] key, int usage)
-            throws KrbException {
-        byte[] iv = new byte[encProvider().blockSize()];
-        System.arraycopy(key, 0, iv, 0, key.length);
-        return decrypt(cipher, key, iv, usage);
+        return iv;
     }
 }
@@ -27,6 +27,8 @@ import org.apache.kerby.kerberos.kerb.crypto.enc.provider.DesProvider;
 import org.apache.kerby.kerberos.kerb.crypto.key.DesKeyMaker;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
+import java.util.Arrays;
+
 abstract class DesCbcEnc extends AbstractEncTypeHandler {
 
     DesCbcEnc(HashProvider hashProvider) {
@@ -57,76 +59,71 @@ abstract class DesCbcEnc extends AbstractEncTypeHandler {
     }
 
     @Override
-    protected void encryptWith(byte[] workBuffer, int[] workLens,
+    protected void encryptWith(byte[] workBuffer, int offset, int[] workLens,
                                byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         if (!raw) {
-            doEncryptWith(workBuffer, workLens, key, iv);
+            doEncryptWith(workBuffer, offset, workLens, key, iv);
         } else {
-            encProvider().encrypt(key, iv, workBuffer);
+            encProvider().encrypt(key, iv, workBuffer, offset, workLens[2]);
         }
     }
 
-    private void doEncryptWith(byte[] workBuffer, int[] workLens,
+    private void doEncryptWith(byte[] workBuffer, int offset, int[] workLens,
                                  byte[] key, byte[] iv) throws KrbException {
         int confounderLen = workLens[0];
         int checksumLen = workLens[1];
         int dataLen = workLens[2];
         int paddingLen = workLens[3];
+        int workLen = confounderLen + checksumLen + dataLen + paddingLen;
 
         // confounder
         byte[] confounder = Confounder.makeBytes(confounderLen);
-        System.arraycopy(confounder, 0, workBuffer, 0, confounderLen);
+        System.arraycopy(confounder, 0, workBuffer, offset, confounderLen);
 
-        // padding
-        for (int i = confounderLen + checksumLen + dataLen; i < paddingLen; ++i) {
-            workBuffer[i] = 0;
-        }
+        // zeroed checksum and padding
+        Arrays.fill(workBuffer, offset + confounderLen,
+                offset + confounderLen + checksumLen, (byte) 0);
+        Arrays.fill(workBuffer, offset + confounderLen + checksumLen + dataLen,
+                offset + workLen, (byte) 0);
 
         // checksum
-        hashProvider().hash(workBuffer);
+        hashProvider().hash(workBuffer, offset, workLen);
         byte[] cksum = hashProvider().output();
-        System.arraycopy(cksum, 0, workBuffer, confounderLen, checksumLen);
+        System.arraycopy(cksum, 0, workBuffer, offset + confounderLen, checksumLen);
 
-        encProvider().encrypt(key, iv, workBuffer);
+        encProvider().encrypt(key, iv, workBuffer, offset, workLen);
     }
 
     @Override
-    protected byte[] decryptWith(byte[] workBuffer, int[] workLens,
-                                 byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+    protected void decryptWith(byte[] workBuffer, int offset, int[] workLens,
+                               byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         if (!raw) {
-            return doDecryptWith(workBuffer, workLens, key, iv);
+            doDecryptWith(workBuffer, offset, workLens, key, iv);
         } else {
-            encProvider().decrypt(key, iv, workBuffer);
-            byte[] data = new byte[workBuffer.length];
-            System.arraycopy(workBuffer, 0, data, 0, data.length);
-            return data;
+            encProvider().decrypt(key, iv, workBuffer, offset, workLens[2]);
         }
     }
 
-    private byte[] doDecryptWith(byte[] workBuffer, int[] workLens,
-                                 byte[] key, byte[] iv) throws KrbException {
+    private void doDecryptWith(byte[] workBuffer, int offset, int[] workLens,
+                               byte[] key, byte[] iv) throws KrbException {
         int confounderLen = workLens[0];
         int checksumLen = workLens[1];
         int dataLen = workLens[2];
+        int workLen = confounderLen + checksumLen + dataLen;
 
-        encProvider().decrypt(key, iv, workBuffer);
+        encProvider().decrypt(key, iv, workBuffer, offset, workLen);
 
         byte[] checksum = new byte[checksumLen];
         for (int i = 0; i < checksumLen; i++) {
-            checksum[i] = workBuffer[confounderLen + i];
-            workBuffer[confounderLen + i] = 0;
+            checksum[i] = workBuffer[offset + confounderLen + i];
+            workBuffer[offset + confounderLen + i] = 0;
         }
 
-        hashProvider().hash(workBuffer);
+        hashProvider().hash(workBuffer, offset, workLen);
         byte[] newChecksum = hashProvider().output();
         if (!checksumEqual(checksum, newChecksum)) {
+            wipe(workBuffer, offset, workLens);
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_BAD_INTEGRITY);
         }
-
-        byte[] data = new byte[dataLen];
-        System.arraycopy(workBuffer, confounderLen + checksumLen,
-                data, 0, dataLen);
-
-        return data;
     }
 }
@@ -37,6 +37,9 @@ public interface EncryptProvider {
 
     void encrypt(byte[] key, byte[] cipherState, byte[] data) throws KrbException;
     void decrypt(byte[] key, byte[] cipherState, byte[] data) throws KrbException;
+    // en/decrypt data[start, start + len) in place
+    void encrypt(byte[] key, byte[] cipherState, byte[] data, int start, int len) throws KrbException;
+    void decrypt(byte[] key, byte[] cipherState, byte[] data, int start, int len) throws KrbException;
     void encrypt(byte[] key, byte[] data) throws KrbException;
     void decrypt(byte[] key, byte[] data) throws KrbException;
     byte[] cbcMac(byte[] key, byte[] iv, byte[] data) throws KrbException;
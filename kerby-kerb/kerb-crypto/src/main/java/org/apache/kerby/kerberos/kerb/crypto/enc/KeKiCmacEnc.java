@@ -58,11 +58,11 @@ public abstract class KeKiCmacEnc extends KeKiEnc {
     }
 
     @Override
-    protected byte[] makeChecksum(byte[] key, byte[] data, int hashSize)
-            throws KrbException {
+    protected byte[] makeChecksum(byte[] key, byte[] data, int start, int len,
+                                  int hashSize) throws KrbException {
 
         // generate hash
-        byte[] hash = Cmac.cmac(encProvider(), key, data);
+        byte[] hash = Cmac.cmac(encProvider(), key, data, start, len);
 
         // truncate hash
         byte[] output = new byte[hashSize];
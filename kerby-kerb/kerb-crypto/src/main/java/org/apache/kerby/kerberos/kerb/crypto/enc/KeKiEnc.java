@@ -26,6 +26,8 @@ import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
 import org.apache.kerby.kerberos.kerb.crypto.key.DkKeyMaker;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
+import java.util.Arrays;
+
 public abstract class KeKiEnc extends AbstractEncTypeHandler {
 
     public KeKiEnc(EncryptProvider encProvider,
@@ -51,7 +53,12 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
     }
 
     @Override
-    protected void encryptWith(byte[] workBuffer, int[] workLens,
+    protected int dataOffset() {
+        return confounderSize();
+    }
+
+    @Override
+    protected void encryptWith(byte[] workBuffer, int offset, int[] workLens,
                                byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         int confounderLen = workLens[0];
         int checksumLen = workLens[1];
@@ -65,45 +72,40 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         constant[3] = (byte) (usage & 0xff);
         constant[4] = (byte) 0xaa;
         
-        byte[] ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ke = ((DkKeyMaker) keyMaker()).cachedDk(key, constant);
         constant[4] = (byte) 0x55;
-        byte[] ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ki = ((DkKeyMaker) keyMaker()).cachedDk(key, constant);
 
         /**
          * Instead of E(Confounder | Checksum | Plaintext | Padding),
          * E(Confounder | Plaintext | Padding) | Checksum,
-         * so need to adjust the workBuffer arrangement
+         * the data being already after the confounder
          */
 
         if (!raw) {
-            byte[] tmpEnc = new byte[confounderLen + inputLen + paddingLen];
+            int encLen = confounderLen + inputLen + paddingLen;
+
             // confounder
             byte[] confounder = Confounder.makeBytes(confounderLen);
-            System.arraycopy(confounder, 0, tmpEnc, 0, confounderLen);
-
-            // data
-            System.arraycopy(workBuffer, confounderLen + checksumLen,
-                    tmpEnc, confounderLen, inputLen);
+            System.arraycopy(confounder, 0, workBuffer, offset, confounderLen);
 
             // padding
-            for (int i = confounderLen + inputLen; i < paddingLen; ++i) {
-                tmpEnc[i] = 0;
-            }
+            Arrays.fill(workBuffer, offset + confounderLen + inputLen,
+                    offset + encLen, (byte) 0);
 
             // checksum & encrypt
-            byte[] checksum = makeChecksum(ki, tmpEnc, checksumLen);
-            encProvider().encrypt(ke, iv, tmpEnc);
+            byte[] checksum = makeChecksum(ki, workBuffer, offset, encLen, checksumLen);
+            encProvider().encrypt(ke, iv, workBuffer, offset, encLen);
 
-            System.arraycopy(tmpEnc, 0, workBuffer, 0, tmpEnc.length);
-            System.arraycopy(checksum, 0, workBuffer, tmpEnc.length, checksum.length);
+            System.arraycopy(checksum, 0, workBuffer, offset + encLen, checksumLen);
         } else {
-            encProvider().encrypt(ke, iv, workBuffer);
+            encProvider().encrypt(ke, iv, workBuffer, offset, inputLen);
         }
     }
 
     @Override
-    protected byte[] decryptWith(byte[] workBuffer, int[] workLens,
-                                 byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+    protected void decryptWith(byte[] workBuffer, int offset, int[] workLens,
+                               byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         int confounderLen = workLens[0];
         int checksumLen = workLens[1];
         int dataLen = workLens[2];
@@ -111,36 +113,29 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         byte[] constant = new byte[5];
         BytesUtil.int2bytes(usage, constant, 0, true);
         constant[4] = (byte) 0xaa;
-        byte[] ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ke = ((DkKeyMaker) keyMaker()).cachedDk(key, constant);
         constant[4] = (byte) 0x55;
-        byte[] ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ki = ((DkKeyMaker) keyMaker()).cachedDk(key, constant);
 
         // decrypt and verify checksum
 
-        byte[] tmpEnc = new byte[confounderLen + dataLen];
-        System.arraycopy(workBuffer, 0,
-                tmpEnc, 0, confounderLen + dataLen);
+        int encLen = confounderLen + dataLen;
+        encProvider().decrypt(ke, iv, workBuffer, offset, encLen);
         if (!raw) {
-            byte[] checksum = new byte[checksumLen];
-            System.arraycopy(workBuffer, confounderLen + dataLen,
-                    checksum, 0, checksumLen);
-
-            encProvider().decrypt(ke, iv, tmpEnc);
-            byte[] newChecksum = makeChecksum(ki, tmpEnc, checksumLen);
+            byte[] newChecksum = makeChecksum(ki, workBuffer, offset, encLen, checksumLen);
 
-            if (!checksumEqual(checksum, newChecksum)) {
+            if (!checksumEqual(newChecksum, workBuffer, offset + encLen, checksumLen)) {
+                wipe(workBuffer, offset, workLens);
                 throw new KrbException(KrbErrorCode.KRB_AP_ERR_BAD_INTEGRITY);
             }
-
-            byte[] data = new byte[dataLen];
-            System.arraycopy(tmpEnc, confounderLen, data, 0, dataLen);
-            return data;
-        } else {
-            encProvider().decrypt(ke, iv, tmpEnc);
-            return tmpEnc;
         }
     }
 
-    protected abstract byte[] makeChecksum(byte[] key, byte[] data, int hashSize)
-            throws KrbException;
+    protected byte[] makeChecksum(byte[] key, byte[] data, int hashSize)
+            throws KrbException {
+        return makeChecksum(key, data, 0, data.length, hashSize);
+    }
+
+    protected abstract byte[] makeChecksum(byte[] key, byte[] data, int start, int len,
+                                           int hashSize) throws KrbException;
 }
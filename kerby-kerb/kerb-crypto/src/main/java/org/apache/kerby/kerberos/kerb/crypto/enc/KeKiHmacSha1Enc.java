@@ -53,11 +53,11 @@ public abstract class KeKiHmacSha1Enc extends KeKiEnc {
     }
 
     @Override
-    protected byte[] makeChecksum(byte[] key, byte[] data, int hashSize)
-            throws KrbException {
+    protected byte[] makeChecksum(byte[] key, byte[] data, int start, int len,
+                                  int hashSize) throws KrbException {
 
         // generate hash
-        byte[] hash = Hmac.hmac(hashProvider(), key, data);
+        byte[] hash = Hmac.hmac(hashProvider(), key, data, start, len);
 
         // truncate hash
         byte[] output = new byte[hashSize];
@@ -81,7 +81,7 @@ public class Rc4HmacEnc extends AbstractEncTypeHandler {
     }
 
     @Override
-    protected void encryptWith(byte[] workBuffer, int[] workLens,
+    protected void encryptWith(byte[] workBuffer, int offset, int[] workLens,
                                byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         if (raw) {
             throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP,
@@ -98,7 +98,7 @@ public class Rc4HmacEnc extends AbstractEncTypeHandler {
 
         // confounder
         byte[] confounder = Confounder.makeBytes(confounderLen);
-        System.arraycopy(confounder, 0, workBuffer, checksumLen, confounderLen);
+        System.arraycopy(confounder, 0, workBuffer, offset + checksumLen, confounderLen);
 
         // no padding
 
@@ -106,16 +106,13 @@ public class Rc4HmacEnc extends AbstractEncTypeHandler {
         byte[] usageKey = makeUsageKey(key, usage);
 
         byte[] checksum = Hmac.hmac(hashProvider(), usageKey, workBuffer,
-                checksumLen, confounderLen + dataLen);
+                offset + checksumLen, confounderLen + dataLen);
 
         byte[] encKey = makeEncKey(usageKey, checksum);
 
-        byte[] tmpEnc = new byte[confounderLen + dataLen];
-        System.arraycopy(workBuffer, checksumLen,
-                tmpEnc, 0, confounderLen + dataLen);
-        encProvider().encrypt(encKey, iv, tmpEnc);
-        System.arraycopy(checksum, 0, workBuffer, 0, checksumLen);
-        System.arraycopy(tmpEnc, 0, workBuffer, checksumLen, tmpEnc.length);
+        encProvider().encrypt(encKey, iv, workBuffer,
+                offset + checksumLen, confounderLen + dataLen);
+        System.arraycopy(checksum, 0, workBuffer, offset, checksumLen);
     }
 
     protected byte[] makeUsageKey(byte[] key, int usage) throws KrbException {
@@ -137,8 +134,8 @@ public class Rc4HmacEnc extends AbstractEncTypeHandler {
     }
 
     @Override
-    protected byte[] decryptWith(byte[] workBuffer, int[] workLens,
-                                 byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
+    protected void decryptWith(byte[] workBuffer, int offset, int[] workLens,
+                               byte[] key, byte[] iv, int usage, boolean raw) throws KrbException {
         if (raw) {
             throw new KrbException(KrbErrorCode.KDC_ERR_ETYPE_NOSUPP,
                     "Raw mode not supported for this encryption type");
@@ -151,24 +148,18 @@ public class Rc4HmacEnc extends AbstractEncTypeHandler {
         byte[] usageKey = makeUsageKey(key, usage);
 
         byte[] checksum = new byte[checksumLen];
-        System.arraycopy(workBuffer, 0, checksum, 0, checksumLen);
+        System.arraycopy(workBuffer, offset, checksum, 0, checksumLen);
 
         byte[] encKey = makeEncKey(usageKey, checksum);
 
-        byte[] tmpEnc = new byte[confounderLen + dataLen];
-        System.arraycopy(workBuffer, checksumLen,
-                tmpEnc, 0, confounderLen + dataLen);
-        encProvider().decrypt(encKey, iv, tmpEnc);
+        encProvider().decrypt(encKey, iv, workBuffer,
+                offset + checksumLen, confounderLen + dataLen);
 
-        byte[] newChecksum = Hmac.hmac(hashProvider(), usageKey, tmpEnc);
+        byte[] newChecksum = Hmac.hmac(hashProvider(), usageKey, workBuffer,
+                offset + checksumLen, confounderLen + dataLen);
         if (!checksumEqual(checksum, newChecksum)) {
+            wipe(workBuffer, offset, workLens);
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_BAD_INTEGRITY);
         }
-
-        byte[] data = new byte[dataLen];
-        System.arraycopy(tmpEnc, confounderLen,
-                data, 0, dataLen);
-
-        return data;
     }
 }
@@ -22,6 +22,8 @@ package org.apache.kerby.kerberos.kerb.crypto.enc.provider;
 import org.apache.kerby.kerberos.kerb.crypto.enc.EncryptProvider;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
+import java.util.Arrays;
+
 public abstract class AbstractEncryptProvider implements EncryptProvider {
     private int blockSize;
     private int keyInputSize;
@@ -58,6 +60,18 @@ public abstract class AbstractEncryptProvider implements EncryptProvider {
         doEncrypt(data, key, cipherState, false);
     }
 
+    @Override
+    public void encrypt(byte[] key, byte[] cipherState, byte[] data,
+                        int start, int len) throws KrbException {
+        doEncrypt(data, start, len, key, cipherState, true);
+    }
+
+    @Override
+    public void decrypt(byte[] key, byte[] cipherState, byte[] data,
+                        int start, int len) throws KrbException {
+        doEncrypt(data, start, len, key, cipherState, false);
+    }
+
     @Override
     public void encrypt(byte[] key, byte[] data) throws KrbException {
         byte[] cipherState = new byte[blockSize()];
@@ -72,6 +86,21 @@ public abstract class AbstractEncryptProvider implements EncryptProvider {
 
     protected abstract void doEncrypt(byte[] data, byte[] key, byte[] cipherState, boolean encrypt) throws KrbException;
 
+    /**
+     * En/decrypt a range of the data in place. Providers that can't work
+     * on a range are given a copy of it.
+     */
+    protected void doEncrypt(byte[] data, int start, int len, byte[] key,
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        if (start == 0 && len == data.length) {
+            doEncrypt(data, key, cipherState, encrypt);
+            return;
+        }
+        byte[] range = Arrays.copyOfRange(data, start, start + len);
+        doEncrypt(range, key, cipherState, encrypt);
+        System.arraycopy(range, 0, data, start, len);
+    }
+
     @Override
     public byte[] cbcMac(byte[] key, byte[] iv, byte[] data) throws KrbException {
         throw new UnsupportedOperationException();
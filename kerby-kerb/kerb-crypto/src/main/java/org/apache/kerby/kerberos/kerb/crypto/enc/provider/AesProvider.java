@@ -27,6 +27,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 public abstract class AesProvider extends AbstractEncryptProvider {
+    private static final CipherPool CIPHERS = new CipherPool("AES/CTS/NoPadding");
 
     public AesProvider(int blockSize, int keyInputSize, int keySize) {
         super(blockSize, keyInputSize, keySize);
@@ -34,29 +35,27 @@ public abstract class AesProvider extends AbstractEncryptProvider {
 
     @Override
     protected void doEncrypt(byte[] data, byte[] key,
-                                  byte[] cipherState, boolean encrypt) throws KrbException {
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("AES/CTS/NoPadding");
-        } catch (GeneralSecurityException e) {
-            KrbException ke = new KrbException("JCE provider may not be installed. "
-                    + e.getMessage());
-            ke.initCause(e);
-            throw ke;
-        }
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        doEncrypt(data, 0, data.length, key, cipherState, encrypt);
+    }
 
+    @Override
+    protected void doEncrypt(byte[] data, int start, int len, byte[] key,
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        Cipher cipher = CIPHERS.borrow();
         try {
             SecretKeySpec secretKey = new SecretKeySpec(key, "AES");
             IvParameterSpec param = new IvParameterSpec(cipherState);
 
             cipher.init(encrypt
                     ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, param);
-            byte[] output = cipher.doFinal(data);
-            System.arraycopy(output, 0, data, 0, output.length);
+            cipher.doFinal(data, start, len, data, start);
         } catch (GeneralSecurityException e) {
             KrbException ke = new KrbException(e.getMessage());
             ke.initCause(e);
             throw ke;
+        } finally {
+            CIPHERS.release(cipher);
         }
     }
 }
@@ -0,0 +1,79 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto.enc.provider;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of JCE ciphers of a transformation, so that the providers don't
+ * look up and construct a cipher for every message. A cipher is borrowed
+ * by one thread at a time and initialized again with the key and IV of
+ * each use.
+ *
+ * The pool is shared by all threads rather than per thread, as requests
+ * may be served on short lived virtual threads.
+ */
+final class CipherPool {
+    private static final int MAX_IDLE = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final String transformation;
+    private final Queue<Cipher> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    CipherPool(String transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * @return An idle cipher, or a new one
+     * @throws KrbException If the transformation isn't available
+     */
+    Cipher borrow() throws KrbException {
+        Cipher cipher = idle.poll();
+        if (cipher != null) {
+            idleCount.decrementAndGet();
+            return cipher;
+        }
+
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new KrbException("JCE provider may not be installed. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Give a cipher back to the pool, dropping it when enough are idle.
+     * @param cipher The cipher, no longer used by the caller
+     */
+    void release(Cipher cipher) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            idle.offer(cipher);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -22,14 +22,13 @@ package org.apache.kerby.kerberos.kerb.crypto.enc.provider;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
 import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.DESedeKeySpec;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
-import java.security.spec.KeySpec;
 
 public class Des3Provider extends AbstractEncryptProvider {
+    private static final CipherPool CIPHERS = new CipherPool("DESede/CBC/NoPadding");
+    private static final int DESEDE_KEY_LEN = 24;
 
     public Des3Provider() {
         super(8, 21, 24);
@@ -38,27 +37,30 @@ public class Des3Provider extends AbstractEncryptProvider {
     @Override
     protected void doEncrypt(byte[] input, byte[] key,
                              byte[] cipherState, boolean encrypt) throws KrbException {
+        doEncrypt(input, 0, input.length, key, cipherState, encrypt);
+    }
 
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("DESede/CBC/NoPadding");
-        } catch (GeneralSecurityException e) {
-            throw new KrbException("Failed to init cipher", e);
+    @Override
+    protected void doEncrypt(byte[] input, int start, int len, byte[] key,
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        // SecretKeySpec would throw an IllegalArgumentException for it
+        if (key.length < DESEDE_KEY_LEN) {
+            throw new KrbException("Invalid DESede key length " + key.length
+                + ", at least " + DESEDE_KEY_LEN + " bytes expected");
         }
 
+        Cipher cipher = CIPHERS.borrow();
         try {
             IvParameterSpec params = new IvParameterSpec(cipherState);
-            KeySpec skSpec = new DESedeKeySpec(key, 0);
-
-            SecretKeyFactory skf = SecretKeyFactory.getInstance("desede");
-            SecretKey secretKey = skf.generateSecret(skSpec);
+            SecretKeySpec secretKey = new SecretKeySpec(key, 0, DESEDE_KEY_LEN, "DESede");
 
             cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, params);
 
-            byte[] output = cipher.doFinal(input);
-            System.arraycopy(output, 0, input, 0, output.length);
+            cipher.doFinal(input, start, len, input, start);
         } catch (GeneralSecurityException e) {
             throw new KrbException("Failed to doEncrypt", e);
+        } finally {
+            CIPHERS.release(cipher);
         }
     }
 
@@ -27,6 +27,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 public class DesProvider extends AbstractEncryptProvider {
+    private static final CipherPool CIPHERS = new CipherPool("DES/CBC/NoPadding");
 
     public DesProvider() {
         super(8, 7, 8);
@@ -34,36 +35,33 @@ public class DesProvider extends AbstractEncryptProvider {
 
     @Override
     protected void doEncrypt(byte[] input, byte[] key,
-                                 byte[] cipherState, boolean encrypt) throws KrbException {
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        doEncrypt(input, 0, input.length, key, cipherState, encrypt);
+    }
 
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("DES/CBC/NoPadding");
-        } catch (GeneralSecurityException e) {
-            throw new KrbException("Failed to init cipher", e);
-        }
+    @Override
+    protected void doEncrypt(byte[] input, int start, int len, byte[] key,
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+
+        Cipher cipher = CIPHERS.borrow();
         IvParameterSpec params = new IvParameterSpec(cipherState);
         SecretKeySpec skSpec = new SecretKeySpec(key, "DES");
         try {
             cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, skSpec, params);
 
-            byte[] output = cipher.doFinal(input);
-            System.arraycopy(output, 0, input, 0, output.length);
+            cipher.doFinal(input, start, len, input, start);
         } catch (GeneralSecurityException e) {
             KrbException ke = new KrbException(e.getMessage());
             ke.initCause(e);
             throw ke;
+        } finally {
+            CIPHERS.release(cipher);
         }
     }
 
     @Override
     public byte[] cbcMac(byte[] key, byte[] cipherState, byte[] data) throws KrbException {
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("DES/CBC/NoPadding");
-        } catch (GeneralSecurityException e) {
-            throw new KrbException("Failed to init cipher", e);
-        }
+        Cipher cipher = CIPHERS.borrow();
         IvParameterSpec params = new IvParameterSpec(cipherState);
         SecretKeySpec skSpec = new SecretKeySpec(key, "DES");
 
@@ -78,6 +76,8 @@ public class DesProvider extends AbstractEncryptProvider {
             KrbException ke = new KrbException(e.getMessage());
             ke.initCause(e);
             throw ke;
+        } finally {
+            CIPHERS.release(cipher);
         }
         return output;
     }
@@ -26,6 +26,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 public class Rc4Provider extends AbstractEncryptProvider {
+    private static final CipherPool CIPHERS = new CipherPool("ARCFOUR");
 
     public Rc4Provider() {
         super(1, 16, 16);
@@ -34,16 +35,23 @@ public class Rc4Provider extends AbstractEncryptProvider {
     @Override
     protected void doEncrypt(byte[] data, byte[] key,
                              byte[] cipherState, boolean encrypt) throws KrbException {
+        doEncrypt(data, 0, data.length, key, cipherState, encrypt);
+    }
+
+    @Override
+    protected void doEncrypt(byte[] data, int start, int len, byte[] key,
+                             byte[] cipherState, boolean encrypt) throws KrbException {
+        Cipher cipher = CIPHERS.borrow();
         try {
-            Cipher cipher = Cipher.getInstance("ARCFOUR");
             SecretKeySpec secretKey = new SecretKeySpec(key, "ARCFOUR");
             cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey);
-            byte[] output = cipher.doFinal(data);
-            System.arraycopy(output, 0, data, 0, output.length);
+            cipher.doFinal(data, start, len, data, start);
         } catch (GeneralSecurityException e) {
             KrbException ke = new KrbException(e.getMessage());
             ke.initCause(e);
             throw ke;
+        } finally {
+            CIPHERS.release(cipher);
         }
     }
 }
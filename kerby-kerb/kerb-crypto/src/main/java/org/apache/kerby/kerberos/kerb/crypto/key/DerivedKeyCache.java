@@ -0,0 +1,281 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto.key;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the keys derived per message from a base key by the
+ * DK based encryption types, Ke and Ki for encrypting and Kc for keyed
+ * checksums, so that the same key and usage don't run the derivation for
+ * every message.
+ *
+ * Entries are spread over segments, each a least recently used map
+ * guarded by its own monitor. An entry keeps a copy of the base key and
+ * matches it in constant time; both keys of an entry are zeroized when it
+ * is evicted or cleared, and callers get copies of the derived keys. The
+ * entries are hashed with an HMAC under a secret drawn per process, so
+ * that their hash codes tell nothing of the keys.
+ *
+ * The cache is disabled unless enabled, as the KDC does when configured
+ * with kdc_derived_key_cache.
+ */
+public final class DerivedKeyCache {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private static final int SEGMENTS = 16;
+    private static final DerivedKeyCache INSTANCE = new DerivedKeyCache(DEFAULT_MAX_SIZE);
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+    private static final SecretKeySpec HASH_KEY = newHashKey();
+    private static final ThreadLocal<Mac> HASH_MAC = ThreadLocal.withInitial(DerivedKeyCache::newHashMac);
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile boolean enabled;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maxSize The maximum number of derived keys kept
+     */
+    private DerivedKeyCache(int maxSize) {
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * @return The cache used by the DK based encryption and checksum types
+     */
+    public static DerivedKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the cache, disabling it clears it.
+     * @param enabled Whether derived keys are cached
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Look up a derived key.
+     * @param keyMaker The key maker deriving the key
+     * @param baseKey The base key
+     * @param constant The constant of the derivation, made of the usage
+     * @return A copy of the derived key, or null if not cached
+     */
+    byte[] get(DkKeyMaker keyMaker, byte[] baseKey, byte[] constant) {
+        CacheKey key = new CacheKey(keyMaker, baseKey, constant);
+        byte[] derived = segmentOf(key).get(key);
+        if (derived == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return derived;
+    }
+
+    /**
+     * Cache a derived key, keeping copies of the keys.
+     * @param keyMaker The key maker deriving the key
+     * @param baseKey The base key
+     * @param constant The constant of the derivation
+     * @param derived The derived key
+     */
+    void put(DkKeyMaker keyMaker, byte[] baseKey, byte[] constant, byte[] derived) {
+        CacheKey key = new CacheKey(keyMaker, baseKey.clone(), constant.clone());
+        segmentOf(key).put(key, derived.clone());
+    }
+
+    /**
+     * Remove and zeroize all the derived keys.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    private Segment segmentOf(CacheKey key) {
+        int h = key.hash ^ (key.hash >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static SecretKeySpec newHashKey() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return new SecretKeySpec(secret, HASH_ALGORITHM);
+    }
+
+    private static Mac newHashMac() {
+        try {
+            Mac mac = Mac.getInstance(HASH_ALGORITHM);
+            mac.init(HASH_KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialize " + HASH_ALGORITHM, e);
+        }
+    }
+
+    /**
+     * The hash of a base key and constant, keyed by the process secret.
+     */
+    private static int keyedHash(byte[] baseKey, byte[] constant) {
+        Mac mac = HASH_MAC.get();
+        mac.update(baseKey);
+        byte[] digest = mac.doFinal(constant);
+        return ((digest[0] & 0xff) << 24) | ((digest[1] & 0xff) << 16)
+                | ((digest[2] & 0xff) << 8) | (digest[3] & 0xff);
+    }
+
+    private static void zeroize(CacheKey key, byte[] derived) {
+        Arrays.fill(key.baseKey, (byte) 0);
+        Arrays.fill(derived, (byte) 0);
+    }
+
+    /**
+     * A base key and derivation constant, along with the key maker and
+     * encryption provider classes which tell the encryption type.
+     */
+    private static final class CacheKey {
+        private final Class<?> keyMakerClass;
+        private final Class<?> providerClass;
+        private final byte[] baseKey;
+        private final byte[] constant;
+        private final int hash;
+
+        CacheKey(DkKeyMaker keyMaker, byte[] baseKey, byte[] constant) {
+            this.keyMakerClass = keyMaker.getClass();
+            this.providerClass = keyMaker.encProvider().getClass();
+            this.baseKey = baseKey;
+            this.constant = constant;
+            this.hash = (keyMakerClass.hashCode() * 31 + providerClass.hashCode()) * 31
+                    + keyedHash(baseKey, constant);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return hash == other.hash
+                    && keyMakerClass == other.keyMakerClass
+                    && providerClass == other.providerClass
+                    && Arrays.equals(constant, other.constant)
+                    && MessageDigest.isEqual(baseKey, other.baseKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Segment {
+        private final LinkedHashMap<CacheKey, byte[]> entries;
+
+        Segment(final int maxSize) {
+            entries = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true) {
+                private static final long serialVersionUID = -1830154285735427563L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> eldest) {
+                    if (size() > maxSize) {
+                        zeroize(eldest.getKey(), eldest.getValue());
+                        evictionCount.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized byte[] get(CacheKey key) {
+            byte[] derived = entries.get(key);
+            if (derived == null) {
+                return null;
+            }
+            return derived.clone();
+        }
+
+        synchronized void put(CacheKey key, byte[] derived) {
+            byte[] replaced = entries.put(key, derived);
+            if (replaced != null) {
+                // The map keeps its first key, holding its own base key copy
+                Arrays.fill(replaced, (byte) 0);
+                Arrays.fill(key.baseKey, (byte) 0);
+            }
+        }
+
+        synchronized void clear() {
+            for (Map.Entry<CacheKey, byte[]> entry : entries.entrySet()) {
+                zeroize(entry.getKey(), entry.getValue());
+            }
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -34,6 +34,28 @@ public abstract class DkKeyMaker extends AbstractKeyMaker {
         return random2Key(dr(key, constant));
     }
 
+    /**
+     * DK(Key, Constant) for the keys derived per message, looked up in the
+     * derived key cache when it's enabled.
+     * @param key The base key
+     * @param constant The constant of the derivation
+     * @return The derived key
+     * @throws KrbException e
+     */
+    public byte[] cachedDk(byte[] key, byte[] constant) throws KrbException {
+        DerivedKeyCache cache = DerivedKeyCache.getInstance();
+        if (!cache.isEnabled()) {
+            return dk(key, constant);
+        }
+
+        byte[] derived = cache.get(this, key, constant);
+        if (derived == null) {
+            derived = dk(key, constant);
+            cache.put(this, key, constant, derived);
+        }
+        return derived;
+    }
+
     /*
      * K1 = E(Key, n-fold(Constant), initial-cipher-state)
      * K2 = E(Key, K1, initial-cipher-state)
@@ -87,7 +87,7 @@ public class Cmac {
         byte[] cipherState = new byte[blockSize];
         byte[] cipher = new byte[blockSize];
         for (int i = 0; i < n - 1; i++) {
-            System.arraycopy(data, i * blockSize, cipher, 0, blockSize);
+            System.arraycopy(data, start + i * blockSize, cipher, 0, blockSize);
             encryptBlock(encProvider, key, cipherState, cipher);
             System.arraycopy(cipher, 0, cipherState, 0, blockSize);
         }
@@ -99,7 +99,7 @@ public class Cmac {
         int lastPos = (n - 1) * blockSize;
         int lastLen = lastIsComplete ? blockSize : len % blockSize;
         byte[] lastBlock = new byte[lastLen];
-        System.arraycopy(data, lastPos, lastBlock, 0, lastLen);
+        System.arraycopy(data, start + lastPos, lastBlock, 0, lastLen);
         if (lastIsComplete) {
             BytesUtil.xor(lastBlock, k1, mLast);
         } else {
@@ -20,6 +20,8 @@
 package org.apache.kerby.kerberos.kerb.crypto.util;
 
 import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.MacProvider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.MessageDigestHashProvider;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
 import java.util.Arrays;
@@ -48,8 +50,27 @@ public class Hmac {
         return hmac(hashProvider, key, data, 0, data.length);
     }
 
+    /**
+     * Compute the HMAC with the JDK Mac of the digest when there is one,
+     * over the hash provider otherwise.
+     */
     public static byte[] hmac(HashProvider hashProvider,
                               byte[] key, byte[] data, int start, int len) throws KrbException {
+        if (hashProvider instanceof MessageDigestHashProvider && key.length > 0) {
+            MacProvider macProvider = ((MessageDigestHashProvider) hashProvider).hmacProvider();
+            if (macProvider != null) {
+                return macProvider.mac(key, data, start, len);
+            }
+        }
+
+        return hashHmac(hashProvider, key, data, start, len);
+    }
+
+    /**
+     * Compute the HMAC over the hash provider. Visible for test.
+     */
+    public static byte[] hashHmac(HashProvider hashProvider,
+                                  byte[] key, byte[] data, int start, int len) throws KrbException {
 
         int blockLen = hashProvider.blockSize();
         byte[] innerPaddedKey = new byte[blockLen];
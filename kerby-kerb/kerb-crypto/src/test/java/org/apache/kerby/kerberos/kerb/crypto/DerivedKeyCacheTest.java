@@ -0,0 +1,124 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.key.DerivedKeyCache;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSum;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DerivedKeyCacheTest {
+    private static final byte[] DATA = "derived keys cache test!".getBytes(StandardCharsets.UTF_8);
+
+    private final DerivedKeyCache cache = DerivedKeyCache.getInstance();
+
+    @Before
+    public void setUp() {
+        cache.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        cache.setEnabled(false);
+    }
+
+    private static void checkEncryption(EncryptionType type, boolean encryptCached,
+                                        boolean decryptCached) throws KrbException {
+        EncryptionKey key = EncryptionHandler.random2Key(type);
+        DerivedKeyCache.getInstance().setEnabled(encryptCached);
+        EncryptedData encrypted = EncryptionHandler.encrypt(DATA, key, KeyUsage.AS_REP_ENCPART);
+        DerivedKeyCache.getInstance().setEnabled(decryptCached);
+        assertThat(EncryptionHandler.decrypt(encrypted, key, KeyUsage.AS_REP_ENCPART)).isEqualTo(DATA);
+        assertThat(EncryptionHandler.decrypt(encrypted, key, KeyUsage.AS_REP_ENCPART)).isEqualTo(DATA);
+    }
+
+    @Test
+    public void testSameKeysWithAndWithoutCache() throws KrbException {
+        EncryptionType[] types = {EncryptionType.AES128_CTS_HMAC_SHA1_96,
+            EncryptionType.AES256_CTS_HMAC_SHA1_96, EncryptionType.CAMELLIA128_CTS_CMAC,
+            EncryptionType.DES3_CBC_SHA1};
+        for (EncryptionType type : types) {
+            checkEncryption(type, true, false);
+            checkEncryption(type, false, true);
+            checkEncryption(type, true, true);
+        }
+
+        EncryptionKey key = EncryptionHandler.random2Key(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        cache.setEnabled(false);
+        CheckSum checkSum = CheckSumHandler.checksumWithKey(CheckSumType.HMAC_SHA1_96_AES128,
+            DATA, key.getKeyData(), KeyUsage.TGS_REQ_AUTH_CKSUM);
+        cache.setEnabled(true);
+        assertThat(CheckSumHandler.verifyWithKey(checkSum, DATA, key.getKeyData(),
+            KeyUsage.TGS_REQ_AUTH_CKSUM)).isTrue();
+        assertThat(CheckSumHandler.checksumWithKey(CheckSumType.HMAC_SHA1_96_AES128,
+            DATA, key.getKeyData(), KeyUsage.TGS_REQ_AUTH_CKSUM).getChecksum())
+            .isEqualTo(checkSum.getChecksum());
+    }
+
+    @Test
+    public void testHits() throws KrbException {
+        EncryptionKey key = EncryptionHandler.random2Key(EncryptionType.AES256_CTS_HMAC_SHA1_96);
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        // Ke and Ki derived once, then found by the next messages
+        EncryptedData encrypted = EncryptionHandler.encrypt(DATA, key, KeyUsage.AS_REP_ENCPART);
+        assertThat(cache.getMissCount() - misses).isEqualTo(2);
+        EncryptionHandler.encrypt(DATA, key, KeyUsage.AS_REP_ENCPART);
+        EncryptionHandler.decrypt(encrypted, key, KeyUsage.AS_REP_ENCPART);
+        assertThat(cache.getHitCount() - hits).isEqualTo(4);
+        assertThat(cache.getMissCount() - misses).isEqualTo(2);
+
+        // Another usage derives other keys
+        EncryptionHandler.encrypt(DATA, key, KeyUsage.TGS_REP_ENCPART_SESSKEY);
+        assertThat(cache.getMissCount() - misses).isEqualTo(4);
+
+        // Copies of the cached keys are handed out
+        byte[] keyData = key.getKeyData().clone();
+        EncryptionHandler.encrypt(DATA, key, KeyUsage.AS_REP_ENCPART);
+        assertThat(key.getKeyData()).isEqualTo(keyData);
+        assertThat(EncryptionHandler.decrypt(encrypted, key, KeyUsage.AS_REP_ENCPART)).isEqualTo(DATA);
+    }
+
+    @Test
+    public void testBounded() throws KrbException {
+        long evictions = cache.getEvictionCount();
+        for (int i = 0; i < DerivedKeyCache.DEFAULT_MAX_SIZE; i++) {
+            EncryptionKey key = EncryptionHandler.random2Key(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+            EncryptionHandler.encrypt(DATA, key, KeyUsage.AS_REP_ENCPART);
+        }
+        assertThat(cache.getEvictionCount() - evictions).isGreaterThan(0);
+        assertThat(cache.size()).isLessThanOrEqualTo(DerivedKeyCache.DEFAULT_MAX_SIZE);
+
+        cache.clear();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
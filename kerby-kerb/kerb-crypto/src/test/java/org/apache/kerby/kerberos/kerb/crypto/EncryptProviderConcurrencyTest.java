@@ -0,0 +1,130 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.enc.EncryptProvider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Aes128Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Aes256Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Des3Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.DesProvider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Rc4Provider;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Encrypts with the pooled JCE ciphers from many threads at once, each
+ * with its own keys, and checks the results against a single thread.
+ */
+public class EncryptProviderConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int CASES = 200;
+    private static final int ROUNDS = 5;
+
+    private static final class TestCase {
+        private final EncryptProvider provider;
+        private final byte[] key;
+        private final byte[] iv;
+        private final byte[] data;
+        private byte[] expected;
+
+        TestCase(EncryptProvider provider, Random random) {
+            this.provider = provider;
+            key = new byte[provider.keySize()];
+            random.nextBytes(key);
+            iv = new byte[provider.blockSize()];
+            random.nextBytes(iv);
+            // Whole blocks of at least two, as CBC and CTS require
+            data = new byte[16 * (2 + random.nextInt(8))];
+            random.nextBytes(data);
+        }
+
+        byte[] encrypt() throws Exception {
+            byte[] output = data.clone();
+            provider.encrypt(key, iv.clone(), output);
+            return output;
+        }
+
+        byte[] decrypt(byte[] encrypted) throws Exception {
+            byte[] output = encrypted.clone();
+            provider.decrypt(key, iv.clone(), output);
+            return output;
+        }
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        EncryptProvider[] providers = {new Aes128Provider(), new Aes256Provider(),
+            new Des3Provider(), new DesProvider(), new Rc4Provider()};
+        Random random = new Random(42);
+        final List<TestCase> cases = new ArrayList<>();
+        for (int i = 0; i < CASES; i++) {
+            TestCase testCase = new TestCase(providers[i % providers.length], random);
+            testCase.expected = testCase.encrypt();
+            assertThat(testCase.decrypt(testCase.expected)).isEqualTo(testCase.data);
+            cases.add(testCase);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int mismatches = 0;
+                        for (int round = 0; round < ROUNDS; round++) {
+                            for (int i = 0; i < CASES; i++) {
+                                TestCase testCase = cases.get((i + offset * 31) % CASES);
+                                byte[] encrypted = testCase.encrypt();
+                                if (!Arrays.equals(encrypted, testCase.expected)
+                                        || !Arrays.equals(testCase.decrypt(encrypted), testCase.data)) {
+                                    mismatches++;
+                                }
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = KrbException.class)
+    public void testDes3ShortKey() throws KrbException {
+        new Des3Provider().encrypt(new byte[21], new byte[8], new byte[16]);
+    }
+}
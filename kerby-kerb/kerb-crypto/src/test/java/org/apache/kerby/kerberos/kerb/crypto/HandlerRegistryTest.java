@@ -0,0 +1,193 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.AbstractKeyedCheckSumTypeHandler;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.ConfounderedDesCheckSum;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the handlers are shared singletons, and that sharing them across
+ * many threads gives the same results as a single thread.
+ */
+public class HandlerRegistryTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 50;
+    private static final int USAGE = 3;
+
+    private static final CheckSumType[] CKSUM_TYPES = {
+        CheckSumType.CRC32, CheckSumType.RSA_MD4, CheckSumType.RSA_MD5, CheckSumType.NIST_SHA,
+        CheckSumType.RSA_MD4_DES, CheckSumType.RSA_MD5_DES,
+        CheckSumType.HMAC_SHA1_DES3_KD, CheckSumType.HMAC_SHA1_96_AES128,
+        CheckSumType.HMAC_SHA1_96_AES256, CheckSumType.HMAC_MD5_ARCFOUR
+    };
+
+    private static final EncryptionType[] ENC_TYPES = {
+        EncryptionType.DES_CBC_CRC, EncryptionType.DES_CBC_MD5, EncryptionType.DES3_CBC_SHA1_KD,
+        EncryptionType.AES128_CTS_HMAC_SHA1_96, EncryptionType.AES256_CTS_HMAC_SHA1_96,
+        EncryptionType.ARCFOUR_HMAC
+    };
+
+    @Test
+    public void testSameHandlers() throws KrbException {
+        for (EncryptionType eType : EncryptionType.values()) {
+            if (EncryptionHandler.isImplemented(eType)) {
+                EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+                assertThat(EncryptionHandler.getEncHandler(eType)).isSameAs(handler);
+                assertThat(EncryptionHandler.getEncHandler(eType.getName())).isSameAs(handler);
+                if (EncryptionType.fromValue(eType.getValue()) == eType) {
+                    assertThat(EncryptionHandler.getEncHandler(eType.getValue())).isSameAs(handler);
+                }
+            }
+        }
+        for (CheckSumType cksumType : CheckSumType.values()) {
+            if (CheckSumHandler.isImplemented(cksumType)) {
+                CheckSumTypeHandler handler = CheckSumHandler.getCheckSumHandler(cksumType);
+                assertThat(CheckSumHandler.getCheckSumHandler(cksumType)).isSameAs(handler);
+                assertThat(CheckSumHandler.getCheckSumHandler(cksumType.getName())).isSameAs(handler);
+                if (CheckSumType.fromValue(cksumType.getValue()) == cksumType) {
+                    assertThat(CheckSumHandler.getCheckSumHandler(cksumType.getValue())).isSameAs(handler);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAliasesShareHandler() throws KrbException {
+        assertThat(EncryptionHandler.getEncHandler(EncryptionType.RC4_HMAC))
+            .isSameAs(EncryptionHandler.getEncHandler(EncryptionType.ARCFOUR_HMAC));
+        assertThat(EncryptionHandler.getEncHandler(EncryptionType.DES3_HMAC_SHA1))
+            .isSameAs(EncryptionHandler.getEncHandler(EncryptionType.DES3_CBC_SHA1));
+        assertThat(CheckSumHandler.getCheckSumHandler(CheckSumType.HMAC_SHA1_DES3))
+            .isSameAs(CheckSumHandler.getCheckSumHandler(CheckSumType.HMAC_SHA1_DES3_KD));
+    }
+
+    @Test
+    public void testUnsupported() {
+        try {
+            EncryptionHandler.getEncHandler(EncryptionType.NONE);
+            fail("Expected an unsupported encryption type");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains("Unsupported encryption type");
+        }
+        try {
+            CheckSumHandler.getCheckSumHandler(CheckSumType.NONE);
+            fail("Expected an unsupported checksum type");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains("Unsupported checksum type");
+        }
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        Random random = new Random(42);
+        final byte[] data = new byte[100];
+        random.nextBytes(data);
+
+        final List<byte[]> keys = new ArrayList<>();
+        final List<byte[]> expected = new ArrayList<>();
+        for (CheckSumType cksumType : CKSUM_TYPES) {
+            CheckSumTypeHandler handler = CheckSumHandler.getCheckSumHandler(cksumType);
+            // The confoundered DES checksums take single DES keys
+            byte[] key = new byte[Math.max(handler.keySize(), 8)];
+            random.nextBytes(key);
+            keys.add(key);
+            expected.add(checksum(handler, data, key));
+        }
+        final List<byte[]> encKeys = new ArrayList<>();
+        for (EncryptionType eType : ENC_TYPES) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            byte[] randomBits = new byte[handler.keyInputSize()];
+            random.nextBytes(randomBits);
+            encKeys.add(handler.random2Key(randomBits));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int mismatches = 0;
+                        for (int round = 0; round < ROUNDS; round++) {
+                            int i = (round + offset) % CKSUM_TYPES.length;
+                            CheckSumTypeHandler cksumHandler =
+                                CheckSumHandler.getCheckSumHandler(CKSUM_TYPES[i]);
+                            byte[] cksum = checksum(cksumHandler, data, keys.get(i));
+                            // Confoundered checksums differ each time, so only verify them
+                            boolean same = cksumHandler instanceof ConfounderedDesCheckSum
+                                || Arrays.equals(cksum, expected.get(i));
+                            if (!same || !verify(cksumHandler, data, keys.get(i), cksum)) {
+                                mismatches++;
+                            }
+
+                            int j = (round + offset) % ENC_TYPES.length;
+                            EncTypeHandler encHandler = EncryptionHandler.getEncHandler(ENC_TYPES[j].getValue());
+                            byte[] cipher = encHandler.encrypt(data, encKeys.get(j), USAGE);
+                            byte[] plain = encHandler.decrypt(cipher, encKeys.get(j), USAGE);
+                            if (!Arrays.equals(Arrays.copyOf(plain, data.length), data)) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] checksum(CheckSumTypeHandler handler, byte[] data,
+                                   byte[] key) throws KrbException {
+        if (handler instanceof AbstractKeyedCheckSumTypeHandler) {
+            return handler.checksumWithKey(data, key, USAGE);
+        }
+        return handler.checksum(data);
+    }
+
+    private static boolean verify(CheckSumTypeHandler handler, byte[] data,
+                                  byte[] key, byte[] cksum) throws KrbException {
+        if (handler instanceof AbstractKeyedCheckSumTypeHandler) {
+            return handler.verifyWithKey(data, key, USAGE, cksum);
+        }
+        return handler.verify(data, cksum);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Md4Provider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Md5Provider;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.provider.Sha1Provider;
+import org.apache.kerby.kerberos.kerb.crypto.util.Hmac;
+import org.apache.kerby.util.HexUtil;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the HMAC over JDK Macs against RFC 2202 and the HMAC over hash
+ * providers.
+ */
+public class HmacTest {
+
+    private static void checkVector(HashProvider hashProvider, byte[] key,
+                                    String data, String expected) throws Exception {
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        assertThat(HexUtil.bytesToHex(Hmac.hmac(hashProvider, key, bytes)))
+            .isEqualToIgnoringCase(expected);
+        assertThat(HexUtil.bytesToHex(Hmac.hashHmac(hashProvider, key, bytes, 0, bytes.length)))
+            .isEqualToIgnoringCase(expected);
+    }
+
+    @Test
+    public void testRfc2202Vectors() throws Exception {
+        byte[] key = new byte[20];
+        Arrays.fill(key, (byte) 0x0b);
+        checkVector(new Sha1Provider(), key, "Hi There",
+            "b617318655057264e28bc0b6fb378c8ef146be00");
+        checkVector(new Sha1Provider(), "Jefe".getBytes(StandardCharsets.US_ASCII),
+            "what do ya want for nothing?", "effcdf6ae5eb2fa2d27416d5f184df9c259a7c79");
+
+        checkVector(new Md5Provider(), Arrays.copyOf(key, 16), "Hi There",
+            "9294727a3638bb1c13f48ef8158bfc9d");
+        checkVector(new Md5Provider(), "Jefe".getBytes(StandardCharsets.US_ASCII),
+            "what do ya want for nothing?", "750c783e6ab0b503eaa86e310a5db738");
+    }
+
+    @Test
+    public void testSameAsHashHmac() throws Exception {
+        HashProvider[] hashProviders = {new Sha1Provider(), new Md5Provider(), new Md4Provider()};
+        Random random = new Random(7);
+        byte[][] keys = new byte[4][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new byte[16 + 8 * (i % 3)];
+            random.nextBytes(keys[i]);
+        }
+
+        // Alternate keys, so that pooled Macs are used with new and kept keys
+        for (int i = 0; i < 200; i++) {
+            HashProvider hashProvider = hashProviders[i % hashProviders.length];
+            byte[] key = keys[random.nextInt(keys.length)];
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+            int start = random.nextInt(data.length + 1);
+            int len = data.length - start;
+
+            assertThat(Hmac.hmac(hashProvider, key, data, start, len))
+                .isEqualTo(Hmac.hashHmac(hashProvider, key, data, start, len));
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.cksum.HashProvider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.EncryptProvider;
+import org.apache.kerby.kerberos.kerb.type.base.CheckSumType;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Encrypts and decrypts in place at an offset of a larger buffer, and
+ * checks the results against the array API.
+ */
+public class InPlaceEncryptionTest {
+    private static final int USAGE = 7;
+    private static final int OFFSET = 5;
+    private static final byte SENTINEL = (byte) 0x5a;
+
+    private static final EncryptionType[] ENC_TYPES = {
+        EncryptionType.DES_CBC_CRC, EncryptionType.DES_CBC_MD4, EncryptionType.DES_CBC_MD5,
+        EncryptionType.DES3_CBC_SHA1_KD, EncryptionType.AES128_CTS_HMAC_SHA1_96,
+        EncryptionType.AES256_CTS_HMAC_SHA1_96, EncryptionType.CAMELLIA128_CTS_CMAC,
+        EncryptionType.CAMELLIA256_CTS_CMAC, EncryptionType.ARCFOUR_HMAC, EncryptionType.ARCFOUR_HMAC_EXP
+    };
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testInPlace() throws KrbException {
+        for (EncryptionType eType : ENC_TYPES) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            byte[] key = makeKey(handler);
+            for (int dataLen : new int[] {0, 1, 16, 17, 100}) {
+                byte[] data = new byte[dataLen];
+                random.nextBytes(data);
+
+                int encryptedLen = handler.encryptedLength(dataLen);
+                byte[] buffer = new byte[OFFSET + encryptedLen + OFFSET];
+                Arrays.fill(buffer, SENTINEL);
+                System.arraycopy(data, 0, buffer, OFFSET, dataLen);
+                assertThat(handler.encrypt(buffer, OFFSET, dataLen, key, USAGE)).isEqualTo(encryptedLen);
+                assertSentinels(buffer, OFFSET + encryptedLen);
+
+                byte[] cipher = Arrays.copyOfRange(buffer, OFFSET, OFFSET + encryptedLen);
+                assertThat(cipher.length).isEqualTo(handler.encrypt(data, key, USAGE).length);
+                byte[] plain = handler.decrypt(cipher, key, USAGE);
+                assertThat(plain.length).isEqualTo(handler.decryptedLength(encryptedLen));
+                assertThat(Arrays.copyOf(plain, dataLen)).as(eType.getName()).isEqualTo(data);
+
+                cipher = handler.encrypt(data, key, USAGE);
+                Arrays.fill(buffer, SENTINEL);
+                System.arraycopy(cipher, 0, buffer, OFFSET, cipher.length);
+                int plainLen = handler.decrypt(buffer, OFFSET, cipher.length, key, USAGE);
+                assertThat(plainLen).isEqualTo(handler.decryptedLength(cipher.length));
+                assertThat(Arrays.copyOfRange(buffer, OFFSET, OFFSET + dataLen)).isEqualTo(data);
+                assertSentinels(buffer, OFFSET + cipher.length);
+            }
+        }
+    }
+
+    @Test
+    public void testRawInPlace() throws KrbException {
+        for (EncryptionType eType : new EncryptionType[] {EncryptionType.DES_CBC_MD5,
+            EncryptionType.DES3_CBC_SHA1_KD, EncryptionType.AES128_CTS_HMAC_SHA1_96}) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            byte[] key = makeKey(handler);
+            byte[] data = new byte[32];
+            random.nextBytes(data);
+            byte[] iv = new byte[handler.encProvider().blockSize()];
+
+            byte[] buffer = new byte[OFFSET + data.length + OFFSET];
+            Arrays.fill(buffer, SENTINEL);
+            System.arraycopy(data, 0, buffer, OFFSET, data.length);
+            handler.encryptRaw(buffer, OFFSET, data.length, key, iv, USAGE);
+            assertSentinels(buffer, OFFSET + data.length);
+
+            byte[] cipher = handler.encryptRaw(data, key, iv, USAGE);
+            assertThat(Arrays.copyOfRange(buffer, OFFSET, OFFSET + data.length)).isEqualTo(cipher);
+            handler.decryptRaw(buffer, OFFSET, data.length, key, iv, USAGE);
+            assertThat(Arrays.copyOfRange(buffer, OFFSET, OFFSET + data.length)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void testDefaultInPlace() throws KrbException {
+        for (EncryptionType eType : ENC_TYPES) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            EncTypeHandler copying = new CopyingEncTypeHandler(handler);
+            byte[] key = makeKey(handler);
+            byte[] data = new byte[17];
+            random.nextBytes(data);
+
+            int encryptedLen = handler.encryptedLength(data.length);
+            byte[] buffer = new byte[OFFSET + encryptedLen + OFFSET];
+            Arrays.fill(buffer, SENTINEL);
+            System.arraycopy(data, 0, buffer, OFFSET, data.length);
+            assertThat(copying.encrypt(buffer, OFFSET, data.length, key, USAGE)).isEqualTo(encryptedLen);
+            assertSentinels(buffer, OFFSET + encryptedLen);
+
+            byte[] cipher = Arrays.copyOfRange(buffer, OFFSET, OFFSET + encryptedLen);
+            assertThat(Arrays.copyOf(handler.decrypt(cipher, key, USAGE), data.length))
+                    .as(eType.getName()).isEqualTo(data);
+            int plainLen = copying.decrypt(buffer, OFFSET, encryptedLen, key, USAGE);
+            assertThat(plainLen).isEqualTo(copying.decryptedLength(encryptedLen));
+            assertThat(Arrays.copyOfRange(buffer, OFFSET, OFFSET + data.length)).isEqualTo(data);
+        }
+
+        // The DES types have the layout the default length is for
+        for (EncryptionType eType : new EncryptionType[] {EncryptionType.DES_CBC_CRC,
+            EncryptionType.DES_CBC_MD4, EncryptionType.DES_CBC_MD5}) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            for (int dataLen : new int[] {0, 1, 16, 17, 100}) {
+                assertThat(new CopyingEncTypeHandler(handler).encryptedLength(dataLen))
+                        .isEqualTo(handler.encryptedLength(dataLen));
+            }
+        }
+    }
+
+    @Test
+    public void testTamperedInPlace() throws KrbException {
+        for (EncryptionType eType : ENC_TYPES) {
+            EncTypeHandler handler = EncryptionHandler.getEncHandler(eType);
+            byte[] key = makeKey(handler);
+            byte[] data = new byte[24];
+            random.nextBytes(data);
+            byte[] cipher = handler.encrypt(data, key, USAGE);
+            cipher[cipher.length / 2] ^= 1;
+            assertWipedOnBadIntegrity(handler, key, cipher);
+        }
+    }
+
+    @Test
+    public void testShortCipherInPlace() throws KrbException {
+        EncTypeHandler handler = EncryptionHandler.getEncHandler(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        byte[] cipher = new byte[handler.encryptedLength(0) - 1];
+        random.nextBytes(cipher);
+        assertWipedOnBadIntegrity(handler, makeKey(handler), cipher);
+    }
+
+    /**
+     * The failed decryption leaves zeros in place of the unverified plain text.
+     */
+    private static void assertWipedOnBadIntegrity(EncTypeHandler handler, byte[] key, byte[] cipher) {
+        byte[] buffer = new byte[OFFSET + cipher.length + OFFSET];
+        Arrays.fill(buffer, SENTINEL);
+        System.arraycopy(cipher, 0, buffer, OFFSET, cipher.length);
+        try {
+            handler.decrypt(buffer, OFFSET, cipher.length, key, USAGE);
+            fail("Expected an integrity failure for " + handler.eType().getName());
+        } catch (KrbException e) {
+            assertThat(e.getKrbErrorCode()).isEqualTo(KrbErrorCode.KRB_AP_ERR_BAD_INTEGRITY);
+        }
+        assertThat(Arrays.copyOfRange(buffer, OFFSET, OFFSET + cipher.length))
+                .as(handler.eType().getName()).isEqualTo(new byte[cipher.length]);
+        assertSentinels(buffer, OFFSET + cipher.length);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBufferTooSmall() throws KrbException {
+        EncTypeHandler handler = EncryptionHandler.getEncHandler(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        byte[] buffer = new byte[32];
+        handler.encrypt(buffer, 0, buffer.length, makeKey(handler), USAGE);
+    }
+
+    /**
+     * A handler implementing the copying API only, as written before the
+     * in-place one, and left with its default methods.
+     */
+    private static class CopyingEncTypeHandler implements EncTypeHandler {
+        private final EncTypeHandler handler;
+
+        CopyingEncTypeHandler(EncTypeHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public String name() {
+            return handler.name();
+        }
+
+        @Override
+        public String displayName() {
+            return handler.displayName();
+        }
+
+        @Override
+        public EncryptProvider encProvider() {
+            return handler.encProvider();
+        }
+
+        @Override
+        public HashProvider hashProvider() {
+            return handler.hashProvider();
+        }
+
+        @Override
+        public EncryptionType eType() {
+            return handler.eType();
+        }
+
+        @Override
+        public int keyInputSize() {
+            return handler.keyInputSize();
+        }
+
+        @Override
+        public int keySize() {
+            return handler.keySize();
+        }
+
+        @Override
+        public int confounderSize() {
+            return handler.confounderSize();
+        }
+
+        @Override
+        public int checksumSize() {
+            return handler.checksumSize();
+        }
+
+        @Override
+        public int prfSize() {
+            return handler.prfSize();
+        }
+
+        @Override
+        public byte[] prf(byte[] key, byte[] seed) throws KrbException {
+            return handler.prf(key, seed);
+        }
+
+        @Override
+        public int paddingSize() {
+            return handler.paddingSize();
+        }
+
+        @Override
+        public byte[] str2key(String string, String salt, byte[] param) throws KrbException {
+            return handler.str2key(string, salt, param);
+        }
+
+        @Override
+        public byte[] random2Key(byte[] randomBits) throws KrbException {
+            return handler.random2Key(randomBits);
+        }
+
+        @Override
+        public CheckSumType checksumType() {
+            return handler.checksumType();
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data, byte[] key, int usage) throws KrbException {
+            return handler.encrypt(data, key, usage);
+        }
+
+        @Override
+        public byte[] encrypt(byte[] data, byte[] key, byte[] ivec, int usage) throws KrbException {
+            return handler.encrypt(data, key, ivec, usage);
+        }
+
+        @Override
+        public byte[] encryptRaw(byte[] data, byte[] key, int usage) throws KrbException {
+            return handler.encryptRaw(data, key, usage);
+        }
+
+        @Override
+        public byte[] encryptRaw(byte[] data, byte[] key, byte[] ivec, int usage) throws KrbException {
+            return handler.encryptRaw(data, key, ivec, usage);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] cipher, byte[] key, int usage) throws KrbException {
+            return handler.decrypt(cipher, key, usage);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] cipher, byte[] key, byte[] ivec, int usage) throws KrbException {
+            return handler.decrypt(cipher, key, ivec, usage);
+        }
+
+        @Override
+        public byte[] decryptRaw(byte[] data, byte[] key, int usage) throws KrbException {
+            return handler.decryptRaw(data, key, usage);
+        }
+
+        @Override
+        public byte[] decryptRaw(byte[] cipher, byte[] key, byte[] ivec, int usage) throws KrbException {
+            return handler.decryptRaw(cipher, key, ivec, usage);
+        }
+    }
+
+    private byte[] makeKey(EncTypeHandler handler) throws KrbException {
+        byte[] randomBits = new byte[handler.keyInputSize()];
+        random.nextBytes(randomBits);
+        return handler.random2Key(randomBits);
+    }
+
+    private static void assertSentinels(byte[] buffer, int end) {
+        for (int i = 0; i < OFFSET; i++) {
+            assertThat(buffer[i]).isEqualTo(SENTINEL);
+        }
+        for (int i = end; i < buffer.length; i++) {
+            assertThat(buffer[i]).isEqualTo(SENTINEL);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.ietf.jgss.GSSException;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
 
 /**
  * This class implements encryption related function used in GSS tokens
@@ -110,35 +111,78 @@ public class GssEncryptor {
 
     public byte[] encryptData(byte[] tokenHeader, byte[] data,
                               int offset, int len, int keyUsage) throws GSSException {
-        byte[] ret;
-        byte[] toProcess = new byte[tokenHeader.length + len];
-        System.arraycopy(data, offset, toProcess, 0, len);
-        System.arraycopy(tokenHeader, 0, toProcess, len, tokenHeader.length);
+        int toProcessLen = tokenHeader.length + len;
+        byte[] ret = new byte[getEncryptedLength(toProcessLen)];
+        System.arraycopy(data, offset, ret, 0, len);
+        System.arraycopy(tokenHeader, 0, ret, len, tokenHeader.length);
 
-        ret = encryptData(toProcess, keyUsage);
+        encryptData(ret, 0, toProcessLen, keyUsage);
         return ret;
     }
 
     public byte[] encryptData(byte[] toProcess, int keyUsage) throws GSSException {
-        byte[] ret;
+        byte[] ret = new byte[getEncryptedLength(toProcess.length)];
+        System.arraycopy(toProcess, 0, ret, 0, toProcess.length);
+
+        encryptData(ret, 0, toProcess.length, keyUsage);
+        return ret;
+    }
+
+    /**
+     * Encrypt in place the data at the offset, the buffer having room for
+     * the encrypted length from there
+     * @param buffer the buffer holding the data
+     * @param offset the offset of the data
+     * @param len the data length
+     * @param keyUsage the key usage
+     * @return the encrypted length
+     * @throws GSSException if the encryption type is unsupported or the encryption fails
+     */
+    public int encryptData(byte[] buffer, int offset, int len, int keyUsage) throws GSSException {
         try {
             EncTypeHandler encHandler = EncryptionHandler.getEncHandler(encKey.getKeyType());
-            ret = encHandler.encrypt(toProcess, encKey.getKeyData(), keyUsage);
+            return encHandler.encrypt(buffer, offset, len, encKey.getKeyData(), keyUsage);
         } catch (KrbException e) {
             throw new GSSException(GSSException.FAILURE, -1, e.getMessage());
         }
-        return ret;
     }
 
     public byte[] decryptData(byte[] dataEncrypted, int keyUsage) throws GSSException {
-        byte[] ret;
+        byte[] ret = dataEncrypted.clone();
+        int len = decryptData(ret, 0, ret.length, keyUsage);
+        return Arrays.copyOf(ret, len);
+    }
+
+    /**
+     * Decrypt in place the data at the offset, leaving the plain text there
+     * @param buffer the buffer holding the encrypted data
+     * @param offset the offset of the encrypted data
+     * @param len the encrypted data length
+     * @param keyUsage the key usage
+     * @return the plain text length
+     * @throws GSSException if the encryption type is unsupported or the decryption fails
+     */
+    public int decryptData(byte[] buffer, int offset, int len, int keyUsage) throws GSSException {
         try {
             EncTypeHandler encHandler = EncryptionHandler.getEncHandler(encKey.getKeyType());
-            ret = encHandler.decrypt(dataEncrypted, encKey.getKeyData(), keyUsage);
+            return encHandler.decrypt(buffer, offset, len, encKey.getKeyData(), keyUsage);
+        } catch (KrbException e) {
+            throw new GSSException(GSSException.FAILURE, -1, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the length of the data once encrypted
+     * @param len the data length
+     * @return the length of the encrypted data, with its confounder, checksum and padding
+     * @throws GSSException if the encryption type of the key is unsupported
+     */
+    public int getEncryptedLength(int len) throws GSSException {
+        try {
+            return EncryptionHandler.getEncHandler(encKey.getKeyType()).encryptedLength(len);
         } catch (KrbException e) {
             throw new GSSException(GSSException.FAILURE, -1, e.getMessage());
         }
-        return ret;
     }
 
     public byte[] calculateCheckSum(byte[] header, byte[] data, int offset, int len, int keyUsage)
@@ -376,7 +420,10 @@ public class GssEncryptor {
             int keySize = handler.keySize();
             byte[] key = getKeyBytesWithLength(keySize);
             if (encrypt) {
-                return handler.encryptRaw(toProc, key, GssTokenV1.KG_USAGE_SEAL);
+                // toProc is ours, so encrypted in place
+                byte[] iv = new byte[handler.encProvider().blockSize()];
+                handler.encryptRaw(toProc, 0, toProc.length, key, iv, GssTokenV1.KG_USAGE_SEAL);
+                return toProc;
             } else {
                 return handler.decryptRaw(toProc, key, GssTokenV1.KG_USAGE_SEAL);
             }
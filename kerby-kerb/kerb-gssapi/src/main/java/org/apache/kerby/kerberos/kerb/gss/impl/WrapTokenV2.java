@@ -51,11 +51,12 @@ public class WrapTokenV2 extends GssTokenV2 {
         generateCheckSum(prop, data, dataOffset, dataLength);
 
         if (prop.getPrivacy()) {
-            byte[] toProcess = new byte[dataLength + TOKEN_HEADER_SIZE];
-            System.arraycopy(data, dataOffset, toProcess, 0, dataLength);
-            encodeHeader(toProcess, dataLength);
+            int toProcessLen = dataLength + TOKEN_HEADER_SIZE;
+            tokenData = new byte[encryptor.getEncryptedLength(toProcessLen)];
+            System.arraycopy(data, dataOffset, tokenData, 0, dataLength);
+            encodeHeader(tokenData, dataLength);
 
-            tokenData = encryptor.encryptData(toProcess, getKeyUsage());
+            encryptor.encryptData(tokenData, 0, toProcessLen, getKeyUsage());
         } else {
             tokenData = data; // keep it for now
         }
@@ -112,8 +113,9 @@ public class WrapTokenV2 extends GssTokenV2 {
     public byte[] unwrap(byte[] outBuffer, int offset) throws GSSException {
         int lenToCopy;
         if (prop.getPrivacy()) {
-            byte[] plainText = encryptor.decryptData(tokenData, getKeyUsage());
-            lenToCopy = plainText.length - TOKEN_HEADER_SIZE;
+            byte[] plainText = tokenData.clone();
+            lenToCopy = encryptor.decryptData(plainText, 0, plainText.length, getKeyUsage())
+                - TOKEN_HEADER_SIZE;
             if (outBuffer == null) {
                 outBuffer = new byte[lenToCopy];
                 offset = 0;
@@ -24,9 +24,11 @@ import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil.TEST_PRINCIPAL;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -128,6 +130,29 @@ public abstract class BackendTest {
         }
     }
 
+    protected void testGetIdentitiesByName(IdentityBackend backend) throws KrbException {
+        KrbIdentity[] identities = BackendTestUtil.createManyIdentities();
+
+        for (KrbIdentity identity : identities) {
+            backend.addIdentity(identity);
+        }
+
+        // clear the identity cache.
+        backend.release();
+
+        String missing = "missing@EXAMPLE.COM";
+        Map<String, KrbIdentity> found = backend.getIdentitiesByName(Arrays.asList(
+            identities[0].getPrincipalName(), identities[3].getPrincipalName(), missing));
+        assertThat(found).hasSize(2).doesNotContainKey(missing);
+        assertThat(found.get(identities[0].getPrincipalName())).isEqualTo(identities[0]);
+        assertThat(found.get(identities[3].getPrincipalName())).isEqualTo(identities[3]);
+
+        //tearDown
+        for (KrbIdentity identity : identities) {
+            backend.deleteIdentity(identity.getPrincipalName());
+        }
+    }
+
     protected void cleanIdentities(IdentityBackend backend) throws KrbException {
         Iterable<String> identities = backend.getIdentities();
         Iterator<String> iterator = identities.iterator();
@@ -64,6 +64,11 @@ public abstract class BackendTestBase extends BackendTest {
         testGetIdentities(backend);
     }
 
+    @Test
+    public void testGetIdentitiesByName() throws KrbException {
+        testGetIdentitiesByName(backend);
+    }
+
     @AfterClass
     public static void tearDown() throws KrbException {
         if (backend != null) {
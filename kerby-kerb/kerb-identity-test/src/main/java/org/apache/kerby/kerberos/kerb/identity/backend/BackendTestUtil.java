@@ -26,9 +26,16 @@ import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 /**
  * A common backend test utility
@@ -40,6 +47,10 @@ public final class BackendTestUtil {
 
     public static final String TEST_PRINCIPAL = TEST_PRINCIPAL_PREFIX + "@" + TEST_REALM;
 
+    // Identities of the crash recovery tests
+    public static final String KEPT_PRINCIPAL = "kept@" + TEST_REALM;
+    static final String DELETED_PRINCIPAL = "deleted@" + TEST_REALM;
+
     static final EncryptionType[] ENC_TYPES = new EncryptionType[]{
             EncryptionType.AES128_CTS,
             EncryptionType.DES3_CBC_SHA1_KD
@@ -108,4 +119,61 @@ public final class BackendTestUtil {
     public static List<EncryptionType> getEncryptionTypes() {
         return Arrays.asList(ENC_TYPES);
     }
+
+    /**
+     * Add, update and delete identities with a backend left unstopped as by
+     * a crash, tear the last write of its log, and open a backend on the
+     * same files again.
+     * @param factory Creates backends on the same files
+     * @param logFile The file the backend appends its changes to
+     * @param tornRecord The start of a record, as left by the crash
+     * @return The reopened backend, which recovered the identities
+     * @throws KrbException e
+     * @throws IOException e
+     */
+    public static IdentityBackend recoverAfterCrash(Supplier<IdentityBackend> factory, File logFile,
+                                                    byte[] tornRecord) throws KrbException, IOException {
+        IdentityBackend crashed = factory.get();
+        crashed.initialize();
+        KrbIdentity kept = createOneIdentity(KEPT_PRINCIPAL);
+        crashed.addIdentity(kept);
+        crashed.addIdentity(createOneIdentity(DELETED_PRINCIPAL));
+        kept.setKeyVersion(2);
+        crashed.updateIdentity(kept);
+        crashed.deleteIdentity(DELETED_PRINCIPAL);
+
+        long logLength = logFile.length();
+        Files.write(logFile.toPath(), tornRecord, StandardOpenOption.APPEND);
+
+        IdentityBackend restarted = factory.get();
+        restarted.initialize();
+        assertRecovered(restarted);
+        // The torn record is dropped
+        assertThat(logFile.length()).isEqualTo(logLength);
+        return restarted;
+    }
+
+    /**
+     * Check the backend holds the identities written by recoverAfterCrash.
+     * @param backend The backend
+     * @throws KrbException e
+     */
+    public static void assertRecovered(IdentityBackend backend) throws KrbException {
+        assertThat(backend.getIdentity(KEPT_PRINCIPAL).getKeyVersion()).isEqualTo(2);
+        assertThat(backend.getIdentity(DELETED_PRINCIPAL)).isNull();
+    }
+
+    /**
+     * Delete a directory with its content.
+     * @param dir The directory
+     */
+    public static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
 }
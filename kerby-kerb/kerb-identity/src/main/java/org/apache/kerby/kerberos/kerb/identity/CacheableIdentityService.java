@@ -22,28 +22,47 @@ package org.apache.kerby.kerberos.kerb.identity;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.config.Configured;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.apache.kerby.kerberos.kerb.request.KdcClientRequest;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.ad.AuthorizationData;
 import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
 
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A cacheable identity backend that provides a cache with FIFO and size limit.
+ * A cacheable identity backend that provides a size bounded cache.
  * Note only limited recently active identities are kept in the cache, and other
  * identities are meant to be loaded from the underlying backend like memory,
- * file, SQL DB, LDAP, and etc.
+ * file, SQL DB, LDAP, and etc. Cached identities expire after a while, so
+ * that changes made by other servers sharing the backend are seen.
+ * Identities written straight to the underlying backend, like by kadmin,
+ * are dropped from the cache at once when the backend reports its changes.
+ * Callers get copies of the cached identities, which they may modify.
  */
 public class CacheableIdentityService
         extends Configured implements IdentityService {
 
+    /** Maximum number of cached identities. */
+    public static final String CACHE_SIZE = "backend.cache.size";
+    /** Seconds an identity is cached after being loaded. */
+    public static final String CACHE_EXPIRE_AFTER_WRITE = "backend.cache.expire_after_write";
+    /** Seconds after which an accessed identity is reloaded, 0 to disable. */
+    public static final String CACHE_REFRESH_AFTER_WRITE = "backend.cache.refresh_after_write";
+    /** Maximum number of cached unknown principals, 0 to disable. */
+    public static final String NEGATIVE_CACHE_SIZE = "backend.cache.negative_size";
+    /** Seconds an unknown principal is cached after being looked up. */
+    public static final String NEGATIVE_CACHE_EXPIRE_AFTER_WRITE = "backend.cache.negative_expire_after_write";
+
     private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final long DEFAULT_EXPIRE_AFTER_WRITE = 300;
+    private static final long DEFAULT_REFRESH_AFTER_WRITE = 60;
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+    private static final long DEFAULT_NEGATIVE_EXPIRE_AFTER_WRITE = 30;
 
-    private Map<String, KrbIdentity> idCache;
-    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private IdentityCache idCache;
 
     private IdentityService underlying;
 
@@ -52,6 +71,9 @@ public class CacheableIdentityService
         this.underlying = underlying;
 
         init();
+        if (underlying instanceof AbstractIdentityBackend) {
+            ((AbstractIdentityBackend) underlying).addIdentityChangeListener(idCache::invalidate);
+        }
     }
 
     /**
@@ -71,17 +93,23 @@ public class CacheableIdentityService
     }
 
     private void init() {
-        Map<String, KrbIdentity> tmpMap =
-            new LinkedHashMap<String, KrbIdentity>(cacheSize) {
-                private static final long serialVersionUID = -6911200685333503214L;
-
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, KrbIdentity> eldest) {
-                    return size() > cacheSize;
-                }
-            };
+        int cacheSize = getConfig().getInt(CACHE_SIZE, DEFAULT_CACHE_SIZE);
+        long expireAfterWrite = getConfig().getLong(CACHE_EXPIRE_AFTER_WRITE, DEFAULT_EXPIRE_AFTER_WRITE);
+        long refreshAfterWrite = getConfig().getLong(CACHE_REFRESH_AFTER_WRITE, DEFAULT_REFRESH_AFTER_WRITE);
+        int negativeCacheSize = getConfig().getInt(NEGATIVE_CACHE_SIZE, DEFAULT_NEGATIVE_CACHE_SIZE);
+        long negativeExpireAfterWrite = getConfig().getLong(NEGATIVE_CACHE_EXPIRE_AFTER_WRITE,
+            DEFAULT_NEGATIVE_EXPIRE_AFTER_WRITE);
+
+        idCache = new IdentityCache(cacheSize, expireAfterWrite * 1000, refreshAfterWrite * 1000,
+            negativeCacheSize, negativeExpireAfterWrite * 1000);
+    }
 
-        idCache = new ConcurrentHashMap<>(tmpMap);
+    /**
+     * Get the cache, giving access to its statistics.
+     * @return The identity cache
+     */
+    public IdentityCache getCache() {
+        return idCache;
     }
 
     /**
@@ -97,16 +125,32 @@ public class CacheableIdentityService
      */
     @Override
     public KrbIdentity getIdentity(String principalName) throws KrbException {
-        if (idCache.containsKey(principalName)) {
-            return idCache.get(principalName);
-        }
+        return copyOf(idCache.get(principalName, name -> copyOf(underlying.getIdentity(name))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, KrbIdentity> getIdentitiesByName(Collection<String> principalNames) throws KrbException {
+        Map<String, KrbIdentity> identities = idCache.getAll(principalNames,
+            names -> copyAll(underlying.getIdentitiesByName(names)));
+        return copyAll(identities);
+    }
 
-        KrbIdentity identity = underlying.getIdentity(principalName);
-        if (identity != null) {
-            idCache.put(principalName, identity);
+    private static KrbIdentity copyOf(KrbIdentity identity) {
+        if (identity == null) {
+            return null;
         }
+        return new KrbIdentity(identity);
+    }
 
-        return identity;
+    private static Map<String, KrbIdentity> copyAll(Map<String, KrbIdentity> identities) {
+        Map<String, KrbIdentity> copies = new HashMap<>(identities.size() * 2);
+        for (Map.Entry<String, KrbIdentity> entry : identities.entrySet()) {
+            copies.put(entry.getKey(), copyOf(entry.getValue()));
+        }
+        return copies;
     }
 
     /**
@@ -114,9 +158,16 @@ public class CacheableIdentityService
      */
     @Override
     public KrbIdentity addIdentity(KrbIdentity identity) throws KrbException {
-        KrbIdentity added = underlying.addIdentity(identity);
-        if (added != null) {
-            idCache.put(added.getPrincipalName(), added);
+        KrbIdentity added = null;
+        try {
+            added = underlying.addIdentity(identity);
+        } finally {
+            // Forget the principal being missing in any case
+            if (added != null) {
+                idCache.put(added.getPrincipalName(), copyOf(added));
+            } else {
+                idCache.invalidate(identity.getPrincipalName());
+            }
         }
 
         return added;
@@ -127,12 +178,12 @@ public class CacheableIdentityService
      */
     @Override
     public KrbIdentity updateIdentity(KrbIdentity identity) throws KrbException {
-        KrbIdentity updated = underlying.updateIdentity(identity);
-        if (updated != null) {
-            idCache.put(updated.getPrincipalName(), updated);
+        try {
+            return underlying.updateIdentity(identity);
+        } finally {
+            // Backends don't all return the updated identity, load it again
+            idCache.invalidate(identity.getPrincipalName());
         }
-
-        return updated;
     }
 
     /**
@@ -140,11 +191,11 @@ public class CacheableIdentityService
      */
     @Override
     public void deleteIdentity(String principalName) throws KrbException {
-        if (idCache.containsKey(principalName)) {
-            idCache.remove(principalName);
+        try {
+            underlying.deleteIdentity(principalName);
+        } finally {
+            idCache.invalidate(principalName);
         }
-
-        underlying.deleteIdentity(principalName);
     }
 
     /**
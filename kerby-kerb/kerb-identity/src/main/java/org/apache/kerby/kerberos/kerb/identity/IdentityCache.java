@@ -0,0 +1,576 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent, size bounded identity cache.
+ *
+ * Identities are spread over segments, each an access ordered map guarded
+ * by its own monitor, so lookups of different principals rarely contend.
+ * When a segment is full, the least recently used identity is evicted
+ * only if the incoming one is estimated to be accessed more often
+ * (TinyLFU admission), which keeps one-off lookups from flushing popular
+ * principals. Identities expire a fixed time after being loaded; past the
+ * refresh time, the first access reloads the identity on the refresh
+ * executor, and callers keep getting the current one until the reload
+ * completes, so that a request never waits on a refresh. A failed refresh
+ * is logged and the current identity kept until it expires. Concurrent
+ * misses of a principal share a single load.
+ *
+ * Principals found missing can be remembered as well, in separate plain
+ * LRU segments with their own size and a shorter expiry, so that repeated
+ * requests for unknown principals don't all reach the backend. Caching or
+ * invalidating an identity drops its negative entry at once.
+ */
+public class IdentityCache {
+    private static final Logger LOG = LoggerFactory.getLogger(IdentityCache.class);
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final Segment[] negativeSegments;
+    private final long negativeExpireAfterWriteNanos;
+    private final FrequencySketch sketch;
+    private final long expireAfterWriteNanos;
+    private final long refreshAfterWriteNanos;
+    private final Executor refreshExecutor;
+    private final ConcurrentHashMap<String, CompletableFuture<KrbIdentity>> loading =
+        new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder negativeHitCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+
+    /**
+     * Loads an identity missing from the cache.
+     */
+    public interface Loader {
+        /**
+         * @param principalName The principal name
+         * @return The identity, or null if it doesn't exist
+         * @throws KrbException e
+         */
+        KrbIdentity load(String principalName) throws KrbException;
+    }
+
+    /**
+     * Loads several identities missing from the cache at once.
+     */
+    public interface BulkLoader {
+        /**
+         * @param principalNames The principal names
+         * @return The identities found, by principal name
+         * @throws KrbException e
+         */
+        Map<String, KrbIdentity> loadAll(Collection<String> principalNames) throws KrbException;
+    }
+
+    /**
+     * @param maximumSize The maximum number of identities kept
+     * @param expireAfterWrite Milliseconds an identity is kept after being loaded
+     * @param refreshAfterWrite Milliseconds after which an identity is reloaded
+     *                          on access, 0 or less to never refresh
+     */
+    public IdentityCache(int maximumSize, long expireAfterWrite, long refreshAfterWrite) {
+        this(maximumSize, expireAfterWrite, refreshAfterWrite, 0, 0);
+    }
+
+    /**
+     * @param maximumSize The maximum number of identities kept
+     * @param expireAfterWrite Milliseconds an identity is kept after being loaded
+     * @param refreshAfterWrite Milliseconds after which an identity is reloaded
+     *                          on access, 0 or less to never refresh
+     * @param negativeMaximumSize The maximum number of missing principals
+     *                            kept, 0 or less to not cache them
+     * @param negativeExpireAfterWrite Milliseconds a missing principal is kept
+     */
+    public IdentityCache(int maximumSize, long expireAfterWrite, long refreshAfterWrite,
+                         int negativeMaximumSize, long negativeExpireAfterWrite) {
+        this(maximumSize, expireAfterWrite, refreshAfterWrite, negativeMaximumSize,
+            negativeExpireAfterWrite, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param maximumSize The maximum number of identities kept
+     * @param expireAfterWrite Milliseconds an identity is kept after being loaded
+     * @param refreshAfterWrite Milliseconds after which an identity is reloaded
+     *                          on access, 0 or less to never refresh
+     * @param negativeMaximumSize The maximum number of missing principals
+     *                            kept, 0 or less to not cache them
+     * @param negativeExpireAfterWrite Milliseconds a missing principal is kept
+     * @param refreshExecutor Runs the refreshes, the common pool by default
+     */
+    public IdentityCache(int maximumSize, long expireAfterWrite, long refreshAfterWrite,
+                         int negativeMaximumSize, long negativeExpireAfterWrite,
+                         Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        this.expireAfterWriteNanos = expireAfterWrite * 1000000L;
+        this.refreshAfterWriteNanos = refreshAfterWrite * 1000000L;
+        this.negativeExpireAfterWriteNanos = negativeExpireAfterWrite * 1000000L;
+        this.sketch = new FrequencySketch(maximumSize);
+        this.segments = newSegments(maximumSize, true);
+        if (negativeMaximumSize > 0 && negativeExpireAfterWrite > 0) {
+            this.negativeSegments = newSegments(negativeMaximumSize, false);
+        } else {
+            this.negativeSegments = null;
+        }
+    }
+
+    private Segment[] newSegments(int maximumSize, boolean admission) {
+        Segment[] result = new Segment[SEGMENTS];
+        int segmentSize = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            result[i] = new Segment(segmentSize, admission);
+        }
+        return result;
+    }
+
+    /**
+     * Get the cached identity, loading it if missing or expired.
+     * @param principalName The principal name
+     * @param loader Loads the identity on a miss
+     * @return The identity, or null if it doesn't exist
+     * @throws KrbException e
+     */
+    public KrbIdentity get(String principalName, Loader loader) throws KrbException {
+        sketch.increment(principalName);
+        long now = System.nanoTime();
+        CacheEntry entry = lookup(principalName, now);
+
+        if (entry == null) {
+            if (isKnownMissing(principalName, now)) {
+                negativeHitCount.increment();
+                return null;
+            }
+            missCount.increment();
+            return load(principalName, loader);
+        }
+
+        hitCount.increment();
+        if (refreshAfterWriteNanos > 0 && now - entry.writeTime >= refreshAfterWriteNanos
+            && !loading.containsKey(principalName)) {
+            CompletableFuture<KrbIdentity> future = new CompletableFuture<>();
+            if (loading.putIfAbsent(principalName, future) == null) {
+                refresh(Collections.singletonMap(principalName, future), names -> {
+                    Map<String, KrbIdentity> loaded = new HashMap<>();
+                    KrbIdentity identity = loader.load(principalName);
+                    if (identity != null) {
+                        loaded.put(principalName, identity);
+                    }
+                    return loaded;
+                });
+            }
+        }
+        return entry.identity;
+    }
+
+    /**
+     * Get the cached identities, loading the missing or expired ones in a
+     * single call to the loader, and refreshing the ones due in another on
+     * the refresh executor. Principals already being loaded by another
+     * caller are waited for rather than loaded again.
+     * @param principalNames The principal names
+     * @param loader Loads the identities missed
+     * @return The identities found, by principal name
+     * @throws KrbException e
+     */
+    public Map<String, KrbIdentity> getAll(Collection<String> principalNames,
+                                           BulkLoader loader) throws KrbException {
+        Map<String, KrbIdentity> result = new HashMap<>();
+        Map<String, CompletableFuture<KrbIdentity>> owned = new LinkedHashMap<>();
+        Map<String, CompletableFuture<KrbIdentity>> refreshed = new LinkedHashMap<>();
+        Map<String, CompletableFuture<KrbIdentity>> awaited = new HashMap<>();
+        long now = System.nanoTime();
+
+        for (String principalName : principalNames) {
+            if (result.containsKey(principalName) || owned.containsKey(principalName)
+                || awaited.containsKey(principalName) || refreshed.containsKey(principalName)) {
+                continue;
+            }
+            sketch.increment(principalName);
+            CacheEntry entry = lookup(principalName, now);
+            if (entry != null) {
+                hitCount.increment();
+                result.put(principalName, entry.identity);
+                if (refreshAfterWriteNanos > 0 && now - entry.writeTime >= refreshAfterWriteNanos) {
+                    CompletableFuture<KrbIdentity> future = new CompletableFuture<>();
+                    if (loading.putIfAbsent(principalName, future) == null) {
+                        refreshed.put(principalName, future);
+                    }
+                }
+            } else if (isKnownMissing(principalName, now)) {
+                negativeHitCount.increment();
+            } else {
+                missCount.increment();
+                CompletableFuture<KrbIdentity> future = new CompletableFuture<>();
+                CompletableFuture<KrbIdentity> existing = loading.putIfAbsent(principalName, future);
+                if (existing != null) {
+                    awaited.put(principalName, existing);
+                } else {
+                    owned.put(principalName, future);
+                }
+            }
+        }
+
+        if (!refreshed.isEmpty()) {
+            refresh(refreshed, loader);
+        }
+        if (!owned.isEmpty()) {
+            loadAll(owned, loader, result);
+        }
+        for (Map.Entry<String, CompletableFuture<KrbIdentity>> entry : awaited.entrySet()) {
+            KrbIdentity identity = await(entry.getValue());
+            if (identity != null) {
+                result.put(entry.getKey(), identity);
+            }
+        }
+        return result;
+    }
+
+    private void loadAll(Map<String, CompletableFuture<KrbIdentity>> owned, BulkLoader loader,
+                         Map<String, KrbIdentity> result) throws KrbException {
+        long start = System.nanoTime();
+        try {
+            Map<String, KrbIdentity> loaded = loader.loadAll(owned.keySet());
+            loadCount.add(owned.size());
+            totalLoadTime.add(System.nanoTime() - start);
+            for (Map.Entry<String, CompletableFuture<KrbIdentity>> entry : owned.entrySet()) {
+                KrbIdentity identity = loaded.get(entry.getKey());
+                store(entry.getKey(), identity, entry.getValue());
+                entry.getValue().complete(identity);
+                if (identity != null) {
+                    result.put(entry.getKey(), identity);
+                } else {
+                    result.remove(entry.getKey());
+                }
+            }
+        } catch (KrbException | RuntimeException e) {
+            loadFailureCount.add(owned.size());
+            totalLoadTime.add(System.nanoTime() - start);
+            for (CompletableFuture<KrbIdentity> future : owned.values()) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            for (Map.Entry<String, CompletableFuture<KrbIdentity>> entry : owned.entrySet()) {
+                loading.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the cached entry, dropping it if expired.
+     */
+    private CacheEntry lookup(String principalName, long now) {
+        Segment segment = segmentFor(principalName);
+        synchronized (segment) {
+            CacheEntry entry = segment.get(principalName);
+            if (entry != null && now - entry.writeTime >= expireAfterWriteNanos) {
+                segment.remove(principalName);
+                entry = null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Reload the identities on the refresh executor, keeping the cached
+     * ones if it fails.
+     */
+    private void refresh(Map<String, CompletableFuture<KrbIdentity>> owned, BulkLoader loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    loadAll(owned, loader, new HashMap<>());
+                } catch (KrbException | RuntimeException e) {
+                    LOG.warn("Failed to refresh {} identities, keeping the cached ones", owned.size(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Failed to schedule the refresh of {} identities", owned.size(), e);
+            for (Map.Entry<String, CompletableFuture<KrbIdentity>> entry : owned.entrySet()) {
+                loading.remove(entry.getKey(), entry.getValue());
+                entry.getValue().completeExceptionally(e);
+            }
+        }
+    }
+
+    private KrbIdentity load(String principalName, Loader loader) throws KrbException {
+        CompletableFuture<KrbIdentity> future = new CompletableFuture<>();
+        CompletableFuture<KrbIdentity> existing = loading.putIfAbsent(principalName, future);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        long start = System.nanoTime();
+        try {
+            KrbIdentity identity = loader.load(principalName);
+            loadCount.increment();
+            totalLoadTime.add(System.nanoTime() - start);
+            store(principalName, identity, future);
+            future.complete(identity);
+            return identity;
+        } catch (KrbException | RuntimeException e) {
+            loadFailureCount.increment();
+            totalLoadTime.add(System.nanoTime() - start);
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(principalName, future);
+        }
+    }
+
+    private boolean isKnownMissing(String principalName, long now) {
+        if (negativeSegments == null) {
+            return false;
+        }
+        Segment segment = negativeSegments[indexFor(principalName)];
+        synchronized (segment) {
+            CacheEntry entry = segment.get(principalName);
+            if (entry == null) {
+                return false;
+            }
+            if (now - entry.writeTime >= negativeExpireAfterWriteNanos) {
+                segment.remove(principalName);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static KrbIdentity await(CompletableFuture<KrbIdentity> future) throws KrbException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while loading identity", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Failed to load identity", e.getCause());
+        }
+    }
+
+    /**
+     * Keep the loaded identity, unless the principal was written meanwhile.
+     */
+    private void store(String principalName, KrbIdentity identity,
+                       CompletableFuture<KrbIdentity> future) {
+        Segment segment = segmentFor(principalName);
+        synchronized (segment) {
+            if (loading.get(principalName) != future) {
+                return;
+            }
+            if (identity != null) {
+                segment.put(principalName, new CacheEntry(identity, System.nanoTime()));
+                segment.evict(principalName);
+            } else {
+                segment.remove(principalName);
+                if (negativeSegments != null) {
+                    Segment negativeSegment = negativeSegments[indexFor(principalName)];
+                    synchronized (negativeSegment) {
+                        negativeSegment.put(principalName, new CacheEntry(null, System.nanoTime()));
+                        negativeSegment.evict(principalName);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cache the identity, replacing any cached or loading one.
+     * @param principalName The principal name
+     * @param identity The identity
+     */
+    public void put(String principalName, KrbIdentity identity) {
+        Segment segment = segmentFor(principalName);
+        synchronized (segment) {
+            loading.remove(principalName);
+            segment.put(principalName, new CacheEntry(identity, System.nanoTime()));
+            segment.evict(principalName);
+            removeNegative(principalName);
+        }
+    }
+
+    /**
+     * Remove the identity from the cache, discarding any load in progress.
+     * @param principalName The principal name
+     */
+    public void invalidate(String principalName) {
+        Segment segment = segmentFor(principalName);
+        synchronized (segment) {
+            loading.remove(principalName);
+            segment.remove(principalName);
+            removeNegative(principalName);
+        }
+    }
+
+    private void removeNegative(String principalName) {
+        if (negativeSegments != null) {
+            Segment negativeSegment = negativeSegments[indexFor(principalName)];
+            synchronized (negativeSegment) {
+                negativeSegment.remove(principalName);
+            }
+        }
+    }
+
+    /**
+     * Remove all identities from the cache.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        if (negativeSegments != null) {
+            for (Segment segment : negativeSegments) {
+                synchronized (segment) {
+                    segment.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of cached identities
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return The number of lookups answered by a cached missing principal
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    /**
+     * @return The total time spent loading identities, in nanoseconds
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime.sum();
+    }
+
+    private Segment segmentFor(String principalName) {
+        return segments[indexFor(principalName)];
+    }
+
+    private static int indexFor(String principalName) {
+        int hash = principalName.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (SEGMENTS - 1);
+    }
+
+    private static final class CacheEntry {
+        private final KrbIdentity identity;
+        private final long writeTime;
+
+        private CacheEntry(KrbIdentity identity, long writeTime) {
+            this.identity = identity;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<String, CacheEntry> {
+        private static final long serialVersionUID = 4227446563713340545L;
+
+        private final int capacity;
+        private final boolean admission;
+
+        private Segment(int capacity, boolean admission) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.admission = admission;
+        }
+
+        /**
+         * Bring the segment back to its capacity once the candidate was
+         * added, keeping either the candidate or the least recently used
+         * identity, whichever is accessed more often. Without admission,
+         * the least recently used one is always evicted.
+         */
+        private void evict(String candidate) {
+            while (size() > capacity) {
+                Iterator<Map.Entry<String, CacheEntry>> it = entrySet().iterator();
+                String victim = it.next().getKey();
+                if (victim.equals(candidate)) {
+                    return;
+                }
+                if (!admission || sketch.frequency(candidate) > sketch.frequency(victim)) {
+                    it.remove();
+                } else {
+                    remove(candidate);
+                }
+                evictionCount.increment();
+            }
+        }
+    }
+}
@@ -25,6 +25,10 @@ import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.ad.AuthorizationData;
 import org.apache.kerby.kerberos.kerb.type.ticket.EncTicketPart;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Identity service for KDC backend to create, get and manage principal accounts.
  */
@@ -59,6 +63,25 @@ public interface IdentityService {
      */
     KrbIdentity getIdentity(String principalName) throws KrbException;
 
+    /**
+     * Get the identity accounts specified by names, at once where the
+     * backend allows it. Looks them up one by one by default.
+     * @param principalNames The principal names
+     * @return identities by principal name, without the ones that don't exist
+     * @throws KrbException e
+     */
+    default Map<String, KrbIdentity> getIdentitiesByName(Collection<String> principalNames)
+        throws KrbException {
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        for (String principalName : principalNames) {
+            KrbIdentity identity = getIdentity(principalName);
+            if (identity != null) {
+                identities.put(principalName, identity);
+            }
+        }
+        return identities;
+    }
+
     /**
      * Get an identity's Authorization Data.
      * @param kdcClientRequest The KdcClientRequest
@@ -0,0 +1,305 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compact and versioned binary encoding of identities, for the backends
+ * and caches storing identities as bytes. An identity is laid out as
+ * <pre>
+ *   byte    format version
+ *   short   length of the principal name, then the name in modified UTF-8
+ *   int     key version
+ *   int     kdc flags
+ *   byte    disabled
+ *   byte    locked
+ *   long    created time
+ *   long    expire time
+ *   short   number of keys, then for each key:
+ *           int encryption type, int kvno, short length, key data
+ * </pre>
+ * Identities are encoded into and decoded from buffers provided by the
+ * caller, heap or direct, so that a pooled buffer can be reused without
+ * allocating anything but the decoded identity itself.
+ *
+ * Names are in the modified UTF-8 of {@link java.io.DataOutput#writeUTF},
+ * as in the records the ZooKeeper backend wrote in this layout before, so
+ * that a name is encoded into the same bytes and those records decode to
+ * the same names.
+ */
+public final class KrbIdentityCodec {
+    /** The current format version, the first byte of an encoded identity. */
+    public static final byte VERSION = 1;
+
+    private static final int NAME_OFFSET = 1;
+    // Everything but the principal name and the key data
+    private static final int FIXED_LENGTH = NAME_OFFSET + 2 + 28;
+    private static final int KEY_LENGTH = 10;
+
+    private KrbIdentityCodec() { }
+
+    /**
+     * @param identity The identity
+     * @return The number of bytes the identity is encoded in
+     */
+    public static int encodedLength(KrbIdentity identity) {
+        int length = FIXED_LENGTH + nameLength(identity.getPrincipalName());
+        for (EncryptionKey key : identity.getKeys().values()) {
+            length += KEY_LENGTH + key.getKeyData().length;
+        }
+        return length;
+    }
+
+    /**
+     * Encode the identity into a new array.
+     * @param identity The identity
+     * @return The encoded identity
+     */
+    public static byte[] encode(KrbIdentity identity) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(identity));
+        encode(identity, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Encode the identity at the position of the buffer, which is advanced
+     * past it.
+     * @param identity The identity
+     * @param buffer The buffer, with at least {@link #encodedLength} bytes
+     *               remaining
+     */
+    public static void encode(KrbIdentity identity, ByteBuffer buffer) {
+        buffer.put(VERSION);
+        putName(identity.getPrincipalName(), buffer);
+        buffer.putInt(identity.getKeyVersion());
+        buffer.putInt(identity.getKdcFlags());
+        buffer.put(toByte(identity.isDisabled()));
+        buffer.put(toByte(identity.isLocked()));
+        buffer.putLong(identity.getCreatedTime().getTime());
+        buffer.putLong(identity.getExpireTime().getTime());
+        buffer.putShort((short) identity.getKeys().size());
+        for (EncryptionKey key : identity.getKeys().values()) {
+            buffer.putInt(key.getKeyType().getValue());
+            buffer.putInt(key.getKvno());
+            buffer.putShort((short) key.getKeyData().length);
+            buffer.put(key.getKeyData());
+        }
+    }
+
+    /**
+     * @param principalName The principal name
+     * @return The number of bytes encodePrincipalName encodes the name in
+     */
+    public static int encodedPrincipalNameLength(String principalName) {
+        return NAME_OFFSET + 2 + nameLength(principalName);
+    }
+
+    /**
+     * Encode the start of an identity, up to its principal name, as needed
+     * to decode the principal name only, e.g. for a tombstone.
+     * @param principalName The principal name
+     * @param buffer The buffer, with at least
+     *               {@link #encodedPrincipalNameLength} bytes remaining
+     */
+    public static void encodePrincipalName(String principalName, ByteBuffer buffer) {
+        buffer.put(VERSION);
+        putName(principalName, buffer);
+    }
+
+    /**
+     * Decode an identity.
+     * @param bytes The encoded identity
+     * @return The identity
+     * @throws IOException If the bytes are not an identity of a known
+     * version
+     */
+    public static KrbIdentity decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decode the identity at the position of the buffer, which is advanced
+     * past it.
+     * @param buffer The buffer
+     * @return The identity
+     * @throws IOException If the buffer doesn't hold an identity of a known
+     * version
+     */
+    public static KrbIdentity decode(ByteBuffer buffer) throws IOException {
+        int index = buffer.position();
+        try {
+            byte version = buffer.get(index);
+            if (version != VERSION) {
+                throw new IOException("Unsupported identity format version " + version);
+            }
+
+            KrbIdentity identity = new KrbIdentity(decodePrincipalName(buffer, index));
+            buffer.position(index + NAME_OFFSET + 2 + (buffer.getShort(index + NAME_OFFSET) & 0xffff));
+            identity.setKeyVersion(buffer.getInt());
+            identity.setKdcFlags(buffer.getInt());
+            identity.setDisabled(buffer.get() != 0);
+            identity.setLocked(buffer.get() != 0);
+            identity.setCreatedTime(new KerberosTime(buffer.getLong()));
+            identity.setExpireTime(new KerberosTime(buffer.getLong()));
+            int keyCount = buffer.getShort() & 0xffff;
+            for (int i = 0; i < keyCount; i++) {
+                EncryptionType keyType = EncryptionType.fromValue(buffer.getInt());
+                int kvno = buffer.getInt();
+                byte[] keyData = new byte[buffer.getShort() & 0xffff];
+                buffer.get(keyData);
+                identity.addKey(new EncryptionKey(keyType, keyData, kvno));
+            }
+            return identity;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated or malformed identity", e);
+        }
+    }
+
+    /**
+     * Decode only the principal name of an encoded identity.
+     * @param buffer The buffer
+     * @param index The index of the encoded identity in the buffer
+     * @return The principal name
+     */
+    public static String decodePrincipalName(ByteBuffer buffer, int index) {
+        int length = buffer.getShort(index + NAME_OFFSET) & 0xffff;
+        int start = index + NAME_OFFSET + 2;
+        if (start + length > buffer.limit()) {
+            throw new IndexOutOfBoundsException("Truncated principal name");
+        }
+        // Decoded as DataInput.readUTF does
+        char[] name = new char[length];
+        int count = 0;
+        int end = start + length;
+        int i = start;
+        while (i < end) {
+            int c = buffer.get(i) & 0xff;
+            if (c < 0x80) {
+                name[count++] = (char) c;
+                i++;
+            } else if ((c & 0xe0) == 0xc0) {
+                name[count++] = (char) (((c & 0x1f) << 6) | nextBits(buffer, i + 1, end));
+                i += 2;
+            } else if ((c & 0xf0) == 0xe0) {
+                name[count++] = (char) (((c & 0x0f) << 12) | (nextBits(buffer, i + 1, end) << 6)
+                    | nextBits(buffer, i + 2, end));
+                i += 3;
+            } else {
+                throw new IllegalArgumentException("Malformed principal name");
+            }
+        }
+        return new String(name, 0, count);
+    }
+
+    /**
+     * The bits of a continuation byte of a modified UTF-8 character.
+     */
+    private static int nextBits(ByteBuffer buffer, int index, int end) {
+        if (index >= end) {
+            throw new IllegalArgumentException("Malformed principal name");
+        }
+        int c = buffer.get(index) & 0xff;
+        if ((c & 0xc0) != 0x80) {
+            throw new IllegalArgumentException("Malformed principal name");
+        }
+        return c & 0x3f;
+    }
+
+    /**
+     * Compare the principal name of an encoded identity to the given one,
+     * without allocating for ASCII names.
+     * @param buffer The buffer
+     * @param index The index of the encoded identity in the buffer
+     * @param principalName The principal name
+     * @return Whether the identity has the principal name
+     */
+    public static boolean hasPrincipalName(ByteBuffer buffer, int index, String principalName) {
+        int length = buffer.getShort(index + NAME_OFFSET) & 0xffff;
+        if (length != principalName.length()) {
+            return length > principalName.length()
+                && decodePrincipalName(buffer, index).equals(principalName);
+        }
+        int start = index + NAME_OFFSET + 2;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(start + i);
+            if (b < 0) {
+                return decodePrincipalName(buffer, index).equals(principalName);
+            }
+            if (b != principalName.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the length of the principal name and the name, as
+     * DataOutput.writeUTF does.
+     */
+    private static void putName(String principalName, ByteBuffer buffer) {
+        buffer.putShort((short) nameLength(principalName));
+        for (int i = 0; i < principalName.length(); i++) {
+            char c = principalName.charAt(i);
+            if (c >= 0x01 && c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private static int nameLength(String principalName) {
+        int length = 0;
+        for (int i = 0; i < principalName.length(); i++) {
+            char c = principalName.charAt(i);
+            if (c >= 0x01 && c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        if (length > 0xffff) {
+            throw new IllegalArgumentException("Principal name too long: " + principalName);
+        }
+        return length;
+    }
+
+    private static byte toByte(boolean value) {
+        if (value) {
+            return 1;
+        }
+        return 0;
+    }
+}
@@ -20,7 +20,11 @@
 package org.apache.kerby.kerberos.kerb.identity.backend;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.kerby.config.Configured;
 import org.apache.kerby.kerberos.kerb.KrbException;
@@ -50,6 +54,9 @@ public abstract class AbstractIdentityBackend
     private static Logger logger =
             LoggerFactory.getLogger(AbstractIdentityBackend.class);
 
+    private final CopyOnWriteArrayList<IdentityChangeListener> listeners =
+            new CopyOnWriteArrayList<>();
+
     /**
      * Get the Backend Config.
      * @return The backend config
@@ -58,6 +65,33 @@ public abstract class AbstractIdentityBackend
         return (BackendConfig) getConfig();
     }
 
+    /**
+     * Register a listener told of every identity written through this
+     * backend, including by batch transactions.
+     * @param listener The listener
+     */
+    public void addIdentityChangeListener(IdentityChangeListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * @param listener The listener to unregister
+     */
+    public void removeIdentityChangeListener(IdentityChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tell the listeners the identity was written. Backends call this for
+     * the changes committed by their batch transactions.
+     * @param principalName The principal name
+     */
+    protected void fireIdentityChanged(String principalName) {
+        for (IdentityChangeListener listener : listeners) {
+            listener.identityChanged(principalName);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -174,6 +208,44 @@ public abstract class AbstractIdentityBackend
      */
     protected abstract KrbIdentity doGetIdentity(String principalName) throws KrbException;
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, KrbIdentity> getIdentitiesByName(Collection<String> principalNames) throws KrbException {
+        for (String principalName : principalNames) {
+            if (principalName == null || principalName.isEmpty()) {
+                throw new IllegalArgumentException("Invalid principal name");
+            }
+        }
+
+        logger.debug("getIdentitiesByName called, principalNames = {}", principalNames);
+
+        Map<String, KrbIdentity> identities = doGetIdentitiesByName(principalNames);
+        logger.debug("getIdentitiesByName found {} of {} identities", identities.size(), principalNames.size());
+
+        return identities;
+    }
+
+    /**
+     * Get identities, invoked by getIdentitiesByName. Looks them up one by one,
+     * backends able to fetch several in a single request override this.
+     * @param principalNames The principal names
+     * @return The identities found, by principal name
+     * @throws KrbException e
+     */
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        for (String principalName : principalNames) {
+            KrbIdentity identity = doGetIdentity(principalName);
+            if (identity != null) {
+                identities.put(principalName, identity);
+            }
+        }
+        return identities;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -236,7 +308,12 @@ public abstract class AbstractIdentityBackend
                     + identity.getPrincipalName());
         }
 
-        KrbIdentity added = doAddIdentity(identity);
+        KrbIdentity added;
+        try {
+            added = doAddIdentity(identity);
+        } finally {
+            fireIdentityChanged(identity.getPrincipalName());
+        }
         logger.debug("addIdentity {}, principalName = {}",
                 (added != null ? "successful" : "failed"), identity.getPrincipalName());
 
@@ -266,7 +343,12 @@ public abstract class AbstractIdentityBackend
             throw new KrbException("Principal does not exist.");
         }
 
-        KrbIdentity updated = doUpdateIdentity(identity);
+        KrbIdentity updated;
+        try {
+            updated = doUpdateIdentity(identity);
+        } finally {
+            fireIdentityChanged(identity.getPrincipalName());
+        }
         logger.debug("updateIdentity {}, principalName = {}",
                 (updated != null ? "successful" : "failed"), identity.getPrincipalName());
 
@@ -298,7 +380,11 @@ public abstract class AbstractIdentityBackend
             throw new KrbException("Principal does not exist.");
         }
 
-        doDeleteIdentity(principalName);
+        try {
+            doDeleteIdentity(principalName);
+        } finally {
+            fireIdentityChanged(principalName);
+        }
     }
 
     /**
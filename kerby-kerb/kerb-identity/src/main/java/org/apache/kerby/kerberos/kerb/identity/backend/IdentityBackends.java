@@ -0,0 +1,84 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kerb.KrbException;
+
+/**
+ * Helpers of the backends composed of other backends.
+ */
+final class IdentityBackends {
+    /** The key of the class of a child backend, under the prefix of its keys. */
+    static final String CLASS_KEY = "class";
+
+    private IdentityBackends() { }
+
+    /**
+     * Create a child backend configured by the keys under a prefix of the
+     * config of its parent, which make up its own backend config.
+     * @param parent The config of the parent backend
+     * @param prefix The prefix of the keys of the child backend
+     * @return The child backend, not initialized yet
+     * @throws KrbException If no valid backend class is configured
+     */
+    static IdentityBackend create(Config parent, String prefix) throws KrbException {
+        BackendConfig config = new BackendConfig();
+        if (parent instanceof BackendConfig) {
+            config.setConfDir(((BackendConfig) parent).getConfDir());
+        }
+        for (String key : parent.getNames()) {
+            if (key.startsWith(prefix)) {
+                config.setString(key.substring(prefix.length()), parent.getString(key));
+            }
+        }
+
+        String className = config.getString(CLASS_KEY);
+        if (className == null) {
+            throw new KrbException("No backend class configured in " + prefix + CLASS_KEY);
+        }
+        IdentityBackend backend;
+        try {
+            backend = (IdentityBackend) Class.forName(className).newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            throw new KrbException("Failed to create backend " + className + " for " + prefix, e);
+        }
+        backend.setConfig(config);
+        return backend;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the characters, with the final mix of
+     * MurmurHash3 to spread similar names.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An identity backend spreading the principals over several shards, each
+ * one an identity backend of its own. A principal is routed to a shard by
+ * consistent hashing of its name, so that adding a shard only moves the
+ * principals it takes over.
+ *
+ * The shards are either given to the constructor, or configured as
+ * <pre>
+ *   backend.sharded.shards = shard1, shard2
+ *   backend.sharded.shard1.class = org.apache.kerby.kerberos.kdc.identitybackend.LdapIdentityBackend
+ *   backend.sharded.shard1.host = ldap1.example.com
+ *   ...
+ * </pre>
+ * where the keys under the prefix of a shard make up its own backend
+ * config. The hashing depends on the names of the shards, not on their
+ * order, and the names must not change once identities are stored.
+ *
+ * Enumerating the identities and getting several identities at once query
+ * the shards in parallel. A batch is split per shard and committed on the
+ * shards in parallel, it is not atomic across shards.
+ */
+public class ShardedIdentityBackend extends AbstractIdentityBackend {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedIdentityBackend.class);
+
+    public static final String SHARDED_BACKEND_PREFIX = "backend.sharded.";
+    public static final String SHARDED_BACKEND_SHARDS = SHARDED_BACKEND_PREFIX + "shards";
+    public static final String SHARDED_BACKEND_VIRTUAL_NODES = SHARDED_BACKEND_PREFIX + "virtual_nodes";
+    /** The key of the backend class of a shard, under the prefix of the shard. */
+    public static final String SHARD_CLASS = IdentityBackends.CLASS_KEY;
+
+    private static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final Map<String, IdentityBackend> shardsByName = new LinkedHashMap<>();
+    private IdentityBackend[] shards;
+    // The ring of consistent hashing, points sorted with the shard owning
+    // the hashes up to each of them
+    private long[] ringPoints;
+    private int[] ringShards;
+    private ExecutorService executor;
+
+    public ShardedIdentityBackend() {
+
+    }
+
+    /**
+     * Constructing an instance over the given shards, which are initialized,
+     * started, stopped and released along with it.
+     * @param shards The shards by name
+     */
+    public ShardedIdentityBackend(Map<String, IdentityBackend> shards) {
+        shardsByName.putAll(shards);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doInitialize() throws KrbException {
+        if (shardsByName.isEmpty()) {
+            String names = getConfig().getString(SHARDED_BACKEND_SHARDS);
+            if (names == null || names.trim().isEmpty()) {
+                throw new KrbException("No shards configured in " + SHARDED_BACKEND_SHARDS);
+            }
+            for (String name : names.trim().split("[,\\s]+")) {
+                shardsByName.put(name, IdentityBackends.create(getConfig(), SHARDED_BACKEND_PREFIX + name + "."));
+            }
+        }
+
+        shards = shardsByName.values().toArray(new IdentityBackend[0]);
+        for (IdentityBackend shard : shards) {
+            shard.initialize();
+        }
+        buildRing(getConfig().getInt(SHARDED_BACKEND_VIRTUAL_NODES, DEFAULT_VIRTUAL_NODES));
+
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(shards.length, runnable -> {
+            Thread thread = new Thread(runnable, "sharded-backend-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOG.info("Initialized the sharded identity backend with shards {}.", shardsByName.keySet());
+    }
+
+    private void buildRing(int virtualNodes) {
+        TreeMap<Long, Integer> ring = new TreeMap<>();
+        int shard = 0;
+        for (String name : shardsByName.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(IdentityBackends.hash(name + "#" + i), shard);
+            }
+            shard++;
+        }
+
+        ringPoints = new long[ring.size()];
+        ringShards = new int[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> point : ring.entrySet()) {
+            ringPoints[i] = point.getKey();
+            ringShards[i] = point.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * @param principalName The principal name
+     * @return The index of the shard of the principal
+     */
+    int shardOf(String principalName) {
+        int i = Arrays.binarySearch(ringPoints, IdentityBackends.hash(principalName));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        if (i == ringPoints.length) {
+            i = 0;
+        }
+        return ringShards[i];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStart() {
+        for (IdentityBackend shard : shards) {
+            shard.start();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStop() throws KrbException {
+        KrbException failure = null;
+        for (IdentityBackend shard : shards) {
+            try {
+                shard.stop();
+            } catch (KrbException e) {
+                LOG.error("Failed to stop a shard. " + e);
+                failure = e;
+            }
+        }
+        executor.shutdown();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRelease() {
+        for (IdentityBackend shard : shards) {
+            shard.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new ShardedBatchTrans();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
+        return shards[shardOf(principalName)].getIdentity(principalName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        final Map<Integer, List<String>> namesByShard = new HashMap<>();
+        for (String principalName : principalNames) {
+            int shard = shardOf(principalName);
+            List<String> names = namesByShard.get(shard);
+            if (names == null) {
+                names = new ArrayList<>();
+                namesByShard.put(shard, names);
+            }
+            names.add(principalName);
+        }
+
+        List<Callable<Map<String, KrbIdentity>>> tasks = new ArrayList<>(namesByShard.size());
+        for (final Map.Entry<Integer, List<String>> names : namesByShard.entrySet()) {
+            tasks.add(() -> shards[names.getKey()].getIdentitiesByName(names.getValue()));
+        }
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        for (Map<String, KrbIdentity> found : invokeAll(tasks)) {
+            identities.putAll(found);
+        }
+        return identities;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+        return shards[shardOf(identity.getPrincipalName())].addIdentity(identity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
+        return shards[shardOf(identity.getPrincipalName())].updateIdentity(identity);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDeleteIdentity(String principalName) throws KrbException {
+        shards[shardOf(principalName)].deleteIdentity(principalName);
+    }
+
+    /**
+     * Enumerate the shards in parallel, and merge their sorted principals.
+     */
+    @Override
+    protected Iterable<String> doGetIdentities() throws KrbException {
+        List<Callable<List<String>>> tasks = new ArrayList<>(shards.length);
+        for (final IdentityBackend shard : shards) {
+            tasks.add(() -> {
+                List<String> principals = new ArrayList<>();
+                for (String principal : shard.getIdentities()) {
+                    principals.add(principal);
+                }
+                return principals;
+            });
+        }
+        return merge(invokeAll(tasks));
+    }
+
+    private static List<String> merge(List<List<String>> sortedLists) {
+        int size = 0;
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(Math.max(sortedLists.size(), 1));
+        for (List<String> sorted : sortedLists) {
+            size += sorted.size();
+            if (!sorted.isEmpty()) {
+                heads.add(new PeekingIterator(sorted.iterator()));
+            }
+        }
+
+        List<String> merged = new ArrayList<>(size);
+        while (!heads.isEmpty()) {
+            PeekingIterator head = heads.poll();
+            merged.add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws KrbException {
+        if (tasks.size() == 1) {
+            try {
+                return Collections.singletonList(tasks.get(0).call());
+            } catch (KrbException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new KrbException("Failed to query the shard", e);
+            }
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while querying the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Failed to query the shards", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * An iterator over a sorted list, ordered by its next element.
+     */
+    private static final class PeekingIterator implements Comparable<PeekingIterator> {
+        private final Iterator<String> iterator;
+        private String next;
+
+        PeekingIterator(Iterator<String> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.next();
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        String next() {
+            String current = next;
+            if (iterator.hasNext()) {
+                next = iterator.next();
+            } else {
+                next = null;
+            }
+            return current;
+        }
+
+        @Override
+        public int compareTo(PeekingIterator other) {
+            return next.compareTo(other.next);
+        }
+    }
+
+    /**
+     * A change of a batch, deleting the principal when there is no identity.
+     */
+    private static final class Change {
+        private final String principalName;
+        private final KrbIdentity identity;
+        private final boolean isAdd;
+
+        Change(String principalName, KrbIdentity identity, boolean isAdd) {
+            this.principalName = principalName;
+            this.identity = identity;
+            this.isAdd = isAdd;
+        }
+    }
+
+    /**
+     * A batch keeping the changes per shard until it is committed, so that
+     * no shard is held by a batch still being filled.
+     */
+    private class ShardedBatchTrans implements BatchTrans {
+        private final Map<Integer, List<Change>> changes = new HashMap<>();
+
+        @Override
+        public void commit() throws KrbException {
+            List<Callable<Void>> tasks = new ArrayList<>(changes.size());
+            for (final Map.Entry<Integer, List<Change>> shardChanges : changes.entrySet()) {
+                tasks.add(() -> {
+                    commitShard(shards[shardChanges.getKey()], shardChanges.getValue());
+                    return null;
+                });
+            }
+            try {
+                invokeAll(tasks);
+            } finally {
+                for (List<Change> shardChanges : changes.values()) {
+                    for (Change change : shardChanges) {
+                        fireIdentityChanged(change.principalName);
+                    }
+                }
+                changes.clear();
+            }
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            changes.clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                add(new Change(identity.getPrincipalName(), identity, true));
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                add(new Change(identity.getPrincipalName(), identity, false));
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                add(new Change(principalName, null, false));
+            }
+            return this;
+        }
+
+        private void add(Change change) {
+            int shard = shardOf(change.principalName);
+            List<Change> shardChanges = changes.get(shard);
+            if (shardChanges == null) {
+                shardChanges = new ArrayList<>();
+                changes.put(shard, shardChanges);
+            }
+            shardChanges.add(change);
+        }
+    }
+
+    /**
+     * Apply the changes in a batch of the shard, or one by one if it
+     * doesn't support batches.
+     */
+    private static void commitShard(IdentityBackend shard, List<Change> changes) throws KrbException {
+        if (!shard.supportBatchTrans()) {
+            for (Change change : changes) {
+                if (change.identity == null) {
+                    shard.deleteIdentity(change.principalName);
+                } else if (change.isAdd) {
+                    shard.addIdentity(change.identity);
+                } else {
+                    shard.updateIdentity(change.identity);
+                }
+            }
+            return;
+        }
+
+        BatchTrans batch = shard.startBatchTrans();
+        // A failed commit is left to the shard to clean up
+        boolean committing = false;
+        try {
+            for (Change change : changes) {
+                if (change.identity == null) {
+                    batch.deleteIdentity(change.principalName);
+                } else if (change.isAdd) {
+                    batch.addIdentity(change.identity);
+                } else {
+                    batch.updateIdentity(change.identity);
+                }
+            }
+            committing = true;
+            batch.commit();
+        } finally {
+            if (!committing) {
+                batch.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,791 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An identity backend serving reads from a local replica, typically an
+ * embedded store, in front of a remote backend which is the authority.
+ *
+ * The backends are either given to the constructor, or configured as
+ * <pre>
+ *   backend.tiered.local.class = org.apache.kerby.kerberos.kdc.identitybackend.SegmentIdentityBackend
+ *   backend.tiered.local.backend.segment.dir = /var/lib/kerby/replica
+ *   backend.tiered.remote.class = org.apache.kerby.kerberos.kdc.identitybackend.LdapIdentityBackend
+ *   backend.tiered.remote.host = ldap.example.com
+ *   ...
+ * </pre>
+ * where the keys under the prefix of a backend make up its own backend
+ * config.
+ *
+ * An identity found locally is returned at once. When it wasn't fetched
+ * from the remote backend within the refresh interval, either by itself
+ * or by the last full sync, it is refreshed in the background; a missing
+ * one is read through from the remote backend and kept locally. Writes go
+ * to the remote backend first, then to the replica. The replica is fully
+ * synced when started and then every sync interval: the remote principals
+ * are fetched by chunks in parallel, and local ones no longer in the
+ * remote backend are deleted.
+ *
+ * An identity served locally is thus at most the refresh interval behind
+ * the remote backend without a refresh being on its way, but principals
+ * added or deleted elsewhere than through this backend are only seen at
+ * the next read of them or the next sync.
+ */
+public class TieredIdentityBackend extends AbstractIdentityBackend {
+    private static final Logger LOG = LoggerFactory.getLogger(TieredIdentityBackend.class);
+
+    public static final String TIERED_BACKEND_PREFIX = "backend.tiered.";
+    /** The prefix of the keys of the local backend. */
+    public static final String TIERED_BACKEND_LOCAL = TIERED_BACKEND_PREFIX + "local.";
+    /** The prefix of the keys of the remote backend. */
+    public static final String TIERED_BACKEND_REMOTE = TIERED_BACKEND_PREFIX + "remote.";
+    /** Seconds after which an identity served locally is refreshed. */
+    public static final String TIERED_BACKEND_REFRESH_INTERVAL = TIERED_BACKEND_PREFIX + "refresh_interval";
+    /** Seconds between full syncs, 0 to only sync when started, less to never sync. */
+    public static final String TIERED_BACKEND_SYNC_INTERVAL = TIERED_BACKEND_PREFIX + "sync_interval";
+    /** Threads fetching from the remote backend in the background. */
+    public static final String TIERED_BACKEND_SYNC_THREADS = TIERED_BACKEND_PREFIX + "sync_threads";
+
+    private static final long DEFAULT_REFRESH_INTERVAL = 300;
+    private static final long DEFAULT_SYNC_INTERVAL = 3600;
+    private static final int DEFAULT_SYNC_THREADS = 4;
+    private static final int SYNC_CHUNK_SIZE = 1000;
+    private static final int LOCK_STRIPES = 64;
+
+    private IdentityBackend local;
+    private IdentityBackend remote;
+    private long refreshInterval;
+    private long syncInterval;
+    private int syncThreads;
+
+    // Serializes the changes of the replica per principal, so that data
+    // fetched before a change is never applied after it
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // When each principal was last fetched or written since the last sync
+    // started, in nanoseconds
+    private final Map<String, Long> refreshedAt = new ConcurrentHashMap<>();
+    // When each pending refresh was requested, in nanoseconds
+    private final Map<String, Long> pendingRefreshes = new ConcurrentHashMap<>();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile boolean synced;
+    private volatile long lastSyncStart;
+    private volatile long lastSyncDuration;
+    private volatile boolean stopped;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder localHitCount = new LongAdder();
+    private final LongAdder remoteReadCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder refreshFailureCount = new LongAdder();
+    private final LongAdder totalRefreshLag = new LongAdder();
+    private final LongAccumulator maxRefreshLag = new LongAccumulator(Math::max, 0);
+    private final LongAdder syncCount = new LongAdder();
+    private final LongAdder syncFailureCount = new LongAdder();
+
+    public TieredIdentityBackend() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Constructing an instance over the given backends, which are
+     * initialized, started, stopped and released along with it.
+     * @param local The local backend keeping the replica
+     * @param remote The remote backend
+     */
+    public TieredIdentityBackend(IdentityBackend local, IdentityBackend remote) {
+        this();
+        this.local = local;
+        this.remote = remote;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doInitialize() throws KrbException {
+        if (local == null) {
+            local = IdentityBackends.create(getConfig(), TIERED_BACKEND_LOCAL);
+        }
+        if (remote == null) {
+            remote = IdentityBackends.create(getConfig(), TIERED_BACKEND_REMOTE);
+        }
+        local.initialize();
+        remote.initialize();
+
+        refreshInterval = TimeUnit.SECONDS.toNanos(
+                getConfig().getLong(TIERED_BACKEND_REFRESH_INTERVAL, DEFAULT_REFRESH_INTERVAL));
+        syncInterval = getConfig().getLong(TIERED_BACKEND_SYNC_INTERVAL, DEFAULT_SYNC_INTERVAL);
+        syncThreads = getConfig().getInt(TIERED_BACKEND_SYNC_THREADS, DEFAULT_SYNC_THREADS);
+        if (syncThreads < 1) {
+            throw new KrbException("Invalid " + TIERED_BACKEND_SYNC_THREADS + ": " + syncThreads);
+        }
+
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(syncThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tiered-backend-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiered-backend-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStart() {
+        local.start();
+        remote.start();
+
+        Runnable syncTask = () -> {
+            try {
+                sync();
+            } catch (KrbException e) {
+                LOG.warn("Failed to sync the local replica. " + e);
+            }
+        };
+        if (syncInterval > 0) {
+            scheduler.scheduleWithFixedDelay(syncTask, 0, syncInterval, TimeUnit.SECONDS);
+        } else if (syncInterval == 0) {
+            scheduler.execute(syncTask);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStop() throws KrbException {
+        stopped = true;
+        scheduler.shutdown();
+        executor.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            local.stop();
+        } finally {
+            remote.stop();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRelease() {
+        local.release();
+        remote.release();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return remote.supportBatchTrans();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new TieredBatchTrans(remote.startBatchTrans());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
+        KrbIdentity identity = null;
+        try {
+            identity = local.getIdentity(principalName);
+        } catch (KrbException e) {
+            LOG.warn("Failed to read " + principalName + " from the local replica. " + e);
+        }
+        if (identity != null) {
+            localHitCount.increment();
+            if (isStale(principalName)) {
+                scheduleRefresh(principalName);
+            }
+            return identity;
+        }
+
+        remoteReadCount.increment();
+        long fetchStart = System.nanoTime();
+        identity = remote.getIdentity(principalName);
+        if (identity != null) {
+            cache(Collections.singletonMap(principalName, identity), fetchStart);
+        }
+        return identity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Map<String, KrbIdentity> doGetIdentitiesByName(Collection<String> principalNames)
+            throws KrbException {
+        Map<String, KrbIdentity> identities = new HashMap<>();
+        try {
+            identities.putAll(local.getIdentitiesByName(principalNames));
+        } catch (KrbException e) {
+            LOG.warn("Failed to read from the local replica. " + e);
+        }
+        localHitCount.add(identities.size());
+        List<String> missing = new ArrayList<>();
+        for (String principalName : principalNames) {
+            if (!identities.containsKey(principalName)) {
+                missing.add(principalName);
+            } else if (isStale(principalName)) {
+                scheduleRefresh(principalName);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            remoteReadCount.add(missing.size());
+            long fetchStart = System.nanoTime();
+            Map<String, KrbIdentity> fetched = remote.getIdentitiesByName(missing);
+            if (!fetched.isEmpty()) {
+                cache(fetched, fetchStart);
+            }
+            identities.putAll(fetched);
+        }
+        return identities;
+    }
+
+    /**
+     * Enumerate the local replica once it is synced, the remote backend
+     * otherwise.
+     */
+    @Override
+    protected Iterable<String> doGetIdentities() throws KrbException {
+        if (synced) {
+            return local.getIdentities();
+        }
+        return remote.getIdentities();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+        KrbIdentity added = remote.addIdentity(identity);
+        written(Collections.singletonMap(identity.getPrincipalName(), identity));
+        return added;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
+        KrbIdentity updated = remote.updateIdentity(identity);
+        written(Collections.singletonMap(identity.getPrincipalName(), identity));
+        return updated;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doDeleteIdentity(String principalName) throws KrbException {
+        remote.deleteIdentity(principalName);
+        written(Collections.singletonMap(principalName, (KrbIdentity) null));
+    }
+
+    /**
+     * Fully sync the local replica with the remote backend, waiting for a
+     * sync already running to complete first.
+     * @throws KrbException If the remote backend or the replica failed
+     */
+    public void sync() throws KrbException {
+        syncLock.lock();
+        try {
+            long start = System.nanoTime();
+            try {
+                doSync();
+            } catch (KrbException e) {
+                syncFailureCount.increment();
+                throw e;
+            }
+
+            lastSyncStart = start;
+            synced = true;
+            // The sync covers what was fetched before it started
+            refreshedAt.values().removeIf(at -> at - start < 0);
+            lastSyncDuration = System.nanoTime() - start;
+            syncCount.increment();
+            LOG.info("Synced the local replica in {} ms.", TimeUnit.NANOSECONDS.toMillis(lastSyncDuration));
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void doSync() throws KrbException {
+        final int maxChunks = syncThreads * 2;
+        final Semaphore permits = new Semaphore(maxChunks);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        // The hashes of the remote principals, so that they needn't be kept
+        long[] seen = new long[SYNC_CHUNK_SIZE];
+        int seenCount = 0;
+        List<String> chunk = new ArrayList<>(SYNC_CHUNK_SIZE);
+        try {
+            for (String principalName : remote.getIdentities()) {
+                if (seenCount == seen.length) {
+                    seen = Arrays.copyOf(seen, seen.length * 2);
+                }
+                seen[seenCount++] = IdentityBackends.hash(principalName);
+                chunk.add(principalName);
+                if (chunk.size() == SYNC_CHUNK_SIZE) {
+                    submitChunk(chunk, permits, failure);
+                    chunk = new ArrayList<>(SYNC_CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submitChunk(chunk, permits, failure);
+            }
+        } finally {
+            permits.acquireUninterruptibly(maxChunks);
+            permits.release(maxChunks);
+        }
+        if (failure.get() != null) {
+            throw new KrbException("Failed to sync the local replica", failure.get());
+        }
+
+        // Local principals not seen are checked again before being deleted,
+        // as they may have been added since the remote ones were enumerated
+        Arrays.sort(seen, 0, seenCount);
+        List<String> unseen = new ArrayList<>();
+        for (String principalName : local.getIdentities()) {
+            if (Arrays.binarySearch(seen, 0, seenCount, IdentityBackends.hash(principalName)) < 0) {
+                unseen.add(principalName);
+            }
+        }
+        for (int from = 0; from < unseen.size(); from += SYNC_CHUNK_SIZE) {
+            checkStopped();
+            List<String> names = unseen.subList(from, Math.min(from + SYNC_CHUNK_SIZE, unseen.size()));
+            long fetchStart = System.nanoTime();
+            Map<String, KrbIdentity> found = remote.getIdentitiesByName(names);
+            Map<String, KrbIdentity> deleted = new HashMap<>();
+            for (String principalName : names) {
+                if (!found.containsKey(principalName)) {
+                    deleted.put(principalName, null);
+                }
+            }
+            if (!deleted.isEmpty()) {
+                apply(deleted, fetchStart, false);
+            }
+        }
+    }
+
+    private void submitChunk(final List<String> chunk, final Semaphore permits,
+                             final AtomicReference<Exception> failure) throws KrbException {
+        checkStopped();
+        if (failure.get() != null) {
+            throw new KrbException("Failed to sync the local replica", failure.get());
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted while syncing the local replica", e);
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    long fetchStart = System.nanoTime();
+                    Map<String, KrbIdentity> fetched = remote.getIdentitiesByName(chunk);
+                    // Principals deleted since they were enumerated are
+                    // deleted locally as well
+                    Map<String, KrbIdentity> changes = new HashMap<>();
+                    for (String principalName : chunk) {
+                        changes.put(principalName, fetched.get(principalName));
+                    }
+                    apply(changes, fetchStart, false);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw new KrbException("The tiered backend is stopped", e);
+        }
+    }
+
+    private void checkStopped() throws KrbException {
+        if (stopped) {
+            throw new KrbException("The tiered backend is stopped");
+        }
+    }
+
+    /**
+     * @param principalName The principal name
+     * @return Whether the local identity wasn't fetched within the refresh interval
+     */
+    private boolean isStale(String principalName) {
+        long now = System.nanoTime();
+        Long at = refreshedAt.get(principalName);
+        if (at != null && now - at <= refreshInterval) {
+            return false;
+        }
+        return !synced || now - lastSyncStart > refreshInterval;
+    }
+
+    private void scheduleRefresh(final String principalName) {
+        if (pendingRefreshes.putIfAbsent(principalName, System.nanoTime()) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> refresh(principalName));
+        } catch (RejectedExecutionException e) {
+            pendingRefreshes.remove(principalName);
+        }
+    }
+
+    private void refresh(String principalName) {
+        try {
+            long fetchStart = System.nanoTime();
+            KrbIdentity identity = remote.getIdentity(principalName);
+            apply(Collections.singletonMap(principalName, identity), fetchStart, true);
+
+            long lag = System.nanoTime() - pendingRefreshes.get(principalName);
+            totalRefreshLag.add(lag);
+            maxRefreshLag.accumulate(lag);
+            refreshCount.increment();
+        } catch (KrbException e) {
+            refreshFailureCount.increment();
+            LOG.warn("Failed to refresh " + principalName + " in the local replica. " + e);
+        } finally {
+            pendingRefreshes.remove(principalName);
+        }
+    }
+
+    /**
+     * Keep identities read through from the remote backend, which doesn't
+     * fail the read when the replica fails.
+     */
+    private void cache(Map<String, KrbIdentity> identities, long fetchStart) {
+        try {
+            apply(identities, fetchStart, true);
+        } catch (KrbException e) {
+            LOG.warn("Failed to keep identities in the local replica. " + e);
+        }
+    }
+
+    /**
+     * Apply changes written to the remote backend to the replica. When the
+     * replica fails, the principals are refreshed later on.
+     */
+    private void written(Map<String, KrbIdentity> changes) {
+        try {
+            apply(changes, System.nanoTime(), true);
+        } catch (KrbException e) {
+            LOG.warn("Failed to write to the local replica, refreshing it. " + e);
+            for (String principalName : changes.keySet()) {
+                refreshedAt.put(principalName, System.nanoTime());
+                scheduleRefresh(principalName);
+            }
+        }
+    }
+
+    /**
+     * Apply to the replica identities fetched from, or written to, the
+     * remote backend, skipping principals changed in the replica since.
+     * @param changes The identities by principal name, null to delete them
+     * @param fetchStart When the identities were fetched, in nanoseconds
+     * @param record Whether to remember the principals as refreshed, a
+     *               sync records its start instead
+     * @throws KrbException If the replica failed
+     */
+    private void apply(Map<String, KrbIdentity> changes, long fetchStart, boolean record) throws KrbException {
+        // Locks are taken in order, so that chunks of a sync never deadlock
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String principalName : changes.keySet()) {
+            stripes.add(stripeOf(principalName));
+        }
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        try {
+            Map<String, KrbIdentity> fresh = new LinkedHashMap<>();
+            for (Map.Entry<String, KrbIdentity> change : changes.entrySet()) {
+                Long at = refreshedAt.get(change.getKey());
+                if (at == null || at - fetchStart < 0) {
+                    fresh.put(change.getKey(), change.getValue());
+                }
+            }
+            if (fresh.isEmpty()) {
+                return;
+            }
+
+            applyLocal(fresh);
+            if (record) {
+                for (String principalName : fresh.keySet()) {
+                    refreshedAt.put(principalName, fetchStart);
+                }
+            }
+        } finally {
+            for (int stripe : stripes.descendingSet()) {
+                locks[stripe].unlock();
+            }
+        }
+    }
+
+    private void applyLocal(Map<String, KrbIdentity> changes) throws KrbException {
+        Map<String, KrbIdentity> existing = local.getIdentitiesByName(changes.keySet());
+        boolean batched = changes.size() > 1 && local.supportBatchTrans();
+        BatchTrans batch = null;
+        if (batched) {
+            batch = local.startBatchTrans();
+        }
+        boolean committing = false;
+        try {
+            for (Map.Entry<String, KrbIdentity> change : changes.entrySet()) {
+                KrbIdentity current = existing.get(change.getKey());
+                KrbIdentity identity = change.getValue();
+                if (identity == null) {
+                    if (current == null) {
+                        continue;
+                    }
+                    if (batched) {
+                        batch.deleteIdentity(change.getKey());
+                    } else {
+                        local.deleteIdentity(change.getKey());
+                    }
+                } else if (current == null) {
+                    if (batched) {
+                        batch.addIdentity(identity);
+                    } else {
+                        local.addIdentity(identity);
+                    }
+                } else if (!sameIdentity(current, identity)) {
+                    if (batched) {
+                        batch.updateIdentity(identity);
+                    } else {
+                        local.updateIdentity(identity);
+                    }
+                }
+            }
+            if (batched) {
+                committing = true;
+                batch.commit();
+            }
+        } finally {
+            if (batched && !committing) {
+                batch.rollback();
+            }
+        }
+    }
+
+    /**
+     * Whether two identities of a principal have the same attributes, as
+     * identities only compare their principal names.
+     */
+    private static boolean sameIdentity(KrbIdentity current, KrbIdentity identity) {
+        return current.getKeyVersion() == identity.getKeyVersion()
+                && current.getKdcFlags() == identity.getKdcFlags()
+                && current.isDisabled() == identity.isDisabled()
+                && current.isLocked() == identity.isLocked()
+                && Objects.equals(current.getCreatedTime(), identity.getCreatedTime())
+                && Objects.equals(current.getExpireTime(), identity.getExpireTime())
+                && current.getKeys().equals(identity.getKeys());
+    }
+
+    private static int stripeOf(String principalName) {
+        return (principalName.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    /**
+     * @return The number of identities served from the local replica
+     */
+    public long getLocalHitCount() {
+        return localHitCount.sum();
+    }
+
+    /**
+     * @return The number of identities read through from the remote backend
+     */
+    public long getRemoteReadCount() {
+        return remoteReadCount.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.sum();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.sum();
+    }
+
+    public long getPendingRefreshCount() {
+        return pendingRefreshes.size();
+    }
+
+    /**
+     * @return The total time from requesting refreshes to applying them, in nanoseconds
+     */
+    public long getTotalRefreshLag() {
+        return totalRefreshLag.sum();
+    }
+
+    /**
+     * @return The longest time from requesting a refresh to applying it, in nanoseconds
+     */
+    public long getMaxRefreshLag() {
+        return maxRefreshLag.get();
+    }
+
+    public long getSyncCount() {
+        return syncCount.sum();
+    }
+
+    public long getSyncFailureCount() {
+        return syncFailureCount.sum();
+    }
+
+    /**
+     * @return The time the last completed sync took, in nanoseconds
+     */
+    public long getLastSyncDuration() {
+        return lastSyncDuration;
+    }
+
+    /**
+     * @return The time since the last completed sync started, which bounds
+     *         how far behind the principals not read since are, in
+     *         nanoseconds, or -1 if the replica was never synced
+     */
+    public long getStaleness() {
+        if (!synced) {
+            return -1;
+        }
+        return System.nanoTime() - lastSyncStart;
+    }
+
+    /**
+     * A batch of the remote backend, whose changes are applied to the
+     * replica once it is committed.
+     */
+    private class TieredBatchTrans implements BatchTrans {
+        private final BatchTrans remoteBatch;
+        private final Map<String, KrbIdentity> changes = new LinkedHashMap<>();
+
+        TieredBatchTrans(BatchTrans remoteBatch) {
+            this.remoteBatch = remoteBatch;
+        }
+
+        @Override
+        public void commit() throws KrbException {
+            List<String> changed = new ArrayList<>(changes.keySet());
+            try {
+                remoteBatch.commit();
+                if (!changes.isEmpty()) {
+                    written(new LinkedHashMap<>(changes));
+                    changes.clear();
+                }
+            } finally {
+                for (String principalName : changed) {
+                    fireIdentityChanged(principalName);
+                }
+            }
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            changes.clear();
+            remoteBatch.rollback();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            remoteBatch.addIdentity(identity);
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            remoteBatch.updateIdentity(identity);
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            remoteBatch.deleteIdentity(principalName);
+            if (principalName != null) {
+                changes.put(principalName, null);
+            }
+            return this;
+        }
+    }
+}
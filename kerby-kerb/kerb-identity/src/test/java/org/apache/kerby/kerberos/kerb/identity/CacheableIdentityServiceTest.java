@@ -0,0 +1,257 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheableIdentityServiceTest {
+    private static final String PRINCIPAL = "test@EXAMPLE.COM";
+
+    private CountingBackend backend;
+    private Conf config;
+
+    @Before
+    public void setUp() throws KrbException {
+        backend = new CountingBackend();
+        backend.initialize();
+        backend.addIdentity(new KrbIdentity(PRINCIPAL));
+        config = new Conf();
+    }
+
+    @Test
+    public void testHitAndMiss() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+
+        assertThat(service.getIdentity(PRINCIPAL)).isNotNull();
+        assertThat(service.getIdentity(PRINCIPAL)).isNotNull();
+
+        assertThat(backend.loads.get()).isEqualTo(1);
+        assertThat(service.getCache().getMissCount()).isEqualTo(1);
+        assertThat(service.getCache().getHitCount()).isEqualTo(1);
+        assertThat(service.getCache().getLoadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSizeBound() throws KrbException {
+        config.setInt(CacheableIdentityService.CACHE_SIZE, 32);
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+
+        for (int i = 0; i < 1000; i++) {
+            String name = "user" + i + "@EXAMPLE.COM";
+            backend.addIdentity(new KrbIdentity(name));
+            service.getIdentity(name);
+        }
+
+        assertThat(service.getCache().size()).isLessThanOrEqualTo(32);
+        assertThat(service.getCache().getEvictionCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        config.setLong(CacheableIdentityService.CACHE_EXPIRE_AFTER_WRITE, 0L);
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+
+        service.getIdentity(PRINCIPAL);
+        service.getIdentity(PRINCIPAL);
+
+        assertThat(backend.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testWritesUpdateCache() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+        service.getIdentity(PRINCIPAL);
+
+        KrbIdentity updated = new KrbIdentity(PRINCIPAL);
+        updated.setDisabled(true);
+        service.updateIdentity(updated);
+        assertThat(service.getIdentity(PRINCIPAL).isDisabled()).isTrue();
+
+        service.deleteIdentity(PRINCIPAL);
+        assertThat(service.getIdentity(PRINCIPAL)).isNull();
+    }
+
+    @Test
+    public void testNegativeCaching() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+        String unknown = "unknown@EXAMPLE.COM";
+
+        assertThat(service.getIdentity(unknown)).isNull();
+        assertThat(service.getIdentity(unknown)).isNull();
+        assertThat(backend.loads.get()).isEqualTo(1);
+        assertThat(service.getCache().getNegativeHitCount()).isEqualTo(1);
+
+        service.addIdentity(new KrbIdentity(unknown));
+        assertThat(service.getIdentity(unknown)).isNotNull();
+    }
+
+    @Test
+    public void testNegativeCachingDisabled() throws KrbException {
+        config.setInt(CacheableIdentityService.NEGATIVE_CACHE_SIZE, 0);
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+        String unknown = "unknown@EXAMPLE.COM";
+
+        assertThat(service.getIdentity(unknown)).isNull();
+        assertThat(service.getIdentity(unknown)).isNull();
+        assertThat(backend.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+        backend.loadLatch = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<KrbIdentity>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> service.getIdentity(PRINCIPAL)));
+            }
+            Thread.sleep(200);
+            backend.loadLatch.countDown();
+
+            for (Future<KrbIdentity> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isNotNull();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(backend.loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetIdentitiesLoadsMissesAtOnce() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+        String other = "other@EXAMPLE.COM";
+        String unknown = "unknown@EXAMPLE.COM";
+        backend.addIdentity(new KrbIdentity(other));
+        service.getIdentity(PRINCIPAL);
+
+        Map<String, KrbIdentity> found = service.getIdentitiesByName(Arrays.asList(PRINCIPAL, other, unknown));
+        assertThat(found).containsOnlyKeys(PRINCIPAL, other);
+        assertThat(backend.loads.get()).isEqualTo(1);
+        assertThat(backend.bulkLoads.get()).isEqualTo(1);
+
+        // All of them are cached now, the unknown one as missing
+        found = service.getIdentitiesByName(Arrays.asList(PRINCIPAL, other, unknown));
+        assertThat(found).containsOnlyKeys(PRINCIPAL, other);
+        assertThat(backend.bulkLoads.get()).isEqualTo(1);
+        assertThat(service.getCache().getNegativeHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCallersGetCopies() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, backend);
+
+        service.getIdentity(PRINCIPAL).setDisabled(true);
+        service.getIdentitiesByName(Arrays.asList(PRINCIPAL)).get(PRINCIPAL).setLocked(true);
+
+        KrbIdentity cached = service.getIdentity(PRINCIPAL);
+        assertThat(cached.isDisabled()).isFalse();
+        assertThat(cached.isLocked()).isFalse();
+        assertThat(backend.loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRefreshInBackground() throws Exception {
+        List<Runnable> refreshes = new ArrayList<>();
+        IdentityCache cache = new IdentityCache(16, 60000, 1, 0, 0, refreshes::add);
+        KrbIdentity identity = new KrbIdentity(PRINCIPAL);
+        cache.put(PRINCIPAL, identity);
+        Thread.sleep(10);
+
+        KrbIdentity refreshed = new KrbIdentity(PRINCIPAL);
+        AtomicInteger loads = new AtomicInteger();
+        IdentityCache.Loader loader = name -> {
+            loads.incrementAndGet();
+            return refreshed;
+        };
+        // The current identity is served until the refresh completes
+        assertThat(cache.get(PRINCIPAL, loader)).isSameAs(identity);
+        assertThat(cache.get(PRINCIPAL, loader)).isSameAs(identity);
+        assertThat(refreshes).hasSize(1);
+        assertThat(loads.get()).isEqualTo(0);
+
+        refreshes.get(0).run();
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.get(PRINCIPAL, loader)).isSameAs(refreshed);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsCachedIdentity() throws Exception {
+        IdentityCache cache = new IdentityCache(16, 60000, 1, 0, 0, Runnable::run);
+        KrbIdentity identity = new KrbIdentity(PRINCIPAL);
+        cache.put(PRINCIPAL, identity);
+        Thread.sleep(10);
+
+        assertThat(cache.get(PRINCIPAL, name -> {
+            throw new KrbException("Backend down");
+        })).isSameAs(identity);
+        assertThat(cache.getAll(Arrays.asList(PRINCIPAL), names -> {
+            throw new KrbException("Backend down");
+        })).containsEntry(PRINCIPAL, identity);
+        assertThat(cache.getLoadFailureCount()).isEqualTo(2);
+    }
+
+    private static class CountingBackend extends MemoryIdentityBackend {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger bulkLoads = new AtomicInteger();
+        private volatile CountDownLatch loadLatch;
+
+        @Override
+        public KrbIdentity getIdentity(String principalName) throws KrbException {
+            loads.incrementAndGet();
+            if (loadLatch != null) {
+                try {
+                    loadLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getIdentity(principalName);
+        }
+
+        @Override
+        public Map<String, KrbIdentity> getIdentitiesByName(Collection<String> principalNames) throws KrbException {
+            bulkLoads.incrementAndGet();
+            return super.getIdentitiesByName(principalNames);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class KrbIdentityCodecTest {
+
+    private static KrbIdentity createIdentity(String principal) {
+        KrbIdentity identity = new KrbIdentity(principal);
+        identity.setKeyVersion(3);
+        identity.setKdcFlags(0x50000000);
+        identity.setLocked(true);
+        identity.setCreatedTime(new KerberosTime(1500000000000L));
+        identity.setExpireTime(new KerberosTime(1600000000000L));
+        byte[] keyData = new byte[16];
+        Arrays.fill(keyData, (byte) 7);
+        identity.addKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96, keyData, 3));
+        identity.addKey(new EncryptionKey(EncryptionType.AES256_CTS_HMAC_SHA1_96, new byte[32], 2));
+        return identity;
+    }
+
+    private static void assertSameIdentity(KrbIdentity decoded, KrbIdentity identity) {
+        assertThat(decoded.getPrincipalName()).isEqualTo(identity.getPrincipalName());
+        assertThat(decoded.getKeyVersion()).isEqualTo(identity.getKeyVersion());
+        assertThat(decoded.getKdcFlags()).isEqualTo(identity.getKdcFlags());
+        assertThat(decoded.isDisabled()).isEqualTo(identity.isDisabled());
+        assertThat(decoded.isLocked()).isEqualTo(identity.isLocked());
+        assertThat(decoded.getCreatedTime()).isEqualTo(identity.getCreatedTime());
+        assertThat(decoded.getExpireTime()).isEqualTo(identity.getExpireTime());
+        assertThat(decoded.getKeys()).isEqualTo(identity.getKeys());
+        for (EncryptionKey key : identity.getKeys().values()) {
+            assertThat(decoded.getKey(key.getKeyType()).getKvno()).isEqualTo(key.getKvno());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        KrbIdentity identity = createIdentity("alice/admin@EXAMPLE.COM");
+        byte[] encoded = KrbIdentityCodec.encode(identity);
+        assertThat(encoded).hasSize(KrbIdentityCodec.encodedLength(identity));
+        assertSameIdentity(KrbIdentityCodec.decode(encoded), identity);
+    }
+
+    @Test
+    public void testPooledDirectBuffer() throws IOException {
+        KrbIdentity first = createIdentity("first@EXAMPLE.COM");
+        KrbIdentity second = createIdentity("second/host@EXAMPLE.COM");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        buffer.put((byte) 42);
+        KrbIdentityCodec.encode(first, buffer);
+        int secondIndex = buffer.position();
+        KrbIdentityCodec.encode(second, buffer);
+        buffer.flip();
+
+        buffer.position(1);
+        assertSameIdentity(KrbIdentityCodec.decode(buffer), first);
+        assertThat(buffer.position()).isEqualTo(secondIndex);
+        assertSameIdentity(KrbIdentityCodec.decode(buffer), second);
+        assertThat(buffer.hasRemaining()).isFalse();
+
+        assertThat(KrbIdentityCodec.decodePrincipalName(buffer, secondIndex))
+            .isEqualTo(second.getPrincipalName());
+        assertThat(KrbIdentityCodec.hasPrincipalName(buffer, 1, first.getPrincipalName())).isTrue();
+        assertThat(KrbIdentityCodec.hasPrincipalName(buffer, 1, "fir5t@EXAMPLE.COM")).isFalse();
+        assertThat(KrbIdentityCodec.hasPrincipalName(buffer, secondIndex, second.getPrincipalName()))
+            .isTrue();
+    }
+
+    /**
+     * The layout of version 1, as the ZooKeeper backend wrote it with
+     * DataOutput before the codec.
+     */
+    private static byte[] writeWithDataOutput(KrbIdentity identity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(1);
+            out.writeUTF(identity.getPrincipalName());
+            out.writeInt(identity.getKeyVersion());
+            out.writeInt(identity.getKdcFlags());
+            out.writeBoolean(identity.isDisabled());
+            out.writeBoolean(identity.isLocked());
+            out.writeLong(identity.getCreatedTime().getTime());
+            out.writeLong(identity.getExpireTime().getTime());
+            out.writeShort(identity.getKeys().size());
+            for (EncryptionKey key : identity.getKeys().values()) {
+                out.writeInt(key.getKeyType().getValue());
+                out.writeInt(key.getKvno());
+                out.writeShort(key.getKeyData().length);
+                out.write(key.getKeyData());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testSameBytesAsDataOutput() throws IOException {
+        for (String name : new String[] {"alice@EXAMPLE.COM", "nul\u0000@EXAMPLE.COM"}) {
+            KrbIdentity identity = createIdentity(name);
+            byte[] written = writeWithDataOutput(identity);
+            assertThat(KrbIdentityCodec.encode(identity)).isEqualTo(written);
+            assertSameIdentity(KrbIdentityCodec.decode(written), identity);
+        }
+
+        // Principal names are ASCII, but the names of other stores may not be:
+        // two and three byte characters, and a supplementary one
+        String[] names = {"nul\u0000", "j\u00f6rg", "\u7528\u6237", "emoji\ud83d\ude00"};
+        for (String name : names) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(KrbIdentityCodec.VERSION);
+                out.writeUTF(name);
+            }
+            byte[] written = bytes.toByteArray();
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(KrbIdentityCodec.encodedPrincipalNameLength(name));
+            KrbIdentityCodec.encodePrincipalName(name, buffer);
+            buffer.flip();
+            byte[] encoded = new byte[buffer.remaining()];
+            buffer.get(encoded);
+            assertThat(encoded).isEqualTo(written);
+            assertThat(KrbIdentityCodec.decodePrincipalName(buffer, 0)).isEqualTo(name);
+            assertThat(KrbIdentityCodec.hasPrincipalName(buffer, 0, name)).isTrue();
+        }
+    }
+
+    @Test
+    public void testInvalidInput() {
+        byte[] encoded = KrbIdentityCodec.encode(createIdentity("bob@EXAMPLE.COM"));
+        try {
+            KrbIdentityCodec.decode(Arrays.copyOf(encoded, encoded.length - 5));
+            fail("Decoded a truncated identity");
+        } catch (IOException e) {
+            assertThat(e).hasMessageContaining("Truncated");
+        }
+
+        encoded[0] = 2;
+        try {
+            KrbIdentityCodec.decode(encoded);
+            fail("Decoded an unknown version");
+        } catch (IOException e) {
+            assertThat(e).hasMessageContaining("version");
+        }
+
+        encoded[0] = KrbIdentityCodec.VERSION;
+        // A two byte character without its second byte
+        encoded[3] = (byte) 0xc3;
+        try {
+            KrbIdentityCodec.decode(encoded);
+            fail("Decoded a malformed principal name");
+        } catch (IOException e) {
+            assertThat(e).hasMessageContaining("malformed");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedIdentityBackendTest {
+    private static final int COUNT = 300;
+
+    private Map<String, IdentityBackend> shards;
+    private ShardedIdentityBackend backend;
+
+    @Before
+    public void setUp() throws KrbException {
+        shards = new LinkedHashMap<>();
+        shards.put("shard1", new MemoryIdentityBackend());
+        shards.put("shard2", new MemoryIdentityBackend());
+        shards.put("shard3", new BatchMemoryBackend());
+        backend = new ShardedIdentityBackend(shards);
+        backend.setConfig(new Conf());
+        backend.initialize();
+        backend.start();
+    }
+
+    @After
+    public void tearDown() throws KrbException {
+        backend.stop();
+        backend.release();
+    }
+
+    private static String principal(int i) {
+        return "user" + i + "@EXAMPLE.COM";
+    }
+
+    @Test
+    public void testRouting() throws KrbException {
+        List<String> principals = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            backend.addIdentity(new KrbIdentity(principal(i)));
+            principals.add(principal(i));
+        }
+
+        int total = 0;
+        for (IdentityBackend shard : shards.values()) {
+            int count = 0;
+            for (String principal : shard.getIdentities()) {
+                assertThat(backend.getIdentity(principal)).isNotNull();
+                count++;
+            }
+            assertThat(count).isGreaterThan(COUNT / 10);
+            total += count;
+        }
+        assertThat(total).isEqualTo(COUNT);
+
+        List<String> sorted = new ArrayList<>(principals);
+        Collections.sort(sorted);
+        assertThat(backend.getIdentities()).containsExactlyElementsOf(sorted);
+        assertThat(backend.getIdentitiesByName(principals)).hasSize(COUNT);
+
+        backend.deleteIdentity(principal(0));
+        assertThat(backend.getIdentity(principal(0))).isNull();
+        assertThat(backend.getIdentities()).hasSize(COUNT - 1);
+    }
+
+    @Test
+    public void testAddingShardMovesFewPrincipals() throws KrbException {
+        Map<String, IdentityBackend> grown = new LinkedHashMap<>(shards);
+        grown.put("shard4", new MemoryIdentityBackend());
+        ShardedIdentityBackend grownBackend = new ShardedIdentityBackend(grown);
+        grownBackend.setConfig(new Conf());
+        grownBackend.initialize();
+
+        int moved = 0;
+        for (int i = 0; i < COUNT; i++) {
+            int shard = backend.shardOf(principal(i));
+            int grownShard = grownBackend.shardOf(principal(i));
+            if (grownShard != shard) {
+                // Only to the new shard
+                assertThat(grownShard).isEqualTo(3);
+                moved++;
+            }
+        }
+        assertThat(moved).isGreaterThan(0).isLessThan(COUNT * 2 / 5);
+    }
+
+    @Test
+    public void testConfiguredShards() throws KrbException {
+        Conf config = new Conf();
+        config.setString(ShardedIdentityBackend.SHARDED_BACKEND_SHARDS, "a, b");
+        config.setString(ShardedIdentityBackend.SHARDED_BACKEND_PREFIX + "a."
+            + ShardedIdentityBackend.SHARD_CLASS, MemoryIdentityBackend.class.getName());
+        config.setString(ShardedIdentityBackend.SHARDED_BACKEND_PREFIX + "b."
+            + ShardedIdentityBackend.SHARD_CLASS, MemoryIdentityBackend.class.getName());
+        ShardedIdentityBackend configured = new ShardedIdentityBackend();
+        configured.setConfig(config);
+        configured.initialize();
+
+        configured.addIdentity(new KrbIdentity(principal(1)));
+        assertThat(configured.getIdentity(principal(1))).isNotNull();
+        configured.stop();
+    }
+
+    @Test
+    public void testBatchTrans() throws KrbException {
+        backend.addIdentity(new KrbIdentity(principal(0)));
+
+        BatchTrans batch = backend.startBatchTrans();
+        for (int i = 1; i < COUNT; i++) {
+            batch.addIdentity(new KrbIdentity(principal(i)));
+        }
+        KrbIdentity updated = new KrbIdentity(principal(1));
+        updated.setKeyVersion(2);
+        batch.updateIdentity(updated);
+        batch.deleteIdentity(principal(0));
+        assertThat(backend.getIdentity(principal(1))).isNull();
+        batch.commit();
+
+        assertThat(backend.getIdentities()).hasSize(COUNT - 1);
+        assertThat(backend.getIdentity(principal(0))).isNull();
+        assertThat(backend.getIdentity(principal(1)).getKeyVersion()).isEqualTo(2);
+        assertThat(((BatchMemoryBackend) shards.get("shard3")).commits).isEqualTo(1);
+
+        batch = backend.startBatchTrans();
+        batch.deleteIdentity(principal(1));
+        batch.rollback();
+        assertThat(backend.getIdentity(principal(1))).isNotNull();
+    }
+
+    /**
+     * A memory backend applying its batches at once on commit.
+     */
+    private static class BatchMemoryBackend extends MemoryIdentityBackend {
+        private int commits;
+
+        @Override
+        public boolean supportBatchTrans() {
+            return true;
+        }
+
+        @Override
+        public BatchTrans startBatchTrans() {
+            final List<Object> changes = new ArrayList<>();
+            return new BatchTrans() {
+                @Override
+                public void commit() throws KrbException {
+                    for (Object change : changes) {
+                        if (change instanceof String) {
+                            doDeleteIdentity((String) change);
+                        } else {
+                            doUpdateIdentity((KrbIdentity) change);
+                        }
+                    }
+                    commits++;
+                }
+
+                @Override
+                public void rollback() {
+                    changes.clear();
+                }
+
+                @Override
+                public BatchTrans addIdentity(KrbIdentity identity) {
+                    changes.add(identity);
+                    return this;
+                }
+
+                @Override
+                public BatchTrans updateIdentity(KrbIdentity identity) {
+                    changes.add(identity);
+                    return this;
+                }
+
+                @Override
+                public BatchTrans deleteIdentity(String principalName) {
+                    changes.add(principalName);
+                    return this;
+                }
+            };
+        }
+    }
+}
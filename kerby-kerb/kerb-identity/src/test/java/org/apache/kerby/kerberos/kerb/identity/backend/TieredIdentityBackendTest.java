@@ -0,0 +1,170 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TieredIdentityBackendTest {
+    private static final int COUNT = 2500;
+
+    private MemoryIdentityBackend local;
+    private MemoryIdentityBackend remote;
+    private TieredIdentityBackend backend;
+
+    @Before
+    public void setUp() throws KrbException {
+        local = new MemoryIdentityBackend();
+        remote = new MemoryIdentityBackend();
+    }
+
+    private void start(long refreshInterval, long syncInterval) throws KrbException {
+        Conf config = new Conf();
+        config.setLong(TieredIdentityBackend.TIERED_BACKEND_REFRESH_INTERVAL, refreshInterval);
+        config.setLong(TieredIdentityBackend.TIERED_BACKEND_SYNC_INTERVAL, syncInterval);
+        backend = new TieredIdentityBackend(local, remote);
+        backend.setConfig(config);
+        backend.initialize();
+        backend.start();
+    }
+
+    @After
+    public void tearDown() throws KrbException {
+        backend.stop();
+        backend.release();
+    }
+
+    private static String principal(int i) {
+        return "user" + i + "@EXAMPLE.COM";
+    }
+
+    private static KrbIdentity identity(String principalName, int kvno) {
+        KrbIdentity identity = new KrbIdentity(principalName);
+        identity.setKeyVersion(kvno);
+        return identity;
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.call()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testReadThrough() throws KrbException {
+        start(300, -1);
+        remote.addIdentity(identity(principal(1), 1));
+
+        assertThat(backend.getIdentity(principal(1)).getKeyVersion()).isEqualTo(1);
+        assertThat(backend.getRemoteReadCount()).isEqualTo(1);
+        assertThat(local.getIdentity(principal(1))).isNotNull();
+
+        assertThat(backend.getIdentity(principal(1))).isNotNull();
+        assertThat(backend.getIdentitiesByName(Arrays.asList(principal(1), principal(2)))).hasSize(1);
+        assertThat(backend.getLocalHitCount()).isEqualTo(2);
+        assertThat(backend.getRemoteReadCount()).isEqualTo(2);
+        assertThat(backend.getIdentity(principal(2))).isNull();
+    }
+
+    @Test
+    public void testWriteThrough() throws KrbException {
+        start(300, -1);
+        backend.addIdentity(identity(principal(1), 1));
+        assertThat(remote.getIdentity(principal(1))).isNotNull();
+        assertThat(local.getIdentity(principal(1))).isNotNull();
+
+        backend.updateIdentity(identity(principal(1), 2));
+        assertThat(remote.getIdentity(principal(1)).getKeyVersion()).isEqualTo(2);
+        assertThat(local.getIdentity(principal(1)).getKeyVersion()).isEqualTo(2);
+
+        backend.deleteIdentity(principal(1));
+        assertThat(remote.getIdentity(principal(1))).isNull();
+        assertThat(local.getIdentity(principal(1))).isNull();
+    }
+
+    @Test
+    public void testAsyncRefresh() throws Exception {
+        start(0, -1);
+        remote.addIdentity(identity(principal(1), 1));
+        assertThat(backend.getIdentity(principal(1))).isNotNull();
+
+        // Served locally while the change is fetched in the background
+        remote.updateIdentity(identity(principal(1), 2));
+        assertThat(backend.getIdentity(principal(1)).getKeyVersion()).isEqualTo(1);
+        waitFor(() -> local.getIdentity(principal(1)).getKeyVersion() == 2);
+
+        remote.deleteIdentity(principal(1));
+        assertThat(backend.getIdentity(principal(1))).isNotNull();
+        waitFor(() -> local.getIdentity(principal(1)) == null);
+
+        waitFor(() -> backend.getPendingRefreshCount() == 0);
+        assertThat(backend.getRefreshCount()).isGreaterThanOrEqualTo(2);
+        assertThat(backend.getRefreshFailureCount()).isEqualTo(0);
+        assertThat(backend.getMaxRefreshLag()).isGreaterThan(0);
+        assertThat(backend.getTotalRefreshLag()).isGreaterThanOrEqualTo(backend.getMaxRefreshLag());
+    }
+
+    @Test
+    public void testSync() throws KrbException {
+        start(300, -1);
+        List<String> principals = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            remote.addIdentity(identity(principal(i), 2));
+            principals.add(principal(i));
+        }
+        local.addIdentity(identity(principal(0), 1));
+        local.addIdentity(identity("deleted@EXAMPLE.COM", 1));
+        assertThat(backend.getStaleness()).isEqualTo(-1);
+        assertThat(backend.getIdentities()).hasSize(COUNT);
+
+        backend.sync();
+        assertThat(local.getIdentities()).containsExactlyElementsOf(remote.getIdentities());
+        assertThat(local.getIdentity(principal(0)).getKeyVersion()).isEqualTo(2);
+        assertThat(backend.getSyncCount()).isEqualTo(1);
+        assertThat(backend.getSyncFailureCount()).isEqualTo(0);
+        assertThat(backend.getStaleness()).isGreaterThanOrEqualTo(backend.getLastSyncDuration());
+
+        // Enumerated and served locally once synced
+        assertThat(backend.getIdentities()).hasSize(COUNT);
+        assertThat(backend.getIdentitiesByName(principals)).hasSize(COUNT);
+        assertThat(backend.getRemoteReadCount()).isEqualTo(0);
+        assertThat(backend.getPendingRefreshCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSyncWhenStarted() throws Exception {
+        start(300, 0);
+        waitFor(() -> backend.getSyncCount() == 1);
+        assertThat(backend.getStaleness()).isGreaterThanOrEqualTo(0);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
+import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.identity.backend.ShardedIdentityBackend;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Principals changed with kadmin are seen by the KDC at once, even though
+ * it caches identities, and unknown ones, of backends other than memory.
+ */
+public class KadminCacheInvalidationTest extends KdcTestBase {
+    private static final String NEW_PRINCIPAL = "newcomer@" + TestKdcServer.KDC_REALM;
+
+    @Override
+    protected void setUpKdcServer() throws Exception {
+        BackendConfig backendConfig = new BackendConfig();
+        backendConfig.setString(KdcConfigKey.KDC_IDENTITY_BACKEND,
+            ShardedIdentityBackend.class.getCanonicalName());
+        backendConfig.setString(ShardedIdentityBackend.SHARDED_BACKEND_SHARDS, "shard1");
+        backendConfig.setString(ShardedIdentityBackend.SHARDED_BACKEND_PREFIX + "shard1."
+            + ShardedIdentityBackend.SHARD_CLASS, MemoryIdentityBackend.class.getCanonicalName());
+        SimpleKdcServer kdcServer = new TestKdcServer(allowTcp(), allowUdp(), new KdcConfig(), backendConfig);
+        setKdcServer(kdcServer);
+
+        configKdcSeverAndClient();
+
+        prepareKdc();
+
+        kdcServer.start();
+    }
+
+    @Test
+    public void testKinitAfterKadminChanges() throws Exception {
+        assertThat(getKdcServer().getIdentityCache()).isNotNull();
+
+        // Remembered as unknown by the KDC
+        assertKinitFails("pass1");
+
+        getKdcServer().createPrincipal(NEW_PRINCIPAL, "pass1");
+        assertKinitSucceeds("pass1");
+
+        getKdcServer().getKadmin().changePassword(NEW_PRINCIPAL, "pass2");
+        assertKinitFails("pass1");
+        assertKinitSucceeds("pass2");
+
+        getKdcServer().deletePrincipal(NEW_PRINCIPAL);
+        assertKinitFails("pass2");
+    }
+
+    private void assertKinitSucceeds(String password) throws KrbException {
+        TgtTicket tgt = getKrbClient().requestTgt(NEW_PRINCIPAL, password);
+        assertThat(tgt).isNotNull();
+    }
+
+    private void assertKinitFails(String password) {
+        try {
+            getKrbClient().requestTgt(NEW_PRINCIPAL, password);
+            fail("kinit should fail");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).isNotNull();
+        }
+    }
+}
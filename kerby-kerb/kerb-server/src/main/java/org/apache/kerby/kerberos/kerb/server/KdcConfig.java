@@ -159,6 +159,119 @@ public class KdcConfig extends Krb5Conf {
         return getInt(KdcConfigKey.KDC_MAX_DGRAM_REPLY_SIZE, true, KDCDEFAULT);
     }
 
+    /**
+     * Get the number of threads accepting TCP connections and receiving
+     * UDP messages in the default KDC network.
+     * @return The number of acceptor threads
+     */
+    public int getKdcNetworkAcceptorThreads() {
+        return getInt(KdcConfigKey.KDC_NETWORK_ACCEPTOR_THREADS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of threads reading TCP connections in the default
+     * KDC network.
+     * @return The number of reader threads
+     */
+    public int getKdcNetworkReaderThreads() {
+        return getInt(KdcConfigKey.KDC_NETWORK_READER_THREADS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of worker threads processing requests off the network
+     * threads in the Netty KDC network.
+     * @return The number of worker threads
+     */
+    public int getKdcWorkerThreads() {
+        return getInt(KdcConfigKey.KDC_WORKER_THREADS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the maximum number of requests pending per worker thread before
+     * new requests are rejected.
+     * @return The worker queue size
+     */
+    public int getKdcWorkerQueueSize() {
+        return getInt(KdcConfigKey.KDC_WORKER_QUEUE_SIZE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Is to use the native epoll transport in the Netty KDC network, when
+     * it's available on the platform.
+     * @return true to use the native transport, false otherwise
+     */
+    public boolean isKdcNativeTransportEnabled() {
+        return getBoolean(KdcConfigKey.KDC_NATIVE_TRANSPORT, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of UDP sockets bound to the same port with SO_REUSEPORT,
+     * each served by its own event loop. Only makes sense with the native
+     * transport.
+     * @return The number of UDP sockets
+     */
+    public int getKdcUdpSockets() {
+        return getInt(KdcConfigKey.KDC_UDP_SOCKETS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the execution mode of transport handlers in the default KDC
+     * network, "platform" for pooled threads or "virtual" for a virtual
+     * thread per transport.
+     * @return The execution mode
+     */
+    public String getKdcExecutionMode() {
+        return getString(KdcConfigKey.KDC_EXECUTION_MODE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the maximum number of requests processed concurrently by the
+     * default KDC network, 0 or less for no limit.
+     * @return The maximum number of concurrent requests
+     */
+    public int getKdcMaxConcurrentRequests() {
+        return getInt(KdcConfigKey.KDC_MAX_CONCURRENT_REQUESTS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the maximum number of authenticators remembered by the replay
+     * cache, 0 or less to disable replay detection.
+     * @return The maximum number of replay cache entries
+     */
+    public int getKdcReplayCacheMaxEntries() {
+        return getInt(KdcConfigKey.KDC_REPLAY_CACHE_MAX_ENTRIES, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the file keeping the replay cache across restarts, null to keep
+     * the replay cache in memory only.
+     * @return The replay cache file
+     */
+    public String getKdcReplayCacheFile() {
+        return getString(KdcConfigKey.KDC_REPLAY_CACHE_FILE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Whether a full replay cache refuses new requests as replays. By
+     * default the oldest records are dropped to make room instead, which
+     * keeps the realm serving a flood of requests at the cost of missing
+     * replays of the dropped records.
+     * @return true to refuse requests once the replay cache is full
+     */
+    public boolean isKdcReplayCacheFailClosed() {
+        return getBoolean(KdcConfigKey.KDC_REPLAY_CACHE_FAIL_CLOSED, true, KDCDEFAULT);
+    }
+
+    /**
+     * Whether to cache the keys derived per message by the DK based
+     * encryption types. The cache is shared by the process and keeps
+     * copies of the base keys, so it's disabled by default.
+     * @return true to cache the derived keys
+     */
+    public boolean isKdcDerivedKeyCacheEnabled() {
+        return getBoolean(KdcConfigKey.KDC_DERIVED_KEY_CACHE, true, KDCDEFAULT);
+    }
+
     public String getVerifyKeyConfig() {
         return getString(KdcConfigKey.TOKEN_VERIFY_KEYS, true, KDCDEFAULT);
     }
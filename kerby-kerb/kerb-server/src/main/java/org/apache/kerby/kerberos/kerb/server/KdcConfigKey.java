@@ -49,6 +49,18 @@ public enum KdcConfigKey implements ConfigKey {
     ENCRYPTION_TYPES("aes128-cts-hmac-sha1-96 des3-cbc-sha1-kd"),
     RESTRICT_ANONYMOUS_TO_TGT(false),
     KDC_MAX_DGRAM_REPLY_SIZE(4096),
+    KDC_NETWORK_ACCEPTOR_THREADS(1),
+    KDC_NETWORK_READER_THREADS(2),
+    KDC_WORKER_THREADS(10),
+    KDC_WORKER_QUEUE_SIZE(4096),
+    KDC_NATIVE_TRANSPORT(false),
+    KDC_UDP_SOCKETS(1),
+    KDC_EXECUTION_MODE("platform"),
+    KDC_MAX_CONCURRENT_REQUESTS(256),
+    KDC_REPLAY_CACHE_MAX_ENTRIES(500000),
+    KDC_REPLAY_CACHE_FILE(null),
+    KDC_REPLAY_CACHE_FAIL_CLOSED(false),
+    KDC_DERIVED_KEY_CACHE(false),
     TOKEN_VERIFY_KEYS(),
     TOKEN_DECRYPTION_KEYS(),
     TOKEN_ISSUERS(),
@@ -67,6 +67,36 @@ public class KdcHandler {
      */
     public ByteBuffer handleMessage(ByteBuffer receivedMessage, boolean isTcp,
                                     InetAddress remoteAddress) throws KrbException {
+        KrbMessage krbResponse = handleRequest(receivedMessage, isTcp, remoteAddress);
+
+        int bodyLen = krbResponse.encodingLength();
+        ByteBuffer responseMessage;
+        if (isTcp) {
+            responseMessage = ByteBuffer.allocate(bodyLen + 4);
+            responseMessage.putInt(bodyLen);
+        } else {
+            responseMessage = ByteBuffer.allocate(bodyLen);
+        }
+        KrbCodec.encode(krbResponse, responseMessage);
+        responseMessage.flip();
+
+        return responseMessage;
+    }
+
+    /**
+     * Process the client request message, returning the response message
+     * without encoding it, so that callers can encode it into buffers of
+     * their own like pooled or direct ones. The request message can be any
+     * kind of buffer, and must stay valid until this returns.
+     *
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e
+     * @param receivedMessage The client request message
+     * @param  isTcp whether the protocol is tcp
+     * @param remoteAddress Address from remote side
+     * @return The response message
+     */
+    public KrbMessage handleRequest(ByteBuffer receivedMessage, boolean isTcp,
+                                    InetAddress remoteAddress) throws KrbException {
         KrbMessage krbRequest;
         KdcRequest kdcRequest = null;
         KrbMessage krbResponse;
@@ -150,18 +180,7 @@ public class KdcHandler {
             }
         }
 
-        int bodyLen = krbResponse.encodingLength();
-        ByteBuffer responseMessage;
-        if (isTcp) {
-            responseMessage = ByteBuffer.allocate(bodyLen + 4);
-            responseMessage.putInt(bodyLen);
-        } else {
-            responseMessage = ByteBuffer.allocate(bodyLen);
-        }
-        KrbCodec.encode(krbResponse, responseMessage);
-        responseMessage.flip();
-
-        return responseMessage;
+        return krbResponse;
     }
 
     /**
@@ -22,6 +22,7 @@ package org.apache.kerby.kerberos.kerb.server;
 import org.apache.kerby.KOption;
 import org.apache.kerby.KOptions;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.IdentityCache;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.server.impl.DefaultInternalKdcServerImpl;
@@ -240,6 +241,17 @@ public class KdcServer {
         return innerKdc.getIdentityBackend();
     }
 
+    /**
+     * Get the identity cache, giving the hit, miss and negative hit counts.
+     * @return IdentityCache, or null if identities aren't cached
+     */
+    public IdentityCache getIdentityCache() {
+        if (innerKdc == null) {
+            throw new RuntimeException("Not init yet");
+        }
+        return innerKdc.getIdentityCache();
+    }
+
     /**
      * Initialize.
      *
@@ -23,6 +23,10 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.server.replay.ExpiringCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.MappedCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckService;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckServiceImpl;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 
 import java.io.File;
@@ -36,6 +40,48 @@ public final class KdcUtil {
 
     private KdcUtil() { }
 
+    /**
+     * Create the replay cache, keeping authenticators for the allowable
+     * clock skew, in the replay cache file if one is configured.
+     * @param kdcConfig kdc configuration
+     * @return replay cache, or null if replay detection is disabled
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e.
+     */
+    public static ReplayCheckService createReplayCache(KdcConfig kdcConfig) throws KrbException {
+        int maxEntries = kdcConfig.getKdcReplayCacheMaxEntries();
+        if (maxEntries <= 0) {
+            return null;
+        }
+        String cacheFile = kdcConfig.getKdcReplayCacheFile();
+        if (cacheFile == null) {
+            return createMemoryReplayCache(kdcConfig);
+        }
+
+        long window = kdcConfig.getAllowableClockSkew() * 1000;
+        try {
+            return new ReplayCheckServiceImpl(new MappedCacheService(new File(cacheFile), window, maxEntries,
+                kdcConfig.isKdcReplayCacheFailClosed()));
+        } catch (IOException e) {
+            throw new KrbException("Can not open the replay cache file " + cacheFile, e);
+        }
+    }
+
+    /**
+     * Create a replay cache kept in memory only, whether or not a replay
+     * cache file is configured.
+     * @param kdcConfig kdc configuration
+     * @return replay cache, or null if replay detection is disabled
+     */
+    public static ReplayCheckService createMemoryReplayCache(KdcConfig kdcConfig) {
+        int maxEntries = kdcConfig.getKdcReplayCacheMaxEntries();
+        if (maxEntries <= 0) {
+            return null;
+        }
+        long window = kdcConfig.getAllowableClockSkew() * 1000;
+        return new ReplayCheckServiceImpl(new ExpiringCacheService(window, maxEntries,
+            kdcConfig.isKdcReplayCacheFailClosed()));
+    }
+
     /**
      * Get kdc configuration
      * @param confDir configuration directory
@@ -20,9 +20,13 @@
 package org.apache.kerby.kerberos.kerb.server.impl;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.key.DerivedKeyCache;
+import org.apache.kerby.kerberos.kerb.identity.CacheableIdentityService;
+import org.apache.kerby.kerberos.kerb.identity.IdentityCache;
 import org.apache.kerby.kerberos.kerb.identity.IdentityService;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
+import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
 import org.apache.kerby.kerberos.kerb.server.KdcConfig;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
 import org.apache.kerby.kerberos.kerb.server.KdcUtil;
@@ -36,6 +40,7 @@ public class AbstractInternalKdcServer implements InternalKdcServer {
     private final BackendConfig backendConfig;
     private final KdcSetting kdcSetting;
     private IdentityBackend backend;
+    private IdentityService identityService;
 
     public AbstractInternalKdcServer(KdcSetting kdcSetting) {
         this.kdcSetting = kdcSetting;
@@ -57,12 +62,23 @@ public class AbstractInternalKdcServer implements InternalKdcServer {
     }
 
     protected IdentityService getIdentityService() {
-        return backend;
+        if (identityService == null) {
+            if (backend instanceof MemoryIdentityBackend) { // Already in memory
+                identityService = backend;
+            } else {
+                identityService = new CacheableIdentityService(
+                        backendConfig, backend);
+            }
+        }
+        return identityService;
     }
 
     @Override
     public void init() throws KrbException {
         backend = KdcUtil.getBackend(backendConfig);
+        if (kdcConfig.isKdcDerivedKeyCacheEnabled()) {
+            DerivedKeyCache.getInstance().setEnabled(true);
+        }
     }
 
     @Override
@@ -85,6 +101,15 @@ public class AbstractInternalKdcServer implements InternalKdcServer {
         return backend;
     }
 
+    @Override
+    public IdentityCache getIdentityCache() {
+        IdentityService service = getIdentityService();
+        if (service instanceof CacheableIdentityService) {
+            return ((CacheableIdentityService) service).getCache();
+        }
+        return null;
+    }
+
     protected void doStart() throws Exception {
         backend.start();
     }
@@ -101,5 +126,9 @@ public class AbstractInternalKdcServer implements InternalKdcServer {
 
     protected void doStop() throws Exception {
         backend.stop();
+        if (kdcConfig.isKdcDerivedKeyCacheEnabled()) {
+            // Drop the copies of the keys
+            DerivedKeyCache.getInstance().clear();
+        }
     }
 }
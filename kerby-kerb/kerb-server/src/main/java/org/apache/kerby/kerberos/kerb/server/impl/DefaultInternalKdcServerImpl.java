@@ -19,18 +19,22 @@
  */
 package org.apache.kerby.kerberos.kerb.server.impl;
 
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.server.KdcConfig;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
 import org.apache.kerby.kerberos.kerb.server.KdcUtil;
 import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
 import org.apache.kerby.kerberos.kerb.transport.KdcNetwork;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.TransportExecutors;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,6 +43,7 @@ import java.util.concurrent.TimeUnit;
 public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultInternalKdcServerImpl.class);
     private ExecutorService executor;
+    private Semaphore requestLimiter;
     private KdcContext kdcContext;
     private KdcNetwork network;
 
@@ -52,25 +57,33 @@ public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
 
         prepareHandler();
 
-        executor = Executors.newCachedThreadPool();
+        KdcConfig kdcConfig = getSetting().getKdcConfig();
+        executor = TransportExecutors.newExecutor(kdcConfig.getKdcExecutionMode());
+        int maxConcurrentRequests = kdcConfig.getKdcMaxConcurrentRequests();
+        if (maxConcurrentRequests > 0) {
+            requestLimiter = new Semaphore(maxConcurrentRequests);
+        }
 
         network = new KdcNetwork() {
             @Override
             protected void onNewTransport(KrbTransport transport) {
-                DefaultKdcHandler kdcHandler = new DefaultKdcHandler(kdcContext, transport);
+                DefaultKdcHandler kdcHandler = new DefaultKdcHandler(kdcContext,
+                    transport, requestLimiter);
                 executor.execute(kdcHandler);
             }
         };
 
-        network.init();
+        network.init(kdcConfig.getKdcNetworkAcceptorThreads(),
+            kdcConfig.getKdcNetworkReaderThreads());
         TransportPair tpair = KdcUtil.getTransportPair(getSetting());
         network.listen(tpair);
         network.start();
     }
 
-    private void prepareHandler() {
+    private void prepareHandler() throws KrbException {
         kdcContext = new KdcContext(getSetting());
         kdcContext.setIdentityService(getIdentityService());
+        kdcContext.setReplayCache(KdcUtil.createReplayCache(getSetting().getKdcConfig()));
         PreauthHandler preauthHandler = new PreauthHandler();
         preauthHandler.init();
         kdcContext.setPreauthHandler(preauthHandler);
@@ -99,6 +112,10 @@ public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
             }
         }
 
+        if (kdcContext != null && kdcContext.getReplayCache() instanceof Closeable) {
+            ((Closeable) kdcContext.getReplayCache()).close();
+        }
+
         LOG.info("Default Internal kdc server stopped.");
     }
 }
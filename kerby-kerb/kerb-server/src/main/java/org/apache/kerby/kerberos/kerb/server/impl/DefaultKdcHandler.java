@@ -21,7 +21,6 @@ package org.apache.kerby.kerberos.kerb.server.impl;
 
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcHandler;
-import org.apache.kerby.kerberos.kerb.transport.KrbTcpTransport;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,14 +28,30 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
 
 public class DefaultKdcHandler extends KdcHandler implements Runnable {
     private static Logger logger = LoggerFactory.getLogger(DefaultKdcHandler.class);
     private final KrbTransport transport;
+    private final Semaphore requestLimiter;
 
     public DefaultKdcHandler(KdcContext kdcContext, KrbTransport transport) {
+        this(kdcContext, transport, null);
+    }
+
+    /**
+     * Constructor with the limiter shared by handlers.
+     *
+     * @param kdcContext kdc context
+     * @param transport The transport to serve
+     * @param requestLimiter Bounds the requests processed concurrently, null
+     *                       for no limit
+     */
+    public DefaultKdcHandler(KdcContext kdcContext, KrbTransport transport,
+                             Semaphore requestLimiter) {
         super(kdcContext);
         this.transport  = transport;
+        this.requestLimiter = requestLimiter;
     }
 
     @Override
@@ -61,7 +76,17 @@ public class DefaultKdcHandler extends KdcHandler implements Runnable {
 
     protected void handleMessage(ByteBuffer message) {
         InetAddress clientAddress = transport.getRemoteAddress();
-        boolean isTcp = transport instanceof KrbTcpTransport;
+        boolean isTcp = transport.isTcp();
+
+        if (requestLimiter != null) {
+            try {
+                requestLimiter.acquire();
+            } catch (InterruptedException e) {
+                transport.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
 
         try {
             ByteBuffer krbResponse = handleMessage(message, isTcp, clientAddress);
@@ -69,6 +94,10 @@ public class DefaultKdcHandler extends KdcHandler implements Runnable {
         } catch (Exception e) {
             transport.release();
             logger.error("Error occured while processing request:", e);
+        } finally {
+            if (requestLimiter != null) {
+                requestLimiter.release();
+            }
         }
     }
 }
\ No newline at end of file
@@ -20,6 +20,7 @@
 package org.apache.kerby.kerberos.kerb.server.impl;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.IdentityCache;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
 
@@ -57,4 +58,10 @@ public interface InternalKdcServer {
      * @return IdentityBackend
      */
     IdentityBackend getIdentityBackend();
+
+    /**
+     * Get the cache in front of the identity backend.
+     * @return IdentityCache, or null if identities aren't cached
+     */
+    IdentityCache getIdentityCache();
 }
@@ -0,0 +1,140 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A concurrent replay cache remembering each request for the allowable
+ * clock skew window only. Records are kept in segments by request time,
+ * each covering a slice of the window, so a check is a single lock free set
+ * operation in the segment of its request, and expired records are dropped
+ * a whole segment at a time without being scanned. Once the cache holds its
+ * maximum number of records, the oldest segment is dropped to make room, or
+ * if the cache fails closed, new requests are refused as replays.
+ */
+public class ExpiringCacheService implements CacheService {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpiringCacheService.class);
+    private static final int SEGMENTS_PER_WINDOW = 8;
+
+    private final ConcurrentSkipListMap<Long, Set<RequestRecord>> segments = new ConcurrentSkipListMap<>();
+    private final long window;
+    private final long segmentSpan;
+    private final long maxEntries;
+    private final boolean failClosed;
+
+    /**
+     * @param window The clock skew window in milliseconds
+     * @param maxEntries The maximum number of records kept
+     */
+    public ExpiringCacheService(long window, long maxEntries) {
+        this(window, maxEntries, false);
+    }
+
+    /**
+     * @param window The clock skew window in milliseconds
+     * @param maxEntries The maximum number of records kept
+     * @param failClosed Whether to refuse new requests rather than drop the
+     *                   oldest records once full
+     */
+    public ExpiringCacheService(long window, long maxEntries, boolean failClosed) {
+        this.window = window;
+        this.segmentSpan = Math.max(1, window / SEGMENTS_PER_WINDOW);
+        this.maxEntries = maxEntries;
+        this.failClosed = failClosed;
+    }
+
+    @Override
+    public boolean checkAndCache(RequestRecord request) {
+        long now = System.currentTimeMillis();
+        if (request.getRequestTime() + window <= now) {
+            // Out of the window, the clock skew check refuses it anyway
+            return false;
+        }
+
+        dropExpired(now);
+        long epoch = request.getRequestTime() / segmentSpan;
+        if (size() >= maxEntries) {
+            Set<RequestRecord> segment = segments.get(epoch);
+            if (segment != null && segment.contains(request)) {
+                return true;
+            }
+            if (!makeRoom()) {
+                LOG.warn("Replay cache is full with " + maxEntries + " entries, refusing the request");
+                return true;
+            }
+        }
+
+        Set<RequestRecord> segment = segments.computeIfAbsent(epoch, key -> ConcurrentHashMap.newKeySet());
+        return !segment.add(request);
+    }
+
+    /**
+     * Drop the segments of requests all out of the window.
+     */
+    private void dropExpired(long now) {
+        Map.Entry<Long, Set<RequestRecord>> oldest = segments.firstEntry();
+        while (oldest != null && (oldest.getKey() + 1) * segmentSpan + window <= now) {
+            segments.remove(oldest.getKey(), oldest.getValue());
+            oldest = segments.firstEntry();
+        }
+    }
+
+    /**
+     * Drop the oldest segments until there is room for a record, unless the
+     * cache fails closed.
+     */
+    private boolean makeRoom() {
+        if (failClosed) {
+            return false;
+        }
+        while (size() >= maxEntries) {
+            Map.Entry<Long, Set<RequestRecord>> oldest = segments.pollFirstEntry();
+            if (oldest == null) {
+                break;
+            }
+            LOG.warn("Replay cache is full with " + maxEntries + " entries, dropping "
+                + oldest.getValue().size() + " records before the window ends");
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of records currently kept
+     */
+    public long size() {
+        long size = 0;
+        for (Set<RequestRecord> segment : segments.values()) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        segments.clear();
+    }
+}
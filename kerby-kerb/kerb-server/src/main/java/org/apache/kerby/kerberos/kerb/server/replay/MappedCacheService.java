@@ -0,0 +1,243 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A replay cache kept in a fixed size memory mapped file, so that the
+ * records seen within the clock skew window survive a KDC restart.
+ *
+ * The file is divided into time buckets, each covering a slice of the
+ * window, and every bucket into shards of open addressed 64 bits record
+ * hashes. A record only ever lives in the shard picked by its request time
+ * and hash, so a check probes that shard under its own monitor, and a shard
+ * left over from an older time slice is recycled on first use. Nothing is
+ * forced to disk on the hot path: the page cache keeps the records across
+ * a process crash, and {@link #close()} flushes them. Slots are written as
+ * single aligned longs, and a shard is marked invalid while being
+ * recycled, so a torn shard is cleared again when next used. A record
+ * finding its shard full takes over its home slot, forgetting the record
+ * there, unless the cache fails closed and refuses it as a replay.
+ */
+public class MappedCacheService implements CacheService, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedCacheService.class);
+
+    private static final int MAGIC = 0x4b524331; // KRC1
+    private static final int HEADER_SIZE = 32;
+    private static final int BUCKETS_PER_WINDOW = 8;
+    private static final int SHARDS = 64;
+    private static final int MAX_PROBES = 64;
+    private static final long INVALID_EPOCH = -1L;
+
+    private final long bucketSpan;
+    private final int buckets;
+    private final int slotsPerShard;
+    private final int shardSize;
+    private final boolean failClosed;
+    private final Object[] locks;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Open the cache file, creating or resetting it if it was laid out for
+     * another window or size.
+     *
+     * @param file The cache file
+     * @param window The clock skew window in milliseconds
+     * @param maxEntries The number of records kept within one window
+     * @throws IOException e
+     */
+    public MappedCacheService(File file, long window, long maxEntries) throws IOException {
+        this(file, window, maxEntries, false);
+    }
+
+    /**
+     * Open the cache file, creating or resetting it if it was laid out for
+     * another window or size.
+     *
+     * @param file The cache file
+     * @param window The clock skew window in milliseconds
+     * @param maxEntries The number of records kept within one window
+     * @param failClosed Whether to refuse a request rather than forget a
+     *                   record once its shard is full
+     * @throws IOException e
+     */
+    public MappedCacheService(File file, long window, long maxEntries, boolean failClosed) throws IOException {
+        this.failClosed = failClosed;
+        this.bucketSpan = Math.max(1, window / BUCKETS_PER_WINDOW);
+        // Request times may lie one window before or after now
+        this.buckets = 2 * BUCKETS_PER_WINDOW + 2;
+        // Half loaded when the window is full
+        this.slotsPerShard = nextPowerOfTwo(Math.max(MAX_PROBES,
+            2 * maxEntries / BUCKETS_PER_WINDOW / SHARDS));
+        this.shardSize = 8 + 8 * slotsPerShard;
+
+        long size = HEADER_SIZE + (long) buckets * SHARDS * shardSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many replay cache entries: " + maxEntries);
+        }
+
+        locks = new Object[buckets * SHARDS];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        boolean valid = raf.length() == size;
+        raf.setLength(size);
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        if (!valid || buffer.getInt(0) != MAGIC || buffer.getLong(8) != bucketSpan
+            || buffer.getInt(16) != buckets || buffer.getInt(20) != slotsPerShard) {
+            LOG.info("Initializing replay cache file " + file.getAbsolutePath());
+            reset();
+        }
+    }
+
+    @Override
+    public boolean checkAndCache(RequestRecord request) {
+        long epoch = request.getRequestTime() / bucketSpan;
+        long hash = hash(request);
+        int shard = (int) (Math.floorMod(epoch, (long) buckets) * SHARDS + (hash >>> 58));
+        int base = HEADER_SIZE + shard * shardSize;
+
+        synchronized (locks[shard]) {
+            long shardEpoch = buffer.getLong(base);
+            if (shardEpoch > epoch) {
+                // Older than the window, the clock skew check refuses it anyway
+                return false;
+            }
+            if (shardEpoch != epoch) {
+                recycle(base, epoch);
+            }
+
+            int mask = slotsPerShard - 1;
+            int slot = (int) hash & mask;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                int offset = base + 8 + 8 * ((slot + i) & mask);
+                long existing = buffer.getLong(offset);
+                if (existing == hash) {
+                    return true;
+                }
+                if (existing == 0) {
+                    buffer.putLong(offset, hash);
+                    return false;
+                }
+            }
+
+            if (failClosed) {
+                LOG.warn("Replay cache shard is full, refusing the request");
+                return true;
+            }
+            LOG.warn("Replay cache shard is full, forgetting a record to keep the request");
+            buffer.putLong(base + 8 + 8 * slot, hash);
+            return false;
+        }
+    }
+
+    private void recycle(int base, long epoch) {
+        buffer.putLong(base, INVALID_EPOCH);
+        for (int i = 0; i < slotsPerShard; i++) {
+            buffer.putLong(base + 8 + 8 * i, 0L);
+        }
+        buffer.putLong(base, epoch);
+    }
+
+    private void reset() {
+        for (int shard = 0; shard < buckets * SHARDS; shard++) {
+            synchronized (locks[shard]) {
+                recycle(HEADER_SIZE + shard * shardSize, INVALID_EPOCH);
+            }
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(8, bucketSpan);
+        buffer.putInt(16, buckets);
+        buffer.putInt(20, slotsPerShard);
+        buffer.force();
+    }
+
+    /**
+     * FNV-1a over the record fields, stable across restarts. Zero marks an
+     * empty slot, so it is never returned.
+     */
+    private static long hash(RequestRecord request) {
+        long h = 0xcbf29ce484222325L;
+        h = hash(h, request.getClientPrincipal().getBytes(StandardCharsets.UTF_8));
+        h = hash(h, request.getServerPrincipal().getBytes(StandardCharsets.UTF_8));
+        h = hash(h, request.getRequestTime());
+        h = hash(h, request.getMicroseconds());
+        if (request.getDigest() != null) {
+            h = hash(h, request.getDigest());
+        }
+        if (h == 0) {
+            h = 1;
+        }
+        return h;
+    }
+
+    private static long hash(long h, byte[] bytes) {
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long hash(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h ^= (value >>> (i * 8)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static int nextPowerOfTwo(long value) {
+        int result = 1;
+        while (result < value) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        reset();
+    }
+
+    /**
+     * Flush the records to disk and close the file.
+     * @throws IOException e
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+}
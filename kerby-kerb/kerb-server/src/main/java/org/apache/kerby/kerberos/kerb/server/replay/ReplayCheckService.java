@@ -22,4 +22,7 @@ package org.apache.kerby.kerberos.kerb.server.replay;
 public interface ReplayCheckService {
     boolean checkReplay(String clientPrincipal, String serverPrincipal,
                         long requestTime, int microseconds);
+
+    boolean checkReplay(String clientPrincipal, String serverPrincipal,
+                        long requestTime, int microseconds, byte[] digest);
 }
@@ -19,7 +19,10 @@
  */
 package org.apache.kerby.kerberos.kerb.server.replay;
 
-public class ReplayCheckServiceImpl implements ReplayCheckService {
+import java.io.Closeable;
+import java.io.IOException;
+
+public class ReplayCheckServiceImpl implements ReplayCheckService, Closeable {
     private CacheService cacheService;
 
     public ReplayCheckServiceImpl(CacheService cacheService) {
@@ -33,7 +36,25 @@ public class ReplayCheckServiceImpl implements ReplayCheckService {
     @Override
     public boolean checkReplay(String clientPrincipal, String serverPrincipal,
                                long requestTime, int microseconds) {
-        RequestRecord record = new RequestRecord(clientPrincipal, serverPrincipal, requestTime, microseconds);
+        return checkReplay(clientPrincipal, serverPrincipal, requestTime, microseconds, null);
+    }
+
+    @Override
+    public boolean checkReplay(String clientPrincipal, String serverPrincipal,
+                               long requestTime, int microseconds, byte[] digest) {
+        RequestRecord record = new RequestRecord(clientPrincipal, serverPrincipal,
+            requestTime, microseconds, digest);
         return cacheService.checkAndCache(record);
     }
+
+    /**
+     * Release the cache service, if it holds any resource.
+     * @throws IOException e
+     */
+    @Override
+    public void close() throws IOException {
+        if (cacheService instanceof Closeable) {
+            ((Closeable) cacheService).close();
+        }
+    }
 }
@@ -19,17 +19,56 @@
  */
 package org.apache.kerby.kerberos.kerb.server.replay;
 
+import java.util.Arrays;
+
 public class RequestRecord {
     private String clientPrincipal;
     private String serverPrincipal;
     private long requestTime;
     private int microseconds;
+    private byte[] digest;
 
     public RequestRecord(String clientPrincipal, String serverPrincipal, long requestTime, int microseconds) {
+        this(clientPrincipal, serverPrincipal, requestTime, microseconds, null);
+    }
+
+    /**
+     * Constructor also identifying the request by a digest of the encrypted
+     * authenticator, telling apart requests made within the same second.
+     *
+     * @param clientPrincipal The client principal
+     * @param serverPrincipal The server principal
+     * @param requestTime The client time in milliseconds
+     * @param microseconds The microseconds part of the client time
+     * @param digest The digest of the encrypted authenticator, or null
+     */
+    public RequestRecord(String clientPrincipal, String serverPrincipal, long requestTime,
+                         int microseconds, byte[] digest) {
         this.clientPrincipal = clientPrincipal;
         this.serverPrincipal = serverPrincipal;
         this.requestTime = requestTime;
         this.microseconds = microseconds;
+        this.digest = digest;
+    }
+
+    public String getClientPrincipal() {
+        return clientPrincipal;
+    }
+
+    public String getServerPrincipal() {
+        return serverPrincipal;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public int getMicroseconds() {
+        return microseconds;
+    }
+
+    public byte[] getDigest() {
+        return digest;
     }
 
     @Override
@@ -55,6 +94,9 @@ public class RequestRecord {
         if (!serverPrincipal.equals(that.serverPrincipal)) {
             return false;
         }
+        if (!Arrays.equals(digest, that.digest)) {
+            return false;
+        }
 
         return true;
     }
@@ -65,6 +107,7 @@ public class RequestRecord {
         result = 31 * result + serverPrincipal.hashCode();
         result = 31 * result + (int) (requestTime ^ (requestTime >>> 32));
         result = 31 * result + microseconds;
+        result = 31 * result + Arrays.hashCode(digest);
         return result;
     }
 }
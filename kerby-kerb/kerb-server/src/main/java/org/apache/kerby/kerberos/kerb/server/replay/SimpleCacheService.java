@@ -19,24 +19,19 @@
  */
 package org.apache.kerby.kerberos.kerb.server.replay;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SimpleCacheService implements CacheService {
     private final Set<RequestRecord> requests;
 
     public SimpleCacheService() {
-        requests = new HashSet<>();
+        requests = ConcurrentHashMap.newKeySet();
     }
 
     @Override
     public boolean checkAndCache(RequestRecord request) {
-        if (requests.contains(request)) {
-            return true;
-        } else {
-            requests.add(request);
-        }
-        return false;
+        return !requests.add(request);
     }
 
     @Override
@@ -24,6 +24,7 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
+import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
@@ -44,6 +45,8 @@ import org.apache.kerby.kerberos.kerb.type.ticket.TicketFlag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class AsRequest extends KdcRequest {
     private static final Logger LOG = LoggerFactory.getLogger(AsRequest.class);
 
@@ -51,6 +54,19 @@ public class AsRequest extends KdcRequest {
         super(asReq, kdcContext);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<String> getPrefetchPrincipals() {
+        List<String> principals = super.getPrefetchPrincipals();
+        PrincipalName cname = getKdcReq().getReqBody().getCname();
+        if (cname != null && !PreauthHandler.isToken(getKdcReq().getPaData())) {
+            principals.add(withRealm(cname).getName());
+        }
+        return principals;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -88,6 +104,8 @@ public class AsRequest extends KdcRequest {
         }
 
         if (isAnonymous()) {
+            // The entry may be shared by the backend, don't modify it
+            clientEntry = new KrbIdentity(clientEntry);
             clientEntry.setPrincipal(new PrincipalName(clientPrincipal.getName(), NameType.NT_WELLKNOWN));
         }
 
@@ -69,8 +69,11 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class KdcRequest {
 
@@ -103,6 +106,7 @@ public abstract class KdcRequest {
     private boolean isHttps = false;
     private boolean isCrossRealm = false;
     private String remoteRealm = null;
+    private Map<String, KrbIdentity> prefetchedEntries;
 
     /**
      * Get session key.
@@ -169,6 +173,7 @@ public abstract class KdcRequest {
      */
     public void process() throws KrbException {
         checkVersion();
+        prefetchEntries();
         checkTgsEntry();
         kdcFindFast();
         checkEncryptionType();
@@ -191,6 +196,55 @@ public abstract class KdcRequest {
         makeReply();
     }
 
+    /**
+     * Fetch the entries the request is known to need in one backend call,
+     * rather than one call each.
+     *
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e.
+     */
+    private void prefetchEntries() throws KrbException {
+        List<String> principals = getPrefetchPrincipals();
+        Map<String, KrbIdentity> found = kdcContext.getIdentityService().getIdentitiesByName(principals);
+        prefetchedEntries = new HashMap<>();
+        for (String principal : principals) {
+            prefetchedEntries.put(principal, found.get(principal));
+        }
+    }
+
+    /**
+     * Get the principals whose entries are looked up while processing the
+     * request, and can be fetched up front.
+     *
+     * @return The principal names
+     */
+    protected List<String> getPrefetchPrincipals() {
+        List<String> principals = new ArrayList<>();
+        principals.add(getTgsPrincipal().getName());
+
+        PrincipalName sname = getKdcReq().getReqBody().getSname();
+        if (sname != null) {
+            principals.add(withRealm(sname).getName());
+        }
+        return principals;
+    }
+
+    /**
+     * Get a copy of the principal in the realm of the request, or the kdc
+     * realm if absent.
+     *
+     * @param principal The principal
+     * @return The principal with realm
+     */
+    protected PrincipalName withRealm(PrincipalName principal) {
+        PrincipalName result = new PrincipalName(principal.getNameStrings(), principal.getNameType());
+        String realm = getKdcReq().getReqBody().getRealm();
+        if (realm == null || realm.isEmpty()) {
+            realm = kdcContext.getKdcRealm();
+        }
+        result.setRealm(realm);
+        return result;
+    }
+
     /**
      * Check the tgs entry.
      *
@@ -851,6 +905,9 @@ public abstract class KdcRequest {
      * @return krb identity entry
      */
     protected KrbIdentity getEntry(String principal) throws KrbException {
+        if (prefetchedEntries != null && prefetchedEntries.containsKey(principal)) {
+            return prefetchedEntries.get(principal);
+        }
         return kdcContext.getIdentityService().getIdentity(principal);
     }
 
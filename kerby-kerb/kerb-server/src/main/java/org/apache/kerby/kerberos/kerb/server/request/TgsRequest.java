@@ -27,6 +27,7 @@ import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerby.kerberos.kerb.crypto.CheckSumHandler;
 import org.apache.kerby.kerberos.kerb.request.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckService;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.ap.ApOption;
 import org.apache.kerby.kerberos.kerb.type.ap.ApReq;
@@ -55,9 +56,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 public class TgsRequest extends KdcRequest {
     private static final Logger LOG = LoggerFactory.getLogger(TgsRequest.class);
+    // Digests the authenticators for the replay cache, one per thread
+    private static final ThreadLocal<MessageDigest> AUTHENTICATOR_DIGEST =
+        ThreadLocal.withInitial(TgsRequest::newAuthenticatorDigest);
 
     private EncryptionKey tgtSessionKey;
     private Ticket tgtTicket;
@@ -120,6 +126,33 @@ public class TgsRequest extends KdcRequest {
         setTicket(newTicket);
     }
 
+    /**
+     * Reject an authenticator already seen within the clock skew. The client
+     * time has a resolution of seconds only, so the encrypted authenticator
+     * digest tells apart requests sent within the same second.
+     */
+    private void checkReplay(ApReq apReq, Authenticator authenticator,
+                             PrincipalName serverPrincipal) throws KrbException {
+        ReplayCheckService replayCache = getKdcContext().getReplayCache();
+        if (replayCache == null) {
+            return;
+        }
+
+        byte[] digest = AUTHENTICATOR_DIGEST.get().digest(apReq.getEncryptedAuthenticator().getCipher());
+        if (replayCache.checkReplay(authenticator.getCname().getName(), serverPrincipal.getName(),
+            authenticator.getCtime().getTime(), authenticator.getCusec(), digest)) {
+            throw new KrbException(KrbErrorCode.KRB_AP_ERR_REPEAT);
+        }
+    }
+
+    private static MessageDigest newAuthenticatorDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to init the authenticator digest", e);
+        }
+    }
+
     /**
      * Verify authenticator.
      * @throws org.apache.kerby.kerberos.kerb.KrbException e
@@ -203,6 +236,8 @@ public class TgsRequest extends KdcRequest {
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_SKEW);
         }
 
+        checkReplay(apReq, authenticator, serverPrincipal);
+
         KerberosTime now = KerberosTime.now();
         KerberosTime startTime = tgtTicket.getEncPart().getStartTime();
         if (startTime == null) {
@@ -69,5 +69,6 @@ public class KdcConfigLoadTest {
         assertThat(kdcConfig.getKdcRealm()).isEqualTo(
                 KdcConfigKey.KDC_REALM.getDefaultValue()
         );
+        assertThat(kdcConfig.isKdcDerivedKeyCacheEnabled()).isFalse();
     }
 }
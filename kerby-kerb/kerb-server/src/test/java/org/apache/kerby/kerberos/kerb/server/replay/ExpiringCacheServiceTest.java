@@ -0,0 +1,73 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringCacheServiceTest {
+    private static final String CLIENT = "client@EXAMPLE.COM";
+    private static final String SERVER = "krbtgt/EXAMPLE.COM@EXAMPLE.COM";
+
+    @Test
+    public void testReplayDetected() {
+        CacheService cache = new ExpiringCacheService(60 * 1000, 100);
+        long now = System.currentTimeMillis();
+
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {1}))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {1}))).isTrue();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {2}))).isFalse();
+    }
+
+    @Test
+    public void testExpiredRecordsPurged() {
+        ExpiringCacheService cache = new ExpiringCacheService(60 * 1000, 2);
+        long now = System.currentTimeMillis();
+
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now - 59 * 1000, 0))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now - 120 * 1000, 0))).isFalse();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFullCacheDropsOldestRecords() {
+        ExpiringCacheService cache = new ExpiringCacheService(60 * 1000, 2);
+        long now = System.currentTimeMillis();
+
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now - 50 * 1000, 1))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 2))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 3))).isFalse();
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 2))).isTrue();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 3))).isTrue();
+    }
+
+    @Test
+    public void testFullCacheRefusesRequestsWhenFailClosed() {
+        ExpiringCacheService cache = new ExpiringCacheService(60 * 1000, 2, true);
+        long now = System.currentTimeMillis();
+
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 1))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 2))).isFalse();
+        assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 3))).isTrue();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+}
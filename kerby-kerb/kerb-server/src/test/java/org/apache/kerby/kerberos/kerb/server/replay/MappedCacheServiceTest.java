@@ -0,0 +1,115 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedCacheServiceTest {
+    private static final String CLIENT = "client@EXAMPLE.COM";
+    private static final String SERVER = "krbtgt/EXAMPLE.COM@EXAMPLE.COM";
+    private static final long WINDOW = 60 * 1000;
+
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheFile = File.createTempFile("replay", ".cache");
+        cacheFile.deleteOnExit();
+    }
+
+    @After
+    public void tearDown() {
+        cacheFile.delete();
+    }
+
+    @Test
+    public void testReplayDetected() throws IOException {
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000)) {
+            long now = System.currentTimeMillis();
+
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {1}))).isFalse();
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {1}))).isTrue();
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0, new byte[] {2}))).isFalse();
+        }
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws IOException {
+        long now = System.currentTimeMillis();
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000)) {
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isFalse();
+        }
+
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000)) {
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isTrue();
+        }
+
+        // Another layout resets the file
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, 2 * WINDOW, 1000)) {
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isFalse();
+        }
+    }
+
+    @Test
+    public void testOldBucketsRecycled() throws IOException {
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000)) {
+            long now = System.currentTimeMillis();
+            long old = now - 3 * WINDOW;
+
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, old, 0))).isFalse();
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isFalse();
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isTrue();
+        }
+    }
+
+    @Test
+    public void testFullShardKeepsNewRecords() throws IOException {
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000)) {
+            long now = System.currentTimeMillis();
+            // Twice the 64 slots of the 64 shards of the bucket
+            int records = 2 * 64 * 64;
+            for (int i = 0; i < records; i++) {
+                assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isFalse();
+            }
+            assertThat(cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, records - 1))).isTrue();
+        }
+    }
+
+    @Test
+    public void testFullShardRefusesRequestsWhenFailClosed() throws IOException {
+        try (MappedCacheService cache = new MappedCacheService(cacheFile, WINDOW, 1000, true)) {
+            long now = System.currentTimeMillis();
+            int refused = 0;
+            for (int i = 0; i < 2 * 64 * 64; i++) {
+                if (cache.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))) {
+                    refused++;
+                }
+            }
+            assertThat(refused).isGreaterThan(0);
+        }
+    }
+}
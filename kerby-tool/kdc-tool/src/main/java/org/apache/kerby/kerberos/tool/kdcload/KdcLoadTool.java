@@ -0,0 +1,295 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.tool.kdcload;
+
+import org.apache.kerby.kerberos.kerb.KrbCodec;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.admin.kadmin.local.LocalKadminImpl;
+import org.apache.kerby.kerberos.kerb.common.KrbUtil;
+import org.apache.kerby.kerberos.kerb.server.KdcConfig;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigKey;
+import org.apache.kerby.kerberos.kerb.server.KdcServer;
+import org.apache.kerby.kerberos.kerb.transport.TransportExecutors;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.kdc.AsReq;
+import org.apache.kerby.kerberos.kerb.type.kdc.KdcOptions;
+import org.apache.kerby.kerberos.kerb.type.kdc.KdcReqBody;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tool to load the default KDC network with many concurrent TCP
+ * connections. The server side runs a KDC and reports its peak thread
+ * count when terminated, the client side reports the request latencies.
+ * Each side holds one socket per connection, so they run in two processes
+ * to stay within the open files limit.
+ */
+public class KdcLoadTool {
+    private static final String REALM = "EXAMPLE.COM";
+    private static final String CLIENT = "client@" + REALM;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+
+    private static final String USAGE = "Usage: java " + KdcLoadTool.class.getName() + "\n"
+            + "\tserver <port> [platform|virtual] [max-concurrent-requests]\n"
+            + "\t\tRuns a KDC until terminated, then reports its peak thread count.\n"
+            + "\t\tThe virtual mode needs JDK 21+.\n"
+            + "\tclient <host> <port> [connections, 10000 by default]\n"
+            + "\t\tSends one AS request per connection, keeping the connections open.\n";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("server")) {
+            String executionMode = TransportExecutors.PLATFORM_MODE;
+            int maxConcurrentRequests = 256;
+            if (args.length > 2) {
+                executionMode = args[2];
+            }
+            if (args.length > 3) {
+                maxConcurrentRequests = Integer.parseInt(args[3]);
+            }
+            serve(Integer.parseInt(args[1]), executionMode, maxConcurrentRequests);
+        } else if (args.length >= 3 && args[0].equals("client")) {
+            int connections = 10000;
+            if (args.length > 3) {
+                connections = Integer.parseInt(args[3]);
+            }
+            load(new InetSocketAddress(args[1], Integer.parseInt(args[2])), connections);
+        } else {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+    }
+
+    private static void serve(int port, final String executionMode,
+                              final int maxConcurrentRequests) throws Exception {
+        final KdcServer kdcServer = new KdcServer();
+        kdcServer.setKdcHost("localhost");
+        kdcServer.setKdcRealm(REALM);
+        kdcServer.setKdcTcpPort(port);
+        kdcServer.setAllowTcp(true);
+        kdcServer.setAllowUdp(false);
+
+        KdcConfig kdcConfig = kdcServer.getKdcConfig();
+        kdcConfig.setString(KdcConfigKey.KDC_EXECUTION_MODE, executionMode);
+        kdcConfig.setInt(KdcConfigKey.KDC_MAX_CONCURRENT_REQUESTS, maxConcurrentRequests);
+        kdcServer.init();
+
+        LocalKadminImpl kadmin = new LocalKadminImpl(kdcServer.getKdcSetting(),
+            kdcServer.getIdentityService());
+        kadmin.createBuiltinPrincipals();
+        kadmin.addPrincipal(CLIENT, "123456");
+
+        kdcServer.start();
+
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final int baseThreads = threadBean.getThreadCount();
+        final AtomicInteger peakThreads = new AtomicInteger(baseThreads);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                stopped.countDown();
+                System.out.println("Execution mode:        " + executionMode
+                    + " (virtual threads available: " + TransportExecutors.isVirtualThreadsAvailable() + ")");
+                System.out.println("Max concurrent reqs:   " + maxConcurrentRequests);
+                System.out.println("Threads before/peak:   " + baseThreads + "/" + peakThreads.get());
+                try {
+                    kdcServer.stop();
+                } catch (KrbException e) {
+                    System.err.println("Failed to stop the KDC: " + e.getMessage());
+                }
+            }
+        });
+        System.out.println("KDC listening on port " + port + " with " + baseThreads + " threads");
+
+        while (!stopped.await(10, TimeUnit.MILLISECONDS)) {
+            int count = threadBean.getThreadCount();
+            if (count > peakThreads.get()) {
+                peakThreads.set(count);
+            }
+        }
+    }
+
+    /**
+     * An AS request without preauth data, answered by a PREAUTH_REQUIRED
+     * error after the full decode, lookup and encode path.
+     */
+    private static byte[] makeRequest() throws KrbException {
+        KdcReqBody body = new KdcReqBody();
+        body.setCname(new PrincipalName(CLIENT));
+        body.setRealm(REALM);
+        body.setSname(KrbUtil.makeTgsPrincipal(REALM));
+        body.setTill(KerberosTime.now().extend(KerberosTime.DAY));
+        body.setNonce(1);
+        body.setEtypes(Arrays.asList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        body.setKdcOptions(new KdcOptions());
+
+        AsReq asReq = new AsReq();
+        asReq.setReqBody(body);
+        byte[] encoded = KrbCodec.encode(asReq);
+
+        ByteBuffer request = ByteBuffer.allocate(encoded.length + 4);
+        request.putInt(encoded.length);
+        request.put(encoded);
+        return request.array();
+    }
+
+    private static void load(InetSocketAddress kdcAddress, int connections) throws Exception {
+        byte[] request = makeRequest();
+        List<Connection> all = new ArrayList<>(connections);
+        List<Long> latencies = new ArrayList<>(connections);
+        int failed = 0;
+        Map<String, Integer> failures = new TreeMap<>();
+        long begin = System.nanoTime();
+
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(kdcAddress);
+                Connection connection = new Connection(channel, request);
+                channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                all.add(connection);
+            }
+
+            int done = 0;
+            while (done < connections && System.nanoTime() - begin < TIMEOUT) {
+                selector.select(100);
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (connection.onReady(key)) {
+                            latencies.add(connection.latency);
+                            done++;
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        Integer count = failures.get(e.toString());
+                        if (count == null) {
+                            count = 0;
+                        }
+                        failures.put(e.toString(), count + 1);
+                        failed++;
+                        done++;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        for (Connection connection : all) {
+            connection.channel.close();
+        }
+
+        Collections.sort(latencies);
+        System.out.println("Connections:           " + connections);
+        System.out.println("Completed:             " + latencies.size());
+        System.out.println("Failed:                " + failed);
+        for (Map.Entry<String, Integer> failure : failures.entrySet()) {
+            System.out.println("    " + failure.getValue() + " x " + failure.getKey());
+        }
+        System.out.println("Timed out:             " + (connections - latencies.size() - failed));
+        System.out.println("Elapsed (ms):          " + TimeUnit.NANOSECONDS.toMillis(elapsed));
+        if (!latencies.isEmpty()) {
+            System.out.println("Latency p50/p99/max (ms): "
+                + percentile(latencies, 50) + "/" + percentile(latencies, 99)
+                + "/" + percentile(latencies, 100));
+        }
+    }
+
+    private static double percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        long nanos = sorted.get(Math.max(0, index));
+        return nanos / 1000 / 1000.0;
+    }
+
+    /**
+     * A client connection sending one request and reading its response,
+     * then kept open idle like a keep-alive client.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer request;
+        private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        private ByteBuffer response;
+        private long start;
+        private long latency;
+
+        Connection(SocketChannel channel, byte[] request) {
+            this.channel = channel;
+            this.request = ByteBuffer.wrap(request);
+        }
+
+        /**
+         * @return true once the whole response has been read
+         */
+        boolean onReady(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                start = System.nanoTime();
+                channel.write(request);
+                key.interestOps(SelectionKey.OP_READ);
+                return false;
+            }
+
+            if (response == null) {
+                if (channel.read(lengthBuffer) < 0) {
+                    throw new IOException("Closed by the KDC");
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return false;
+                }
+                lengthBuffer.flip();
+                response = ByteBuffer.allocate(lengthBuffer.getInt());
+            }
+            if (channel.read(response) < 0) {
+                throw new IOException("Closed by the KDC");
+            }
+            if (response.hasRemaining()) {
+                return false;
+            }
+
+            latency = System.nanoTime() - start;
+            key.interestOps(0);
+            return true;
+        }
+    }
+}